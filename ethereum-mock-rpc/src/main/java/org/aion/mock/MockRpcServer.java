@@ -29,13 +29,11 @@ import javax.annotation.Nonnull;
 import javax.servlet.DispatcherType;
 import java.math.BigInteger;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 
 @Slf4j
 public class MockRpcServer {
 
-    // some invariants for now, needs to change into config file parameters later
-    static final byte[] CONTRACT_ADDRESS = DeterministicRandomGenerator.getEthereumAddress();
-
     public static void main(String[] args) {
         ServerConfig config = ConfigLoader.load();
 
@@ -47,6 +45,8 @@ public class MockRpcServer {
         log.info("loaded config");
         log.info(config.toString());
 
+        DeterministicRandomGenerator.setSeed(config.getSeed());
+
         ChainFacade facade = generateChainFacade(config);
         Server server = generateJettyServer(facade, config);
 
@@ -61,7 +61,7 @@ public class MockRpcServer {
     }
 
     private static ChainFacade generateChainFacade(ServerConfig config) {
-        var state = new ChainState();
+        var state = new ChainState(config.getLazyCacheSize());
 
         var randomTransferGen = new RandomTransfer(config.getThroughput(),
                 config.getContractAddressBytes());
@@ -76,7 +76,7 @@ public class MockRpcServer {
         }
 
         // generate a default fork event
-        var forkBuilder = new ForkBuilderRule(state, forkEvents);
+        var forkBuilder = new ForkBuilderRule(state, forkEvents, config.getMode().contains("lazy"), config.getSeed());
         // attach UserTransfer pipeline element (for generating transfers)
         forkBuilder.attach(new UserTransfer(config.getContractAddressBytes(), forkEvents));
 
@@ -92,7 +92,12 @@ public class MockRpcServer {
                 .state(state)
                 .specialRules(rules)
                 .build();
-        return new DefaultChainFacade(strategy, state);
+        var facade = new DefaultChainFacade(strategy, state);
+
+        // from here on, ticks and fork triggers are applied on the population
+        // thread, request threads only read the published state
+        strategy.schedule(config.getPopulateInterval(), TimeUnit.MILLISECONDS);
+        return facade;
     }
 
     /**
@@ -108,7 +113,7 @@ public class MockRpcServer {
         ServletContextHandler context = new ServletContextHandler(ServletContextHandler.SESSIONS);
         context.setContextPath("/");
         context.addFilter(AddContentTypeFilter.class, "/", EnumSet.of(DispatcherType.REQUEST));
-        context.addServlet(new ServletHolder(new HttpJsonRpcServlet(facade)), "/");
+        context.addServlet(new ServletHolder(new HttpJsonRpcServlet(facade, config)), "/");
         server.setHandler(context);
         return server;
     }
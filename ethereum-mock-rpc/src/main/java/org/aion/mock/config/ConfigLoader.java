@@ -85,6 +85,7 @@ public class ConfigLoader {
                 case "syncing":
                 case "throughput":
                 case "ticking":
+                case "lazy":
                     continue L;
             }
             return false;
@@ -29,6 +29,27 @@ public class ServerConfig {
 
     public int throughput;
 
+    // seed for all generated addresses and hashes, same seed => same chain
+    public long seed = 42L;
+
+    // interval (ms) at which the chain is advanced, independent of API calls
+    public long populateInterval = 250;
+
+    // maximum number of blocks kept in memory, only used in lazy mode
+    public long lazyCacheSize = 4096;
+
+    // maximum size (bytes) of serialized block responses kept for reuse
+    public long blockCacheSize = 64L * 1024 * 1024;
+
+    // time (ms) after which a log filter that isn't polled is uninstalled
+    public long filterTimeout = 5 * 60 * 1000;
+
+    // maximum number of calls in a single JSON-RPC batch request
+    public int maxBatchSize = 1000;
+
+    // maximum number of JSON-RPC calls (from batches) executed in parallel
+    public int batchConcurrency = Runtime.getRuntime().availableProcessors();
+
     @Data
     @NoArgsConstructor
     @AllArgsConstructor
@@ -1,10 +1,14 @@
 package org.aion.mock.eth;
 
+import org.aion.mock.eth.state.LogMatch;
+import org.aion.mock.eth.state.LogQuery;
 import org.ethereum.core.Block;
 import org.ethereum.core.Transaction;
 import org.ethereum.core.TransactionInfo;
 import org.ethereum.core.TransactionReceipt;
 
+import java.util.List;
+
 /**
  * ChainFacade refers to a facade, or variant of blockchain mocks
  * that only simulates the surface level chain mechanics <b>without</b>
@@ -37,4 +41,12 @@ public interface ChainFacade {
     TransactionInfo getTransactionInfo(byte[] transactionHash);
 
     Block getBestBlock();
+
+    /**
+     * @return logs matching {@code query} in blocks {@code [fromBlock, toBlock]}
+     * of the current chain, ordered by block and position within the block
+     * @throws IllegalArgumentException if the chain derives its blocks on
+     * demand and the range is longer than it allows to query at once
+     */
+    List<LogMatch> getLogs(long fromBlock, long toBlock, LogQuery query);
 }
@@ -2,14 +2,20 @@ package org.aion.mock.eth;
 
 import org.aion.mock.eth.populate.PopulationStrategy;
 import org.aion.mock.eth.state.ChainState;
+import org.aion.mock.eth.state.LogMatch;
+import org.aion.mock.eth.state.LogQuery;
 import org.ethereum.core.Block;
 import org.ethereum.core.Transaction;
 import org.ethereum.core.TransactionInfo;
 import org.ethereum.core.TransactionReceipt;
-import org.ethereum.util.ByteUtil;
 
-import java.util.Properties;
+import java.util.List;
 
+/**
+ * Facade reading directly from the published {@link ChainState}, the chain
+ * itself is advanced by the {@link PopulationStrategy} on its own schedule,
+ * so none of these calls perform any population work.
+ */
 public class DefaultChainFacade implements ChainFacade {
 
     private final PopulationStrategy strategy;
@@ -23,19 +29,11 @@ public class DefaultChainFacade implements ChainFacade {
 
     @Override
     public Block getBlockByNumber(long number) {
-        var props = new Properties();
-        props.setProperty("getBlockByNumber", "");
-        props.setProperty("number", Long.toString(number));
-        this.strategy.populateStep(props);
         return this.chainState.getBlock(number);
     }
 
     @Override
     public Block getBlockByHash(byte[] blockHash) {
-        var props = new Properties();
-        props.setProperty("getBlockByHash", "");
-        props.setProperty("hash", ByteUtil.toHexString(blockHash));
-        this.strategy.populateStep(props);
         return this.chainState.getBlock(blockHash);
     }
 
@@ -48,7 +46,6 @@ public class DefaultChainFacade implements ChainFacade {
 
     @Override
     public TransactionReceipt getTransactionReceiptByHash(byte[] transactionHash) {
-        this.strategy.populateStep(new Properties());
         var info = this.chainState.getTransactionInfo(transactionHash);
         if (info == null) return null;
         return info.getReceipt();
@@ -56,38 +53,23 @@ public class DefaultChainFacade implements ChainFacade {
 
     @Override
     public TransactionInfo getTransactionInfo(byte[] transactionHash) {
-        this.strategy.populateStep(new Properties());
         return this.chainState.getTransactionInfo(transactionHash);
     }
 
     @Override
     public long getBlockNumber() {
-        var props = new Properties();
-        props.setProperty("getBlockNumber", "");
-
-        this.strategy.populateStep(props);
         return this.chainState.getHeadBlockNumber();
     }
 
     @Override
     public Block getBestBlock() {
-        var headBlockNumber = this.chainState.getHeadBlockNumber();
-
-        if (headBlockNumber == 2) {
-            System.out.println("hello world");
-        }
-
-        var props = new Properties();
-        props.setProperty("getBestBlock", "");
-        props.setProperty("number", Long.toString(headBlockNumber));
-
-        // this is in the case where our post-trigger number is _lower_
-        // than our current number
-        if (this.chainState.getHeadBlockNumber() < headBlockNumber) {
-            headBlockNumber = this.chainState.getHeadBlockNumber();
-        }
+        // read the head once, so the fork and number are consistent
+        var head = this.chainState.getHead();
+        return this.chainState.getBlock(head, head.getBlockNumber());
+    }
 
-        this.strategy.populateStep(props);
-        return this.chainState.getBlock(headBlockNumber);
+    @Override
+    public List<LogMatch> getLogs(long fromBlock, long toBlock, LogQuery query) {
+        return this.chainState.getLogs(this.chainState.getHead(), fromBlock, toBlock, query);
     }
 }
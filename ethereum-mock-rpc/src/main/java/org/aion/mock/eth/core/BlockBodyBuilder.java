@@ -0,0 +1,72 @@
+package org.aion.mock.eth.core;
+
+import org.ethereum.core.Block;
+import org.ethereum.core.Bloom;
+import org.ethereum.core.Transaction;
+import org.ethereum.core.TransactionReceipt;
+import org.ethereum.crypto.HashUtil;
+import org.ethereum.trie.StackTrie;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Accumulates the transactions and receipts of a block that is being built.
+ *
+ * The bloom is updated and each entry is encoded exactly once as receipts
+ * are appended, the roots are calculated once with a {@link StackTrie} in
+ * {@link #applyTo(Block)}, after all pipeline elements have run (the RLP
+ * encoded index keys are not in key order until the block is complete).
+ *
+ * Not thread-safe, a block is only ever built by a single thread.
+ */
+public class BlockBodyBuilder {
+
+    private final List<Transaction> transactions = new ArrayList<>();
+
+    private final List<TransactionReceipt> receipts = new ArrayList<>();
+
+    private final Bloom bloom = new Bloom();
+
+    private final List<byte[]> encodedTransactions = new ArrayList<>();
+
+    private final List<byte[]> encodedReceipts = new ArrayList<>();
+
+    /**
+     * Appends a receipt (and the transaction it refers to) to the end of the block.
+     */
+    public void add(@Nonnull final TransactionReceipt receipt) {
+        this.encodedTransactions.add(receipt.getTransaction().getEncoded());
+        this.encodedReceipts.add(receipt.getReceiptTrieEncoded());
+        this.bloom.or(receipt.getBloomFilter());
+
+        this.transactions.add(receipt.getTransaction());
+        this.receipts.add(receipt);
+    }
+
+    public int size() {
+        return this.receipts.size();
+    }
+
+    public List<TransactionReceipt> getReceipts() {
+        return Collections.unmodifiableList(this.receipts);
+    }
+
+    /**
+     * Sets the transactions, roots and bloom of {@code block} to the
+     * accumulated contents, this invalidates the hash of the block.
+     */
+    public void applyTo(@Nonnull final Block block) {
+        if (this.receipts.isEmpty()) {
+            block.updateTransactionContents(new ArrayList<>(),
+                    HashUtil.EMPTY_TRIE_HASH, HashUtil.EMPTY_TRIE_HASH, this.bloom.getData());
+            return;
+        }
+        block.updateTransactionContents(new ArrayList<>(this.transactions),
+                StackTrie.calcIndexedRoot(this.encodedTransactions.size(), this.encodedTransactions::get),
+                StackTrie.calcIndexedRoot(this.encodedReceipts.size(), this.encodedReceipts::get),
+                this.bloom.getData());
+    }
+}
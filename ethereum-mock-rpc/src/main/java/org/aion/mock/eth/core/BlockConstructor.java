@@ -5,10 +5,8 @@ import lombok.Builder.Default;
 import lombok.Singular;
 import org.ethereum.core.*;
 import org.ethereum.crypto.HashUtil;
-import org.ethereum.trie.Trie;
-import org.ethereum.trie.TrieImpl;
+import org.ethereum.trie.StackTrie;
 import org.ethereum.util.ByteUtil;
-import org.ethereum.util.RLP;
 
 import java.util.List;
 import java.util.stream.Collectors;
@@ -126,26 +124,17 @@ public class BlockConstructor {
 
     public static byte[] calcTxTrie(List<Transaction> transactions) {
 
-        Trie txsState = new TrieImpl();
-
         if (transactions == null || transactions.isEmpty())
             return HashUtil.EMPTY_TRIE_HASH;
 
-        for (int i = 0; i < transactions.size(); i++) {
-            txsState.put(RLP.encodeInt(i), transactions.get(i).getEncoded());
-        }
-        return txsState.getRootHash();
+        return StackTrie.calcIndexedRoot(transactions.size(), i -> transactions.get(i).getEncoded());
     }
 
     public static byte[] calcReceiptsTrie(List<TransactionReceipt> receipts) {
-        Trie receiptsTrie = new TrieImpl();
 
         if (receipts == null || receipts.isEmpty())
             return HashUtil.EMPTY_TRIE_HASH;
 
-        for (int i = 0; i < receipts.size(); i++) {
-            receiptsTrie.put(RLP.encodeInt(i), receipts.get(i).getReceiptTrieEncoded());
-        }
-        return receiptsTrie.getRootHash();
+        return StackTrie.calcIndexedRoot(receipts.size(), i -> receipts.get(i).getReceiptTrieEncoded());
     }
 }
@@ -16,7 +16,6 @@ import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.Properties;
 
 @Slf4j
 public class PopulationEngine extends PopulationStrategy {
@@ -46,10 +45,10 @@ public class PopulationEngine extends PopulationStrategy {
     }
 
     @Override
-    public void populateStep(Properties props) {
+    public void populateStep() {
         // by default, the strategy does not have any default behaviour
         for (AbstractRule rule : specialRules) {
-            rule.applyStep(this.state, props);
+            rule.applyStep(this.state);
         }
     }
 }
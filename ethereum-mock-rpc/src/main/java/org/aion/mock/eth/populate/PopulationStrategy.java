@@ -1,24 +1,33 @@
 package org.aion.mock.eth.populate;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.slf4j.Slf4j;
 import org.aion.mock.eth.state.ChainState;
 
-import java.util.Properties;
+import javax.annotation.concurrent.GuardedBy;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Strategy for populating the mocks, this defines an abstract
- * interface for populating blocks, the expectation is that the
- * facade will call this on every relevant (defined by implementer)
- * API call.
+ * interface for populating blocks.
  *
  * In turn, the population strategy is responsible for deriving the
- * future state the chain.
+ * future state the chain. Population runs on its own clock (see
+ * {@link #schedule(long, TimeUnit)}), so that API calls only ever
+ * read the state that has already been published.
  */
+@Slf4j
 public abstract class PopulationStrategy {
 
     protected final ChainState state;
 
     private boolean runOnce;
 
+    @GuardedBy("this")
+    private ScheduledExecutorService scheduler;
+
     public PopulationStrategy(ChainState state) {
         this.state = state;
         runOnce = false;
@@ -29,6 +38,37 @@ public abstract class PopulationStrategy {
         assert !runOnce;
         if (!runOnce)
             populateInitialInternal();
+        runOnce = true;
+    }
+
+    /**
+     * Starts calling {@link #populateStep()} on a dedicated thread, every
+     * {@code interval}. Should be called after {@link #populateInitial()}.
+     */
+    public synchronized void schedule(long interval, TimeUnit unit) {
+        if (this.scheduler != null)
+            throw new IllegalStateException("population has already been scheduled");
+
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("population-%d").build());
+        this.scheduler.scheduleAtFixedRate(this::scheduledStep, 0, interval, unit);
+        log.info("scheduled population step every {} {}", interval, unit.toString().toLowerCase());
+    }
+
+    public synchronized void shutdown() {
+        if (this.scheduler != null) {
+            this.scheduler.shutdownNow();
+            this.scheduler = null;
+        }
+    }
+
+    private void scheduledStep() {
+        // an exception escaping would silently cancel all further steps
+        try {
+            populateStep();
+        } catch (Exception e) {
+            log.error("caught exception while applying population step", e);
+        }
     }
 
     /**
@@ -38,8 +78,7 @@ public abstract class PopulationStrategy {
     public abstract void populateInitialInternal();
 
     /**
-     * Populate per step, where a step can refer to any artibrary API call.
-     * {@code props} is used depending on which PopulationStrategy is selected.
+     * Populate per step, a step is a tick of the population scheduler.
      */
-    public abstract void populateStep(Properties props);
+    public abstract void populateStep();
 }
@@ -2,11 +2,18 @@ package org.aion.mock.eth.populate.pipeline;
 
 import lombok.Data;
 import lombok.NonNull;
+import org.aion.mock.eth.core.BlockBodyBuilder;
+import org.aion.util.DeterministicRandom;
 import org.ethereum.core.Block;
 import org.ethereum.core.TransactionReceipt;
 
 import java.util.List;
 
+/**
+ * A block travelling through the pipeline. Elements only append receipts
+ * to the {@link BlockBodyBuilder}, the block header (roots, bloom and hash)
+ * is finalized once, after the last element has run.
+ */
 @Data
 public class BlockItem {
     @NonNull
@@ -15,6 +22,16 @@ public class BlockItem {
     @NonNull
     private Block block;
 
+    // all randomness used to build this block must come from here
     @NonNull
-    private List<TransactionReceipt> receipts;
+    private DeterministicRandom random;
+
+    private final BlockBodyBuilder body = new BlockBodyBuilder();
+
+    /**
+     * @return receipts appended so far, in block order (read-only)
+     */
+    public List<TransactionReceipt> getReceipts() {
+        return this.body.getReceipts();
+    }
 }
@@ -6,7 +6,6 @@ import org.ethereum.core.Block;
 import org.ethereum.core.TransactionInfo;
 
 import java.util.List;
-import java.util.Properties;
 
 /**
  * Define rule as an action on a blockchain, rules are applied
@@ -19,5 +18,9 @@ public abstract class AbstractRule {
 
     public abstract void apply(ChainState state);
 
-    public abstract void applyStep(ChainState state, Properties props);
+    /**
+     * Called on every tick of the population scheduler, never from
+     * a request thread.
+     */
+    public abstract void applyStep(ChainState state);
 }
@@ -1,19 +1,27 @@
 package org.aion.mock.eth.populate.rules;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import lombok.extern.slf4j.Slf4j;
 import org.aion.mock.eth.core.BlockConstructor;
 import org.aion.mock.eth.populate.base.ForkEvent;
 import org.aion.mock.eth.populate.pipeline.BlockItem;
 import org.aion.mock.eth.populate.pipeline.BlockPipelineElement;
 import org.aion.mock.eth.state.ChainState;
+import org.aion.mock.eth.state.DerivedBlock;
+import org.aion.util.DeterministicRandom;
 import org.aion.util.DeterministicRandomGenerator;
 import org.ethereum.core.*;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.GuardedBy;
 import javax.annotation.concurrent.ThreadSafe;
 import java.math.BigInteger;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.stream.Collectors;
 
 /**
@@ -35,12 +43,28 @@ public class ForkBuilderRule extends AbstractRule {
 
     private final ChainState state;
 
+    // root of all randomness used to build blocks
+    private final long seed;
+
+    // completes once every fork has been fully generated
+    private volatile CompletableFuture<Void> generation;
+
+    // head block number observed on the last step, only accessed by the scheduler
     private long lastBlockNumber;
 
+    // when set, blocks are derived on first access instead of built up front
+    private final boolean lazy;
+
     public ForkBuilderRule(ChainState state, Map<String, ForkEvent> forkEvents) {
+        this(state, forkEvents, false, DeterministicRandomGenerator.DEFAULT_SEED);
+    }
+
+    public ForkBuilderRule(ChainState state, Map<String, ForkEvent> forkEvents, boolean lazy, long seed) {
         this.state = state;
         this.forkEvents = forkEvents;
-        this.lastBlockNumber = 0;
+        this.lazy = lazy;
+        this.seed = seed;
+        this.lastBlockNumber = -1;
         checkDuplicates();
     }
 
@@ -86,8 +110,14 @@ public class ForkBuilderRule extends AbstractRule {
     }
 
     /**
-     * Here we construct all possible forks that we know about. For each
-     * fork, we attach a index to them, so we can identify them later
+     * Here we construct all possible forks that we know about. Each fork is
+     * built on its own task (the parent hash chain is sequential within a
+     * fork, but independent between forks), and blocks are published to the
+     * state as they are produced.
+     *
+     * Returns once every fork has published its first block, the remainder
+     * is generated in the background, see {@link #awaitGeneration()}.
+     *
      * @param state
      */
     @Override
@@ -102,93 +132,194 @@ public class ForkBuilderRule extends AbstractRule {
 
         log.info("building {} forks between block number {} to {}", this.forkEvents.keySet().size(), min, max);
 
-        Map<String, byte[]> parentHashes = new HashMap<>();
-        for (long i = min; i < max; i++) {
-            for (ForkEvent event : this.forkEvents.values()) {
-                if (isInRange(i, event)) {
-                    var builder = constructDefault(i, event);
-                    {
-                        byte[] parentHash = null;
-                        if ((parentHash = parentHashes.get(event.getForkName())) != null) {
-                            builder.parentHash(parentHash);
-                        }
-                    }
+        final List<BlockPipelineElement> pipeline = List.copyOf(this.bpe);
+        if (this.lazy) {
+            applyLazy(min, max, pipeline);
+            return;
+        }
 
-                    BlockItem item = new BlockItem(event.getForkName(),
-                            builder.build().buildBlock(), new ArrayList<>());
+        final int threads = Math.min(this.forkEvents.size(), Runtime.getRuntime().availableProcessors());
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.max(threads, 1),
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("fork-builder-%d").build());
+
+        List<CompletableFuture<Void>> firstBlocks = new ArrayList<>();
+        List<CompletableFuture<Void>> forks = new ArrayList<>();
+        for (ForkEvent event : this.forkEvents.values()) {
+            final CompletableFuture<Void> firstBlock = new CompletableFuture<>();
+            final CompletableFuture<Void> fork = CompletableFuture.runAsync(
+                    () -> buildFork(event, min, max, pipeline, firstBlock), executor);
+            // make sure we never wait on a fork that failed before its first block
+            fork.whenComplete((v, t) -> {
+                if (t != null) {
+                    log.error("failed to build fork " + event.getForkName(), t);
+                    firstBlock.completeExceptionally(t);
+                }
+            });
+            firstBlocks.add(firstBlock);
+            forks.add(fork);
+        }
+        executor.shutdown();
+        this.generation = CompletableFuture.allOf(forks.toArray(new CompletableFuture<?>[0]));
 
-                    // run it through the block process elements
-                    for (var e : this.bpe) {
-                        item = e.process(item);
-                    }
+        try {
+            CompletableFuture.allOf(firstBlocks.toArray(new CompletableFuture<?>[0])).join();
+        } catch (CompletionException e) {
+            throw new RuleException("failed to build initial blocks of forks", e.getCause());
+        }
+        this.state.setCurrentFork("main");
+    }
 
-                    // after this point, we calculate the TransactionInfo
-                    byte[] blockHash = postConstruction(item);
-                    parentHashes.put(event.getForkName(), blockHash);
-                }
-            }
+    /**
+     * Builds blocks {@code [start, end]} of a fork (bounded by the global
+     * {@code [min, max)} range), in order, each block referencing the
+     * hash of the block before it.
+     */
+    private void buildFork(@Nonnull final ForkEvent event,
+                           final long min,
+                           final long max,
+                           @Nonnull final List<BlockPipelineElement> pipeline,
+                           @Nonnull final CompletableFuture<Void> firstBlock) {
+        final long start = Math.max(min, event.getForkStartBlockNumber());
+        final long end = Math.min(max - 1, event.getForkEndBlockNumber());
+
+        byte[] parentHash = null;
+        for (long i = start; i <= end; i++) {
+            var derived = deriveBlock(event, i, parentHash, pipeline);
+            applyStateUpdate(derived.getBlock(), derived.getInfos(), event.getForkName());
+            parentHash = derived.getBlock().getHash();
+            firstBlock.complete(null);
         }
+        // fork has no blocks in range, nothing to wait for
+        firstBlock.complete(null);
+        log.info("finished building fork {}, block range [{},{}]", event.getForkName(), start, end);
+    }
+
+    /**
+     * Instead of building the forks, registers each of them with the state
+     * as a lazy fork, blocks are then derived (and re-derived after being
+     * evicted) from (fork, number, seed) when first requested.
+     */
+    private void applyLazy(final long min,
+                           final long max,
+                           @Nonnull final List<BlockPipelineElement> pipeline) {
+        for (ForkEvent event : this.forkEvents.values()) {
+            final long start = Math.max(min, event.getForkStartBlockNumber());
+            final long end = Math.min(max - 1, event.getForkEndBlockNumber());
+            this.state.addLazyFork(event.getForkName(), start, end,
+                    (number, parentHash) -> deriveBlock(event, number, parentHash, pipeline));
+            log.info("registered lazy fork {}, block range [{},{}]", event.getForkName(), start, end);
+        }
+        this.generation = CompletableFuture.completedFuture(null);
         this.state.setCurrentFork("main");
     }
 
-    @GuardedBy("this")
-    private static boolean isInRange(long i, ForkEvent event) {
-        return i >= event.getForkStartBlockNumber() && i <= event.getForkEndBlockNumber();
+    /**
+     * Builds a single block of a fork, this is a pure function of the seed,
+     * fork, block number and parent hash (all randomness is drawn from a
+     * generator split off by fork and block number, and from there by
+     * transaction index), so it can run on any thread in any order.
+     */
+    private DerivedBlock deriveBlock(@Nonnull final ForkEvent event,
+                                     final long blockNumber,
+                                     @Nullable final byte[] parentHash,
+                                     @Nonnull final List<BlockPipelineElement> pipeline) {
+        var random = DeterministicRandom.forBlock(this.seed, event.getForkName(), blockNumber);
+        var builder = constructDefault(blockNumber, event, random);
+        if (parentHash != null) {
+            builder.parentHash(parentHash);
+        }
+
+        BlockItem item = new BlockItem(event.getForkName(), builder.build().buildBlock(), random);
+
+        // run it through the block process elements
+        for (var e : pipeline) {
+            item = e.process(item);
+        }
+
+        // after this point, we calculate the TransactionInfo
+        return postConstruction(item);
+    }
+
+    /**
+     * Blocks until all forks have been completely generated.
+     */
+    public void awaitGeneration() {
+        CompletableFuture<Void> generation = this.generation;
+        if (generation != null)
+            generation.join();
     }
 
     /**
      * The other responsibility for handling forks is actually forking when the
-     * current block number matches a certain criteria.
+     * head block number crosses a fork trigger number.
+     *
+     * Only called from the population scheduler, so the last observed head is
+     * only ever touched by a single thread.
      *
      * @param state
      */
     @Override
-    public void applyStep(ChainState state, Properties props) {
-        if (props.getProperty("number") == null) {
-            // only trigger when the user stumbles on this using an API call
+    public void applyStep(ChainState state) {
+        ChainState.Head head = this.state.getHead();
+        final long previousBlockNumber = this.lastBlockNumber;
+        this.lastBlockNumber = head.getBlockNumber();
+
+        if (head.getBlockNumber() <= previousBlockNumber) {
+            // head has not moved forward since the last step (or we just forked
+            // backwards), so we could not have crossed a trigger
             return;
         }
 
-        synchronized (this.state) {
-            long requestedBlockNumber = Long.valueOf(props.getProperty("number"));
-            if (requestedBlockNumber > this.state.getHeadBlockNumber()) {
-                // return if the user tries to request a number that is
-                // outside of the range of what we have currently exposed
-                return;
-            }
+        // always get the earliest fork crossed since the last step
+        Optional<Map.Entry<String, ForkEvent>> out = this.forkEvents.entrySet().stream()
+                .filter(e -> e.getValue().getForkTriggerNumber() > previousBlockNumber &&
+                        e.getValue().getForkTriggerNumber() <= this.lastBlockNumber)
+                .min(Comparator.comparingLong(e -> e.getValue().getForkTriggerNumber()));
 
-            List<Map.Entry<String, ForkEvent>> out = this.forkEvents.entrySet().stream()
-                    .filter(e -> e.getValue().getForkTriggerNumber() == requestedBlockNumber)
-                    .collect(Collectors.toList());
+        if (!out.isPresent()) {
+            log.debug("no trigger event at this block number, current fork: {}", head.getFork());
+            return;
+        }
 
-            if (out.size() > 1) {
-                log.debug("multiple forks trigger at block, this should not happen");
-                throw new RuntimeException("multiple forks trigger at this block");
-            }
+        String nextForkName = out.get().getKey();
+        ForkEvent nextForkEvent = out.get().getValue();
 
-            if (out.isEmpty()) {
-                log.debug("no trigger event at this block number, current fork: {}", this.state.getCurrentFork());
-                return;
-            }
+        if (nextForkName.equals(head.getFork())) {
+            log.debug("fork trigger detected for current fork {}, doing nothing", head.getFork());
+            return;
+        }
 
-            if (out.get(0).getKey().equals(this.state.getCurrentFork())) {
-                log.debug("fork trigger detected for current fork {}, doing nothing", this.state.getCurrentFork());
-                return;
-            }
+        if (!isPublished(nextForkName, nextForkEvent.getForkPostTriggerNumber())) {
+            // forks are generated in the background, hold off on the trigger
+            // until the block we would jump to has been published
+            log.debug("fork {} not generated up to {} yet, deferring trigger", nextForkName,
+                    nextForkEvent.getForkPostTriggerNumber());
+            this.lastBlockNumber = previousBlockNumber;
+            return;
+        }
+
+        // otherwise, apply the fork event, the fork and head number are swapped
+        // together, if another thread moved the head in between we retry next step
+        ChainState.Head next = new ChainState.Head(nextForkName, nextForkEvent.getForkPostTriggerNumber());
+        if (!this.state.compareAndSetHead(head, next)) {
+            this.lastBlockNumber = previousBlockNumber;
+            return;
+        }
+        this.lastBlockNumber = next.getBlockNumber();
+
+        log.debug("applied fork rule, forks {} => {}, trigger => {}, forkRange => [{},{}]",
+                head.getFork(),
+                nextForkName,
+                nextForkEvent.getForkTriggerNumber(),
+                nextForkEvent.getForkStartBlockNumber(),
+                nextForkEvent.getForkEndBlockNumber());
+    }
 
-            // always get the earliest fork
-            String nextForkName = out.get(0).getKey();
-            ForkEvent nextForkEvent = out.get(0).getValue();
-            // otherwise, apply the fork event
-            log.debug("applying fork rule, forks {} => {}, requested => {}, forkRange => [{},{}]",
-                    this.state.getCurrentFork(),
-                    nextForkName,
-                    requestedBlockNumber,
-                    nextForkEvent.getForkStartBlockNumber(),
-                    nextForkEvent.getForkEndBlockNumber());
-
-            this.state.setCurrentFork(nextForkName);
-            this.state.setHeadBlockNumber(nextForkEvent.getForkPostTriggerNumber());
+    private boolean isPublished(@Nonnull final String fork, final long blockNumber) {
+        try {
+            return this.state.getForkMax(fork) >= blockNumber;
+        } catch (NoSuchElementException e) {
+            return false;
         }
     }
 
@@ -229,42 +360,29 @@ public class ForkBuilderRule extends AbstractRule {
             throw new RuleException("inputs violated some ForkBuilderRule invariants");
     }
 
-    private BlockConstructor.BlockConstructorBuilder constructDefault(long blockNumber, ForkEvent event) {
+    private BlockConstructor.BlockConstructorBuilder constructDefault(long blockNumber,
+                                                                      ForkEvent event,
+                                                                      DeterministicRandom random) {
         var builder = BlockConstructor.builder();
         builder.number(blockNumber)
                 .difficulty(event.getInitialDifficulty()
                         .add(BigInteger.valueOf(blockNumber))
                         .subtract(BigInteger.valueOf(event.getForkStartBlockNumber()))
                         .toByteArray())
-                .nonce(DeterministicRandomGenerator.getBytes32());
+                .nonce(random.getBytes32());
         return builder;
     }
 
-    private byte[] postConstruction(final BlockItem item) {
-        List<Transaction> transactions = item.getReceipts()
-                .stream()
-                .map(TransactionReceipt::getTransaction)
-                .collect(Collectors.toList());
-
-        var txTrieRoot = BlockConstructor.calcTxTrie(transactions);
-        var receiptRoot = BlockConstructor.calcReceiptsTrie(item.getReceipts());
-
-        final var bloom = new Bloom();
-        for (var r : item.getReceipts()) {
-            bloom.or(r.getBloomFilter());
-        }
-
-        item.getBlock().updateTransactionContents(transactions, txTrieRoot, receiptRoot, bloom.getData());
+    private DerivedBlock postConstruction(final BlockItem item) {
+        // roots, bloom and hash are only computed here, once per block
+        item.getBody().applyTo(item.getBlock());
         var blockHash = item.getBlock().getHash();
 
-        List<TransactionInfo> infos = item.getReceipts()
-                .stream()
-                .map(r -> new TransactionInfo(r, blockHash, 0))
-                .collect(Collectors.toList());
-
-        // store into state
-        applyStateUpdate(item.getBlock(), infos, item.getFork());
-        return blockHash;
+        List<TransactionInfo> infos = new ArrayList<>();
+        for (int i = 0; i < item.getReceipts().size(); i++) {
+            infos.add(new TransactionInfo(item.getReceipts().get(i), blockHash, i));
+        }
+        return new DerivedBlock(item.getBlock(), infos);
     }
 
     private void applyStateUpdate(final Block block,
@@ -5,8 +5,6 @@ import lombok.extern.slf4j.Slf4j;
 import org.aion.mock.eth.state.ChainState;
 import org.ethereum.util.ByteUtil;
 
-import java.util.Properties;
-
 /**
  * Ticks until we reach the chain head
  */
@@ -34,17 +32,22 @@ public class TickRule extends AbstractRule {
     }
 
     @Override
-    public void applyStep(ChainState state, Properties props) {
-        synchronized (state) {
-            var current = state.getHeadBlockNumber();
-            var forkMaxBlockNumber = state.getCurrentForkMax();
-
-            var newNum = Math.min((this.watch.elapsed().getSeconds() / this.blockTime) + startingBlockNumber, forkMaxBlockNumber);
-            state.setHeadBlockNumber(newNum);
-            if (newNum > current) {
-                // helpful log for the user
-                log.info("applied tick, new HEAD block number {}, hash {}", newNum, ByteUtil.toHexString(state.getBlock(newNum).getHash()));
-            }
+    public void applyStep(ChainState state) {
+        final long elapsedNum = (this.watch.elapsed().getSeconds() / this.blockTime) + startingBlockNumber;
+
+        ChainState.Head current;
+        ChainState.Head next;
+        do {
+            current = state.getHead();
+            var forkMaxBlockNumber = state.getForkMax(current.getFork());
+            next = current.withBlockNumber(Math.min(elapsedNum, forkMaxBlockNumber));
+        } while (!state.compareAndSetHead(current, next));
+
+        if (next.getBlockNumber() > current.getBlockNumber()) {
+            // helpful log for the user
+            log.info("applied tick, new HEAD block number {}, hash {}",
+                    next.getBlockNumber(),
+                    ByteUtil.toHexString(state.getBlock(next, next.getBlockNumber()).getHash()));
         }
     }
 }
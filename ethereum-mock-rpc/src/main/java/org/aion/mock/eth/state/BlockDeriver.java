@@ -0,0 +1,21 @@
+package org.aion.mock.eth.state;
+
+import javax.annotation.Nullable;
+
+/**
+ * Derives a block of a fork on demand, used by lazily materialized forks.
+ *
+ * Implementations must be deterministic: deriving the same block number
+ * with the same parent hash must always produce the same block, as blocks
+ * may be evicted and derived again later.
+ */
+@FunctionalInterface
+public interface BlockDeriver {
+
+    /**
+     * @param blockNumber number of the block to derive
+     * @param parentHash hash of the previous block of the fork, or
+     *                   {@code null} for the first block of the fork
+     */
+    DerivedBlock derive(long blockNumber, @Nullable byte[] parentHash);
+}
@@ -1,112 +1,416 @@
 package org.aion.mock.eth.state;
 
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 import org.ethereum.core.Block;
+import org.ethereum.core.Transaction;
 import org.ethereum.core.TransactionInfo;
 import org.ethereum.db.ByteArrayWrapper;
+import org.ethereum.listener.LogFilter;
+import org.ethereum.vm.LogInfo;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
 
-
+/**
+ * Holds every block and transaction generated for the mock, along with the
+ * head (current fork and best block number) that is visible to the user.
+ *
+ * Reads never block: blocks are published once into append-only per-fork
+ * chains and are never modified afterwards, while the head is an immutable
+ * {@link Head} snapshot that rules replace with a single atomic swap.
+ *
+ * Forks can alternatively be registered as lazy (see {@link #addLazyFork}),
+ * in which case blocks are only derived when first requested, and kept in a
+ * bounded cache. For lazy forks the blocks themselves are not retained, only
+ * checkpoints of the hash chain and, for a bounded number of recently derived
+ * blocks and transactions, a small locator to find them by hash.
+ *
+ * The logs of every fork are indexed (see {@link LogIndex}) as blocks are
+ * added or derived, so that log queries only need to visit the blocks that
+ * actually contain matching logs. For lazy forks the index is kept per
+ * segment of the hash chain, and evicted (and derived again) along with it.
+ */
 @Slf4j
+@ThreadSafe
 public class ChainState {
 
-    private Map<ByteArrayWrapper, Block> blockHashMap = new HashMap<>();
+    /**
+     * Immutable view of the head of the chain, the fork and block number
+     * are always read (and replaced) together.
+     */
+    @Data
+    public static class Head {
+        // swaps between different block indices, used to switch between forks
+        private final String fork;
 
-    private Map<Long, Map<String, Block>> blockNumberMap = new HashMap<>();
+        // best public block number, visible to the user
+        private final long blockNumber;
 
-    private Map<String, Long> forkMax = new HashMap<>();
+        public Head withFork(@Nonnull final String fork) {
+            return new Head(fork, this.blockNumber);
+        }
+
+        public Head withBlockNumber(final long blockNumber) {
+            return new Head(this.fork, blockNumber);
+        }
+    }
 
-    private Map<ByteArrayWrapper, TransactionInfo> transactionInfoMap = new HashMap<>();
+    /**
+     * Append-only index of the blocks belonging to a single fork, a block
+     * number is assigned at most once and never replaced.
+     */
+    private static class ForkChain {
+        private final ConcurrentMap<Long, Block> blocks = new ConcurrentHashMap<>();
+        private final AtomicLong max = new AtomicLong(Long.MIN_VALUE);
+    }
 
-    // swaps between different block indices, used to switch between forks
-    private String currentFork = "";
+    /**
+     * Location of a block or transaction within a lazy fork, a transaction
+     * index of {@code -1} refers to the block itself.
+     */
+    @Data
+    private static class Locator {
+        private final LazyForkChain chain;
+        private final long number;
+        private final int index;
+    }
 
-    // best public block number, visible to the user
-    private long headBlockNumber = 0L;
+    public static final long DEFAULT_LAZY_CACHE_SIZE = 4096;
+
+    /**
+     * Maximum number of blocks of a lazy fork covered by a single log query,
+     * every block in range may have to be derived to answer it.
+     */
+    public static final long MAX_LAZY_LOG_RANGE = 1024;
+
+    // locators kept per block of the lazy cache, each block has a locator
+    // for itself and for each of its transactions
+    private static final long LOCATORS_PER_CACHED_BLOCK = 16;
+
+    private final ConcurrentMap<ByteArrayWrapper, Block> blockHashMap = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, ForkChain> forks = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<ByteArrayWrapper, TransactionInfo> transactionInfoMap = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, LazyForkChain> lazyForks = new ConcurrentHashMap<>();
+
+    private final Cache<ByteArrayWrapper, Locator> lazyLocators;
+
+    private final ConcurrentMap<String, LogIndex> logIndices = new ConcurrentHashMap<>();
+
+    private final Cache<LazyForkChain.Key, DerivedBlock> lazyCache;
+
+    private final AtomicReference<Head> head = new AtomicReference<>(new Head("", 0L));
+
+    private final AtomicBoolean initialized = new AtomicBoolean(false);
 
     // best block number of the chain
-    private long chainBlockNumber = 0L;
+    private volatile long chainBlockNumber = 0L;
 
-    // TODO: mock, there is a better locking strategy, implement later
+    public ChainState() {
+        this(DEFAULT_LAZY_CACHE_SIZE);
+    }
+
+    /**
+     * @param lazyCacheSize maximum number of blocks of lazy forks kept
+     *                      in memory at any time (across all lazy forks)
+     */
+    public ChainState(long lazyCacheSize) {
+        this(lazyCacheSize, lazyCacheSize * LOCATORS_PER_CACHED_BLOCK);
+    }
+
+    /**
+     * @param lazyCacheSize maximum number of blocks of lazy forks kept
+     *                      in memory at any time (across all lazy forks)
+     * @param lazyLocatorCacheSize maximum number of block and transaction
+     *                             hashes of lazy forks that can be looked up
+     */
+    public ChainState(long lazyCacheSize, long lazyLocatorCacheSize) {
+        this.lazyCache = CacheBuilder.newBuilder()
+                .maximumSize(lazyCacheSize)
+                .build();
+        this.lazyLocators = CacheBuilder.newBuilder()
+                .maximumSize(lazyLocatorCacheSize)
+                .build();
+    }
 
     /**
      * Adds a new block into the chain state, some simple verification checks
      * to ensure (within the context of the mock that things are consistent
      */
-    public synchronized void addBlock(@Nonnull final Block block, List<TransactionInfo> infos, String fork) {
+    public void addBlock(@Nonnull final Block block, List<TransactionInfo> infos, String fork) {
         checkBlock(block);
 
-        if (this.blockHashMap.isEmpty()) {
+        if (this.lazyForks.containsKey(fork))
+            throw new RuntimeException("cannot add blocks to lazy fork " + fork);
+
+        checkInfos(block, infos);
+
+        if (this.initialized.compareAndSet(false, true)) {
             chainBlockNumber = block.getNumber();
         }
-        this.blockHashMap.put(new ByteArrayWrapper(block.getHash()), block);
 
-        if (this.blockNumberMap.get(block.getNumber()) == null) {
-            Map<String, Block> levelForkBlockMap = new HashMap<>();
-            levelForkBlockMap.put(fork, block);
-            this.blockNumberMap.put(block.getNumber(), levelForkBlockMap);
-        } else {
-            var levelForkBlockMap = this.blockNumberMap.get(block.getNumber());
-            if (levelForkBlockMap.containsKey(fork))
-                throw new RuntimeException("attempted to add two blocks, same fork same number");
-            // otherwise, we know they're unique
-            levelForkBlockMap.put(fork, block);
+        ForkChain chain = this.forks.computeIfAbsent(fork, f -> new ForkChain());
+        if (chain.blocks.putIfAbsent(block.getNumber(), block) != null)
+            throw new RuntimeException("attempted to add two blocks, same fork same number");
+
+        // transactions are made visible before the block, so that anyone who
+        // can see the block can also look up its receipts
+        for (var info : infos) {
+            this.transactionInfoMap.put(wrap(info.getReceipt().getTransaction().getHash()), info);
         }
+        this.blockHashMap.put(wrap(block.getHash()), block);
+        logIndex(fork).add(block, infos);
 
         // add this as the max
-        if (this.forkMax.get(fork) == null || block.getNumber() > this.forkMax.get(fork)) {
-            this.forkMax.put(fork, block.getNumber());
+        chain.max.accumulateAndGet(block.getNumber(), Math::max);
+    }
+
+    /**
+     * Registers a fork whose blocks {@code [start, end]} are derived by
+     * {@code deriver} on first access rather than added up front.
+     */
+    public void addLazyFork(@Nonnull final String fork,
+                            final long start,
+                            final long end,
+                            @Nonnull final BlockDeriver deriver) {
+        if (this.forks.containsKey(fork))
+            throw new RuntimeException("fork " + fork + " already has blocks added");
+
+        final LazyForkChain chain = new LazyForkChain(fork, start, end, deriver, this.lazyCache, this::index);
+        if (this.lazyForks.putIfAbsent(fork, chain) != null)
+            throw new RuntimeException("attempted to add lazy fork " + fork + " twice");
+
+        if (this.initialized.compareAndSet(false, true)) {
+            chainBlockNumber = start;
         }
+    }
 
-        // TODO: should assert that infos match block transactions
-        for (var info : infos) {
-            this.transactionInfoMap.put(wrap(info.getReceipt().getTransaction().getHash()), info);
+    private void index(@Nonnull final LazyForkChain chain, @Nonnull final DerivedBlock derived) {
+        final long number = derived.getBlock().getNumber();
+        this.lazyLocators.put(wrap(derived.getBlock().getHash()), new Locator(chain, number, -1));
+
+        final List<TransactionInfo> infos = derived.getInfos();
+        for (int i = 0; i < infos.size(); i++) {
+            this.lazyLocators.put(
+                    wrap(infos.get(i).getReceipt().getTransaction().getHash()), new Locator(chain, number, i));
         }
     }
 
-    public synchronized void setCurrentFork(@Nonnull final String fork) {
-        this.currentFork = fork;
+    /**
+     * @return the current head snapshot, the fork and block number
+     * contained are guaranteed to be consistent with each other
+     */
+    public Head getHead() {
+        return this.head.get();
+    }
+
+    /**
+     * Atomically replaces the head, {@code update} may be called more than
+     * once if it races with another update, so it should be side-effect free.
+     *
+     * @return the head that was published
+     */
+    public Head updateHead(@Nonnull final UnaryOperator<Head> update) {
+        return this.head.updateAndGet(update);
+    }
+
+    /**
+     * Publishes {@code next} only if the head is still {@code expected}.
+     *
+     * @return {@code true} if the head was swapped
+     */
+    public boolean compareAndSetHead(@Nonnull final Head expected, @Nonnull final Head next) {
+        return this.head.compareAndSet(expected, next);
     }
 
-    public synchronized String getCurrentFork() {
-        return this.currentFork;
+    public void setCurrentFork(@Nonnull final String fork) {
+        updateHead(h -> h.withFork(fork));
     }
 
-    public synchronized Block getBlock(@Nonnull final byte[] blockHash) {
-        return this.blockHashMap.get(new ByteArrayWrapper(blockHash));
+    public String getCurrentFork() {
+        return this.head.get().getFork();
     }
 
-    public synchronized Block getBlock(long blockNumber) {
-        if (blockNumber > this.headBlockNumber)
+    /**
+     * For lazy forks, blocks can only be found by hash while their locator
+     * is kept, as for {@link #getTransactionInfo}.
+     */
+    public Block getBlock(@Nonnull final byte[] blockHash) {
+        final ByteArrayWrapper key = wrap(blockHash);
+        final Block block = this.blockHashMap.get(key);
+        if (block != null)
+            return block;
+
+        final Locator locator = this.lazyLocators.getIfPresent(key);
+        if (locator == null || locator.getIndex() != -1)
             return null;
-        return this.blockNumberMap.get(blockNumber).get(this.currentFork);
+        final DerivedBlock derived = locator.getChain().get(locator.getNumber());
+        return derived == null ? null : derived.getBlock();
     }
 
-    public synchronized long getCurrentForkMax() {
-        return this.forkMax.get(this.currentFork);
+    public Block getBlock(long blockNumber) {
+        return getBlock(this.head.get(), blockNumber);
     }
 
-    public synchronized long getHeadBlockNumber() {
-        return headBlockNumber;
+    /**
+     * Retrieves a block relative to a given head snapshot, use this when
+     * multiple reads need to be consistent with each other.
+     */
+    @Nullable
+    public Block getBlock(@Nonnull final Head head, long blockNumber) {
+        if (blockNumber > head.getBlockNumber())
+            return null;
+
+        LazyForkChain lazy = this.lazyForks.get(head.getFork());
+        if (lazy != null) {
+            final DerivedBlock derived = lazy.get(blockNumber);
+            return derived == null ? null : derived.getBlock();
+        }
+
+        ForkChain chain = this.forks.get(head.getFork());
+        return chain == null ? null : chain.blocks.get(blockNumber);
     }
 
-    public synchronized void setHeadBlockNumber(long headBlockNumber) {
-        this.headBlockNumber = headBlockNumber;
+    public long getCurrentForkMax() {
+        return getForkMax(this.head.get().getFork());
     }
 
-    public synchronized long getChainBlockNumber() {
+    /**
+     * @return the highest block number published for {@code fork}
+     */
+    public long getForkMax(@Nonnull final String fork) {
+        LazyForkChain lazy = this.lazyForks.get(fork);
+        if (lazy != null)
+            return lazy.getEnd();
+
+        ForkChain chain = this.forks.get(fork);
+        if (chain == null || chain.blocks.isEmpty())
+            throw new NoSuchElementException("no blocks published for fork " + fork);
+        return chain.max.get();
+    }
+
+    public long getHeadBlockNumber() {
+        return this.head.get().getBlockNumber();
+    }
+
+    public void setHeadBlockNumber(long headBlockNumber) {
+        updateHead(h -> h.withBlockNumber(headBlockNumber));
+    }
+
+    public long getChainBlockNumber() {
         return chainBlockNumber;
     }
 
-    public synchronized void setChainBlockNumber(long chainBlockNumber) {
+    public void setChainBlockNumber(long chainBlockNumber) {
         this.chainBlockNumber = chainBlockNumber;
     }
 
-    public synchronized TransactionInfo getTransactionInfo(byte[] transactionHash) {
-        return this.transactionInfoMap.get(wrap(transactionHash));
+    /**
+     * For lazy forks, transactions can only be found once the block they
+     * are contained in has been derived, and until their locator is evicted
+     * (hashes can't be mapped back to a block number).
+     */
+    public TransactionInfo getTransactionInfo(byte[] transactionHash) {
+        final ByteArrayWrapper key = wrap(transactionHash);
+        final TransactionInfo info = this.transactionInfoMap.get(key);
+        if (info != null)
+            return info;
+
+        final Locator locator = this.lazyLocators.getIfPresent(key);
+        if (locator == null || locator.getIndex() == -1)
+            return null;
+        final DerivedBlock derived = locator.getChain().get(locator.getNumber());
+        return derived == null ? null : derived.getInfos().get(locator.getIndex());
+    }
+
+    /**
+     * Finds the logs matching {@code query} in blocks {@code [from, to]} of the
+     * fork of {@code head}, blocks past the head are never visible.
+     *
+     * For lazy forks, every block up to {@code to} is derived so that it can
+     * be indexed, and the range may cover at most {@link #MAX_LAZY_LOG_RANGE}
+     * blocks.
+     *
+     * @return matching logs, ordered by block and position within the block
+     * @throws IllegalArgumentException if the range is too long for a lazy fork
+     */
+    public List<LogMatch> getLogs(@Nonnull final Head head,
+                                  final long from,
+                                  long to,
+                                  @Nonnull final LogQuery query) {
+        to = Math.min(to, head.getBlockNumber());
+        if (from > to)
+            return Collections.emptyList();
+
+        final LazyForkChain lazy = this.lazyForks.get(head.getFork());
+        final NavigableSet<Long> candidates;
+        if (lazy != null) {
+            if (to - from >= MAX_LAZY_LOG_RANGE)
+                throw new IllegalArgumentException("log queries on lazy fork " + head.getFork()
+                        + " cover at most " + MAX_LAZY_LOG_RANGE + " blocks");
+            candidates = lazy.logCandidates(from, to, query);
+        } else {
+            final LogIndex index = this.logIndices.get(head.getFork());
+            if (index == null)
+                return Collections.emptyList();
+            candidates = index.candidates(from, to, query);
+        }
+
+        final LogFilter filter = query.toLogFilter();
+        final List<LogMatch> matches = new ArrayList<>();
+        for (long number : candidates) {
+            final Block block;
+            final List<TransactionInfo> infos;
+            if (lazy != null) {
+                final DerivedBlock derived = lazy.get(number);
+                block = derived.getBlock();
+                infos = derived.getInfos();
+            } else {
+                block = getBlock(head, number);
+                if (block == null)
+                    continue;
+                infos = new ArrayList<>();
+                for (var tx : block.getTransactionsList()) {
+                    infos.add(this.transactionInfoMap.get(wrap(tx.getHash())));
+                }
+            }
+
+            int logIndex = 0;
+            for (TransactionInfo info : infos) {
+                for (LogInfo log : info.getReceipt().getLogInfoList()) {
+                    if (filter.matchesExactly(log))
+                        matches.add(new LogMatch(block, info, log, logIndex));
+                    logIndex++;
+                }
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * @return number of block and transaction hashes of lazy forks that can
+     * currently be looked up
+     */
+    long getLazyLocatorCount() {
+        return this.lazyLocators.size();
+    }
+
+    private LogIndex logIndex(@Nonnull final String fork) {
+        return this.logIndices.computeIfAbsent(fork, f -> new LogIndex());
     }
 
     protected void checkBlock(@Nonnull final Block block) {
@@ -118,7 +422,27 @@ public class ChainState {
         assert block.getReceiptsRoot() != null;
         assert block.getLogBloom() != null;
         assert block.getTransactionsList() != null;
-        assert block.getTimestamp() > blockHashMap.get(wrap(block.getParentHash())).getTimestamp();
+
+        // the first block of each fork has no parent in the state
+        final Block parent = blockHashMap.get(wrap(block.getParentHash()));
+        assert parent == null || block.getTimestamp() > parent.getTimestamp();
+    }
+
+    /**
+     * Ensures there is exactly one info per transaction of the block, in
+     * block order, before anything is published.
+     */
+    private static void checkInfos(@Nonnull final Block block, @Nonnull final List<TransactionInfo> infos) {
+        final List<Transaction> txs = block.getTransactionsList();
+        if (txs.size() != infos.size())
+            throw new RuntimeException("block " + block.getNumber() + " has " + txs.size()
+                    + " transactions but " + infos.size() + " infos");
+
+        for (int i = 0; i < txs.size(); i++) {
+            if (!Arrays.equals(txs.get(i).getHash(), infos.get(i).getReceipt().getTransaction().getHash()))
+                throw new RuntimeException("info " + i + " does not match transaction " + i
+                        + " of block " + block.getNumber());
+        }
     }
 
     private static ByteArrayWrapper wrap(@Nonnull final byte[] input) {
@@ -0,0 +1,21 @@
+package org.aion.mock.eth.state;
+
+import lombok.Data;
+import lombok.NonNull;
+import org.ethereum.core.Block;
+import org.ethereum.core.TransactionInfo;
+
+import java.util.List;
+
+/**
+ * A fully constructed block, along with the {@link TransactionInfo} for
+ * each of its transactions (in block order).
+ */
+@Data
+public class DerivedBlock {
+    @NonNull
+    private final Block block;
+
+    @NonNull
+    private final List<TransactionInfo> infos;
+}
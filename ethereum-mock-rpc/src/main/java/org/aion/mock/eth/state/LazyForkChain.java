@@ -0,0 +1,287 @@
+package org.aion.mock.eth.state;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import lombok.Data;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.Arrays;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.function.BiConsumer;
+
+/**
+ * A fork whose blocks are only derived when they are first requested, and
+ * are kept in a bounded cache (shared between forks) afterwards.
+ *
+ * Deriving block {@code n} requires the hash of block {@code n - 1}, so the
+ * hash chain is extended forwards on demand, and the first access to a high
+ * block number derives (but does not retain) every block before it.
+ *
+ * The chain is split into segments of {@link #SEGMENT_LENGTH} blocks, only
+ * the parent hash of the first block of each segment (a checkpoint) is
+ * retained for every segment. The hashes and the log index of the other
+ * blocks are kept for a bounded number of segments, and derived again from
+ * the checkpoint when needed after being evicted.
+ */
+@Slf4j
+@ThreadSafe
+class LazyForkChain {
+
+    private static final int HASH_LENGTH = 32;
+
+    static final int SEGMENT_LENGTH = 256;
+
+    private static final int SEGMENT_CACHE_SIZE = 64;
+
+    // checkpoints per chunk, the checkpoints are kept in fixed-size chunks
+    private static final int CHUNK_LENGTH = 1024;
+
+    @Data
+    static class Key {
+        private final String fork;
+        private final long number;
+    }
+
+    /**
+     * Hashes and logs of the blocks of a single segment, only the blocks up
+     * to {@code derivedUpTo} are filled in for the last segment.
+     */
+    @Data
+    private static class Segment {
+        private final long index;
+        private final byte[] hashes;
+        private final LogIndex logs;
+
+        private Segment(final long index) {
+            this.index = index;
+            this.hashes = new byte[SEGMENT_LENGTH * HASH_LENGTH];
+            this.logs = new LogIndex();
+        }
+    }
+
+    @Getter
+    private final String fork;
+
+    @Getter
+    private final long start;
+
+    @Getter
+    private final long end;
+
+    private final BlockDeriver deriver;
+
+    private final Cache<Key, DerivedBlock> cache;
+
+    // complete segments, by segment index
+    private final Cache<Long, Segment> segments = CacheBuilder.newBuilder()
+            .maximumSize(SEGMENT_CACHE_SIZE)
+            .build();
+
+    // called for every derived block, including re-derivations after eviction
+    private final BiConsumer<LazyForkChain, DerivedBlock> listener;
+
+    private final Object extendLock = new Object();
+
+    // parent hash of the first block of each segment (null for the first
+    // segment), chunks are only written above derivedUpTo, and the outer
+    // array is replaced when it needs to grow
+    @GuardedBy("extendLock")
+    private volatile byte[][] checkpoints = new byte[1][];
+
+    // segment being extended, always published before derivedUpTo moves
+    // into it, so a reader seeing an older segment knows it is complete
+    @GuardedBy("extendLock")
+    private volatile Segment tail;
+
+    private volatile long derivedUpTo;
+
+    LazyForkChain(@Nonnull final String fork,
+                  final long start,
+                  final long end,
+                  @Nonnull final BlockDeriver deriver,
+                  @Nonnull final Cache<Key, DerivedBlock> cache,
+                  @Nonnull final BiConsumer<LazyForkChain, DerivedBlock> listener) {
+        this.fork = fork;
+        this.start = start;
+        this.end = end;
+        this.deriver = deriver;
+        this.cache = cache;
+        this.listener = listener;
+        this.derivedUpTo = start - 1;
+        this.tail = new Segment(0);
+    }
+
+    @Nullable
+    DerivedBlock get(final long number) {
+        if (number < this.start || number > this.end)
+            return null;
+
+        try {
+            return this.cache.get(new Key(this.fork, number), () -> materialize(number));
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            throw new RuntimeException("failed to derive block " + number + " of fork " + this.fork, e.getCause());
+        }
+    }
+
+    /**
+     * Ensures every block up to {@code number} has been derived (and passed
+     * to the listener) at least once.
+     */
+    void deriveUpTo(final long number) {
+        final long last = Math.min(number, this.end);
+        if (last > this.derivedUpTo)
+            extendTo(last);
+    }
+
+    /**
+     * @return numbers of the blocks in {@code [from, to]} that may contain
+     * logs matching {@code query}, in ascending order, every block up to
+     * {@code to} is derived first
+     */
+    NavigableSet<Long> logCandidates(long from, long to, @Nonnull final LogQuery query) {
+        from = Math.max(from, this.start);
+        to = Math.min(to, this.end);
+        final NavigableSet<Long> ret = new TreeSet<>();
+        if (from > to)
+            return ret;
+
+        deriveUpTo(to);
+        for (long segment = segmentOf(from); segment <= segmentOf(to); segment++) {
+            ret.addAll(segment(segment).getLogs().candidates(from, to, query));
+        }
+        return ret;
+    }
+
+    private DerivedBlock materialize(final long number) {
+        final byte[] parentHash = number == this.start ? null : hashOf(number - 1);
+        final DerivedBlock derived = this.deriver.derive(number, parentHash);
+        record(number, derived);
+        return derived;
+    }
+
+    private byte[] hashOf(final long number) {
+        if (number > this.derivedUpTo)
+            extendTo(number);
+
+        final int offset = offsetOf(number);
+        return Arrays.copyOfRange(segment(segmentOf(number)).getHashes(), offset, offset + HASH_LENGTH);
+    }
+
+    /**
+     * @param index a segment containing blocks up to {@code derivedUpTo}
+     */
+    private Segment segment(final long index) {
+        // derivedUpTo is read before the tail, so the tail is at least as new
+        final Segment tail = this.tail;
+        if (tail.getIndex() == index)
+            return tail;
+
+        try {
+            return this.segments.get(index, () -> rederive(index));
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            throw new RuntimeException("failed to derive segment " + index + " of fork " + this.fork,
+                    e.getCause());
+        }
+    }
+
+    /**
+     * Derives every block of a complete segment again from its checkpoint,
+     * to recover the hashes and logs after the segment was evicted.
+     */
+    private Segment rederive(final long index) {
+        log.debug("deriving segment {} of fork {} again", index, this.fork);
+
+        final Segment segment = new Segment(index);
+        byte[] parentHash = checkpoint(index);
+        final long first = this.start + index * SEGMENT_LENGTH;
+        for (long number = first; number < first + SEGMENT_LENGTH; number++) {
+            // not cached, this may run while the block cache is loading one of these blocks
+            final DerivedBlock derived = this.deriver.derive(number, parentHash);
+            this.listener.accept(this, derived);
+            segment.getLogs().add(derived.getBlock(), derived.getInfos());
+            parentHash = derived.getBlock().getHash();
+            System.arraycopy(parentHash, 0, segment.getHashes(), offsetOf(number), HASH_LENGTH);
+        }
+        return segment;
+    }
+
+    private void extendTo(final long number) {
+        synchronized (this.extendLock) {
+            if (this.derivedUpTo < number)
+                log.debug("extending hash chain of fork {} from {} to {}", this.fork, this.derivedUpTo, number);
+
+            while (this.derivedUpTo < number) {
+                final long next = this.derivedUpTo + 1;
+                final byte[] parentHash = next == this.start ? null : tailHash(next - 1);
+                final DerivedBlock derived = this.deriver.derive(next, parentHash);
+                this.cache.put(new Key(this.fork, next), derived);
+                record(next, derived);
+            }
+        }
+    }
+
+    private void record(final long number, @Nonnull final DerivedBlock derived) {
+        synchronized (this.extendLock) {
+            if (number == this.derivedUpTo + 1) {
+                final long segment = segmentOf(number);
+                Segment tail = this.tail;
+                if (tail.getIndex() != segment) {
+                    // the previous segment is complete
+                    this.segments.put(tail.getIndex(), tail);
+                    setCheckpoint(segment, tailHash(number - 1));
+                    tail = new Segment(segment);
+                    this.tail = tail;
+                }
+                System.arraycopy(derived.getBlock().getHash(), 0, tail.getHashes(), offsetOf(number), HASH_LENGTH);
+                tail.getLogs().add(derived.getBlock(), derived.getInfos());
+                this.derivedUpTo = number;
+            }
+        }
+        this.listener.accept(this, derived);
+    }
+
+    @GuardedBy("extendLock")
+    private byte[] tailHash(final long number) {
+        final int offset = offsetOf(number);
+        return Arrays.copyOfRange(this.tail.getHashes(), offset, offset + HASH_LENGTH);
+    }
+
+    @Nullable
+    private byte[] checkpoint(final long segment) {
+        if (segment == 0)
+            return null;
+
+        final byte[] chunk = this.checkpoints[(int) (segment / CHUNK_LENGTH)];
+        final int offset = (int) (segment % CHUNK_LENGTH) * HASH_LENGTH;
+        return Arrays.copyOfRange(chunk, offset, offset + HASH_LENGTH);
+    }
+
+    @GuardedBy("extendLock")
+    private void setCheckpoint(final long segment, @Nonnull final byte[] hash) {
+        final int chunkIndex = (int) (segment / CHUNK_LENGTH);
+        byte[][] current = this.checkpoints;
+        if (chunkIndex >= current.length)
+            current = Arrays.copyOf(current, Math.max(current.length * 2, chunkIndex + 1));
+        if (current[chunkIndex] == null)
+            current[chunkIndex] = new byte[CHUNK_LENGTH * HASH_LENGTH];
+
+        System.arraycopy(hash, 0, current[chunkIndex], (int) (segment % CHUNK_LENGTH) * HASH_LENGTH, HASH_LENGTH);
+        this.checkpoints = current;
+    }
+
+    private long segmentOf(final long number) {
+        return (number - this.start) / SEGMENT_LENGTH;
+    }
+
+    private int offsetOf(final long number) {
+        return (int) ((number - this.start) % SEGMENT_LENGTH) * HASH_LENGTH;
+    }
+}
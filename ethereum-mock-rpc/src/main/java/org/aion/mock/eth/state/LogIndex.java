@@ -0,0 +1,132 @@
+package org.aion.mock.eth.state;
+
+import org.ethereum.core.Block;
+import org.ethereum.core.Bloom;
+import org.ethereum.core.TransactionInfo;
+import org.ethereum.db.ByteArrayWrapper;
+import org.ethereum.listener.LogFilter;
+import org.ethereum.vm.DataWord;
+import org.ethereum.vm.LogInfo;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Index of the logs of a single fork (or of a single segment of a lazy
+ * fork, see {@link LazyForkChain}), maps each log address and topic to
+ * the numbers of the blocks that contain it, and keeps the log bloom of
+ * every block that contains logs.
+ *
+ * Only block numbers are retained, queries use the index to find candidate
+ * blocks, reject most of them with the bloom, and only then look at the
+ * receipts. Adding the same block again is a no-op, so re-derived blocks
+ * of lazy forks can be passed in freely.
+ */
+@ThreadSafe
+class LogIndex {
+
+    private static class Postings {
+        private final ConcurrentSkipListSet<Long> blocks = new ConcurrentSkipListSet<>();
+        private final AtomicInteger size = new AtomicInteger();
+
+        private void add(long number) {
+            if (this.blocks.add(number))
+                this.size.incrementAndGet();
+        }
+    }
+
+    // address or topic -> blocks containing it, addresses (20 bytes) and
+    // topics (32 bytes) never collide
+    private final ConcurrentMap<ByteArrayWrapper, Postings> postings = new ConcurrentHashMap<>();
+
+    // blocks with at least one log
+    private final ConcurrentNavigableMap<Long, Bloom> blooms = new ConcurrentSkipListMap<>();
+
+    void add(@Nonnull final Block block, @Nonnull final List<TransactionInfo> infos) {
+        final long number = block.getNumber();
+        boolean hasLogs = false;
+        for (TransactionInfo info : infos) {
+            for (LogInfo log : info.getReceipt().getLogInfoList()) {
+                hasLogs = true;
+                postings(log.getAddress()).add(number);
+                for (DataWord topic : log.getTopics()) {
+                    postings(topic.getData()).add(number);
+                }
+            }
+        }
+
+        if (hasLogs)
+            this.blooms.putIfAbsent(number, new Bloom(block.getLogBloom()));
+    }
+
+    /**
+     * @return numbers of the blocks in {@code [from, to]} that may contain
+     * logs matching {@code query}, in ascending order
+     */
+    NavigableSet<Long> candidates(final long from, final long to, @Nonnull final LogQuery query) {
+        final NavigableSet<Long> ret = new TreeSet<>();
+        if (from > to)
+            return ret;
+
+        final LogFilter filter = query.toLogFilter();
+        for (Long number : driver(from, to, query)) {
+            final Bloom bloom = this.blooms.get(number);
+            if (bloom != null && filter.matchBloom(bloom))
+                ret.add(number);
+        }
+        return ret;
+    }
+
+    /**
+     * Picks the most selective criterion (the one whose values appear in the
+     * fewest blocks) and returns the blocks in range matching it.
+     */
+    private NavigableSet<Long> driver(final long from, final long to, @Nonnull final LogQuery query) {
+        final List<byte[][]> criteria = new ArrayList<>();
+        if (query.getAddresses().length > 0)
+            criteria.add(query.getAddresses());
+        for (byte[][] topic : query.getTopics()) {
+            if (topic != null && topic.length > 0)
+                criteria.add(topic);
+        }
+
+        if (criteria.isEmpty())
+            return this.blooms.subMap(from, true, to, true).navigableKeySet();
+
+        byte[][] best = null;
+        long bestSize = Long.MAX_VALUE;
+        for (byte[][] values : criteria) {
+            long size = 0;
+            for (byte[] value : values) {
+                final Postings p = this.postings.get(new ByteArrayWrapper(value));
+                size += p == null ? 0 : p.size.get();
+            }
+            if (size < bestSize) {
+                best = values;
+                bestSize = size;
+            }
+        }
+
+        final NavigableSet<Long> ret = new TreeSet<>();
+        for (byte[] value : best) {
+            final Postings p = this.postings.get(new ByteArrayWrapper(value));
+            if (p != null)
+                ret.addAll(p.blocks.subSet(from, true, to, true));
+        }
+        return ret;
+    }
+
+    private Postings postings(@Nonnull final byte[] key) {
+        return this.postings.computeIfAbsent(new ByteArrayWrapper(key), k -> new Postings());
+    }
+}
@@ -0,0 +1,21 @@
+package org.aion.mock.eth.state;
+
+import lombok.Data;
+import org.ethereum.core.Block;
+import org.ethereum.core.TransactionInfo;
+import org.ethereum.vm.LogInfo;
+
+/**
+ * A log matched by a {@link LogQuery}, along with where it was emitted.
+ */
+@Data
+public class LogMatch {
+    private final Block block;
+
+    private final TransactionInfo info;
+
+    private final LogInfo log;
+
+    // position of the log within the block (across all transactions)
+    private final int logIndex;
+}
@@ -0,0 +1,35 @@
+package org.aion.mock.eth.state;
+
+import lombok.Data;
+import org.ethereum.listener.LogFilter;
+
+import javax.annotation.Nonnull;
+import java.util.List;
+
+/**
+ * Address and topic criteria of a log query, same semantics as the
+ * {@code address} and {@code topics} fields of {@code eth_getLogs}.
+ *
+ * An empty {@code addresses} matches any address, {@code topics} holds one
+ * entry per position, where {@code null} (or an empty array) matches any
+ * topic, and multiple values at a position match any of them.
+ */
+@Data
+public class LogQuery {
+    @Nonnull
+    private final byte[][] addresses;
+
+    @Nonnull
+    private final List<byte[][]> topics;
+
+    /**
+     * @return a new filter for the same criteria, filters are not thread-safe
+     */
+    public LogFilter toLogFilter() {
+        final LogFilter filter = new LogFilter().withContractAddress(this.addresses);
+        for (byte[][] topic : this.topics) {
+            filter.withTopic(topic);
+        }
+        return filter;
+    }
+}
@@ -0,0 +1,141 @@
+package org.aion.mock.rpc;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.googlecode.jsonrpc4j.ErrorResolver;
+import com.googlecode.jsonrpc4j.JsonRpcServer;
+
+import javax.annotation.Nonnull;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * {@link JsonRpcServer} that dispatches the calls of a batch request in
+ * parallel, rather than one after another.
+ *
+ * Calls are run on a shared, bounded pool. Once the pool and its queue
+ * are saturated, the request thread runs the call itself, so load from
+ * concurrent batches is throttled rather than queued without bound.
+ * Responses are written in the order of the calls in the batch.
+ */
+public class BatchJsonRpcServer extends JsonRpcServer {
+
+    private final ObjectMapper mapper;
+
+    private final int maxBatchSize;
+
+    private final ExecutorService executor;
+
+    /**
+     * @param maxBatchSize batches with more calls are rejected as invalid
+     * @param concurrency maximum number of calls (across all batches)
+     *                    executed in parallel
+     */
+    public BatchJsonRpcServer(@Nonnull final ObjectMapper mapper,
+                              @Nonnull final Object handler,
+                              @Nonnull final Class<?> remoteInterface,
+                              final int maxBatchSize,
+                              final int concurrency) {
+        super(mapper, handler, remoteInterface);
+        if (maxBatchSize < 1 || concurrency < 1)
+            throw new IllegalArgumentException("maxBatchSize and concurrency must be positive");
+
+        this.mapper = mapper;
+        this.maxBatchSize = maxBatchSize;
+        this.executor = new ThreadPoolExecutor(concurrency, concurrency,
+                0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(maxBatchSize),
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("rpc-batch-%d").build(),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    @Override
+    protected ErrorResolver.JsonError handleJsonNodeRequest(JsonNode node, OutputStream output) throws IOException {
+        if (!node.isArray())
+            return super.handleJsonNodeRequest(node, output);
+
+        if (node.size() == 0 || node.size() > this.maxBatchSize) {
+            writeInvalidRequest(output, "batch must contain between 1 and "
+                    + this.maxBatchSize + " calls, got " + node.size());
+            return ErrorResolver.JsonError.INVALID_REQUEST;
+        }
+
+        final List<Future<BatchResponse>> responses = new ArrayList<>(node.size());
+        for (final JsonNode call : node) {
+            responses.add(this.executor.submit(() -> {
+                final ByteArrayOutputStream out = new ByteArrayOutputStream();
+                // nested batches are invalid, and would wait on the pool from within the pool
+                if (call.isArray()) {
+                    writeInvalidRequest(out, "nested batch");
+                    return new BatchResponse(out, ErrorResolver.JsonError.INVALID_REQUEST);
+                }
+                return new BatchResponse(out, super.handleJsonNodeRequest(call, out));
+            }));
+        }
+
+        ErrorResolver.JsonError result = ErrorResolver.JsonError.OK;
+        boolean first = true;
+        output.write('[');
+        for (Future<BatchResponse> future : responses) {
+            final BatchResponse response = await(future);
+            if (response.error != null && response.error.code != ErrorResolver.JsonError.OK.code)
+                result = ErrorResolver.JsonError.BULK_ERROR;
+
+            // notifications have no response
+            if (response.out.size() == 0)
+                continue;
+            if (!first)
+                output.write(',');
+            response.out.writeTo(output);
+            first = false;
+        }
+        output.write(']');
+        return result;
+    }
+
+    public void shutdown() {
+        this.executor.shutdownNow();
+    }
+
+    private void writeInvalidRequest(OutputStream output, String message) throws IOException {
+        final ObjectNode error = this.mapper.createObjectNode();
+        error.put(ERROR_CODE, ErrorResolver.JsonError.INVALID_REQUEST.code);
+        error.put(ERROR_MESSAGE, message);
+
+        final ObjectNode response = this.mapper.createObjectNode();
+        response.put(JSONRPC, VERSION);
+        response.putNull(ID);
+        response.set(ERROR, error);
+        output.write(this.mapper.writeValueAsBytes(response));
+    }
+
+    private static BatchResponse await(Future<BatchResponse> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for batch call");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            throw new IOException("batch call failed", e.getCause());
+        }
+    }
+
+    private static class BatchResponse {
+        private final ByteArrayOutputStream out;
+        private final ErrorResolver.JsonError error;
+
+        private BatchResponse(ByteArrayOutputStream out, ErrorResolver.JsonError error) {
+            this.out = out;
+            this.error = error;
+        }
+    }
+}
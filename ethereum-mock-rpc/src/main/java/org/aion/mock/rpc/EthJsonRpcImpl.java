@@ -18,18 +18,35 @@
 
 package org.aion.mock.rpc;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.RawValue;
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
 import com.googlecode.jsonrpc4j.spring.AutoJsonRpcServiceImpl;
+import lombok.Data;
 import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
 import org.aion.mock.eth.ChainFacade;
+import org.aion.mock.eth.state.ChainState;
+import org.aion.mock.eth.state.LogMatch;
+import org.aion.mock.eth.state.LogQuery;
 import org.ethereum.core.*;
 import org.ethereum.crypto.ECKey;
 import org.ethereum.crypto.HashUtil;
 import org.ethereum.db.BlockStore;
+import org.ethereum.db.ByteArrayWrapper;
 import org.ethereum.solidity.compiler.CompilationResult;
 import org.ethereum.util.ByteUtil;
+import org.ethereum.vm.DataWord;
 
+import javax.annotation.concurrent.GuardedBy;
 import java.lang.reflect.Modifier;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 import static org.aion.mock.rpc.TypeConverter.*;
@@ -39,15 +56,77 @@ import static org.ethereum.util.ByteUtil.bigIntegerToBytes;
 /**
  * @author Anton Nashatyrev
  */
+@Slf4j
 @AutoJsonRpcServiceImpl
 public class EthJsonRpcImpl implements JsonRpc {
 
     private static final String BLOCK_LATEST = "latest";
 
+    public static final long DEFAULT_BLOCK_CACHE_BYTES = 64L * 1024 * 1024;
+
+    public static final long DEFAULT_FILTER_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    // blocks covered by a single filter poll, so that polls on lazy forks
+    // stay within the range a log query may cover
+    private static final long POLL_BLOCKS = ChainState.MAX_LAZY_LOG_RANGE;
+
+    @Data
+    private static class BlockResultKey {
+        private final ByteArrayWrapper blockHash;
+        private final boolean fullTx;
+    }
+
     private final ChainFacade chain;
 
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    // blocks never change once published, so the serialized response for a
+    // given block hash can be reused for as long as it stays in the cache
+    private final Cache<BlockResultKey, RawJson> blockResultCache;
+
+    private final AtomicLong filterCounter = new AtomicLong(0);
+
+    // clients that stop polling never uninstall their filters, so the filters
+    // not polled for a while are dropped, as Ethereum nodes do
+    private final Cache<Long, InstalledLogFilter> installedFilters;
+
     public EthJsonRpcImpl(ChainFacade chain) {
+        this(chain, DEFAULT_BLOCK_CACHE_BYTES);
+    }
+
+    /**
+     * @param blockCacheBytes maximum total size (in bytes of serialized JSON)
+     *                        of the cached block responses
+     */
+    public EthJsonRpcImpl(ChainFacade chain, long blockCacheBytes) {
+        this(chain, blockCacheBytes, DEFAULT_FILTER_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * @param blockCacheBytes maximum total size (in bytes of serialized JSON)
+     *                        of the cached block responses
+     * @param filterTimeoutMillis time after which a filter that isn't polled
+     *                            is uninstalled
+     */
+    public EthJsonRpcImpl(ChainFacade chain, long blockCacheBytes, long filterTimeoutMillis) {
+        this(chain, blockCacheBytes, filterTimeoutMillis, Ticker.systemTicker());
+    }
+
+    EthJsonRpcImpl(ChainFacade chain, long blockCacheBytes, long filterTimeoutMillis, Ticker ticker) {
         this.chain = chain;
+        this.blockResultCache = CacheBuilder.newBuilder()
+                .maximumWeight(blockCacheBytes)
+                .weigher((BlockResultKey k, RawJson v) -> v.size())
+                .recordStats()
+                .build();
+        this.installedFilters = CacheBuilder.newBuilder()
+                .expireAfterAccess(filterTimeoutMillis, TimeUnit.MILLISECONDS)
+                .ticker(ticker)
+                .build();
+    }
+
+    public CacheStats getBlockCacheStats() {
+        return this.blockResultCache.stats();
     }
 
     /**
@@ -285,14 +364,29 @@ public class EthJsonRpcImpl implements JsonRpc {
         return br;
     }
 
-    public BlockResult eth_getBlockByHash(String blockHash, Boolean fullTransactionObjects) throws Exception {
+    /**
+     * Same as {@link #getBlockResult(Block, boolean)}, but returns the response
+     * already serialized, from the cache if the block was requested before.
+     */
+    protected RawValue getCachedBlockResult(Block block, boolean fullTx) throws ExecutionException {
+        if (block == null)
+            return null;
+        final BlockResultKey key = new BlockResultKey(new ByteArrayWrapper(block.getHash()), fullTx);
+        return this.blockResultCache.get(key, () -> {
+            final RawJson json = new RawJson(this.mapper.writeValueAsBytes(getBlockResult(block, fullTx)));
+            log.debug("block response cache miss, {}", this.blockResultCache.stats());
+            return json;
+        }).toRawValue();
+    }
+
+    public RawValue eth_getBlockByHash(String blockHash, Boolean fullTransactionObjects) throws Exception {
         final Block b = getBlockByJSonHash(blockHash);
-        return getBlockResult(b, fullTransactionObjects);
+        return getCachedBlockResult(b, fullTransactionObjects);
     }
 
-    public BlockResult eth_getBlockByNumber(String bnOrId, Boolean fullTransactionObjects) throws Exception {
+    public RawValue eth_getBlockByNumber(String bnOrId, Boolean fullTransactionObjects) throws Exception {
         final Block b = getByJsonBlockId(bnOrId);
-        return (b == null ? null : getBlockResult(b, fullTransactionObjects));
+        return getCachedBlockResult(b, fullTransactionObjects);
     }
 
     public TransactionResultDTO eth_getTransactionByHash(String transactionHash) throws Exception {
@@ -480,9 +574,131 @@ public class EthJsonRpcImpl implements JsonRpc {
         public void updatePendingTx(TransactionReceipt txReceipt) {}
     }
 
+    /**
+     * Log filter installed by {@code eth_newFilter}. Polling returns the logs
+     * of the blocks added since the previous poll, if the last polled block
+     * is no longer part of the chain (the fork switched) the filter starts
+     * over from its first block.
+     *
+     * A poll covers a bounded number of blocks, the logs of the blocks past
+     * these are returned by the following polls.
+     */
+    class InstalledLogFilter {
+        private final FilterRequest request;
+        private final LogQuery query;
+        private final long fromBlock;
+
+        @GuardedBy("this")
+        private long lastBlock;
+
+        @GuardedBy("this")
+        private byte[] lastBlockHash;
+
+        InstalledLogFilter(FilterRequest request) {
+            this.request = request;
+            this.query = toLogQuery(request);
+
+            final Block best = chain.getBestBlock();
+            this.fromBlock = toBlockNumber(request.fromBlock, best.getNumber());
+            this.lastBlock = Math.max(this.fromBlock - 1, best.getNumber());
+            this.lastBlockHash = this.lastBlock == best.getNumber() ? best.getHash() : null;
+        }
+
+        synchronized Object[] poll() {
+            final long latest = chain.getBlockNumber();
+            if (this.lastBlockHash != null) {
+                final Block last = chain.getBlockByNumber(this.lastBlock);
+                if (last == null || !Arrays.equals(last.getHash(), this.lastBlockHash)) {
+                    this.lastBlock = this.fromBlock - 1;
+                    this.lastBlockHash = null;
+                }
+            }
+
+            final long to = Math.min(Math.min(latest, toBlockNumber(this.request.toBlock, latest)),
+                    this.lastBlock + POLL_BLOCKS);
+            if (this.lastBlock >= to)
+                return new Object[0];
+
+            final Object[] ret = toLogElements(chain.getLogs(this.lastBlock + 1, to, this.query));
+            final Block last = chain.getBlockByNumber(to);
+            if (last != null) {
+                this.lastBlock = to;
+                this.lastBlockHash = last.getHash();
+            }
+            return ret;
+        }
+
+        Object[] getAll() {
+            final long latest = chain.getBlockNumber();
+            final long to = toBlockNumber(this.request.toBlock, latest);
+            return toLogElements(chain.getLogs(this.fromBlock, to, this.query));
+        }
+    }
+
+    private long toBlockNumber(String id, long latest) {
+        if (id == null || "latest".equalsIgnoreCase(id) || "pending".equalsIgnoreCase(id)) {
+            return latest;
+        } else if ("earliest".equalsIgnoreCase(id)) {
+            return 0;
+        } else {
+            return hexToBigInteger(id).longValue();
+        }
+    }
+
+    private static byte[][] toByteArrays(Object value, boolean topic) {
+        if (value == null)
+            return new byte[0][];
+
+        final Collection<?> values = value instanceof Collection ?
+                (Collection<?>) value : Collections.singletonList(value);
+        final List<byte[]> ret = new ArrayList<>();
+        for (Object v : values) {
+            if (v == null)
+                continue;
+            if (!(v instanceof String))
+                throw new IllegalArgumentException("expected hex string, got " + v);
+            final byte[] bytes = hexToByteArray((String) v);
+            // topics are always compared as 32 byte words
+            ret.add(topic ? new DataWord(bytes).getData() : bytes);
+        }
+        return ret.toArray(new byte[0][]);
+    }
+
+    private static LogQuery toLogQuery(FilterRequest fr) {
+        final List<byte[][]> topics = new ArrayList<>();
+        if (fr.topics != null) {
+            for (Object topic : fr.topics) {
+                topics.add(toByteArrays(topic, true));
+            }
+        }
+        return new LogQuery(toByteArrays(fr.address, false), topics);
+    }
+
+    private static Object[] toLogElements(List<LogMatch> matches) {
+        final Object[] ret = new Object[matches.size()];
+        for (int i = 0; i < ret.length; i++) {
+            final LogMatch m = matches.get(i);
+            ret[i] = new LogFilterElement(m.getLog(), m.getBlock(), m.getInfo().getIndex(),
+                    m.getInfo().getReceipt().getTransaction(), m.getLogIndex());
+        }
+        return ret;
+    }
+
+    private InstalledLogFilter getInstalledFilter(String id) {
+        final InstalledLogFilter filter = this.installedFilters.getIfPresent(hexToBigInteger(id).longValue());
+        if (filter == null)
+            throw new IllegalArgumentException("filter not found: " + id);
+        return filter;
+    }
+
     @Override
     public String eth_newFilter(FilterRequest fr) throws Exception {
-        throw new UnsupportedOperationException();
+        if (fr.blockHash != null)
+            throw new IllegalArgumentException("blockHash is not supported for filters");
+
+        final long id = this.filterCounter.incrementAndGet();
+        this.installedFilters.put(id, new InstalledLogFilter(fr));
+        return toJsonHex(id);
     }
 
     @Override
@@ -497,25 +713,39 @@ public class EthJsonRpcImpl implements JsonRpc {
 
     @Override
     public boolean eth_uninstallFilter(String id) {
-        throw new UnsupportedOperationException();
+        if (id == null)
+            return false;
+        return this.installedFilters.asMap().remove(hexToBigInteger(id).longValue()) != null;
     }
 
     @Override
     public Object[] eth_getFilterChanges(String id) {
-        throw new UnsupportedOperationException();
-
+        return getInstalledFilter(id).poll();
     }
 
     @Override
     public Object[] eth_getFilterLogs(String id) {
-        throw new UnsupportedOperationException();
-
+        return getInstalledFilter(id).getAll();
     }
 
     @Override
-    public Object[] eth_getLogs(FilterRequest filterRequest) throws Exception {
-        throw new UnsupportedOperationException();
+    public Object[] eth_getLogs(FilterRequest fr) throws Exception {
+        final LogQuery query = toLogQuery(fr);
+
+        // EIP-234, only logs of that exact block (if it is on the current chain)
+        if (fr.blockHash != null) {
+            final Block block = getBlockByJSonHash(fr.blockHash);
+            if (block == null)
+                return new Object[0];
+            final Block current = this.chain.getBlockByNumber(block.getNumber());
+            if (current == null || !Arrays.equals(current.getHash(), block.getHash()))
+                return new Object[0];
+            return toLogElements(this.chain.getLogs(block.getNumber(), block.getNumber(), query));
+        }
 
+        final long latest = this.chain.getBlockNumber();
+        return toLogElements(this.chain.getLogs(
+                toBlockNumber(fr.fromBlock, latest), toBlockNumber(fr.toBlock, latest), query));
     }
 
     @Override
@@ -1,7 +1,7 @@
 package org.aion.mock.rpc;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.googlecode.jsonrpc4j.JsonRpcServer;
+import org.aion.mock.config.ServerConfig;
 import org.aion.mock.eth.ChainFacade;
 
 import javax.servlet.ServletConfig;
@@ -14,11 +14,17 @@ import java.io.IOException;
 public class HttpJsonRpcServlet extends HttpServlet {
 
     private ChainFacade chainFacade;
+    private ServerConfig config;
     private EthJsonRpcImpl ethJsonRpcImpl;
-    private JsonRpcServer jsonRpcServer;
+    private BatchJsonRpcServer jsonRpcServer;
 
     public HttpJsonRpcServlet(ChainFacade chainFacade) {
+        this(chainFacade, new ServerConfig());
+    }
+
+    public HttpJsonRpcServlet(ChainFacade chainFacade, ServerConfig config) {
         this.chainFacade = chainFacade;
+        this.config = config;
     }
 
     @Override
@@ -28,7 +34,15 @@ public class HttpJsonRpcServlet extends HttpServlet {
 
     @Override
     public void init(ServletConfig config) {
-        this.ethJsonRpcImpl = new EthJsonRpcImpl(this.chainFacade);
-        this.jsonRpcServer = new JsonRpcServer(new ObjectMapper(), this.ethJsonRpcImpl, EthJsonRpcImpl.class);
+        this.ethJsonRpcImpl = new EthJsonRpcImpl(this.chainFacade, this.config.getBlockCacheSize(),
+                this.config.getFilterTimeout());
+        this.jsonRpcServer = new BatchJsonRpcServer(new ObjectMapper(), this.ethJsonRpcImpl, EthJsonRpcImpl.class,
+                this.config.getMaxBatchSize(), this.config.getBatchConcurrency());
+    }
+
+    @Override
+    public void destroy() {
+        if (this.jsonRpcServer != null)
+            this.jsonRpcServer.shutdown();
     }
 }
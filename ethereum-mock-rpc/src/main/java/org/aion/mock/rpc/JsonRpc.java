@@ -18,6 +18,7 @@
 
 package org.aion.mock.rpc;
 
+import com.fasterxml.jackson.databind.util.RawValue;
 import com.googlecode.jsonrpc4j.JsonRpcService;
 import lombok.AllArgsConstructor;
 import lombok.NoArgsConstructor;
@@ -155,7 +156,7 @@ public interface JsonRpc {
             blockHash = b == null ? null : toJsonHex(b.getHash());
             transactionIndex = b == null ? null : toJsonHex(txIndex);
             transactionHash = toJsonHex(tx.getHash());
-            address = toJsonHex(tx.getReceiveAddress());
+            address = toJsonHex(logInfo.getAddress());
             data = toJsonHex(logInfo.getData());
             topics = new String[logInfo.getTopics().size()];
             for (int i = 0; i < topics.length; i++) {
@@ -208,8 +209,9 @@ public interface JsonRpc {
     String eth_sendRawTransaction(String rawData) throws Exception;
     String eth_call(CallArguments args, String bnOrId) throws Exception;
     String eth_estimateGas(CallArguments args) throws Exception;
-    BlockResult eth_getBlockByHash(String blockHash, Boolean fullTransactionObjects) throws Exception;
-    BlockResult eth_getBlockByNumber(String bnOrId, Boolean fullTransactionObjects) throws Exception;
+    // serialized BlockResult
+    RawValue eth_getBlockByHash(String blockHash, Boolean fullTransactionObjects) throws Exception;
+    RawValue eth_getBlockByNumber(String bnOrId, Boolean fullTransactionObjects) throws Exception;
     TransactionResultDTO eth_getTransactionByHash(String transactionHash) throws Exception;
     TransactionResultDTO eth_getTransactionByBlockHashAndIndex(String blockHash, String index) throws Exception;
     TransactionResultDTO eth_getTransactionByBlockNumberAndIndex(String bnOrId, String index) throws Exception;
@@ -0,0 +1,113 @@
+package org.aion.mock.rpc;
+
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.util.RawValue;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * An already serialized JSON value, held only as UTF-8 bytes.
+ *
+ * When returned (wrapped in a {@link RawValue}, see {@link #toRawValue()})
+ * from an RPC method, Jackson copies the bytes as-is into the response
+ * instead of serializing the value again. Only the unquoted UTF-8 forms are
+ * used for raw values, the remaining forms decode the bytes on demand.
+ */
+final class RawJson implements SerializableString {
+
+    private final byte[] utf8;
+
+    RawJson(@Nonnull final byte[] utf8) {
+        this.utf8 = utf8;
+    }
+
+    RawValue toRawValue() {
+        return new RawValue(this);
+    }
+
+    int size() {
+        return this.utf8.length;
+    }
+
+    @Override
+    public String getValue() {
+        return new String(this.utf8, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public int charLength() {
+        return getValue().length();
+    }
+
+    @Override
+    public char[] asQuotedChars() {
+        return new SerializedString(getValue()).asQuotedChars();
+    }
+
+    @Override
+    public byte[] asUnquotedUTF8() {
+        return this.utf8;
+    }
+
+    @Override
+    public byte[] asQuotedUTF8() {
+        return new SerializedString(getValue()).asQuotedUTF8();
+    }
+
+    @Override
+    public int appendQuotedUTF8(byte[] buffer, int offset) {
+        return new SerializedString(getValue()).appendQuotedUTF8(buffer, offset);
+    }
+
+    @Override
+    public int appendQuoted(char[] buffer, int offset) {
+        return new SerializedString(getValue()).appendQuoted(buffer, offset);
+    }
+
+    @Override
+    public int appendUnquotedUTF8(byte[] buffer, int offset) {
+        if (offset + this.utf8.length > buffer.length)
+            return -1;
+        System.arraycopy(this.utf8, 0, buffer, offset, this.utf8.length);
+        return this.utf8.length;
+    }
+
+    @Override
+    public int appendUnquoted(char[] buffer, int offset) {
+        return new SerializedString(getValue()).appendUnquoted(buffer, offset);
+    }
+
+    @Override
+    public int writeQuotedUTF8(OutputStream out) throws IOException {
+        return new SerializedString(getValue()).writeQuotedUTF8(out);
+    }
+
+    @Override
+    public int writeUnquotedUTF8(OutputStream out) throws IOException {
+        out.write(this.utf8);
+        return this.utf8.length;
+    }
+
+    @Override
+    public int putQuotedUTF8(ByteBuffer buffer) throws IOException {
+        return new SerializedString(getValue()).putQuotedUTF8(buffer);
+    }
+
+    @Override
+    public int putUnquotedUTF8(ByteBuffer buffer) throws IOException {
+        if (this.utf8.length > buffer.remaining())
+            return -1;
+        buffer.put(this.utf8);
+        return this.utf8.length;
+    }
+
+    @Override
+    public String toString() {
+        return getValue();
+    }
+}
@@ -0,0 +1,92 @@
+package org.aion.util;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Splittable deterministic random source, based on SplitMix64.
+ *
+ * Generators form a tree: the root is created from a seed, and a child is
+ * derived from its parent's seed and a key (fork, block number, transaction
+ * index). Deriving a child never consumes from the parent, so the sequence
+ * drawn for e.g. a transaction depends only on (seed, fork, block number,
+ * transaction index), not on which thread builds it or what was drawn
+ * before it.
+ *
+ * Instances are not thread-safe (they hold a single {@code long} of state
+ * and use no locks), each unit of work derives its own.
+ */
+public class DeterministicRandom {
+
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    // identifies this node of the tree, children are derived from it
+    private final long seed;
+
+    // position in this node's own sequence
+    private long state;
+
+    private DeterministicRandom(long seed) {
+        this.seed = seed;
+        this.state = seed;
+    }
+
+    public static DeterministicRandom fromSeed(final long seed) {
+        return new DeterministicRandom(mix(seed));
+    }
+
+    public static DeterministicRandom forBlock(final long seed,
+                                               @Nonnull final String fork,
+                                               final long blockNumber) {
+        return fromSeed(seed)
+                .split(fork.hashCode())
+                .split(blockNumber);
+    }
+
+    /**
+     * @return generator for the transaction at {@code index} of this block
+     */
+    public DeterministicRandom forTransaction(final int index) {
+        return split(index);
+    }
+
+    /**
+     * Derives an independent child generator, does not advance this one.
+     */
+    public DeterministicRandom split(final long key) {
+        return new DeterministicRandom(mix(this.seed ^ mix(key + GOLDEN_GAMMA)));
+    }
+
+    public byte[] getEthereumAddress() {
+        return nextBytes(20);
+    }
+
+    public byte[] getAionAddress() {
+        return nextBytes(32);
+    }
+
+    public byte[] getBytes32() {
+        return nextBytes(32);
+    }
+
+    public long nextLong() {
+        return mix(this.state += GOLDEN_GAMMA);
+    }
+
+    private byte[] nextBytes(int length) {
+        byte[] b = new byte[length];
+        for (int i = 0; i < length; ) {
+            long r = nextLong();
+            for (int n = Math.min(length - i, Long.BYTES); n-- > 0; r >>>= Byte.SIZE) {
+                b[i++] = (byte) r;
+            }
+        }
+        return b;
+    }
+
+    // SplitMix64 finalizer, spreads nearby inputs (consecutive block numbers) apart
+    static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -1,38 +1,48 @@
 package org.aion.util;
 
-import java.util.Random;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Process-wide deterministic random source, for values that are not tied
+ * to a particular block. Lock-free, but the values a caller receives depend
+ * on the order of calls, so anything built in parallel should derive its own
+ * {@link DeterministicRandom} instead.
+ */
 public class DeterministicRandomGenerator {
 
-    private static final Random random = new Random(42L);
-    private static final Lock lock = new ReentrantLock();
+    public static final long DEFAULT_SEED = 42L;
+
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    private static final AtomicLong state = new AtomicLong(DeterministicRandom.mix(DEFAULT_SEED));
+
+    /**
+     * Resets the sequence, should be called before anything is drawn.
+     */
+    public static void setSeed(long seed) {
+        state.set(DeterministicRandom.mix(seed));
+    }
 
-    // TODO: this can be prettier
     public static byte[] getEthereumAddress() {
-        lock.lock();
-        try {
-            byte[] b = new byte[20];
-            random.nextBytes(b);
-            return b;
-        } finally {
-            lock.unlock();
-        }
+        return nextBytes(20);
     }
 
     public static byte[] getAionAddress() {
-        lock.lock();
-        try {
-            byte[] b = new byte[32];
-            random.nextBytes(b);
-            return b;
-        } finally {
-            lock.unlock();
-        }
+        return nextBytes(32);
     }
 
     public static byte[] getBytes32() {
         return getAionAddress();
     }
+
+    private static byte[] nextBytes(int length) {
+        byte[] b = new byte[length];
+        for (int i = 0; i < length; ) {
+            long r = DeterministicRandom.mix(state.addAndGet(GOLDEN_GAMMA));
+            for (int n = Math.min(length - i, Long.BYTES); n-- > 0; r >>>= Byte.SIZE) {
+                b[i++] = (byte) r;
+            }
+        }
+        return b;
+    }
 }
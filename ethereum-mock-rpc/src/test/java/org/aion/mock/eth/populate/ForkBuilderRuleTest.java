@@ -1,13 +1,124 @@
 package org.aion.mock.eth.populate;
 
+import org.aion.mock.eth.core.BlockConstructor;
+import org.aion.mock.eth.populate.base.ForkEvent;
+import org.aion.mock.eth.populate.pipeline.RandomTransfer;
+import org.aion.mock.eth.populate.pipeline.UserTransfer;
+import org.aion.mock.eth.populate.rules.ForkBuilderRule;
+import org.aion.mock.eth.state.ChainState;
+import org.aion.util.DeterministicRandom;
+import org.ethereum.core.Block;
+import org.ethereum.core.Transaction;
+import org.ethereum.core.TransactionReceipt;
 import org.ethereum.crypto.HashUtil;
 import org.junit.Test;
 
+import java.math.BigInteger;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
 public class ForkBuilderRuleTest {
 
     private static final byte[] dummyContractAddress = HashUtil.sha3("hello".getBytes());
 
+    private static final int LENGTH = 64;
+
+    private static Map<String, ForkEvent> forkEvents() {
+        Map<String, ForkEvent> events = new HashMap<>();
+        events.put("main", ForkEvent.builder()
+                .forkName("main")
+                .forkStartBlockNumber(0)
+                .forkEndBlockNumber(LENGTH)
+                .forkTransferEvent(new ExecutionUtilities.TransferEvent("t0",
+                        new byte[20], new byte[32], BigInteger.TEN, 5))
+                .build());
+        events.put("fork1", ForkEvent.builder()
+                .forkName("fork1")
+                .forkStartBlockNumber(0)
+                .forkEndBlockNumber(LENGTH)
+                .forkTriggerNumber(10)
+                .forkPostTriggerNumber(5)
+                .build());
+        return events;
+    }
+
+    private static ChainState build(long seed) {
+        ChainState state = new ChainState();
+        Map<String, ForkEvent> events = forkEvents();
+        ForkBuilderRule rule = new ForkBuilderRule(state, events, true, seed);
+        rule.attach(new UserTransfer(dummyContractAddress, events));
+        rule.attach(new RandomTransfer(4, dummyContractAddress));
+        rule.apply(state);
+        state.setHeadBlockNumber(LENGTH);
+        return state;
+    }
+
     @Test
     public void testBuilder() {
+        ChainState state = build(42L);
+
+        Block parent = state.getBlock(0);
+        for (long i = 1; i < LENGTH; i++) {
+            Block block = state.getBlock(i);
+            assertArrayEquals(parent.getHash(), block.getParentHash());
+            assertEquals(4, block.getTransactionsList().size());
+
+            // incrementally built roots match a full rebuild
+            List<TransactionReceipt> receipts = new ArrayList<>();
+            for (Transaction tx : block.getTransactionsList()) {
+                receipts.add(state.getTransactionInfo(tx.getHash()).getReceipt());
+            }
+            assertArrayEquals(BlockConstructor.calcTxTrie(block.getTransactionsList()), block.getTxTrieRoot());
+            assertArrayEquals(BlockConstructor.calcReceiptsTrie(receipts), block.getReceiptsRoot());
+            parent = block;
+        }
+    }
+
+    @Test
+    public void testDeterministicRegardlessOfParallelism() throws Exception {
+        ChainState sequential = build(42L);
+        List<byte[]> expected = new ArrayList<>();
+        for (long i = 0; i < LENGTH; i++) {
+            expected.add(sequential.getBlock(i).getHash());
+        }
+
+        ChainState parallel = build(42L);
+        List<Long> numbers = new ArrayList<>();
+        for (long i = 0; i < LENGTH; i++) {
+            numbers.add(i);
+        }
+        Collections.shuffle(numbers, new Random(7));
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Block>> futures = new ArrayList<>();
+            for (long n : numbers) {
+                futures.add(executor.submit(() -> parallel.getBlock(n)));
+            }
+            for (int i = 0; i < numbers.size(); i++) {
+                int n = numbers.get(i).intValue();
+                assertArrayEquals(expected.get(n), futures.get(i).get().getHash());
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        // a different seed gives a different chain
+        assertFalse(Arrays.equals(expected.get(1), build(43L).getBlock(1).getHash()));
+    }
+
+    @Test
+    public void testSplitDoesNotDependOnDrawOrder() {
+        DeterministicRandom a = DeterministicRandom.forBlock(42L, "main", 10);
+        DeterministicRandom b = DeterministicRandom.forBlock(42L, "main", 10);
+
+        // draw from the block generator before splitting off a transaction
+        a.getBytes32();
+        assertArrayEquals(a.forTransaction(3).getBytes32(), b.forTransaction(3).getBytes32());
+        assertFalse(Arrays.equals(b.forTransaction(3).getBytes32(), b.forTransaction(4).getBytes32()));
     }
 }
@@ -0,0 +1,208 @@
+package org.aion.mock.eth.state;
+
+import org.aion.mock.eth.core.BlockConstructor;
+import org.ethereum.core.Block;
+import org.ethereum.core.TransactionInfo;
+import org.ethereum.core.TransactionReceipt;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.Assert.*;
+
+public class ChainStateTest {
+
+    private static List<Block> buildChain(ChainState state, String fork, int length) {
+        List<Block> blocks = new ArrayList<>();
+        byte[] parentHash = new byte[32];
+        for (int i = 0; i < length; i++) {
+            Block block = BlockConstructor.builder()
+                    .number(i)
+                    .timestamp(i + 1)
+                    .parentHash(parentHash)
+                    .extraData(fork.getBytes())
+                    .build()
+                    .buildBlock();
+            state.addBlock(block, Collections.emptyList(), fork);
+            parentHash = block.getHash();
+            blocks.add(block);
+        }
+        return blocks;
+    }
+
+    @Test
+    public void testHeadLimitsVisibleBlocks() {
+        ChainState state = new ChainState();
+        List<Block> main = buildChain(state, "main", 10);
+        state.setCurrentFork("main");
+
+        assertEquals(9, state.getCurrentForkMax());
+        assertNotNull(state.getBlock(0));
+        assertNull(state.getBlock(1));
+
+        state.setHeadBlockNumber(5);
+        assertArrayEquals(main.get(5).getHash(), state.getBlock(5).getHash());
+        assertNull(state.getBlock(6));
+
+        // lookup by hash is independent of the head
+        assertNotNull(state.getBlock(main.get(9).getHash()));
+    }
+
+    @Test
+    public void testHeadSwapIsAtomic() {
+        ChainState state = new ChainState();
+        List<Block> main = buildChain(state, "main", 10);
+        List<Block> fork = buildChain(state, "fork1", 10);
+        state.updateHead(h -> new ChainState.Head("main", 8));
+
+        ChainState.Head head = state.getHead();
+        assertTrue(state.compareAndSetHead(head, new ChainState.Head("fork1", 3)));
+        // stale snapshot must not be published
+        assertFalse(state.compareAndSetHead(head, new ChainState.Head("main", 9)));
+
+        assertEquals("fork1", state.getCurrentFork());
+        assertEquals(3, state.getHeadBlockNumber());
+        assertArrayEquals(fork.get(3).getHash(), state.getBlock(3).getHash());
+
+        // reads against an old snapshot stay consistent
+        assertArrayEquals(main.get(8).getHash(), state.getBlock(head, 8).getHash());
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testDuplicateBlockRejected() {
+        ChainState state = new ChainState();
+        buildChain(state, "main", 2);
+        buildChain(state, "main", 1);
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testMismatchedInfosRejected() {
+        Block block = BlockConstructor.builder()
+                .number(0)
+                .timestamp(1)
+                .parentHash(new byte[32])
+                .build()
+                .buildBlock();
+        new ChainState().addBlock(block, Collections.singletonList(new TransactionInfo(new TransactionReceipt())), "main");
+    }
+
+    private static DerivedBlock derive(long number, byte[] parentHash) {
+        Block block = BlockConstructor.builder()
+                .number(number)
+                .timestamp(number + 1)
+                .parentHash(parentHash == null ? new byte[32] : parentHash)
+                .build()
+                .buildBlock();
+        return new DerivedBlock(block, Collections.emptyList());
+    }
+
+    @Test
+    public void testLazyForkDerivesHashChain() {
+        // cache much smaller than the chain, forces re-derivation
+        ChainState state = new ChainState(4);
+        state.addLazyFork("main", 10, 1_000, ChainStateTest::derive);
+        state.updateHead(h -> new ChainState.Head("main", 1_000));
+
+        assertEquals(1_000, state.getCurrentForkMax());
+        assertNull(state.getBlock(9));
+        assertNull(state.getBlock(1_001));
+
+        // access out of order, requires deriving the chain up to 500
+        Block b500 = state.getBlock(500);
+        Block b499 = state.getBlock(499);
+        assertArrayEquals(b499.getHash(), b500.getParentHash());
+
+        Block first = state.getBlock(10);
+        assertArrayEquals(new byte[32], first.getParentHash());
+
+        // evicted and derived again, must be identical
+        for (long i = 700; i < 720; i++) {
+            state.getBlock(i);
+        }
+        assertArrayEquals(b500.getHash(), state.getBlock(500).getHash());
+        assertArrayEquals(b500.getHash(), state.getBlock(b500.getHash()).getHash());
+    }
+
+    @Test
+    public void testLazyForkMemoryBounded() {
+        ChainState state = new ChainState(4, 64);
+        state.addLazyFork("main", 0, 20_000, ChainStateTest::derive);
+        state.updateHead(h -> new ChainState.Head("main", 20_000));
+
+        Block b100 = state.getBlock(100);
+        Block last = state.getBlock(20_000);
+        assertTrue(state.getLazyLocatorCount() <= 64);
+        assertArrayEquals(last.getHash(), state.getBlock(last.getHash()).getHash());
+
+        // the hashes of early segments were evicted, derived again from the checkpoints
+        assertArrayEquals(b100.getHash(), state.getBlock(101).getParentHash());
+        assertArrayEquals(b100.getHash(), state.getBlock(100).getHash());
+        assertArrayEquals(state.getBlock(19_999).getHash(), last.getParentHash());
+        assertTrue(state.getLazyLocatorCount() <= 64);
+    }
+
+    /**
+     * Measures read throughput of {@link ChainState#getBlock(long)} while a
+     * writer keeps moving the head, for 1 to 64 reader threads.
+     */
+    @Ignore
+    @Test
+    public void perfTestReadScaling() throws Exception {
+        final int chainLength = 10_000;
+        ChainState state = new ChainState();
+        buildChain(state, "main", chainLength);
+        buildChain(state, "fork1", chainLength);
+        state.updateHead(h -> new ChainState.Head("main", chainLength - 1));
+
+        for (int threads = 1; threads <= 64; threads *= 2) {
+            ExecutorService executor = Executors.newFixedThreadPool(threads + 1);
+            AtomicBoolean running = new AtomicBoolean(true);
+            LongAdder reads = new LongAdder();
+            CountDownLatch started = new CountDownLatch(threads);
+
+            for (int t = 0; t < threads; t++) {
+                final int seed = t;
+                executor.submit(() -> {
+                    started.countDown();
+                    long n = seed;
+                    long local = 0;
+                    while (running.get()) {
+                        n = (n * 6364136223846793005L + 1442695040888963407L);
+                        state.getBlock(Math.floorMod(n, chainLength));
+                        state.getHeadBlockNumber();
+                        local++;
+                    }
+                    reads.add(local);
+                });
+            }
+
+            // writer, flips between forks as the fork rule would
+            executor.submit(() -> {
+                int i = 0;
+                while (running.get()) {
+                    final String fork = (i++ & 1) == 0 ? "main" : "fork1";
+                    state.updateHead(h -> new ChainState.Head(fork, h.getBlockNumber()));
+                }
+            });
+
+            started.await();
+            long s = System.nanoTime();
+            Thread.sleep(2000);
+            running.set(false);
+            executor.shutdown();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+            long elapsed = System.nanoTime() - s;
+
+            System.out.printf("threads: %2d, reads/s: %,d%n", threads, reads.sum() * 1_000_000_000L / elapsed);
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package org.aion.mock.rpc;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.aion.mock.config.ServerConfig;
+import org.aion.mock.eth.DefaultChainFacade;
+import org.aion.mock.eth.populate.PopulationEngine;
+import org.aion.mock.eth.populate.base.ForkEvent;
+import org.aion.mock.eth.populate.pipeline.RandomTransfer;
+import org.aion.mock.eth.populate.rules.ForkBuilderRule;
+import org.aion.mock.eth.state.ChainState;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.ethereum.crypto.HashUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.aion.mock.rpc.TypeConverter.toJsonHex;
+import static org.junit.Assert.*;
+
+public class BatchJsonRpcServerTest {
+
+    private static final byte[] dummyContractAddress = HashUtil.sha3("hello".getBytes());
+
+    private static final int LENGTH = 256;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private DefaultChainFacade facade;
+    private BatchJsonRpcServer server;
+
+    @Before
+    public void setup() {
+        ChainState state = new ChainState();
+        Map<String, ForkEvent> events = Collections.singletonMap("main", ForkEvent.builder()
+                .forkName("main")
+                .forkStartBlockNumber(0)
+                .forkEndBlockNumber(LENGTH)
+                .build());
+        ForkBuilderRule rule = new ForkBuilderRule(state, events, true, 42L);
+        rule.attach(new RandomTransfer(10, dummyContractAddress));
+
+        this.facade = new DefaultChainFacade(PopulationEngine.builder()
+                .state(state)
+                .specialRules(Collections.singletonList(rule))
+                .build(), state);
+        state.setHeadBlockNumber(LENGTH - 1);
+
+        this.server = new BatchJsonRpcServer(this.mapper, new EthJsonRpcImpl(this.facade),
+                EthJsonRpcImpl.class, 10, 4);
+    }
+
+    @After
+    public void teardown() {
+        this.server.shutdown();
+    }
+
+    private ObjectNode call(Object id, String method, Object... params) {
+        ObjectNode request = this.mapper.createObjectNode()
+                .put("jsonrpc", "2.0")
+                .put("method", method);
+        if (id != null)
+            request.set("id", this.mapper.valueToTree(id));
+        request.set("params", this.mapper.valueToTree(params));
+        return request;
+    }
+
+    private JsonNode handle(JsonNode request) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        this.server.handleRequest(new ByteArrayInputStream(this.mapper.writeValueAsBytes(request)), out);
+        return this.mapper.readTree(out.toByteArray());
+    }
+
+    @Test
+    public void testBatchResponsesInOrder() throws Exception {
+        ArrayNode batch = this.mapper.createArrayNode();
+        for (int i = 0; i < 10; i++) {
+            batch.add(call(i, "eth_getBlockByNumber", toJsonHex(i), false));
+        }
+
+        JsonNode response = handle(batch);
+        assertEquals(10, response.size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(i, response.get(i).get("id").asInt());
+            assertEquals(toJsonHex(this.facade.getBlockByNumber(i).getHash()),
+                    response.get(i).get("result").get("hash").asText());
+        }
+    }
+
+    @Test
+    public void testNotificationsAndErrorsInBatch() throws Exception {
+        ArrayNode batch = this.mapper.createArrayNode();
+        batch.add(call(1, "eth_blockNumber"));
+        batch.add(call(null, "eth_blockNumber"));
+        batch.add(call(3, "eth_doesNotExist"));
+        batch.add(this.mapper.createArrayNode());
+
+        JsonNode response = handle(batch);
+        assertEquals(3, response.size());
+        assertEquals(toJsonHex(LENGTH - 1), response.get(0).get("result").asText());
+        assertEquals(3, response.get(1).get("id").asInt());
+        assertTrue(response.get(1).has("error"));
+        assertTrue(response.get(2).has("error"));
+    }
+
+    @Test
+    public void testBatchSizeLimit() throws Exception {
+        ArrayNode batch = this.mapper.createArrayNode();
+        for (int i = 0; i < 11; i++) {
+            batch.add(call(i, "eth_blockNumber"));
+        }
+
+        JsonNode response = handle(batch);
+        assertTrue(response.isObject());
+        assertEquals(-32600, response.get("error").get("code").asInt());
+
+        assertTrue(handle(this.mapper.createArrayNode()).has("error"));
+    }
+
+    private static byte[] post(URL url, byte[] body) throws Exception {
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setDoOutput(true);
+        connection.setRequestMethod("POST");
+        connection.setRequestProperty("Content-Type", "application/json");
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write(body);
+        }
+        try (InputStream in = connection.getInputStream()) {
+            return in.readAllBytes();
+        }
+    }
+
+    /**
+     * Compares the throughput of a batch of calls against the same calls
+     * sent one request at a time, over HTTP.
+     */
+    @Ignore
+    @Test
+    public void perfTestBatchThroughput() throws Exception {
+        final int batchSize = 100;
+        final int rounds = 50;
+
+        ServerConfig config = new ServerConfig();
+        config.setMaxBatchSize(batchSize);
+        // responses are cached, a small cache forces most calls to do the work
+        config.setBlockCacheSize(64 * 1024);
+
+        Server jetty = new Server(0);
+        ServletContextHandler context = new ServletContextHandler();
+        context.setContextPath("/");
+        context.addServlet(new ServletHolder(new HttpJsonRpcServlet(this.facade, config)), "/");
+        jetty.setHandler(context);
+        jetty.start();
+
+        try {
+            URL url = new URL("http://localhost:" + ((ServerConnector) jetty.getConnectors()[0]).getLocalPort() + "/");
+
+            for (int k = 0; k < 5; k++) {
+                long s = System.nanoTime();
+                for (int r = 0; r < rounds; r++) {
+                    for (int i = 0; i < batchSize; i++) {
+                        post(url, this.mapper.writeValueAsBytes(
+                                call(i, "eth_getBlockByNumber", toJsonHex((r + i) % LENGTH), true)));
+                    }
+                }
+                long s1 = System.nanoTime();
+                for (int r = 0; r < rounds; r++) {
+                    ArrayNode batch = this.mapper.createArrayNode();
+                    for (int i = 0; i < batchSize; i++) {
+                        batch.add(call(i, "eth_getBlockByNumber", toJsonHex((r + i) % LENGTH), true));
+                    }
+                    post(url, this.mapper.writeValueAsBytes(batch));
+                }
+                long s2 = System.nanoTime();
+
+                long calls = (long) rounds * batchSize;
+                System.out.printf("single: %,d calls/s, batch: %,d calls/s%n",
+                        calls * 1_000_000_000L / (s1 - s), calls * 1_000_000_000L / (s2 - s1));
+            }
+        } finally {
+            jetty.stop();
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package org.aion.mock.rpc;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.base.Ticker;
+import com.googlecode.jsonrpc4j.JsonRpcBasicServer;
+import org.aion.mock.eth.DefaultChainFacade;
+import org.aion.mock.eth.populate.ExecutionUtilities;
+import org.aion.mock.eth.populate.PopulationEngine;
+import org.aion.mock.eth.populate.base.ForkEvent;
+import org.aion.mock.eth.populate.pipeline.RandomTransfer;
+import org.aion.mock.eth.populate.pipeline.UserTransfer;
+import org.aion.mock.eth.populate.rules.ForkBuilderRule;
+import org.aion.mock.eth.state.ChainState;
+import org.aion.mock.eth.state.LogQuery;
+import org.ethereum.core.Block;
+import org.ethereum.crypto.HashUtil;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.aion.mock.rpc.TypeConverter.hexToLong;
+import static org.aion.mock.rpc.TypeConverter.toJsonHex;
+import static org.junit.Assert.*;
+
+public class EthJsonRpcImplTest {
+
+    private static final byte[] dummyContractAddress = Arrays.copyOf(HashUtil.sha3("hello".getBytes()), 20);
+
+    private static final byte[] recipient = HashUtil.sha3("recipient".getBytes());
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private ChainState state;
+    private DefaultChainFacade facade;
+    private EthJsonRpcImpl impl;
+    private JsonRpcBasicServer server;
+
+    private static ChainState build(long length, long transferInterval) {
+        ChainState state = new ChainState();
+        var event = ForkEvent.builder()
+                .forkName("main")
+                .forkStartBlockNumber(0)
+                .forkEndBlockNumber(length);
+        for (long i = transferInterval / 2; i < length; i += transferInterval) {
+            event.forkTransferEvent(new ExecutionUtilities.TransferEvent("t" + i,
+                    new byte[20], recipient, BigInteger.TEN, i));
+        }
+        Map<String, ForkEvent> events = Collections.singletonMap("main", event.build());
+
+        ForkBuilderRule rule = new ForkBuilderRule(state, events, true, 42L);
+        rule.attach(new UserTransfer(dummyContractAddress, events));
+        rule.attach(new RandomTransfer(4, dummyContractAddress));
+        rule.apply(state);
+        return state;
+    }
+
+    @Before
+    public void setup() {
+        // user transfers in blocks 3, 9 and 15
+        this.state = build(16, 6);
+
+        this.facade = new DefaultChainFacade(PopulationEngine.builder()
+                .state(this.state)
+                .build(), this.state);
+        this.state.setHeadBlockNumber(15);
+
+        this.impl = new EthJsonRpcImpl(this.facade);
+        this.server = new JsonRpcBasicServer(this.mapper, this.impl, EthJsonRpcImpl.class);
+    }
+
+    private JsonNode call(String method, Object... params) throws Exception {
+        var request = this.mapper.createObjectNode()
+                .put("jsonrpc", "2.0")
+                .put("id", 1)
+                .put("method", method);
+        request.set("params", this.mapper.valueToTree(params));
+
+        var out = new ByteArrayOutputStream();
+        this.server.handleRequest(new ByteArrayInputStream(this.mapper.writeValueAsBytes(request)), out);
+        return this.mapper.readTree(out.toString(StandardCharsets.UTF_8.name()));
+    }
+
+    @Test
+    public void testCachedBlockMatchesSerializedResult() throws Exception {
+        Block block = this.facade.getBlockByNumber(10);
+        String hash = toJsonHex(block.getHash());
+
+        for (boolean fullTx : new boolean[] {false, true}) {
+            JsonNode expected = this.mapper.valueToTree(this.impl.getBlockResult(block, fullTx));
+            assertEquals(expected, call("eth_getBlockByHash", hash, fullTx).get("result"));
+            assertEquals(expected, call("eth_getBlockByNumber", toJsonHex(10), fullTx).get("result"));
+        }
+
+        assertEquals(2, this.impl.getBlockCacheStats().missCount());
+        assertEquals(2, this.impl.getBlockCacheStats().hitCount());
+    }
+
+    private ObjectNode filter(Object fromBlock, Object toBlock, Object address, Object... topics) {
+        ObjectNode filter = this.mapper.createObjectNode();
+        filter.set("fromBlock", this.mapper.valueToTree(fromBlock));
+        filter.set("toBlock", this.mapper.valueToTree(toBlock));
+        filter.set("address", this.mapper.valueToTree(address));
+        filter.set("topics", this.mapper.valueToTree(topics));
+        return filter;
+    }
+
+    @Test
+    public void testGetLogsByTopic() throws Exception {
+        JsonNode logs = call("eth_getLogs", filter("earliest", "latest", null, null, null, toJsonHex(recipient)))
+                .get("result");
+        assertEquals(3, logs.size());
+        assertEquals(toJsonHex(3), logs.get(0).get("blockNumber").asText());
+        assertEquals(toJsonHex(9), logs.get(1).get("blockNumber").asText());
+        assertEquals(toJsonHex(15), logs.get(2).get("blockNumber").asText());
+        assertEquals(toJsonHex(dummyContractAddress), logs.get(0).get("address").asText());
+        assertEquals(toJsonHex(recipient), logs.get(0).get("topics").get(2).asText());
+
+        // same recipient but a different address never matches
+        logs = call("eth_getLogs", filter("earliest", "latest", toJsonHex(new byte[20]),
+                null, null, toJsonHex(recipient))).get("result");
+        assertEquals(0, logs.size());
+    }
+
+    @Test
+    public void testGetLogsByAddressRange() throws Exception {
+        JsonNode logs = call("eth_getLogs", filter(toJsonHex(2), toJsonHex(4),
+                Collections.singletonList(toJsonHex(dummyContractAddress)))).get("result");
+
+        // blocks are filled up to 4 transfers
+        assertEquals(12, logs.size());
+        for (int i = 0; i < logs.size(); i++) {
+            long number = hexToLong(logs.get(i).get("blockNumber").asText());
+            assertTrue(number >= 2 && number <= 4);
+        }
+        assertEquals(toJsonHex(0), logs.get(4).get("logIndex").asText());
+        assertEquals(toJsonHex(1), logs.get(5).get("logIndex").asText());
+
+        String hash = toJsonHex(this.facade.getBlockByNumber(3).getHash());
+        ObjectNode byHash = this.mapper.createObjectNode().put("blockHash", hash);
+        assertEquals(4, call("eth_getLogs", byHash).get("result").size());
+    }
+
+    @Test
+    public void testLogsPastHeadNotVisible() throws Exception {
+        this.state.setHeadBlockNumber(5);
+        JsonNode logs = call("eth_getLogs", filter("earliest", toJsonHex(15), null, null, null, toJsonHex(recipient)))
+                .get("result");
+        assertEquals(1, logs.size());
+    }
+
+    @Test
+    public void testFilterChanges() throws Exception {
+        this.state.setHeadBlockNumber(5);
+        String id = call("eth_newFilter", filter("earliest", "latest", null, null, null, toJsonHex(recipient)))
+                .get("result").asText();
+
+        // block 3 was already there when the filter was installed
+        assertEquals(0, call("eth_getFilterChanges", id).get("result").size());
+
+        this.state.setHeadBlockNumber(15);
+        JsonNode changes = call("eth_getFilterChanges", id).get("result");
+        assertEquals(2, changes.size());
+        assertEquals(toJsonHex(9), changes.get(0).get("blockNumber").asText());
+        assertEquals(toJsonHex(15), changes.get(1).get("blockNumber").asText());
+        assertEquals(0, call("eth_getFilterChanges", id).get("result").size());
+
+        assertEquals(3, call("eth_getFilterLogs", id).get("result").size());
+
+        assertTrue(call("eth_uninstallFilter", id).get("result").asBoolean());
+        assertFalse(call("eth_uninstallFilter", id).get("result").asBoolean());
+        assertTrue(call("eth_getFilterChanges", id).has("error"));
+    }
+
+    @Test
+    public void testFilterTimeout() throws Exception {
+        AtomicLong nanos = new AtomicLong();
+        this.impl = new EthJsonRpcImpl(this.facade, EthJsonRpcImpl.DEFAULT_BLOCK_CACHE_BYTES, 1000, new Ticker() {
+            @Override
+            public long read() {
+                return nanos.get();
+            }
+        });
+        this.server = new JsonRpcBasicServer(this.mapper, this.impl, EthJsonRpcImpl.class);
+        String id = call("eth_newFilter", filter("earliest", "latest", null, null, null, toJsonHex(recipient)))
+                .get("result").asText();
+
+        // every poll keeps the filter installed
+        for (int i = 0; i < 3; i++) {
+            nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(900));
+            assertFalse(call("eth_getFilterChanges", id).has("error"));
+        }
+
+        nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(1001));
+        assertTrue(call("eth_getFilterChanges", id).has("error"));
+        assertFalse(call("eth_uninstallFilter", id).get("result").asBoolean());
+    }
+
+    @Test
+    public void testLazyLogRangeBounded() throws Exception {
+        // user transfers in blocks 500, 1500 and 2500
+        ChainState state = build(3000, 1000);
+        this.facade = new DefaultChainFacade(PopulationEngine.builder()
+                .state(state)
+                .build(), state);
+        this.impl = new EthJsonRpcImpl(this.facade);
+        this.server = new JsonRpcBasicServer(this.mapper, this.impl, EthJsonRpcImpl.class);
+        String id = call("eth_newFilter", filter("earliest", "latest", null, null, null, toJsonHex(recipient)))
+                .get("result").asText();
+        state.setHeadBlockNumber(2999);
+
+        assertTrue(call("eth_getLogs", filter("earliest", "latest", null, null, null, toJsonHex(recipient)))
+                .has("error"));
+        JsonNode logs = call("eth_getLogs", filter(toJsonHex(1000), toJsonHex(1000 + ChainState.MAX_LAZY_LOG_RANGE - 1),
+                null, null, null, toJsonHex(recipient))).get("result");
+        assertEquals(1, logs.size());
+        assertEquals(toJsonHex(1500), logs.get(0).get("blockNumber").asText());
+
+        // polls page through the range instead
+        for (long number : new long[] {500, 1500, 2500}) {
+            JsonNode changes = call("eth_getFilterChanges", id).get("result");
+            assertEquals(1, changes.size());
+            assertEquals(toJsonHex(number), changes.get(0).get("blockNumber").asText());
+        }
+        assertEquals(0, call("eth_getFilterChanges", id).get("result").size());
+    }
+
+    /**
+     * Range query for a rare topic over a long (lazy) chain, paged by the
+     * range a lazy log query may cover. Only the recently derived segments
+     * keep their index, the others are derived again by every pass.
+     */
+    @Ignore
+    @Test
+    public void perfTestLogRangeQuery() {
+        final long length = 100_000;
+        ChainState state = build(length, 1000);
+        state.setHeadBlockNumber(length - 1);
+        LogQuery query = new LogQuery(new byte[][] {dummyContractAddress},
+                Arrays.asList(null, null, new byte[][] {recipient}));
+
+        for (int k = 0; k < 10; k++) {
+            long s = System.nanoTime();
+            long logs = 0;
+            for (long from = 0; from < length; from += ChainState.MAX_LAZY_LOG_RANGE) {
+                logs += state.getLogs(state.getHead(), from, from + ChainState.MAX_LAZY_LOG_RANGE - 1, query).size();
+            }
+            System.out.println("logs: " + logs + ", " + (System.nanoTime() - s) / 1_000_000 + " ms");
+        }
+    }
+
+    @Test
+    public void testUnknownBlockIsNull() throws Exception {
+        assertTrue(call("eth_getBlockByHash", toJsonHex(new byte[32]), false).get("result").isNull());
+        assertTrue(call("eth_getBlockByNumber", toJsonHex(16), false).get("result").isNull());
+        assertEquals(0, this.impl.getBlockCacheStats().requestCount());
+    }
+}
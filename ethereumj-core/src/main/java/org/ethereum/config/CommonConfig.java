@@ -17,6 +17,7 @@
  */
 package org.ethereum.config;
 
+import org.apache.commons.collections4.map.LRUMap;
 import org.ethereum.core.*;
 import org.ethereum.crypto.HashUtil;
 import org.ethereum.datasource.*;
@@ -28,8 +29,11 @@ import org.ethereum.listener.CompositeEthereumListener;
 import org.ethereum.listener.EthereumListener;
 import org.ethereum.net.eth.handler.Eth63;
 import org.ethereum.sync.FastSyncManager;
+import org.ethereum.trie.TrieImpl;
+import org.ethereum.trie.TrieNodeCache;
 import org.ethereum.validator.*;
 import org.ethereum.vm.DataWord;
+import org.ethereum.vm.program.DecodedProgram;
 import org.ethereum.vm.program.ProgramPrecompile;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -38,8 +42,10 @@ import org.springframework.context.annotation.*;
 import org.springframework.transaction.annotation.EnableTransactionManagement;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import static java.util.Arrays.asList;
@@ -55,6 +61,9 @@ public class CommonConfig {
 
     private static CommonConfig defaultInstance;
 
+    // a few KB each for the largest contracts
+    private static final int PRECOMPILE_CACHE_ENTRIES = 4096;
+
     public static CommonConfig getDefault() {
         if (defaultInstance == null && !SystemProperties.isUseOnlySpringConfig()) {
             defaultInstance = new CommonConfig() {
@@ -62,6 +71,11 @@ public class CommonConfig {
                 public Source<byte[], ProgramPrecompile> precompileSource() {
                     return null;
                 }
+
+                @Override
+                public Map<ByteArrayWrapper, DecodedProgram> decodedProgramCache() {
+                    return null;
+                }
             };
         }
         return defaultInstance;
@@ -85,12 +99,27 @@ public class CommonConfig {
 
     @Bean
     public Repository defaultRepository() {
-        return new RepositoryRoot(stateSource(), null);
+        return new RepositoryRoot(stateSource(), null, TrieImpl.getPool(systemProperties().trieCommitThreads()),
+                stateNodeCache());
     }
 
     @Bean @Scope("prototype")
     public Repository repository(byte[] stateRoot) {
-        return new RepositoryRoot(stateSource(), stateRoot);
+        return new RepositoryRoot(stateSource(), stateRoot, TrieImpl.getPool(systemProperties().trieCommitThreads()),
+                stateNodeCache());
+    }
+
+    /**
+     * Decoded state trie nodes shared by all the repositories,
+     * sized by {@code cache.trieNodeCacheSize}
+     */
+    @Bean
+    public TrieNodeCache trieNodeCache() {
+        return new TrieNodeCache(Math.max(systemProperties().trieNodeCacheSize(), 0));
+    }
+
+    private TrieNodeCache stateNodeCache() {
+        return systemProperties().trieNodeCacheSize() > 0 ? trieNodeCache() : null;
     }
 
     /**
@@ -118,7 +147,7 @@ public class CommonConfig {
     public StateSource stateSource() {
         fastSyncCleanUp();
         StateSource stateSource = new StateSource(blockchainSource("state"),
-                systemProperties().databasePruneDepth() >= 0);
+                systemProperties().databasePruneDepth() >= 0, systemProperties().cacheFlushOffHeap());
 
         dbFlushManager().addCache(stateSource.getWriteCache());
 
@@ -132,6 +161,9 @@ public class CommonConfig {
             @Override
             protected WriteCache<byte[], byte[]> createCache(Source<byte[], byte[]> source) {
                 WriteCache.BytesKey<byte[]> ret = new WriteCache.BytesKey<>(source, WriteCache.CacheType.SIMPLE);
+                if (systemProperties().cacheFlushOffHeap()) {
+                    ret.withOffHeapCache(new Serializers.Identity<>());
+                }
                 ret.withSizeEstimators(MemSizeEstimator.ByteArrayEstimator, MemSizeEstimator.ByteArrayEstimator);
                 ret.setFlushSource(true);
                 return ret;
@@ -149,8 +181,12 @@ public class CommonConfig {
 
     @Bean
     public AbstractCachedSource<byte[], byte[]> blockchainDbCache() {
-        WriteCache.BytesKey<byte[]> ret = new WriteCache.BytesKey<>(
-                new BatchSourceWriter<>(blockchainDB()), WriteCache.CacheType.SIMPLE);
+        // shared by all the blockchain DBs, so split between several locks
+        StripedWriteCache.BytesKey<byte[]> ret = new StripedWriteCache.BytesKey<>(
+                new BatchSourceWriter<>(blockchainDB()), WriteCache.CacheType.SIMPLE, 16);
+        if (systemProperties().cacheFlushOffHeap()) {
+            ret.withOffHeapCache(new Serializers.Identity<>());
+        }
         ret.setFlushSource(true);
         return ret;
     }
@@ -251,11 +287,18 @@ public class CommonConfig {
         return headerStore;
     }
 
+    /**
+     * Jump destination analysis of contract code by code hash. Kept in the
+     * state DB, with an LRU cache of the decoded entries in front so that
+     * hot contracts are neither re-analyzed nor re-deserialized.
+     * Hit rate and memory use are reported by the returned {@link ReadCache}
+     */
     @Bean
     public Source<byte[], ProgramPrecompile> precompileSource() {
 
         StateSource source = stateSource();
-        return new SourceCodec<byte[], ProgramPrecompile, byte[], byte[]>(source,
+        SourceCodec<byte[], ProgramPrecompile, byte[], byte[]> codec =
+                new SourceCodec<byte[], ProgramPrecompile, byte[], byte[]>(source,
                 new Serializer<byte[], byte[]>() {
                     public byte[] serialize(byte[] object) {
                         DataWord ret = new DataWord(object);
@@ -273,6 +316,17 @@ public class CommonConfig {
                         return stream == null ? null : ProgramPrecompile.deserialize(stream);
                     }
         });
+        return new ReadCache.BytesKey<>(codec).withMaxCapacity(PRECOMPILE_CACHE_ENTRIES)
+                .withSizeEstimators(MemSizeEstimator.ByteArrayEstimator, ProgramPrecompile.MemEstimator);
+    }
+
+    /**
+     * Contract code decoded for the {@code vm.predecode} mode by code hash,
+     * kept in memory only, with at most {@code vm.predecodeCacheSize} entries
+     */
+    @Bean
+    public Map<ByteArrayWrapper, DecodedProgram> decodedProgramCache() {
+        return Collections.synchronizedMap(new LRUMap<>(Math.max(systemProperties().vmPredecodeCacheSize(), 1)));
     }
 
     @Bean
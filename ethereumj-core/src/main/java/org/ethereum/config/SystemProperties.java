@@ -37,6 +37,7 @@ import org.ethereum.util.ByteUtil;
 import org.ethereum.util.Utils;
 import org.ethereum.validator.BlockCustomHashRule;
 import org.ethereum.validator.BlockHeaderValidator;
+import org.ethereum.vm.PrecompiledContractCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.spongycastle.util.encoders.Hex;
@@ -156,6 +157,7 @@ public class SystemProperties {
     private Genesis genesis;
     private Boolean vmTrace;
     private Boolean recordInternalTransactionsData;
+    private PrecompiledContractCache precompiledContractCache;
 
     private final ClassLoader classLoader;
 
@@ -520,6 +522,10 @@ public class SystemProperties {
     }
 
 
+    @ValidateMe
+    public long trieNodeCacheSize() {
+        return config.getInt("cache.trieNodeCacheSize") * 1024L * 1024;
+    }
     @ValidateMe
     public Integer blockQueueSize() {
         return config.getInt("cache.blockQueueSize") * 1024 * 1024;
@@ -644,6 +650,25 @@ public class SystemProperties {
         return vmTrace == null ? (vmTrace = config.getBoolean("vm.structured.trace")) : vmTrace;
     }
 
+    @ValidateMe
+    public boolean vmPredecode() {
+        return config.getBoolean("vm.predecode");
+    }
+
+    /**
+     * @param contract name of the precompiled contract under {@code vm.precompiled.cache}
+     * @return number of results of the contract to cache, 0 if they aren't cached
+     */
+    public int precompiledCacheSize(String contract) {
+        String path = "vm.precompiled.cache." + contract;
+        return config.hasPath(path) ? config.getInt(path) : 0;
+    }
+
+    @ValidateMe
+    public int vmPredecodeCacheSize() {
+        return config.getInt("vm.predecodeCacheSize");
+    }
+
     @ValidateMe
     public boolean vmTraceCompressed() {
         return config.getBoolean("vm.structured.compressed");
@@ -659,6 +684,11 @@ public class SystemProperties {
         return config.getInt("cache.flush.blocks");
     }
 
+    @ValidateMe
+    public boolean cacheFlushOffHeap() {
+        return config.getBoolean("cache.flush.offHeap");
+    }
+
     @ValidateMe
     public String vmTraceDir() {
         return config.getString("vm.structured.dir");
@@ -829,6 +859,21 @@ public class SystemProperties {
         return config.getInt("transaction.outdated.threshold");
     }
 
+    @ValidateMe
+    public int txParallelThreads() {
+        return config.getInt("transaction.parallel.threads");
+    }
+
+    /**
+     * @return number of threads hashing the modified trie nodes,
+     * the number of CPUs when not set
+     */
+    @ValidateMe
+    public int trieCommitThreads() {
+        int threads = config.getInt("trie.commit.threads");
+        return threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+    }
+
     public void setGenesisInfo(String genesisInfo){
         this.genesisInfo = genesisInfo;
     }
@@ -924,6 +969,17 @@ public class SystemProperties {
         return genesis;
     }
 
+    /**
+     * @return the results of the precompiled contracts cached as configured
+     * by {@code vm.precompiled.cache}, created on first use
+     */
+    public synchronized PrecompiledContractCache getPrecompiledContractCache() {
+        if (precompiledContractCache == null) {
+            precompiledContractCache = new PrecompiledContractCache(this);
+        }
+        return precompiledContractCache;
+    }
+
     /**
      * Method used in StandaloneBlockchain.
      */
@@ -19,8 +19,7 @@ package org.ethereum.core;
 
 import org.ethereum.crypto.HashUtil;
 import org.ethereum.datasource.MemSizeEstimator;
-import org.ethereum.trie.Trie;
-import org.ethereum.trie.TrieImpl;
+import org.ethereum.trie.StackTrie;
 import org.ethereum.util.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -363,15 +362,13 @@ public class Block {
 
     private byte[] parseTxs(RLPList txTransactions, boolean validate) {
 
-        Trie<byte[]> txsState = new TrieImpl();
         for (int i = 0; i < txTransactions.size(); i++) {
             RLPElement transactionRaw = txTransactions.get(i);
             Transaction tx = new Transaction(transactionRaw.getRLPData());
             if (validate) tx.verify();
             this.transactionsList.add(tx);
-            txsState.put(RLP.encodeInt(i), transactionRaw.getRLPData());
         }
-        return txsState.getRootHash();
+        return StackTrie.calcIndexedRoot(txTransactions.size(), i -> txTransactions.get(i).getRLPData());
     }
 
 
@@ -17,6 +17,7 @@
  */
 package org.ethereum.core;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.commons.lang3.tuple.Pair;
 import org.ethereum.config.BlockchainConfig;
 import org.ethereum.config.CommonConfig;
@@ -24,8 +25,7 @@ import org.ethereum.config.SystemProperties;
 import org.ethereum.crypto.HashUtil;
 import org.ethereum.datasource.inmem.HashMapDB;
 import org.ethereum.db.*;
-import org.ethereum.trie.Trie;
-import org.ethereum.trie.TrieImpl;
+import org.ethereum.trie.StackTrie;
 import org.ethereum.listener.EthereumListener;
 import org.ethereum.listener.EthereumListenerAdapter;
 import org.ethereum.manager.AdminInfo;
@@ -58,6 +58,10 @@ import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.Stack;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static java.lang.Math.max;
 import static java.lang.Runtime.getRuntime;
@@ -173,6 +177,9 @@ public class BlockchainImpl implements Blockchain, org.ethereum.facade.Blockchai
     private int UNCLE_LIST_LIMIT;
     private int UNCLE_GENERATION_LIMIT;
 
+    private int txParallelThreads;
+    private ExecutorService txExecutor;
+
 
     private Stack<State> stateStack = new Stack<>();
 
@@ -224,11 +231,17 @@ public class BlockchainImpl implements Blockchain, org.ethereum.facade.Blockchai
         return this;
     }
 
+    public BlockchainImpl withTxParallelThreads(int txParallelThreads) {
+        this.txParallelThreads = txParallelThreads;
+        return this;
+    }
+
     private void initConst(SystemProperties config) {
         minerCoinbase = config.getMinerCoinbase();
         minerExtraData = config.getMineExtraData();
         UNCLE_LIST_LIMIT = config.getBlockchainConfig().getCommonConstants().getUNCLE_LIST_LIMIT();
         UNCLE_GENERATION_LIMIT = config.getBlockchainConfig().getCommonConstants().getUNCLE_GENERATION_LIMIT();
+        txParallelThreads = config.txParallelThreads();
     }
 
     @Override
@@ -315,15 +328,10 @@ public class BlockchainImpl implements Blockchain, org.ethereum.facade.Blockchai
 
     public static byte[] calcTxTrie(List<Transaction> transactions) {
 
-        Trie txsState = new TrieImpl();
-
         if (transactions == null || transactions.isEmpty())
             return HashUtil.EMPTY_TRIE_HASH;
 
-        for (int i = 0; i < transactions.size(); i++) {
-            txsState.put(RLP.encodeInt(i), transactions.get(i).getEncoded());
-        }
-        return txsState.getRootHash();
+        return StackTrie.calcIndexedRoot(transactions.size(), i -> transactions.get(i).getEncoded());
     }
 
     public Repository getRepository() {
@@ -657,15 +665,11 @@ public class BlockchainImpl implements Blockchain, org.ethereum.facade.Blockchai
     }
 
     public static byte[] calcReceiptsTrie(List<TransactionReceipt> receipts) {
-        Trie receiptsTrie = new TrieImpl();
 
         if (receipts == null || receipts.isEmpty())
             return HashUtil.EMPTY_TRIE_HASH;
 
-        for (int i = 0; i < receipts.size(); i++) {
-            receiptsTrie.put(RLP.encodeInt(i), receipts.get(i).getReceiptTrieEncoded());
-        }
-        return receiptsTrie.getRootHash();
+        return StackTrie.calcIndexedRoot(receipts.size(), i -> receipts.get(i).getReceiptTrieEncoded());
     }
 
     private byte[] calcLogBloom(List<TransactionReceipt> receipts) {
@@ -871,45 +875,82 @@ public class BlockchainImpl implements Blockchain, org.ethereum.facade.Blockchai
         List<TransactionReceipt> receipts = new ArrayList<>();
         List<TransactionExecutionSummary> summaries = new ArrayList<>();
 
-        for (Transaction tx : block.getTransactionsList()) {
-            stateLogger.debug("apply block: [{}] tx: [{}] ", block.getNumber(), i);
-
-            Repository txTrack = track.startTracking();
-            TransactionExecutor executor = new TransactionExecutor(tx, block.getCoinbase(),
-                    txTrack, blockStore, programInvokeFactory, block, listener, totalGasUsed)
-                    .withCommonConfig(commonConfig);
+        // while the transactions are speculated the track is only used through
+        // recording tracks sharing the lock, see speculate()
+        Object trackLock = new Object();
+        Speculations speculations = speculate(track, trackLock, block);
+        RecordingRepository lockedTrack = new RecordingRepository(track, trackLock);
+        Repository blockTrack = speculations == null ? track : lockedTrack;
+        Set<ByteArrayWrapper> blockWritten = new HashSet<>();
 
-            executor.init();
-            executor.execute();
-            executor.go();
-            TransactionExecutionSummary summary = executor.finalization();
+        try {
+            for (Transaction tx : block.getTransactionsList()) {
+                stateLogger.debug("apply block: [{}] tx: [{}] ", block.getNumber(), i);
+
+                Speculation speculation = speculations == null ? null :
+                        getValidSpeculation(speculations.futures.get(i - 1), tx, block, blockWritten, totalGasUsed);
+
+                Repository txTrack;
+                TransactionExecutor executor;
+                TransactionExecutionSummary summary;
+                if (speculation != null) {
+                    txTrack = speculation.txTrack;
+                    executor = speculation.executor;
+                    summary = speculation.summary;
+                    if (summary != null) {
+                        executor.payMinerFee(summary);
+                        listener.onTransactionExecuted(summary);
+                    }
+                    blockWritten.addAll(speculation.txTrack.getRecord().getWritten());
+                } else {
+                    txTrack = blockTrack.startTracking();
+                    executor = new TransactionExecutor(tx, block.getCoinbase(),
+                            txTrack, blockStore, programInvokeFactory, block, listener, totalGasUsed)
+                            .withCommonConfig(commonConfig);
+
+                    executor.init();
+                    executor.execute();
+                    executor.go();
+                    summary = executor.finalization();
+                    blockWritten.addAll(lockedTrack.getRecord().getWritten());
+                }
 
-            totalGasUsed += executor.getGasUsed();
+                totalGasUsed += executor.getGasUsed();
 
-            txTrack.commit();
-            final TransactionReceipt receipt = executor.getReceipt();
+                txTrack.commit();
+                final TransactionReceipt receipt = executor.getReceipt();
+                if (speculation != null) {
+                    receipt.setCumulativeGas(totalGasUsed);
+                }
 
-            if (blockchainConfig.eip658()) {
-                receipt.setTxStatus(receipt.isSuccessful());
-            } else {
-                receipt.setPostTxState(track.getRoot());
-            }
+                if (blockchainConfig.eip658()) {
+                    receipt.setTxStatus(receipt.isSuccessful());
+                } else {
+                    receipt.setPostTxState(blockTrack.getRoot());
+                }
 
-            stateLogger.info("block: [{}] executed tx: [{}] \n  state: [{}]", block.getNumber(), i,
-                    toHexString(track.getRoot()));
+                stateLogger.info("block: [{}] executed tx: [{}] \n  state: [{}]", block.getNumber(), i,
+                        toHexString(blockTrack.getRoot()));
 
-            stateLogger.info("[{}] ", receipt.toString());
+                stateLogger.info("[{}] ", receipt.toString());
 
-            if (stateLogger.isInfoEnabled())
-                stateLogger.info("tx[{}].receipt: [{}] ", i, toHexString(receipt.getEncoded()));
+                if (stateLogger.isInfoEnabled())
+                    stateLogger.info("tx[{}].receipt: [{}] ", i, toHexString(receipt.getEncoded()));
 
-            // TODO
-//            if (block.getNumber() >= config.traceStartBlock())
-//                repository.dumpState(block, totalGasUsed, i++, tx.getHash());
+                // TODO
+//                if (block.getNumber() >= config.traceStartBlock())
+//                    repository.dumpState(block, totalGasUsed, i++, tx.getHash());
 
-            receipts.add(receipt);
-            if (summary != null) {
-                summaries.add(summary);
+                receipts.add(receipt);
+                if (summary != null) {
+                    summaries.add(summary);
+                }
+                i++;
+            }
+        } finally {
+            // the caller may use the track (or roll it back) as soon as we return
+            if (speculations != null) {
+                speculations.stop();
             }
         }
 
@@ -931,6 +972,168 @@ public class BlockchainImpl implements Blockchain, org.ethereum.facade.Blockchai
         return new BlockSummary(block, rewards, receipts, summaries);
     }
 
+    private static class Speculation {
+        final RecordingRepository txTrack;
+        final TransactionExecutor executor;
+        final TransactionExecutionSummary summary;
+
+        Speculation(RecordingRepository txTrack, TransactionExecutor executor, TransactionExecutionSummary summary) {
+            this.txTrack = txTrack;
+            this.executor = executor;
+            this.summary = summary;
+        }
+    }
+
+    /**
+     * Speculated transactions of a block, along with the number of them
+     * currently running against the track of the block
+     */
+    private static class Speculations {
+        final List<Future<Speculation>> futures = new ArrayList<>();
+        final Object trackLock;
+
+        // guarded by trackLock
+        int running = 0;
+        boolean stopped = false;
+
+        Speculations(Object trackLock) {
+            this.trackLock = trackLock;
+        }
+
+        /**
+         * @return {@code false} if the speculation must not start because
+         * the block is already done with the track
+         */
+        boolean start() {
+            synchronized (trackLock) {
+                if (stopped) return false;
+                running++;
+                return true;
+            }
+        }
+
+        void finish() {
+            synchronized (trackLock) {
+                running--;
+                trackLock.notifyAll();
+            }
+        }
+
+        /**
+         * Cancels the speculations which haven't completed yet and waits until
+         * none of them is running anymore, so the track isn't accessed after
+         * this returns
+         */
+        void stop() {
+            synchronized (trackLock) {
+                stopped = true;
+            }
+            for (Future<Speculation> future : futures) {
+                future.cancel(true);
+            }
+
+            boolean interrupted = false;
+            synchronized (trackLock) {
+                while (running > 0) {
+                    try {
+                        trackLock.wait();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Starts executing all the transactions of the block concurrently, each one
+     * on its own track over the state before the first transaction. The tracks
+     * record the state they access, which tells when a transaction has to be
+     * executed again after the ones before it, see {@link #getValidSpeculation}.
+     *
+     * The speculated transactions leave the fee to the miner and don't notify
+     * the listener, both are done when the transaction is committed.
+     *
+     * @return the speculated transactions in the block order, {@code null}
+     * when the transactions are executed one by one
+     */
+    private Speculations speculate(final Repository track, final Object trackLock, final Block block) {
+        if (txParallelThreads <= 0 || config.vmTrace() || block.getTransactionsList().size() < 2) {
+            return null;
+        }
+
+        if (txExecutor == null) {
+            txExecutor = Executors.newFixedThreadPool(txParallelThreads,
+                    new ThreadFactoryBuilder().setDaemon(true).setNameFormat("TxExecutor-%d").build());
+        }
+
+        final Speculations ret = new Speculations(trackLock);
+        for (final Transaction tx : block.getTransactionsList()) {
+            ret.futures.add(txExecutor.submit(() -> {
+                if (!ret.start()) {
+                    return null;
+                }
+                try {
+                    RecordingRepository txTrack;
+                    synchronized (trackLock) {
+                        txTrack = new RecordingRepository(track.startTracking(), trackLock);
+                    }
+                    TransactionExecutor executor = new TransactionExecutor(tx, block.getCoinbase(),
+                            txTrack, blockStore, programInvokeFactory, block, new EthereumListenerAdapter(), 0)
+                            .withCommonConfig(commonConfig)
+                            .setMinerFeeDeferred(true);
+
+                    executor.init();
+                    executor.execute();
+                    executor.go();
+                    return new Speculation(txTrack, executor, executor.finalization());
+                } finally {
+                    ret.finish();
+                }
+            }));
+        }
+        return ret;
+    }
+
+    /**
+     * Waits for the speculated transaction and checks that it ends up as if it
+     * was executed after the transactions before it: it hasn't accessed any
+     * state they have written nor the miner account, and the block gas limit
+     * check, speculated with no gas used by the block, passes the same way
+     *
+     * @return {@code null} if the transaction has to be executed again
+     */
+    private Speculation getValidSpeculation(Future<Speculation> future, Transaction tx, Block block,
+                                            Set<ByteArrayWrapper> blockWritten, long gasUsedInTheBlock) {
+        Speculation ret;
+        try {
+            ret = future.get();
+        } catch (ExecutionException e) {
+            // executing it again fails the same way unless the speculation is to blame
+            logger.debug("Speculated transaction failed: " + toHexString(tx.getHash()), e.getCause());
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+
+        RecordingRepository.Record record = ret.txTrack.getRecord();
+        if (!record.isComplete() || record.isAccessed(block.getCoinbase()) ||
+                !Collections.disjoint(record.getAccessed(), blockWritten)) {
+            return null;
+        }
+
+        BigInteger txGasLimit = new BigInteger(1, tx.getGasLimit());
+        if (txGasLimit.add(BigInteger.valueOf(gasUsedInTheBlock)).compareTo(new BigInteger(1, block.getGasLimit())) > 0) {
+            return null;
+        }
+
+        return ret;
+    }
+
     /**
      * Add reward to block- and every uncle coinbase
      * assuming the entire block is valid.
@@ -1035,6 +1238,10 @@ public class BlockchainImpl implements Blockchain, org.ethereum.facade.Blockchai
 
     @Override
     public synchronized void close() {
+        if (txExecutor != null) {
+            txExecutor.shutdownNow();
+            txExecutor = null;
+        }
         blockStore.close();
     }
 
@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.core;
+
+import org.apache.commons.collections4.map.LRUMap;
+import org.ethereum.db.ByteArrayWrapper;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Senders recovered from the signatures by {@link Transaction#getSender()},
+ * by transaction hash. The same transaction is decoded again each time the
+ * node gets it: pending, in a new block, in downloaded block bodies, when
+ * loading or replaying blocks, and the cache is shared by all these copies so
+ * that the signature is recovered once.
+ *
+ * The hash covers the signature, so a hash always gives the same sender.
+ * The entries are split into segments by the first byte of the hash so that
+ * the threads recovering senders concurrently rarely wait on each other.
+ */
+public class SenderCache {
+
+    private static final int SEGMENTS = 16;
+    private static final int DEFAULT_SIZE = 64 * 1024;
+
+    private static final SenderCache defaultInstance = new SenderCache(DEFAULT_SIZE);
+
+    private final Map<ByteArrayWrapper, byte[]>[] segments;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    @SuppressWarnings("unchecked")
+    public SenderCache(int maxSize) {
+        segments = new Map[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = Collections.synchronizedMap(new LRUMap<>(Math.max(1, maxSize / SEGMENTS)));
+        }
+    }
+
+    /**
+     * @return the cache used by {@link Transaction#getSender()}
+     */
+    public static SenderCache getDefault() {
+        return defaultInstance;
+    }
+
+    private Map<ByteArrayWrapper, byte[]> segment(byte[] txHash) {
+        return segments[(txHash[0] & 0xFF) % SEGMENTS];
+    }
+
+    /**
+     * @return the sender of the transaction, {@code null} if it's not cached
+     */
+    public byte[] get(byte[] txHash) {
+        byte[] ret = segment(txHash).get(new ByteArrayWrapper(txHash));
+        if (ret == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        return ret;
+    }
+
+    public void put(byte[] txHash, byte[] sender) {
+        segment(txHash).put(new ByteArrayWrapper(txHash), sender);
+    }
+
+    public int size() {
+        int ret = 0;
+        for (Map<ByteArrayWrapper, byte[]> segment : segments) {
+            ret += segment.size();
+        }
+        return ret;
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * @return number of {@link #get} calls which found no sender, i.e. the
+     * number of signatures recovered
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * @return share of the {@link #get} calls answered from the cache,
+     * 0 if there were none
+     */
+    public double getHitRate() {
+        long hits = getHitCount();
+        long total = hits + getMissCount();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+}
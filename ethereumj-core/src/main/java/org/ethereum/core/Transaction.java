@@ -380,7 +380,12 @@ public class Transaction {
     public synchronized byte[] getSender() {
         try {
             if (sendAddress == null && getSignature() != null) {
-                sendAddress = ECKey.signatureToAddress(getRawHash(), getSignature());
+                SenderCache senders = SenderCache.getDefault();
+                sendAddress = senders.get(getHash());
+                if (sendAddress == null) {
+                    sendAddress = ECKey.signatureToAddress(getRawHash(), getSignature());
+                    senders.put(getHash(), sendAddress);
+                }
             }
             return sendAddress;
         } catch (SignatureException e) {
@@ -404,6 +409,7 @@ public class Transaction {
     public void sign(ECKey key) throws MissingPrivateKeyException {
         this.signature = key.sign(this.getRawHash());
         this.rlpEncoded = null;
+        this.hash = null;
     }
 
     @Override
@@ -87,6 +87,7 @@ public class TransactionExecutor {
     private ByteArraySet touchedAccounts = new ByteArraySet();
 
     boolean localCall = false;
+    boolean minerFeeDeferred = false;
 
     public TransactionExecutor(Transaction tx, byte[] coinbase, Repository track, BlockStore blockStore,
                                ProgramInvokeFactory programInvokeFactory, Block currentBlock) {
@@ -207,7 +208,8 @@ public class TransactionExecutor {
         if (!readyToExecute) return;
 
         byte[] targetAddress = tx.getReceiveAddress();
-        precompiledContract = PrecompiledContracts.getContractForAddress(new DataWord(targetAddress), blockchainConfig);
+        precompiledContract = PrecompiledContracts.getContractForAddress(new DataWord(targetAddress), blockchainConfig,
+                config);
 
         if (precompiledContract != null) {
             long requiredGas = precompiledContract.getGasForData(tx.getData());
@@ -428,9 +430,11 @@ public class TransactionExecutor {
         logger.info("Pay total refund to sender: [{}], refund val: [{}]", toHexString(tx.getSender()), summary.getRefund());
 
         // Transfer fees to miner
-        track.addBalance(coinbase, summary.getFee());
-        touchedAccounts.add(coinbase);
-        logger.info("Pay fees to miner: [{}], feesEarned: [{}]", toHexString(coinbase), summary.getFee());
+        if (!minerFeeDeferred) {
+            track.addBalance(coinbase, summary.getFee());
+            touchedAccounts.add(coinbase);
+            logger.info("Pay fees to miner: [{}], feesEarned: [{}]", toHexString(coinbase), summary.getFee());
+        }
 
         if (result != null) {
             logs = result.getLogInfoList();
@@ -475,6 +479,30 @@ public class TransactionExecutor {
         return this;
     }
 
+    /**
+     * Leaves the transfer of the fee to the miner out of {@link #finalization()},
+     * so that the transaction doesn't depend on the miner balance. The caller pays
+     * it later with {@link #payMinerFee(TransactionExecutionSummary)}, which ends up
+     * in the same state as long as the transaction hasn't touched the miner account
+     * otherwise
+     */
+    public TransactionExecutor setMinerFeeDeferred(boolean minerFeeDeferred) {
+        this.minerFeeDeferred = minerFeeDeferred;
+        return this;
+    }
+
+    public void payMinerFee(TransactionExecutionSummary summary) {
+        track.addBalance(coinbase, summary.getFee());
+        logger.info("Pay fees to miner: [{}], feesEarned: [{}]", toHexString(coinbase), summary.getFee());
+
+        if (blockchainConfig.eip161()) {
+            AccountState state = track.getAccountState(coinbase);
+            if (state != null && state.isEmpty()) {
+                track.delete(coinbase);
+            }
+        }
+    }
+
 
     public TransactionReceipt getReceipt() {
         if (receipt == null) {
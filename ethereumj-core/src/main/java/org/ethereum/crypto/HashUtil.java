@@ -18,6 +18,7 @@
 package org.ethereum.crypto;
 
 import org.ethereum.config.SystemProperties;
+import org.ethereum.crypto.cryptohash.FastKeccak256;
 import org.ethereum.crypto.jce.SpongyCastleProvider;
 import org.ethereum.util.RLP;
 import org.ethereum.util.Utils;
@@ -27,6 +28,7 @@ import org.spongycastle.crypto.Digest;
 import org.spongycastle.crypto.digests.RIPEMD160Digest;
 import org.spongycastle.util.encoders.Hex;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.Provider;
@@ -49,12 +51,17 @@ public class HashUtil {
     private static final String HASH_256_ALGORITHM_NAME;
     private static final String HASH_512_ALGORITHM_NAME;
 
+    // the default ETH-KECCAK-256 of the default provider is computed by FastKeccak256
+    private static final boolean FAST_KECCAK_256;
+
     static {
         SystemProperties props = SystemProperties.getDefault();
         Security.addProvider(SpongyCastleProvider.getInstance());
         CRYPTO_PROVIDER = Security.getProvider(props.getCryptoProviderName());
         HASH_256_ALGORITHM_NAME = props.getHash256AlgName();
         HASH_512_ALGORITHM_NAME = props.getHash512AlgName();
+        FAST_KECCAK_256 = "ETH-KECCAK-256".equals(HASH_256_ALGORITHM_NAME) &&
+                CRYPTO_PROVIDER == SpongyCastleProvider.getInstance();
         EMPTY_DATA_HASH = sha3(EMPTY_BYTE_ARRAY);
         EMPTY_LIST_HASH = sha3(RLP.encodeList());
         EMPTY_TRIE_HASH = sha3(RLP.encodeElement(EMPTY_BYTE_ARRAY));
@@ -76,6 +83,8 @@ public class HashUtil {
     }
 
     public static byte[] sha3(byte[] input) {
+        if (FAST_KECCAK_256) return FastKeccak256.hash(input);
+
         MessageDigest digest;
         try {
             digest = MessageDigest.getInstance(HASH_256_ALGORITHM_NAME, CRYPTO_PROVIDER);
@@ -89,6 +98,8 @@ public class HashUtil {
     }
 
     public static byte[] sha3(byte[] input1, byte[] input2) {
+        if (FAST_KECCAK_256) return FastKeccak256.getLocal().update(input1).update(input2).digest();
+
         MessageDigest digest;
         try {
             digest = MessageDigest.getInstance(HASH_256_ALGORITHM_NAME, CRYPTO_PROVIDER);
@@ -113,6 +124,8 @@ public class HashUtil {
      * @return - keccak hash of the chunk
      */
     public static byte[] sha3(byte[] input, int start, int length) {
+        if (FAST_KECCAK_256) return FastKeccak256.hash(input, start, length);
+
         MessageDigest digest;
         try {
             digest = MessageDigest.getInstance(HASH_256_ALGORITHM_NAME, CRYPTO_PROVIDER);
@@ -124,6 +137,48 @@ public class HashUtil {
         }
     }
 
+    /**
+     * hashing chunk of the data into the given array
+     *
+     * @param input
+     *            - data for hash
+     * @param start
+     *            - start of hashing chunk
+     * @param length
+     *            - length of hashing chunk
+     * @param output
+     *            - array for the 32 bytes of the hash
+     * @param outOffset
+     *            - where the hash starts in the output
+     */
+    public static void sha3(byte[] input, int start, int length, byte[] output, int outOffset) {
+        if (FAST_KECCAK_256) {
+            FastKeccak256.hash(input, start, length, output, outOffset);
+        } else {
+            System.arraycopy(sha3(input, start, length), 0, output, outOffset, 32);
+        }
+    }
+
+    /**
+     * @param input
+     *            - data for hash, the remaining bytes are hashed and the
+     *            position is moved to the limit
+     * @return - keccak hash of the data
+     */
+    public static byte[] sha3(ByteBuffer input) {
+        if (FAST_KECCAK_256) return FastKeccak256.getLocal().update(input).digest();
+
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance(HASH_256_ALGORITHM_NAME, CRYPTO_PROVIDER);
+            digest.update(input);
+            return digest.digest();
+        } catch (NoSuchAlgorithmException e) {
+            LOG.error("Can't find such algorithm", e);
+            throw new RuntimeException(e);
+        }
+    }
+
     public static byte[] sha512(byte[] input) {
         MessageDigest digest;
         try {
@@ -0,0 +1,326 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.crypto.cryptohash;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Keccak-256 as used by Ethereum, same output as {@link Keccak256}, without
+ * the JCA lookup and the generic digest engine on every hash.
+ *
+ * The permutation keeps the 25 lanes in locals with the steps of a round
+ * fully unrolled, the input is absorbed straight from the caller's array or
+ * buffer, a block at a time, and the hash can be written into the caller's
+ * array. The static methods reuse a state per thread.
+ *
+ * An instance is not thread safe.
+ */
+public final class FastKeccak256 {
+
+    public static final int DIGEST_LENGTH = 32;
+
+    // 1600 - 2 * 256 bits
+    private static final int RATE = 136;
+    private static final int RATE_LANES = RATE / 8;
+
+    private static final long[] RC = {
+            0x0000000000000001L, 0x0000000000008082L, 0x800000000000808AL, 0x8000000080008000L,
+            0x000000000000808BL, 0x0000000080000001L, 0x8000000080008081L, 0x8000000000008009L,
+            0x000000000000008AL, 0x0000000000000088L, 0x0000000080008009L, 0x000000008000000AL,
+            0x000000008000808BL, 0x800000000000008BL, 0x8000000000008089L, 0x8000000000008003L,
+            0x8000000000008002L, 0x8000000000000080L, 0x000000000000800AL, 0x800000008000000AL,
+            0x8000000080008081L, 0x8000000000008080L, 0x0000000080000001L, 0x8000000080008008L
+    };
+
+    private static final VarHandle LANES = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private static final ThreadLocal<FastKeccak256> local = ThreadLocal.withInitial(FastKeccak256::new);
+
+    private final long[] state = new long[25];
+    // the input not absorbed yet, less than a block
+    private final byte[] block = new byte[RATE];
+    private int blockLength;
+
+    /**
+     * @return the state of the current thread, reset
+     */
+    public static FastKeccak256 getLocal() {
+        return local.get().reset();
+    }
+
+    public static byte[] hash(byte[] input) {
+        return hash(input, 0, input.length);
+    }
+
+    public static byte[] hash(byte[] input, int offset, int length) {
+        byte[] ret = new byte[DIGEST_LENGTH];
+        hash(input, offset, length, ret, 0);
+        return ret;
+    }
+
+    /**
+     * Writes the hash of {@code length} bytes of {@code input} from
+     * {@code offset} into {@code output} at {@code outOffset}
+     */
+    public static void hash(byte[] input, int offset, int length, byte[] output, int outOffset) {
+        getLocal().update(input, offset, length).digest(output, outOffset);
+    }
+
+    /**
+     * Writes the hash of the remaining bytes of {@code input} into
+     * {@code output} at {@code outOffset}, the buffer position is moved to
+     * its limit
+     */
+    public static void hash(ByteBuffer input, byte[] output, int outOffset) {
+        getLocal().update(input).digest(output, outOffset);
+    }
+
+    public FastKeccak256 reset() {
+        Arrays.fill(state, 0);
+        blockLength = 0;
+        return this;
+    }
+
+    public FastKeccak256 update(byte[] input) {
+        return update(input, 0, input.length);
+    }
+
+    public FastKeccak256 update(byte[] input, int offset, int length) {
+        Objects.checkFromIndexSize(offset, length, input.length);
+
+        if (blockLength > 0) {
+            int n = Math.min(length, RATE - blockLength);
+            System.arraycopy(input, offset, block, blockLength, n);
+            blockLength += n;
+            offset += n;
+            length -= n;
+            if (blockLength < RATE) return this;
+            absorb(block, 0);
+            blockLength = 0;
+        }
+        while (length >= RATE) {
+            absorb(input, offset);
+            offset += RATE;
+            length -= RATE;
+        }
+        if (length > 0) {
+            System.arraycopy(input, offset, block, 0, length);
+            blockLength = length;
+        }
+        return this;
+    }
+
+    /**
+     * Hashes the remaining bytes of the buffer and moves its position to
+     * the limit. Heap buffers are hashed from the backing array, whole
+     * blocks of direct buffers are read lane by lane.
+     */
+    public FastKeccak256 update(ByteBuffer input) {
+        if (input.hasArray()) {
+            update(input.array(), input.arrayOffset() + input.position(), input.remaining());
+            input.position(input.limit());
+            return this;
+        }
+
+        ByteBuffer lanes = input.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        while (input.hasRemaining()) {
+            if (blockLength == 0 && input.remaining() >= RATE) {
+                int pos = input.position();
+                for (int i = 0; i < RATE_LANES; i++) {
+                    state[i] ^= lanes.getLong(pos + i * 8);
+                }
+                permute(state);
+                input.position(pos + RATE);
+            } else {
+                int n = Math.min(input.remaining(), RATE - blockLength);
+                input.get(block, blockLength, n);
+                blockLength += n;
+                if (blockLength == RATE) {
+                    absorb(block, 0);
+                    blockLength = 0;
+                }
+            }
+        }
+        return this;
+    }
+
+    public byte[] digest() {
+        byte[] ret = new byte[DIGEST_LENGTH];
+        digest(ret, 0);
+        return ret;
+    }
+
+    /**
+     * Pads the input, writes the hash into {@code output} at
+     * {@code outOffset} and resets the state
+     */
+    public void digest(byte[] output, int outOffset) {
+        Objects.checkFromIndexSize(outOffset, DIGEST_LENGTH, output.length);
+
+        // original Keccak padding: 0x01, zeroes, 0x80 in the last byte of the block
+        Arrays.fill(block, blockLength, RATE, (byte) 0);
+        block[blockLength] = 0x01;
+        block[RATE - 1] |= (byte) 0x80;
+        absorb(block, 0);
+
+        for (int i = 0; i < DIGEST_LENGTH / 8; i++) {
+            LANES.set(output, outOffset + i * 8, state[i]);
+        }
+        reset();
+    }
+
+    private void absorb(byte[] input, int offset) {
+        long[] s = state;
+        for (int i = 0; i < RATE_LANES; i++) {
+            s[i] ^= (long) LANES.get(input, offset + i * 8);
+        }
+        permute(s);
+    }
+
+    /**
+     * Keccak-f[1600], lane x, y of the state is a[x + 5 * y]
+     */
+    private static void permute(long[] s) {
+        long a00 = s[0];
+        long a01 = s[1];
+        long a02 = s[2];
+        long a03 = s[3];
+        long a04 = s[4];
+        long a05 = s[5];
+        long a06 = s[6];
+        long a07 = s[7];
+        long a08 = s[8];
+        long a09 = s[9];
+        long a10 = s[10];
+        long a11 = s[11];
+        long a12 = s[12];
+        long a13 = s[13];
+        long a14 = s[14];
+        long a15 = s[15];
+        long a16 = s[16];
+        long a17 = s[17];
+        long a18 = s[18];
+        long a19 = s[19];
+        long a20 = s[20];
+        long a21 = s[21];
+        long a22 = s[22];
+        long a23 = s[23];
+        long a24 = s[24];
+
+        for (int round = 0; round < 24; round++) {
+            long c0 = a00 ^ a05 ^ a10 ^ a15 ^ a20;
+            long c1 = a01 ^ a06 ^ a11 ^ a16 ^ a21;
+            long c2 = a02 ^ a07 ^ a12 ^ a17 ^ a22;
+            long c3 = a03 ^ a08 ^ a13 ^ a18 ^ a23;
+            long c4 = a04 ^ a09 ^ a14 ^ a19 ^ a24;
+            long d0 = c4 ^ Long.rotateLeft(c1, 1);
+            long d1 = c0 ^ Long.rotateLeft(c2, 1);
+            long d2 = c1 ^ Long.rotateLeft(c3, 1);
+            long d3 = c2 ^ Long.rotateLeft(c4, 1);
+            long d4 = c3 ^ Long.rotateLeft(c0, 1);
+
+            // theta, rho and pi
+            long b00 = a00 ^ d0;
+            long b01 = Long.rotateLeft(a06 ^ d1, 44);
+            long b02 = Long.rotateLeft(a12 ^ d2, 43);
+            long b03 = Long.rotateLeft(a18 ^ d3, 21);
+            long b04 = Long.rotateLeft(a24 ^ d4, 14);
+            long b05 = Long.rotateLeft(a03 ^ d3, 28);
+            long b06 = Long.rotateLeft(a09 ^ d4, 20);
+            long b07 = Long.rotateLeft(a10 ^ d0, 3);
+            long b08 = Long.rotateLeft(a16 ^ d1, 45);
+            long b09 = Long.rotateLeft(a22 ^ d2, 61);
+            long b10 = Long.rotateLeft(a01 ^ d1, 1);
+            long b11 = Long.rotateLeft(a07 ^ d2, 6);
+            long b12 = Long.rotateLeft(a13 ^ d3, 25);
+            long b13 = Long.rotateLeft(a19 ^ d4, 8);
+            long b14 = Long.rotateLeft(a20 ^ d0, 18);
+            long b15 = Long.rotateLeft(a04 ^ d4, 27);
+            long b16 = Long.rotateLeft(a05 ^ d0, 36);
+            long b17 = Long.rotateLeft(a11 ^ d1, 10);
+            long b18 = Long.rotateLeft(a17 ^ d2, 15);
+            long b19 = Long.rotateLeft(a23 ^ d3, 56);
+            long b20 = Long.rotateLeft(a02 ^ d2, 62);
+            long b21 = Long.rotateLeft(a08 ^ d3, 55);
+            long b22 = Long.rotateLeft(a14 ^ d4, 39);
+            long b23 = Long.rotateLeft(a15 ^ d0, 41);
+            long b24 = Long.rotateLeft(a21 ^ d1, 2);
+
+            // chi
+            a00 = b00 ^ (~b01 & b02);
+            a01 = b01 ^ (~b02 & b03);
+            a02 = b02 ^ (~b03 & b04);
+            a03 = b03 ^ (~b04 & b00);
+            a04 = b04 ^ (~b00 & b01);
+            a05 = b05 ^ (~b06 & b07);
+            a06 = b06 ^ (~b07 & b08);
+            a07 = b07 ^ (~b08 & b09);
+            a08 = b08 ^ (~b09 & b05);
+            a09 = b09 ^ (~b05 & b06);
+            a10 = b10 ^ (~b11 & b12);
+            a11 = b11 ^ (~b12 & b13);
+            a12 = b12 ^ (~b13 & b14);
+            a13 = b13 ^ (~b14 & b10);
+            a14 = b14 ^ (~b10 & b11);
+            a15 = b15 ^ (~b16 & b17);
+            a16 = b16 ^ (~b17 & b18);
+            a17 = b17 ^ (~b18 & b19);
+            a18 = b18 ^ (~b19 & b15);
+            a19 = b19 ^ (~b15 & b16);
+            a20 = b20 ^ (~b21 & b22);
+            a21 = b21 ^ (~b22 & b23);
+            a22 = b22 ^ (~b23 & b24);
+            a23 = b23 ^ (~b24 & b20);
+            a24 = b24 ^ (~b20 & b21);
+
+            // iota
+            a00 ^= RC[round];
+        }
+
+        s[0] = a00;
+        s[1] = a01;
+        s[2] = a02;
+        s[3] = a03;
+        s[4] = a04;
+        s[5] = a05;
+        s[6] = a06;
+        s[7] = a07;
+        s[8] = a08;
+        s[9] = a09;
+        s[10] = a10;
+        s[11] = a11;
+        s[12] = a12;
+        s[13] = a13;
+        s[14] = a14;
+        s[15] = a15;
+        s[16] = a16;
+        s[17] = a17;
+        s[18] = a18;
+        s[19] = a19;
+        s[20] = a20;
+        s[21] = a21;
+        s[22] = a22;
+        s[23] = a23;
+        s[24] = a24;
+    }
+}
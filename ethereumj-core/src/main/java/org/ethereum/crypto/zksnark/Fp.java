@@ -22,52 +22,256 @@ import java.math.BigInteger;
 import static org.ethereum.crypto.zksnark.Params.P;
 
 /**
- * Arithmetic in F_p, p = 21888242871839275222246405745257275088696311157297823662689037894645226208583
+ * Arithmetic in F_p, p = 21888242871839275222246405745257275088696311157297823662689037894645226208583 <br/>
+ * <br/>
+ *
+ * Values are kept in Montgomery form, {@code v * 2^256 mod p}, as four 64-bit limbs, least significant first,
+ * so that arithmetic doesn't allocate anything but the result and multiplication needs no division <br/>
+ * A value read from the input which is not less than "p" is kept as is and is not valid, see {@link #isValid()}
  *
  * @author Mikhail Kalinin
  * @since 01.09.2017
  */
 public class Fp implements Field<Fp> {
 
-    static final Fp ZERO = new Fp(BigInteger.ZERO);
-    static final Fp _1 = new Fp(BigInteger.ONE);
-    static final Fp NON_RESIDUE = new Fp(new BigInteger("21888242871839275222246405745257275088696311157297823662689037894645226208582"));
+    // limbs of p
+    private static final long P0 = 0x3c208c16d87cfd47L;
+    private static final long P1 = 0x97816a916871ca8dL;
+    private static final long P2 = 0xb85045b68181585dL;
+    private static final long P3 = 0x30644e72e131a029L;
+
+    // -p^-1 mod 2^64
+    private static final long P_INV = 0x87d20782e4866389L;
+
+    // limbs of 2^512 mod p, converts to Montgomery form
+    private static final long R2_0 = 0xf32cfc5b538afa89L;
+    private static final long R2_1 = 0xb5e71911d44501fbL;
+    private static final long R2_2 = 0x47ab1eff0a417ff6L;
+    private static final long R2_3 = 0x06d89f71cab8351fL;
+
+    static final Fp ZERO = new Fp(0, 0, 0, 0);
+    static final Fp _1 = create(BigInteger.ONE);
+    static final Fp NON_RESIDUE = create(new BigInteger("21888242871839275222246405745257275088696311157297823662689037894645226208582"));
+
+    static final Fp _2_INV = create(BigInteger.valueOf(2).modInverse(P));
+
+    final long v0, v1, v2, v3;
+
+    private Fp(long v0, long v1, long v2, long v3) {
+        this.v0 = v0;
+        this.v1 = v1;
+        this.v2 = v2;
+        this.v3 = v3;
+    }
+
+    @Override
+    public Fp add(Fp o) {
+        long r0 = v0 + o.v0;
+        long c = carry(r0, v0);
+        long r1 = v1 + o.v1 + c;
+        c = carry(r1, v1, c);
+        long r2 = v2 + o.v2 + c;
+        c = carry(r2, v2, c);
+        // p < 2^254, no carry out of the top limb
+        long r3 = v3 + o.v3 + c;
+        return reduce(r0, r1, r2, r3);
+    }
 
-    static final Fp _2_INV = new Fp(BigInteger.valueOf(2).modInverse(P));
+    @Override
+    public Fp sub(Fp o) {
+        long r0 = v0 - o.v0;
+        long b = borrow(v0, o.v0, 0);
+        long r1 = v1 - o.v1 - b;
+        b = borrow(v1, o.v1, b);
+        long r2 = v2 - o.v2 - b;
+        b = borrow(v2, o.v2, b);
+        long r3 = v3 - o.v3 - b;
+        b = borrow(v3, o.v3, b);
 
-    BigInteger v;
+        if (b == 0) return new Fp(r0, r1, r2, r3);
 
-    Fp(BigInteger v) { this.v = v; }
+        // add p back
+        long s0 = r0 + P0;
+        long c = carry(s0, r0);
+        long s1 = r1 + P1 + c;
+        c = carry(s1, r1, c);
+        long s2 = r2 + P2 + c;
+        c = carry(s2, r2, c);
+        long s3 = r3 + P3 + c;
+        return new Fp(s0, s1, s2, s3);
+    }
 
-    @Override public Fp add(Fp o) { return new Fp(this.v.add(o.v).mod(P)); }
-    @Override public Fp mul(Fp o) { return new Fp(this.v.multiply(o.v).mod(P)); }
-    @Override public Fp sub(Fp o) { return new Fp(this.v.subtract(o.v).mod(P)); }
-    @Override public Fp squared() { return new Fp(v.multiply(v).mod(P)); }
-    @Override public Fp dbl() { return new Fp(v.add(v).mod(P)); }
-    @Override public Fp inverse() { return new Fp(v.modInverse(P)); }
-    @Override public Fp negate() { return new Fp(v.negate().mod(P)); }
-    @Override public boolean isZero() { return v.compareTo(BigInteger.ZERO) == 0; }
+    @Override public Fp mul(Fp o) { return mul(v0, v1, v2, v3, o.v0, o.v1, o.v2, o.v3); }
+    @Override public Fp squared() { return mul(v0, v1, v2, v3, v0, v1, v2, v3); }
+    @Override public Fp dbl() { return add(this); }
+    @Override public Fp inverse() { return create(toBigInteger().modInverse(P)); }
+    @Override public Fp negate() { return ZERO.sub(this); }
+    @Override public boolean isZero() { return (v0 | v1 | v2 | v3) == 0; }
 
     /**
      * Checks if provided value is a valid Fp member
      */
     @Override
     public boolean isValid() {
-        return v.compareTo(P) < 0;
+        return lessThanP(v0, v1, v2, v3);
     }
 
     Fp2 mul(Fp2 o) { return new Fp2(o.a.mul(this), o.b.mul(this)); }
 
     static Fp create(byte[] v) {
-        return new Fp(new BigInteger(1, v));
+        if (v.length > 32) return create(new BigInteger(1, v));
+
+        long[] limbs = new long[4];
+        for (int i = 0; i < v.length; i++) {
+            int pos = v.length - 1 - i;
+            limbs[i / 8] |= (v[pos] & 0xFFL) << (i % 8 * 8);
+        }
+        return create(limbs[0], limbs[1], limbs[2], limbs[3]);
     }
 
     static Fp create(BigInteger v) {
-        return new Fp(v);
+
+        // not a member, isValid() fails on anything not less than p
+        if (v.signum() < 0 || v.bitLength() > 256) return new Fp(-1, -1, -1, -1);
+
+        return create(v.longValue(), v.shiftRight(64).longValue(),
+                v.shiftRight(128).longValue(), v.shiftRight(192).longValue());
+    }
+
+    private static Fp create(long l0, long l1, long l2, long l3) {
+
+        // compared by limbs, the constants are created before Params is initialized
+        if (lessThanP(l0, l1, l2, l3)) {
+            return mul(l0, l1, l2, l3, R2_0, R2_1, R2_2, R2_3);
+        } else {
+            return new Fp(l0, l1, l2, l3);
+        }
+    }
+
+    BigInteger toBigInteger() {
+        Fp v = isValid() ? mul(v0, v1, v2, v3, 1, 0, 0, 0) : this;
+
+        byte[] bytes = new byte[33];
+        long[] limbs = {v.v3, v.v2, v.v1, v.v0};
+        for (int i = 0; i < 4; i++) {
+            for (int j = 0; j < 8; j++) {
+                bytes[1 + i * 8 + j] = (byte) (limbs[i] >>> (56 - j * 8));
+            }
+        }
+        return new BigInteger(bytes);
     }
 
     public byte[] bytes() {
-        return v.toByteArray();
+        return toBigInteger().toByteArray();
+    }
+
+    /**
+     * Montgomery multiplication, a * b / 2^256 mod p, interleaving the
+     * product with the reduction a limb of b at a time
+     */
+    private static Fp mul(long a0, long a1, long a2, long a3, long b0, long b1, long b2, long b3) {
+        long t0 = 0, t1 = 0, t2 = 0, t3 = 0, t4 = 0, t5;
+        long lo, hi, c, m;
+
+        // t += a * b0
+        lo = a0 * b0; hi = mulHi(a0, b0); lo += t0; hi += carry(lo, t0); t0 = lo; c = hi;
+        lo = a1 * b0; hi = mulHi(a1, b0); lo += t1; hi += carry(lo, t1); lo += c; hi += carry(lo, c); t1 = lo; c = hi;
+        lo = a2 * b0; hi = mulHi(a2, b0); lo += t2; hi += carry(lo, t2); lo += c; hi += carry(lo, c); t2 = lo; c = hi;
+        lo = a3 * b0; hi = mulHi(a3, b0); lo += t3; hi += carry(lo, t3); lo += c; hi += carry(lo, c); t3 = lo; c = hi;
+        t4 += c; t5 = carry(t4, c);
+        // t = (t + m * P) / 2^64
+        m = t0 * P_INV;
+        lo = m * P0; hi = mulHi(m, P0); lo += t0; hi += carry(lo, t0); c = hi;
+        lo = m * P1; hi = mulHi(m, P1); lo += t1; hi += carry(lo, t1); lo += c; hi += carry(lo, c); t0 = lo; c = hi;
+        lo = m * P2; hi = mulHi(m, P2); lo += t2; hi += carry(lo, t2); lo += c; hi += carry(lo, c); t1 = lo; c = hi;
+        lo = m * P3; hi = mulHi(m, P3); lo += t3; hi += carry(lo, t3); lo += c; hi += carry(lo, c); t2 = lo; c = hi;
+        t3 = t4 + c; t4 = t5 + carry(t3, c);
+
+        // t += a * b1
+        lo = a0 * b1; hi = mulHi(a0, b1); lo += t0; hi += carry(lo, t0); t0 = lo; c = hi;
+        lo = a1 * b1; hi = mulHi(a1, b1); lo += t1; hi += carry(lo, t1); lo += c; hi += carry(lo, c); t1 = lo; c = hi;
+        lo = a2 * b1; hi = mulHi(a2, b1); lo += t2; hi += carry(lo, t2); lo += c; hi += carry(lo, c); t2 = lo; c = hi;
+        lo = a3 * b1; hi = mulHi(a3, b1); lo += t3; hi += carry(lo, t3); lo += c; hi += carry(lo, c); t3 = lo; c = hi;
+        t4 += c; t5 = carry(t4, c);
+        // t = (t + m * P) / 2^64
+        m = t0 * P_INV;
+        lo = m * P0; hi = mulHi(m, P0); lo += t0; hi += carry(lo, t0); c = hi;
+        lo = m * P1; hi = mulHi(m, P1); lo += t1; hi += carry(lo, t1); lo += c; hi += carry(lo, c); t0 = lo; c = hi;
+        lo = m * P2; hi = mulHi(m, P2); lo += t2; hi += carry(lo, t2); lo += c; hi += carry(lo, c); t1 = lo; c = hi;
+        lo = m * P3; hi = mulHi(m, P3); lo += t3; hi += carry(lo, t3); lo += c; hi += carry(lo, c); t2 = lo; c = hi;
+        t3 = t4 + c; t4 = t5 + carry(t3, c);
+
+        // t += a * b2
+        lo = a0 * b2; hi = mulHi(a0, b2); lo += t0; hi += carry(lo, t0); t0 = lo; c = hi;
+        lo = a1 * b2; hi = mulHi(a1, b2); lo += t1; hi += carry(lo, t1); lo += c; hi += carry(lo, c); t1 = lo; c = hi;
+        lo = a2 * b2; hi = mulHi(a2, b2); lo += t2; hi += carry(lo, t2); lo += c; hi += carry(lo, c); t2 = lo; c = hi;
+        lo = a3 * b2; hi = mulHi(a3, b2); lo += t3; hi += carry(lo, t3); lo += c; hi += carry(lo, c); t3 = lo; c = hi;
+        t4 += c; t5 = carry(t4, c);
+        // t = (t + m * P) / 2^64
+        m = t0 * P_INV;
+        lo = m * P0; hi = mulHi(m, P0); lo += t0; hi += carry(lo, t0); c = hi;
+        lo = m * P1; hi = mulHi(m, P1); lo += t1; hi += carry(lo, t1); lo += c; hi += carry(lo, c); t0 = lo; c = hi;
+        lo = m * P2; hi = mulHi(m, P2); lo += t2; hi += carry(lo, t2); lo += c; hi += carry(lo, c); t1 = lo; c = hi;
+        lo = m * P3; hi = mulHi(m, P3); lo += t3; hi += carry(lo, t3); lo += c; hi += carry(lo, c); t2 = lo; c = hi;
+        t3 = t4 + c; t4 = t5 + carry(t3, c);
+
+        // t += a * b3
+        lo = a0 * b3; hi = mulHi(a0, b3); lo += t0; hi += carry(lo, t0); t0 = lo; c = hi;
+        lo = a1 * b3; hi = mulHi(a1, b3); lo += t1; hi += carry(lo, t1); lo += c; hi += carry(lo, c); t1 = lo; c = hi;
+        lo = a2 * b3; hi = mulHi(a2, b3); lo += t2; hi += carry(lo, t2); lo += c; hi += carry(lo, c); t2 = lo; c = hi;
+        lo = a3 * b3; hi = mulHi(a3, b3); lo += t3; hi += carry(lo, t3); lo += c; hi += carry(lo, c); t3 = lo; c = hi;
+        t4 += c; t5 = carry(t4, c);
+        // t = (t + m * P) / 2^64
+        m = t0 * P_INV;
+        lo = m * P0; hi = mulHi(m, P0); lo += t0; hi += carry(lo, t0); c = hi;
+        lo = m * P1; hi = mulHi(m, P1); lo += t1; hi += carry(lo, t1); lo += c; hi += carry(lo, c); t0 = lo; c = hi;
+        lo = m * P2; hi = mulHi(m, P2); lo += t2; hi += carry(lo, t2); lo += c; hi += carry(lo, c); t1 = lo; c = hi;
+        lo = m * P3; hi = mulHi(m, P3); lo += t3; hi += carry(lo, t3); lo += c; hi += carry(lo, c); t2 = lo; c = hi;
+        t3 = t4 + c; t4 = t5 + carry(t3, c);
+
+        // t < 2p
+        return reduce(t0, t1, t2, t3);
+    }
+
+    // subtracts p from a value less than 2p if it's needed
+    private static Fp reduce(long r0, long r1, long r2, long r3) {
+        if (lessThanP(r0, r1, r2, r3)) return new Fp(r0, r1, r2, r3);
+
+        long s0 = r0 - P0;
+        long b = borrow(r0, P0, 0);
+        long s1 = r1 - P1 - b;
+        b = borrow(r1, P1, b);
+        long s2 = r2 - P2 - b;
+        b = borrow(r2, P2, b);
+        long s3 = r3 - P3 - b;
+        return new Fp(s0, s1, s2, s3);
+    }
+
+    private static boolean lessThanP(long r0, long r1, long r2, long r3) {
+        if (r3 != P3) return Long.compareUnsigned(r3, P3) < 0;
+        if (r2 != P2) return Long.compareUnsigned(r2, P2) < 0;
+        if (r1 != P1) return Long.compareUnsigned(r1, P1) < 0;
+        return Long.compareUnsigned(r0, P0) < 0;
+    }
+
+    // high 64 bits of the unsigned product
+    private static long mulHi(long a, long b) {
+        return Math.multiplyHigh(a, b) + ((a >> 63) & b) + ((b >> 63) & a);
+    }
+
+    // carry of sum = addend + x
+    private static long carry(long sum, long addend) {
+        return Long.compareUnsigned(sum, addend) < 0 ? 1 : 0;
+    }
+
+    // carry of sum = addend + x + c
+    private static long carry(long sum, long addend, long c) {
+        return Long.compareUnsigned(sum, addend) < 0 || (c != 0 && sum == addend) ? 1 : 0;
+    }
+
+    // borrow of a - b - c
+    private static long borrow(long a, long b, long c) {
+        return Long.compareUnsigned(a, b) < 0 || (c != 0 && a == b) ? 1 : 0;
     }
 
     @Override
@@ -77,11 +281,11 @@ public class Fp implements Field<Fp> {
 
         Fp fp = (Fp) o;
 
-        return !(v != null ? v.compareTo(fp.v) != 0 : fp.v != null);
+        return v0 == fp.v0 && v1 == fp.v1 && v2 == fp.v2 && v3 == fp.v3;
     }
 
     @Override
     public String toString() {
-        return v.toString();
+        return toBigInteger().toString();
     }
 }
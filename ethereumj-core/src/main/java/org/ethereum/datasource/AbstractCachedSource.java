@@ -17,6 +17,8 @@
  */
 package org.ethereum.datasource;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * Abstract cache implementation which tracks the cache size with
  * supplied key and value MemSizeEstimator's
@@ -27,8 +29,6 @@ public abstract class AbstractCachedSource <Key, Value>
         extends AbstractChainedSource<Key, Value, Key, Value>
         implements CachedSource<Key, Value> {
 
-    private final Object lock = new Object();
-
     /**
      * Like the Optional interface represents either the value cached
      * or null cached (i.e. cache knows that underlying storage contain null)
@@ -49,7 +49,8 @@ public abstract class AbstractCachedSource <Key, Value>
 
     protected MemSizeEstimator<Key> keySizeEstimator;
     protected MemSizeEstimator<Value> valueSizeEstimator;
-    private int size = 0;
+    // updated by the threads sharing a concurrent cache without locking it as a whole
+    private final AtomicLong size = new AtomicLong();
 
     public AbstractCachedSource(Source<Key, Value> source) {
         super(source);
@@ -70,13 +71,11 @@ public abstract class AbstractCachedSource <Key, Value>
      * needs to be called first
      */
     protected void cacheAdded(Key key, Value value) {
-        synchronized (lock) {
-            if (keySizeEstimator != null) {
-                size += keySizeEstimator.estimateSize(key);
-            }
-            if (valueSizeEstimator != null) {
-                size += valueSizeEstimator.estimateSize(value);
-            }
+        if (keySizeEstimator != null) {
+            size.addAndGet(keySizeEstimator.estimateSize(key));
+        }
+        if (valueSizeEstimator != null) {
+            size.addAndGet(valueSizeEstimator.estimateSize(value));
         }
     }
 
@@ -84,13 +83,11 @@ public abstract class AbstractCachedSource <Key, Value>
      * Needs to be called by the implementation when cache entry is removed
      */
     protected void cacheRemoved(Key key, Value value) {
-        synchronized (lock) {
-            if (keySizeEstimator != null) {
-                size -= keySizeEstimator.estimateSize(key);
-            }
-            if (valueSizeEstimator != null) {
-                size -= valueSizeEstimator.estimateSize(value);
-            }
+        if (keySizeEstimator != null) {
+            size.addAndGet(-keySizeEstimator.estimateSize(key));
+        }
+        if (valueSizeEstimator != null) {
+            size.addAndGet(-valueSizeEstimator.estimateSize(value));
         }
     }
 
@@ -98,9 +95,7 @@ public abstract class AbstractCachedSource <Key, Value>
      * Needs to be called by the implementation when cache is cleared
      */
     protected void cacheCleared() {
-        synchronized (lock) {
-            size = 0;
-        }
+        size.set(0);
     }
 
     /**
@@ -114,6 +109,6 @@ public abstract class AbstractCachedSource <Key, Value>
 
     @Override
     public long estimateCacheSize() {
-        return size;
+        return size.get();
     }
 }
@@ -119,7 +119,7 @@ public abstract class AsyncWriteCache<Key, Value> extends AbstractCachedSource<K
         }
 
         try (ALock l = wLock.lock()) {
-            flushingCache.cache = curCache.cache;
+            flushingCache.takeCache(curCache);
             curCache = createCache(flushingCache);
         }
     }
@@ -20,11 +20,13 @@ package org.ethereum.datasource;
 import org.apache.commons.collections4.map.LRUMap;
 import org.ethereum.db.ByteArrayWrapper;
 import org.ethereum.util.ByteArrayMap;
+import org.ethereum.util.StripedMap;
 
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Caches entries get/updated and use LRU algo to purge them if the number
@@ -47,6 +49,9 @@ public class ReadCache<Key, Value> extends AbstractCachedSource<Key, Value> {
     private Map<Key, Value> cache;
     private boolean byteKeyMap;
 
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
     public ReadCache(Source<Key, Value> src) {
         super(src);
         withCache(new HashMap<Key, Value>());
@@ -61,6 +66,15 @@ public class ReadCache<Key, Value> extends AbstractCachedSource<Key, Value> {
         return this;
     }
 
+    /**
+     * Installs a thread safe cache Map implementation, which is used as is
+     */
+    protected ReadCache<Key, Value> withConcurrentCache(Map<Key, Value> cache, boolean byteKeyMap) {
+        this.byteKeyMap = byteKeyMap;
+        this.cache = cache;
+        return this;
+    }
+
     /**
      * Sets the max number of entries to cache
      */
@@ -68,12 +82,29 @@ public class ReadCache<Key, Value> extends AbstractCachedSource<Key, Value> {
         return withCache(new LRUMap<Key, Value>(maxCapacity) {
             @Override
             protected boolean removeLRU(LinkEntry<Key, Value> entry) {
-                cacheRemoved(entry.getKey(), entry.getValue());
+                cacheRemoved(entry.getKey(), unwrap(entry.getValue()));
                 return super.removeLRU(entry);
             }
         });
     }
 
+    /**
+     * Sets the max number of entries to cache split evenly between the
+     * given number of LRU segments by the key hash. Each segment has its own
+     * lock so that the threads reading through the cache rarely wait on each
+     * other, the least recently used entries are evicted per segment
+     */
+    public ReadCache<Key, Value> withMaxCapacity(int maxCapacity, int segments) {
+        int segmentCapacity = Math.max(1, maxCapacity / segments);
+        return withConcurrentCache(new StripedMap<>(segments, () -> new LRUMap<Key, Value>(segmentCapacity) {
+            @Override
+            protected boolean removeLRU(LinkEntry<Key, Value> entry) {
+                cacheRemoved(entry.getKey(), unwrap(entry.getValue()));
+                return super.removeLRU(entry);
+            }
+        }), false);
+    }
+
     // the guard against incorrect Map implementation for byte[] keys
     private boolean checked = false;
     private void checkByteArrKey(Key key) {
@@ -93,7 +124,10 @@ public class ReadCache<Key, Value> extends AbstractCachedSource<Key, Value> {
         if (val == null) {
             delete(key);
         } else {
-            cache.put(key, val);
+            Value old = cache.put(key, val);
+            if (old != null) {
+                cacheRemoved(key, unwrap(old));
+            }
             cacheAdded(key, val);
             getSource().put(key, val);
         }
@@ -104,12 +138,20 @@ public class ReadCache<Key, Value> extends AbstractCachedSource<Key, Value> {
         checkByteArrKey(key);
         Value ret = cache.get(key);
         if (ret == NULL) {
+            hits.incrementAndGet();
             return null;
         }
         if (ret == null) {
+            misses.incrementAndGet();
             ret = getSource().get(key);
-            cache.put(key, ret == null ? NULL : ret);
+            Value old = cache.put(key, ret == null ? NULL : ret);
+            // another thread could have read the same entry meanwhile
+            if (old != null) {
+                cacheRemoved(key, unwrap(old));
+            }
             cacheAdded(key, ret);
+        } else {
+            hits.incrementAndGet();
         }
         return ret;
     }
@@ -118,10 +160,42 @@ public class ReadCache<Key, Value> extends AbstractCachedSource<Key, Value> {
     public void delete(Key key) {
         checkByteArrKey(key);
         Value value = cache.remove(key);
-        cacheRemoved(key, value);
+        if (value != null) {
+            cacheRemoved(key, unwrap(value));
+        }
         getSource().delete(key);
     }
 
+    // the cached null marker is accounted as null by the size estimators
+    Value unwrap(Value value) {
+        return value == NULL ? null : value;
+    }
+
+    /**
+     * @return number of {@link #get} calls answered from the cache,
+     * including cached nulls
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * @return number of {@link #get} calls passed to the underlying source
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * @return share of the {@link #get} calls answered from the cache,
+     * 0 if there were none
+     */
+    public double getHitRate() {
+        long hits = getHitCount();
+        long total = hits + getMissCount();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
     @Override
     protected boolean flushImpl() {
         return false;
@@ -137,7 +211,7 @@ public class ReadCache<Key, Value> extends AbstractCachedSource<Key, Value> {
     }
 
     @Override
-    public synchronized Entry<Value> getCached(Key key) {
+    public Entry<Value> getCached(Key key) {
         Value value = cache.get(key);
         return value == null ? null : new SimpleEntry<>(value == NULL ? null : value);
     }
@@ -157,11 +231,23 @@ public class ReadCache<Key, Value> extends AbstractCachedSource<Key, Value> {
             withCache(new ByteArrayMap<V>(new LRUMap<ByteArrayWrapper, V>(maxCapacity) {
                 @Override
                 protected boolean removeLRU(LinkEntry<ByteArrayWrapper, V> entry) {
-                    cacheRemoved(entry.getKey().getData(), entry.getValue());
+                    cacheRemoved(entry.getKey().getData(), unwrap(entry.getValue()));
                     return super.removeLRU(entry);
                 }
             }));
             return this;
         }
+
+        public ReadCache.BytesKey<V> withMaxCapacity(int maxCapacity, int segments) {
+            int segmentCapacity = Math.max(1, maxCapacity / segments);
+            withConcurrentCache(new ByteArrayMap<V>(new StripedMap<>(segments, () -> new LRUMap<ByteArrayWrapper, V>(segmentCapacity) {
+                @Override
+                protected boolean removeLRU(LinkEntry<ByteArrayWrapper, V> entry) {
+                    cacheRemoved(entry.getKey().getData(), unwrap(entry.getValue()));
+                    return super.removeLRU(entry);
+                }
+            })), true);
+            return this;
+        }
     }
 }
@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.datasource;
+
+import org.ethereum.util.ALock;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * {@link WriteCache} split into several caches by the key hash, each with
+ * its own lock, so that the threads reading and writing different keys
+ * rarely wait on each other. A key always goes to the same segment, so
+ * the {@link CacheType#SIMPLE} and {@link CacheType#COUNTING} semantics are
+ * kept per key.
+ *
+ * The flush works like the flush of a single cache: it holds the update
+ * locks of all the segments, the reads go on while the writes wait for
+ * all the segments to be flushed.
+ */
+public class StripedWriteCache<Key, Value> extends WriteCache<Key, Value> {
+
+    private final WriteCache<Key, Value>[] segments;
+
+    @SuppressWarnings("unchecked")
+    public StripedWriteCache(Source<Key, Value> src, CacheType cacheType, int segmentCount) {
+        super(src, cacheType);
+        segments = new WriteCache[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = createSegment(src, cacheType);
+        }
+    }
+
+    protected WriteCache<Key, Value> createSegment(Source<Key, Value> src, CacheType cacheType) {
+        return new WriteCache<>(src, cacheType);
+    }
+
+    private WriteCache<Key, Value> segment(Key key) {
+        int h = key instanceof byte[] ? Arrays.hashCode((byte[]) key) : key.hashCode();
+        h ^= h >>> 16;
+        return segments[(h & 0x7FFFFFFF) % segments.length];
+    }
+
+    @Override
+    public AbstractCachedSource<Key, Value> withSizeEstimators(MemSizeEstimator<Key> keySizeEstimator,
+                                                              MemSizeEstimator<Value> valueSizeEstimator) {
+        for (WriteCache<Key, Value> segment : segments) {
+            segment.withSizeEstimators(keySizeEstimator, valueSizeEstimator);
+        }
+        return super.withSizeEstimators(keySizeEstimator, valueSizeEstimator);
+    }
+
+    @Override
+    void takeCache(WriteCache<Key, Value> other) {
+        WriteCache<Key, Value>[] otherSegments = ((StripedWriteCache<Key, Value>) other).segments;
+        for (int i = 0; i < segments.length; i++) {
+            segments[i].takeCache(otherSegments[i]);
+        }
+    }
+
+    @Override
+    public Collection<Key> getModified() {
+        List<Key> ret = new ArrayList<>();
+        for (WriteCache<Key, Value> segment : segments) {
+            try (ALock l = segment.readLock.lock()) {
+                ret.addAll(segment.cache.keySet());
+            }
+        }
+        return ret;
+    }
+
+    @Override
+    public boolean hasModified() {
+        for (WriteCache<Key, Value> segment : segments) {
+            if (segment.hasModified()) return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void put(Key key, Value val) {
+        segment(key).put(key, val);
+    }
+
+    @Override
+    public Value get(Key key) {
+        return segment(key).get(key);
+    }
+
+    @Override
+    public void delete(Key key) {
+        segment(key).delete(key);
+    }
+
+    @Override
+    public boolean flush() {
+        int locked = 0;
+        try {
+            for (; locked < segments.length; locked++) {
+                segments[locked].updateLock.lock();
+            }
+            boolean ret = false;
+            for (WriteCache<Key, Value> segment : segments) {
+                ret |= segment.flush();
+            }
+            if (flushSource) {
+                getSource().flush();
+            }
+            return ret;
+        } finally {
+            while (locked > 0) {
+                segments[--locked].updateLock.close();
+            }
+        }
+    }
+
+    @Override
+    public Entry<Value> getCached(Key key) {
+        return segment(key).getCached(key);
+    }
+
+    @Override
+    public long estimateCacheSize() {
+        long ret = 0;
+        for (WriteCache<Key, Value> segment : segments) {
+            ret += segment.estimateCacheSize();
+        }
+        return ret;
+    }
+
+    @Override
+    public long debugCacheSize() {
+        long ret = 0;
+        for (WriteCache<Key, Value> segment : segments) {
+            ret += segment.debugCacheSize();
+        }
+        return ret;
+    }
+
+    /**
+     * Shortcut for StripedWriteCache with byte[] keys
+     */
+    public static class BytesKey<V> extends StripedWriteCache<byte[], V> implements CachedSource.BytesKey<V> {
+
+        public BytesKey(Source<byte[], V> src, CacheType cacheType, int segmentCount) {
+            super(src, cacheType, segmentCount);
+        }
+
+        @Override
+        protected WriteCache<byte[], V> createSegment(Source<byte[], V> src, CacheType cacheType) {
+            return new WriteCache.BytesKey<>(src, cacheType);
+        }
+
+        /**
+         * @see WriteCache.BytesKey#withOffHeapCache(Serializer)
+         */
+        public StripedWriteCache.BytesKey<V> withOffHeapCache(Serializer<V, byte[]> valueSerializer) {
+            for (WriteCache<byte[], V> segment : ((StripedWriteCache<byte[], V>) this).segments) {
+                ((WriteCache.BytesKey<V>) segment).withOffHeapCache(valueSerializer);
+            }
+            return this;
+        }
+    }
+}
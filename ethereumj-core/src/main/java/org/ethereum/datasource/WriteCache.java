@@ -21,11 +21,16 @@ import com.googlecode.concurentlocks.ReadWriteUpdateLock;
 import com.googlecode.concurentlocks.ReentrantReadWriteUpdateLock;
 import org.ethereum.util.ALock;
 import org.ethereum.util.ByteArrayMap;
+import org.ethereum.util.OffHeapBytesMap;
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 
+import static org.ethereum.util.ByteUtil.EMPTY_BYTE_ARRAY;
+
 /**
  * Collects changes and propagate them to the backing Source when flush() is called
  *
@@ -139,6 +144,8 @@ public class WriteCache<Key, Value> extends AbstractCachedSource<Key, Value> {
     protected ALock updateLock = new ALock(rwuLock.updateLock());
 
     private boolean checked = false;
+    // the map keeps copies of the entries, which are put again when changed
+    private boolean entryCopies = false;
 
     public WriteCache(Source<Key, Value> src, CacheType cacheType) {
         super(src);
@@ -147,9 +154,19 @@ public class WriteCache<Key, Value> extends AbstractCachedSource<Key, Value> {
 
     public WriteCache<Key, Value> withCache(Map<Key, CacheEntry<Value>> cache) {
         this.cache = cache;
+        this.entryCopies = cache instanceof OffHeapBytesMap;
         return this;
     }
 
+    /**
+     * Makes the changes collected by the other cache of the same kind the
+     * changes of this cache, to be flushed while the other one collects new
+     * changes
+     */
+    void takeCache(WriteCache<Key, Value> other) {
+        cache = other.cache;
+    }
+
     @Override
     public Collection<Key> getModified() {
         try (ALock l = readLock.lock()){
@@ -181,18 +198,23 @@ public class WriteCache<Key, Value> extends AbstractCachedSource<Key, Value> {
 
         try (ALock l = writeLock.lock()){
             CacheEntry<Value> curVal = cache.get(key);
-            if (curVal == null) {
+            boolean created = curVal == null;
+            if (created) {
                 curVal = createCacheEntry(val);
+            }
+            // assigning for non-counting cache only
+            // for counting cache the value should be immutable (see HashedKeySource)
+            curVal.value = val;
+            curVal.added();
+            if (created) {
                 CacheEntry<Value> oldVal = cache.put(key, curVal);
                 if (oldVal != null) {
                     cacheRemoved(key, oldVal.value == unknownValue() ? null : oldVal.value);
                 }
                 cacheAdded(key, curVal.value);
+            } else if (entryCopies) {
+                cache.put(key, curVal);
             }
-            // assigning for non-counting cache only
-            // for counting cache the value should be immutable (see HashedKeySource)
-            curVal.value = val;
-            curVal.added();
         }
     }
 
@@ -219,15 +241,20 @@ public class WriteCache<Key, Value> extends AbstractCachedSource<Key, Value> {
         checkByteArrKey(key);
         try (ALock l = writeLock.lock()){
             CacheEntry<Value> curVal = cache.get(key);
-            if (curVal == null) {
+            boolean created = curVal == null;
+            if (created) {
                 curVal = createCacheEntry(getSource() == null ? null : unknownValue());
+            }
+            curVal.deleted();
+            if (created) {
                 CacheEntry<Value> oldVal = cache.put(key, curVal);
                 if (oldVal != null) {
                     cacheRemoved(key, oldVal.value);
                 }
                 cacheAdded(key, curVal.value == unknownValue() ? null : curVal.value);
+            } else if (entryCopies) {
+                cache.put(key, curVal);
             }
-            curVal.deleted();
         }
     }
 
@@ -286,13 +313,26 @@ public class WriteCache<Key, Value> extends AbstractCachedSource<Key, Value> {
         if (checked) return;
 
         if (key instanceof byte[]) {
-            if (!(cache instanceof ByteArrayMap)) {
+            if (!(cache instanceof ByteArrayMap || cache instanceof OffHeapBytesMap)) {
                 throw new RuntimeException("Wrong map/set for byte[] key");
             }
         }
         checked = true;
     }
 
+    /**
+     * @return the direct memory taken by the off-heap cache map,
+     * the estimated size otherwise
+     */
+    @Override
+    public long estimateCacheSize() {
+        Map<Key, CacheEntry<Value>> cache = this.cache;
+        if (cache instanceof OffHeapBytesMap) {
+            return ((OffHeapBytesMap<?>) cache).getMemorySize();
+        }
+        return super.estimateCacheSize();
+    }
+
     public long debugCacheSize() {
         long ret = 0;
         for (Map.Entry<Key, CacheEntry<Value>> entry : cache.entrySet()) {
@@ -312,5 +352,34 @@ public class WriteCache<Key, Value> extends AbstractCachedSource<Key, Value> {
             super(src, cacheType);
             withCache(new ByteArrayMap<CacheEntry<V>>());
         }
+
+        /**
+         * Keeps the changes outside of the Java heap, serialized with the
+         * supplied value serializer, see {@link OffHeapBytesMap}
+         */
+        public WriteCache.BytesKey<V> withOffHeapCache(Serializer<V, byte[]> valueSerializer) {
+            withCache(new OffHeapBytesMap<>(new Serializer<CacheEntry<V>, byte[]>() {
+                // counter followed by one of the kinds below and the value
+                private static final byte NULL = 0, UNKNOWN = 1, VALUE = 2;
+
+                @Override
+                public byte[] serialize(CacheEntry<V> entry) {
+                    byte kind = entry.value == CacheEntry.UNKNOWN_VALUE ? UNKNOWN : entry.value == null ? NULL : VALUE;
+                    byte[] value = kind == VALUE ? valueSerializer.serialize(entry.value) : EMPTY_BYTE_ARRAY;
+                    return ByteBuffer.allocate(5 + value.length).putInt(entry.counter).put(kind).put(value).array();
+                }
+
+                @Override
+                public CacheEntry<V> deserialize(byte[] stream) {
+                    byte kind = stream[4];
+                    V value = kind == VALUE ? valueSerializer.deserialize(Arrays.copyOfRange(stream, 5, stream.length)) :
+                            kind == UNKNOWN ? (V) CacheEntry.UNKNOWN_VALUE : null;
+                    CacheEntry<V> ret = ((WriteCache<byte[], V>) WriteCache.BytesKey.this).createCacheEntry(value);
+                    ret.counter = ByteBuffer.wrap(stream).getInt();
+                    return ret;
+                }
+            }));
+            return this;
+        }
     }
 }
@@ -96,6 +96,10 @@ public class DbFlushManager {
         sources.add(src);
     }
 
+    /**
+     * @return estimated size of the write caches, for the caches kept off
+     * the heap the direct memory they take
+     */
     public long getCacheSize() {
         long ret = 0;
         for (AbstractCachedSource<byte[], ?> writeCache : writeCaches) {
@@ -0,0 +1,422 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.db;
+
+import org.ethereum.core.AccountState;
+import org.ethereum.core.Block;
+import org.ethereum.core.Repository;
+import org.ethereum.util.ByteUtil;
+import org.ethereum.vm.DataWord;
+
+import javax.annotation.Nullable;
+import java.math.BigInteger;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Repository delegating all calls to a track and recording which parts of
+ * the state are read and written through it and through the tracks started
+ * from it.
+ *
+ * Several recording tracks over the same parent can be used from different
+ * threads as long as they share the same lock: every call to the delegate
+ * holds it, since the parent caches and the trie below aren't thread safe.
+ */
+public class RecordingRepository implements Repository {
+
+    /**
+     * The state keys accessed through the tracks: the account address for
+     * accounts (including the code), the account address followed by the
+     * row key for storage rows, and the address followed by a single zero
+     * byte for the storage root kept in the account.
+     * The record is shared by a track and its nested tracks, which are all
+     * used by a single thread.
+     */
+    public static class Record {
+        private final Set<ByteArrayWrapper> accessed = new HashSet<>();
+        private final Set<ByteArrayWrapper> written = new HashSet<>();
+        private boolean complete = true;
+
+        /**
+         * @return keys both read and written, except for the storage roots
+         * which are only written along with the rows, the rows written by
+         * different tracks give the same root in any order
+         */
+        public Set<ByteArrayWrapper> getAccessed() {
+            return accessed;
+        }
+
+        public Set<ByteArrayWrapper> getWritten() {
+            return written;
+        }
+
+        public boolean isAccessed(byte[] addr) {
+            return accessed.contains(new ByteArrayWrapper(addr));
+        }
+
+        /**
+         * @return false if the state was accessed in a way which can't be
+         * keyed, e.g. listed or dumped, in this case the sets don't cover
+         * all the accesses
+         */
+        public boolean isComplete() {
+            return complete;
+        }
+    }
+
+    private static final byte[] STORAGE_ROOT = {0};
+
+    private final Repository delegate;
+    private final Object lock;
+    private final Record record;
+
+    public RecordingRepository(Repository delegate, Object lock) {
+        this(delegate, lock, new Record());
+    }
+
+    private RecordingRepository(Repository delegate, Object lock, Record record) {
+        this.delegate = delegate;
+        this.lock = lock;
+        this.record = record;
+    }
+
+    public Record getRecord() {
+        return record;
+    }
+
+    private void read(byte[] addr) {
+        record.accessed.add(new ByteArrayWrapper(addr));
+    }
+
+    private void write(byte[] addr) {
+        ByteArrayWrapper key = new ByteArrayWrapper(addr);
+        record.accessed.add(key);
+        record.written.add(key);
+        // the account is saved with the storage root it was read with
+        record.accessed.add(storageRoot(addr));
+    }
+
+    private void unkeyed() {
+        record.complete = false;
+    }
+
+    private static ByteArrayWrapper storageKey(byte[] addr, DataWord key) {
+        return new ByteArrayWrapper(ByteUtil.merge(addr, key.getData()));
+    }
+
+    private static ByteArrayWrapper storageRoot(byte[] addr) {
+        return new ByteArrayWrapper(ByteUtil.merge(addr, STORAGE_ROOT));
+    }
+
+    @Override
+    public AccountState createAccount(byte[] addr) {
+        write(addr);
+        synchronized (lock) {
+            return delegate.createAccount(addr);
+        }
+    }
+
+    @Override
+    public boolean isExist(byte[] addr) {
+        read(addr);
+        synchronized (lock) {
+            return delegate.isExist(addr);
+        }
+    }
+
+    @Override
+    public AccountState getAccountState(byte[] addr) {
+        read(addr);
+        synchronized (lock) {
+            return delegate.getAccountState(addr);
+        }
+    }
+
+    @Override
+    public void delete(byte[] addr) {
+        write(addr);
+        synchronized (lock) {
+            delegate.delete(addr);
+        }
+    }
+
+    @Override
+    public BigInteger increaseNonce(byte[] addr) {
+        write(addr);
+        synchronized (lock) {
+            return delegate.increaseNonce(addr);
+        }
+    }
+
+    @Override
+    public BigInteger setNonce(byte[] addr, BigInteger nonce) {
+        write(addr);
+        synchronized (lock) {
+            return delegate.setNonce(addr, nonce);
+        }
+    }
+
+    @Override
+    public BigInteger getNonce(byte[] addr) {
+        read(addr);
+        synchronized (lock) {
+            return delegate.getNonce(addr);
+        }
+    }
+
+    /**
+     * The returned details access the storage of the delegate directly, so
+     * only the existence of the account is recorded. The execution uses them
+     * for the debug dumps only.
+     */
+    @Override
+    public ContractDetails getContractDetails(byte[] addr) {
+        read(addr);
+        synchronized (lock) {
+            return delegate.getContractDetails(addr);
+        }
+    }
+
+    @Override
+    public boolean hasContractDetails(byte[] addr) {
+        read(addr);
+        synchronized (lock) {
+            return delegate.hasContractDetails(addr);
+        }
+    }
+
+    @Override
+    public void saveCode(byte[] addr, byte[] code) {
+        write(addr);
+        synchronized (lock) {
+            delegate.saveCode(addr, code);
+        }
+    }
+
+    @Override
+    public byte[] getCode(byte[] addr) {
+        read(addr);
+        synchronized (lock) {
+            return delegate.getCode(addr);
+        }
+    }
+
+    @Override
+    public byte[] getCodeHash(byte[] addr) {
+        read(addr);
+        synchronized (lock) {
+            return delegate.getCodeHash(addr);
+        }
+    }
+
+    /**
+     * Writing a row only reads the account, unless it has to be created,
+     * so that transactions writing different rows of the same contract
+     * don't depend on each other. It changes the storage root though, which
+     * the account gets when the storage is flushed.
+     */
+    @Override
+    public void addStorageRow(byte[] addr, DataWord key, DataWord value) {
+        ByteArrayWrapper rowKey = storageKey(addr, key);
+        record.accessed.add(rowKey);
+        record.written.add(rowKey);
+        record.written.add(storageRoot(addr));
+        synchronized (lock) {
+            if (delegate.isExist(addr)) {
+                read(addr);
+            } else {
+                write(addr);
+            }
+            delegate.addStorageRow(addr, key, value);
+        }
+    }
+
+    @Override
+    public DataWord getStorageValue(byte[] addr, DataWord key) {
+        read(addr);
+        record.accessed.add(storageKey(addr, key));
+        synchronized (lock) {
+            return delegate.getStorageValue(addr, key);
+        }
+    }
+
+    @Override
+    public BigInteger getBalance(byte[] addr) {
+        read(addr);
+        synchronized (lock) {
+            return delegate.getBalance(addr);
+        }
+    }
+
+    /**
+     * Adding nothing to an existing account, as any call with no value does,
+     * only reads it. Saving it again would have no effect other than to bring
+     * back the storage root it was read with.
+     */
+    @Override
+    public BigInteger addBalance(byte[] addr, BigInteger value) {
+        synchronized (lock) {
+            if (value.signum() == 0 && delegate.isExist(addr)) {
+                read(addr);
+                return delegate.getBalance(addr);
+            }
+            write(addr);
+            return delegate.addBalance(addr, value);
+        }
+    }
+
+    @Override
+    public Set<byte[]> getAccountsKeys() {
+        unkeyed();
+        synchronized (lock) {
+            return delegate.getAccountsKeys();
+        }
+    }
+
+    @Override
+    public void dumpState(Block block, long gasUsed, int txNumber, byte[] txHash) {
+        unkeyed();
+        synchronized (lock) {
+            delegate.dumpState(block, gasUsed, txNumber, txHash);
+        }
+    }
+
+    @Override
+    public Repository startTracking() {
+        synchronized (lock) {
+            return new RecordingRepository(delegate.startTracking(), lock, record);
+        }
+    }
+
+    @Override
+    public void flush() {
+        synchronized (lock) {
+            delegate.flush();
+        }
+    }
+
+    @Override
+    public void flushNoReconnect() {
+        synchronized (lock) {
+            delegate.flushNoReconnect();
+        }
+    }
+
+    @Override
+    public void commit() {
+        synchronized (lock) {
+            delegate.commit();
+        }
+    }
+
+    @Override
+    public void rollback() {
+        synchronized (lock) {
+            delegate.rollback();
+        }
+    }
+
+    @Override
+    public void syncToRoot(byte[] root) {
+        unkeyed();
+        synchronized (lock) {
+            delegate.syncToRoot(root);
+        }
+    }
+
+    @Override
+    public boolean isClosed() {
+        synchronized (lock) {
+            return delegate.isClosed();
+        }
+    }
+
+    @Override
+    public void close() {
+        synchronized (lock) {
+            delegate.close();
+        }
+    }
+
+    @Override
+    public void reset() {
+        unkeyed();
+        synchronized (lock) {
+            delegate.reset();
+        }
+    }
+
+    @Override
+    public void updateBatch(HashMap<ByteArrayWrapper, AccountState> accountStates, HashMap<ByteArrayWrapper, ContractDetails> contractDetailes) {
+        unkeyed();
+        synchronized (lock) {
+            delegate.updateBatch(accountStates, contractDetailes);
+        }
+    }
+
+    @Override
+    public byte[] getRoot() {
+        unkeyed();
+        synchronized (lock) {
+            return delegate.getRoot();
+        }
+    }
+
+    @Override
+    public void loadAccount(byte[] addr, HashMap<ByteArrayWrapper, AccountState> cacheAccounts, HashMap<ByteArrayWrapper, ContractDetails> cacheDetails) {
+        unkeyed();
+        synchronized (lock) {
+            delegate.loadAccount(addr, cacheAccounts, cacheDetails);
+        }
+    }
+
+    @Override
+    public Repository getSnapshotTo(byte[] root) {
+        unkeyed();
+        synchronized (lock) {
+            return delegate.getSnapshotTo(root);
+        }
+    }
+
+    @Override
+    public int getStorageSize(byte[] addr) {
+        unkeyed();
+        synchronized (lock) {
+            return delegate.getStorageSize(addr);
+        }
+    }
+
+    @Override
+    public Set<DataWord> getStorageKeys(byte[] addr) {
+        unkeyed();
+        synchronized (lock) {
+            return delegate.getStorageKeys(addr);
+        }
+    }
+
+    @Override
+    public Map<DataWord, DataWord> getStorage(byte[] addr, @Nullable Collection<DataWord> keys) {
+        unkeyed();
+        synchronized (lock) {
+            return delegate.getStorage(addr, keys);
+        }
+    }
+}
@@ -23,6 +23,8 @@ import org.ethereum.datasource.*;
 import org.ethereum.trie.*;
 import org.ethereum.vm.DataWord;
 
+import java.util.concurrent.ForkJoinPool;
+
 /**
  * Created by Anton Nashatyrev on 07.10.2016.
  */
@@ -31,8 +33,11 @@ public class RepositoryRoot extends RepositoryImpl {
     private static class StorageCache extends ReadWriteCache<DataWord, DataWord> {
         Trie<byte[]> trie;
 
-        public StorageCache(Trie<byte[]> trie) {
-            super(new SourceCodec<>(trie, Serializers.StorageKeySerializer, Serializers.StorageValueSerializer), WriteCache.CacheType.SIMPLE);
+        public StorageCache(TrieImpl trie) {
+            // the rows are collected on flush and put to the trie in a single batch
+            super(new SourceCodec<>(new BatchSourceWriter<>(trie), Serializers.StorageKeySerializer,
+                    Serializers.StorageValueSerializer), WriteCache.CacheType.SIMPLE);
+            writeCache.setFlushSource(true);
             this.trie = trie;
         }
     }
@@ -74,11 +79,17 @@ public class RepositoryRoot extends RepositoryImpl {
     private Source<byte[], byte[]> stateDS;
     private CachedSource.BytesKey<byte[]> trieCache;
     private Trie<byte[]> stateTrie;
+    private ForkJoinPool triePool;
+    private TrieNodeCache nodeCache;
 
     public RepositoryRoot(Source<byte[], byte[]> stateDS) {
         this(stateDS, null);
     }
 
+    public RepositoryRoot(final Source<byte[], byte[]> stateDS, byte[] root) {
+        this(stateDS, root, null, null);
+    }
+
     /**
      * Building the following structure for snapshot Repository:
      *
@@ -90,12 +101,19 @@ public class RepositoryRoot extends RepositoryImpl {
      *
      * @param stateDS
      * @param root
+     * @param triePool pool hashing the modified nodes of the tries, see {@link TrieImpl#getPool(int)},
+     *                 {@code null} to hash them on the committing thread
+     * @param nodeCache decoded nodes of the state trie shared with the other repositories
+     *                  over the same state, {@code null} to decode them every time
      */
-    public RepositoryRoot(final Source<byte[], byte[]> stateDS, byte[] root) {
+    public RepositoryRoot(final Source<byte[], byte[]> stateDS, byte[] root, ForkJoinPool triePool,
+                          TrieNodeCache nodeCache) {
         this.stateDS = stateDS;
+        this.triePool = triePool;
+        this.nodeCache = nodeCache;
 
         trieCache = new WriteCache.BytesKey<>(stateDS, WriteCache.CacheType.COUNTING);
-        stateTrie = new SecureTrie(trieCache, root);
+        stateTrie = createTrie(trieCache, root);
 
         SourceCodec.BytesKey<AccountState, byte[]> accountStateCodec = new SourceCodec.BytesKey<>(stateTrie, Serializers.AccountStateSerializer);
         final ReadWriteCache.BytesKey<AccountState> accountStateCache = new ReadWriteCache.BytesKey<>(accountStateCodec, WriteCache.CacheType.SIMPLE);
@@ -131,7 +149,7 @@ public class RepositoryRoot extends RepositoryImpl {
 
     @Override
     public Repository getSnapshotTo(byte[] root) {
-        return new RepositoryRoot(stateDS, root);
+        return new RepositoryRoot(stateDS, root, triePool, nodeCache);
     }
 
     @Override
@@ -145,7 +163,11 @@ public class RepositoryRoot extends RepositoryImpl {
     }
 
     protected TrieImpl createTrie(Source<byte[], byte[]> trieCache, byte[] root) {
-        return new SecureTrie(trieCache, root);
+        TrieImpl trie = new SecureTrie(trieCache, root);
+        // the upper levels of the state are shared by the repositories of the blocks and snapshots
+        trie.setNodeCache(nodeCache);
+        trie.setPool(triePool);
+        return trie;
     }
 
 }
@@ -28,6 +28,9 @@ import org.springframework.beans.factory.annotation.Autowired;
 public class StateSource extends SourceChainBox<byte[], byte[], byte[], byte[]>
         implements HashedKeySource<byte[], byte[]> {
 
+    // the state caches are shared by the import, sync and JSON-RPC threads
+    private static final int CACHE_SEGMENTS = 16;
+
     // for debug purposes
     public static StateSource INST;
 
@@ -38,14 +41,25 @@ public class StateSource extends SourceChainBox<byte[], byte[], byte[], byte[]>
     AbstractCachedSource<byte[], byte[]> writeCache;
 
     public StateSource(Source<byte[], byte[]> src, boolean pruningEnabled) {
+        this(src, pruningEnabled, false);
+    }
+
+    /**
+     * @param offHeap keep the changes of the state outside of the Java heap
+     */
+    public StateSource(Source<byte[], byte[]> src, boolean pruningEnabled, boolean offHeap) {
         super(src);
         INST = this;
-        add(readCache = new ReadCache.BytesKey<>(src).withMaxCapacity(16 * 1024 * 1024 / 512)); // 512 - approx size of a node
+        add(readCache = new ReadCache.BytesKey<>(src).withMaxCapacity(16 * 1024 * 1024 / 512, CACHE_SEGMENTS)); // 512 - approx size of a node
         readCache.setFlushSource(true);
         writeCache = new AsyncWriteCache<byte[], byte[]>(readCache) {
             @Override
             protected WriteCache<byte[], byte[]> createCache(Source<byte[], byte[]> source) {
-                WriteCache.BytesKey<byte[]> ret = new WriteCache.BytesKey<byte[]>(source, WriteCache.CacheType.SIMPLE);
+                StripedWriteCache.BytesKey<byte[]> ret = new StripedWriteCache.BytesKey<byte[]>(source,
+                        WriteCache.CacheType.SIMPLE, CACHE_SEGMENTS);
+                if (offHeap) {
+                    ret.withOffHeapCache(new Serializers.Identity<>());
+                }
                 ret.withSizeEstimators(MemSizeEstimator.ByteArrayEstimator, MemSizeEstimator.ByteArrayEstimator);
                 ret.setFlushSource(true);
                 return ret;
@@ -64,7 +78,7 @@ public class StateSource extends SourceChainBox<byte[], byte[], byte[], byte[]>
     @Autowired
     public void setConfig(SystemProperties config) {
         int size = config.getConfig().getInt("cache.stateCacheSize");
-        readCache.withMaxCapacity(size * 1024 * 1024 / 512); // 512 - approx size of a node
+        readCache.withMaxCapacity(size * 1024 * 1024 / 512, CACHE_SEGMENTS); // 512 - approx size of a node
     }
 
     @Autowired
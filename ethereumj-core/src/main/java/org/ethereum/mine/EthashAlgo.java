@@ -192,7 +192,8 @@ public class EthashAlgo {
             cmix[i >> 2] = fnv3;
         }
 
-        return Pair.of(intsToBytes(cmix, false), sha3(merge(intsToBytes(s, false), intsToBytes(cmix, false))));
+        byte[] mixHash = intsToBytes(cmix, false);
+        return Pair.of(mixHash, sha3(intsToBytes(s, false), mixHash));
     }
 
     public Pair<byte[], byte[]> hashimotoLight(long fullSize, final int[] cache, byte[] blockHeaderTruncHash,
@@ -25,6 +25,7 @@ import org.ethereum.listener.CompositeEthereumListener;
 import org.ethereum.listener.EthereumListener;
 import org.ethereum.net.server.Channel;
 import org.ethereum.net.server.ChannelManager;
+import org.ethereum.trie.TrieNodeCache;
 import org.ethereum.util.ExecutorPipeline;
 import org.ethereum.validator.BlockHeaderValidator;
 import org.slf4j.Logger;
@@ -59,10 +60,13 @@ public class SyncManager extends BlockDownloader {
 
     private final static Logger logger = LoggerFactory.getLogger("sync");
 
+    private static final int PREFETCH_QUEUE_SIZE = 1000;
+    private static final int MAX_PREFETCH_THREADS = Runtime.getRuntime().availableProcessors();
+
     // Transaction.getSender() is quite heavy operation so we are prefetching this value on several threads
-    // to unload the main block importing cycle
+    // to unload the main block importing cycle, the number of threads follows the work, see adaptPrefetchThreads()
     private ExecutorPipeline<BlockWrapper,BlockWrapper> exec1 = new ExecutorPipeline<>
-            (4, 1000, true, blockWrapper -> {
+            (Math.min(4, MAX_PREFETCH_THREADS), PREFETCH_QUEUE_SIZE, true, blockWrapper -> {
                 for (Transaction tx : blockWrapper.getBlock().getTransactionsList()) {
                     tx.getSender();
                 }
@@ -91,6 +95,9 @@ public class SyncManager extends BlockDownloader {
     @Autowired
     private FastSyncManager fastSyncManager;
 
+    @Autowired
+    private TrieNodeCache trieNodeCache;
+
     ChannelManager channelManager;
 
     private SystemProperties config;
@@ -124,6 +131,13 @@ public class SyncManager extends BlockDownloader {
         setHeaderQueueLimit(config.headerQueueSize() / BlockHeader.MAX_HEADER_SIZE);
     }
 
+    private String trieNodeCacheStatus() {
+        if (config.trieNodeCacheSize() <= 0) return "";
+        TrieNodeCache cache = trieNodeCache;
+        return String.format("; Trie node cache %d nodes (%dMb), hit rate %.1f%%, evicted %d", cache.size(),
+                cache.estimatedSize() / 1024 / 1024, cache.getHitRate() * 100, cache.getEvictionCount());
+    }
+
     public void init(final ChannelManager channelManager, final SyncPool pool) {
         if (this.channelManager == null) {  // First init
             this.pool = pool;
@@ -132,11 +146,21 @@ public class SyncManager extends BlockDownloader {
                 try {
                     logger.info("Sync state: " + getSyncStatus() +
                             (isSyncDone() || importStart == 0 ? "" : "; Import idle time " +
-                            longToTimePeriod(importIdleTime.get()) + " of total " + longToTimePeriod(System.currentTimeMillis() - importStart)));
+                            longToTimePeriod(importIdleTime.get()) + " of total " + longToTimePeriod(System.currentTimeMillis() - importStart)) +
+                            String.format("; Sender cache hit rate %.1f%%, prefetch threads %d",
+                                    SenderCache.getDefault().getHitRate() * 100, exec1.getThreads()) +
+                            trieNodeCacheStatus());
                 } catch (Exception e) {
                     logger.error("Unexpected", e);
                 }
             }, 10, 10, TimeUnit.SECONDS);
+            logExecutor.scheduleAtFixedRate(() -> {
+                try {
+                    adaptPrefetchThreads();
+                } catch (Exception e) {
+                    logger.error("Unexpected", e);
+                }
+            }, 1, 1, TimeUnit.SECONDS);
         }
 
         if (!config.isSyncEnabled()) {
@@ -157,6 +181,21 @@ public class SyncManager extends BlockDownloader {
         }
     }
 
+    /**
+     * Adds a prefetch thread while blocks are waiting for the senders to be
+     * recovered and removes one while there are none, e.g. when the senders
+     * are already cached from the pending transactions
+     */
+    void adaptPrefetchThreads() {
+        int backlog = exec1.getQueue().size();
+        int threads = exec1.getThreads();
+        if (backlog > PREFETCH_QUEUE_SIZE / 10 && threads < MAX_PREFETCH_THREADS) {
+            exec1.setThreads(threads + 1);
+        } else if (backlog == 0 && threads > 1) {
+            exec1.setThreads(threads - 1);
+        }
+    }
+
     void initRegularSync(EthereumListener.SyncState syncDoneType) {
         logger.info("Initializing SyncManager regular sync.");
         this.syncDoneType = syncDoneType;
@@ -20,6 +20,9 @@ package org.ethereum.trie;
 import org.ethereum.datasource.Source;
 import org.ethereum.util.Value;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 import static org.ethereum.crypto.HashUtil.sha3;
 import static org.ethereum.util.ByteUtil.EMPTY_BYTE_ARRAY;
 
@@ -51,4 +54,13 @@ public class SecureTrie extends TrieImpl {
     public void delete(byte[] key) {
         put(key, EMPTY_BYTE_ARRAY);
     }
+
+    @Override
+    public void updateBatch(Map<byte[], byte[]> rows) {
+        Map<byte[], byte[]> hashed = new LinkedHashMap<>();
+        for (Map.Entry<byte[], byte[]> entry : rows.entrySet()) {
+            hashed.put(sha3(entry.getKey()), entry.getValue());
+        }
+        super.updateBatch(hashed);
+    }
 }
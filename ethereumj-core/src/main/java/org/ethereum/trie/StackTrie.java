@@ -0,0 +1,290 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.trie;
+
+import org.ethereum.util.FastByteComparisons;
+import org.ethereum.util.RLP;
+
+import java.util.Arrays;
+import java.util.function.IntFunction;
+
+import static org.ethereum.crypto.HashUtil.EMPTY_TRIE_HASH;
+import static org.ethereum.crypto.HashUtil.sha3;
+import static org.ethereum.util.RLP.EMPTY_ELEMENT_RLP;
+import static org.ethereum.util.RLP.encodeElement;
+import static org.ethereum.util.RLP.encodeList;
+import static org.ethereum.util.ByteUtil.toHexString;
+
+/**
+ * Calculates the root hash of a trie from entries supplied in ascending key
+ * order, without a backing store.
+ *
+ * Since no later key can fall to the left of the most recent one, a subtree
+ * is complete as soon as a key diverges from it: it is hashed (or embedded
+ * if its encoding is shorter than 32 bytes) right away and only its reference
+ * is kept. Memory use is therefore bounded by the depth of the trie rather
+ * than by the number of entries.
+ *
+ * Produces the same root as {@link TrieImpl} for the same entries. Keys must be
+ * prefix free (no key may be a prefix of another, which holds for RLP encoded
+ * keys) and values non empty.
+ *
+ * Not thread safe, intended as a short lived calculator.
+ */
+public class StackTrie {
+
+    private enum NodeType {
+        Empty,
+        Leaf,
+        Extension,
+        Branch,
+        Hashed
+    }
+
+    private static final class Node {
+        private NodeType type = NodeType.Empty;
+        // remaining key nibbles, for leaf and extension nodes
+        private byte[] key;
+        // leaf value, or the node reference once hashed
+        private byte[] value;
+        // extension child
+        private Node child;
+        private Node[] children;
+    }
+
+    private Node root = new Node();
+    private byte[] lastKey;
+    private byte[] rootHash;
+
+    /**
+     * Calculates the root of a trie whose keys are the RLP encoded indices
+     * {@code 0..size-1}, as used for the transactions and receipts of a block.
+     *
+     * @param values supplies the value for a given index, each index is
+     *               requested exactly once (but not in index order)
+     */
+    public static byte[] calcIndexedRoot(int size, IntFunction<byte[]> values) {
+        if (size == 0) return EMPTY_TRIE_HASH;
+
+        StackTrie trie = new StackTrie();
+        // RLP(0) is 0x80 which sorts after the single byte encodings of 1..127
+        // and before the 0x81.. prefixed encodings of 128 and above
+        int singleByteEnd = Math.min(size, 0x80);
+        for (int i = 1; i < singleByteEnd; i++) {
+            trie.put(RLP.encodeInt(i), values.apply(i));
+        }
+        trie.put(RLP.encodeInt(0), values.apply(0));
+        for (int i = 0x80; i < size; i++) {
+            trie.put(RLP.encodeInt(i), values.apply(i));
+        }
+        return trie.getRootHash();
+    }
+
+    /**
+     * @throws IllegalArgumentException if {@code key} is not strictly greater
+     *         than the previous key, or if either is a prefix of the other
+     */
+    public void put(byte[] key, byte[] value) {
+        if (rootHash != null) {
+            throw new IllegalStateException("Root hash already calculated");
+        }
+        if (value == null || value.length == 0) {
+            throw new IllegalArgumentException("Empty value for key " + toHexString(key));
+        }
+        if (lastKey != null && FastByteComparisons.compareTo(lastKey, 0, lastKey.length, key, 0, key.length) >= 0) {
+            throw new IllegalArgumentException("Keys out of order: " + toHexString(lastKey) + " >= " + toHexString(key));
+        }
+        lastKey = key;
+        insert(root, toNibbles(key), 0, value);
+    }
+
+    public byte[] getRootHash() {
+        if (rootHash == null) {
+            rootHash = root.type == NodeType.Empty ? EMPTY_TRIE_HASH : sha3(encode(root));
+            root = null;
+        }
+        return rootHash;
+    }
+
+    private static void insert(Node node, byte[] key, int off, byte[] value) {
+        switch (node.type) {
+            case Branch: {
+                int idx = key[off];
+                // everything to the left of idx is complete
+                for (int i = idx - 1; i >= 0; i--) {
+                    if (node.children[i] != null) {
+                        hash(node.children[i]);
+                        break;
+                    }
+                }
+                if (node.children[idx] == null) {
+                    node.children[idx] = leaf(key, off + 1, value);
+                } else {
+                    insert(node.children[idx], key, off + 1, value);
+                }
+                break;
+            }
+            case Extension: {
+                int diff = commonPrefix(node.key, key, off);
+                if (diff == node.key.length) {
+                    insert(node.child, key, off + diff, value);
+                    break;
+                }
+                // split the extension, the existing part is complete
+                Node orig;
+                if (diff < node.key.length - 1) {
+                    orig = new Node();
+                    orig.type = NodeType.Extension;
+                    orig.key = Arrays.copyOfRange(node.key, diff + 1, node.key.length);
+                    orig.child = node.child;
+                } else {
+                    orig = node.child;
+                }
+                hash(orig);
+                Node[] children = split(node, diff);
+                children[node.key[diff]] = orig;
+                children[key[off + diff]] = leaf(key, off + diff + 1, value);
+                node.key = diff == 0 ? null : Arrays.copyOf(node.key, diff);
+                break;
+            }
+            case Leaf: {
+                int diff = commonPrefix(node.key, key, off);
+                if (diff == node.key.length || off + diff == key.length) {
+                    throw new IllegalArgumentException("Keys are not prefix free");
+                }
+                Node orig = leaf(node.key, diff + 1, node.value);
+                hash(orig);
+                Node[] children = split(node, diff);
+                children[node.key[diff]] = orig;
+                children[key[off + diff]] = leaf(key, off + diff + 1, value);
+                node.key = diff == 0 ? null : Arrays.copyOf(node.key, diff);
+                node.value = null;
+                break;
+            }
+            case Empty:
+                node.type = NodeType.Leaf;
+                node.key = Arrays.copyOfRange(key, off, key.length);
+                node.value = value;
+                break;
+            default:
+                throw new IllegalStateException("Insert into a hashed node");
+        }
+    }
+
+    /**
+     * Turns {@code node} into a branch (when {@code diff == 0}) or into an
+     * extension of a new branch, returning the branch children.
+     */
+    private static Node[] split(Node node, int diff) {
+        Node branch;
+        if (diff == 0) {
+            branch = node;
+            node.child = null;
+        } else {
+            branch = new Node();
+            node.type = NodeType.Extension;
+            node.child = branch;
+        }
+        branch.type = NodeType.Branch;
+        branch.children = new Node[16];
+        return branch.children;
+    }
+
+    private static Node leaf(byte[] key, int off, byte[] value) {
+        Node ret = new Node();
+        ret.type = NodeType.Leaf;
+        ret.key = Arrays.copyOfRange(key, off, key.length);
+        ret.value = value;
+        return ret;
+    }
+
+    /**
+     * Replaces a complete subtree with its reference, as {@link TrieImpl} would
+     * encode it inside its parent.
+     */
+    private static void hash(Node node) {
+        if (node.type == NodeType.Hashed) return;
+        byte[] rlp = encode(node);
+        node.type = NodeType.Hashed;
+        node.value = rlp.length < 32 ? rlp : encodeElement(sha3(rlp));
+        node.key = null;
+        node.child = null;
+        node.children = null;
+    }
+
+    private static byte[] encode(Node node) {
+        switch (node.type) {
+            case Leaf:
+                return encodeList(encodeElement(pack(node.key, true)), encodeElement(node.value));
+            case Extension:
+                hash(node.child);
+                return encodeList(encodeElement(pack(node.key, false)), node.child.value);
+            case Branch:
+                byte[][] encoded = new byte[17][];
+                for (int i = 0; i < 16; i++) {
+                    Node child = node.children[i];
+                    if (child == null) {
+                        encoded[i] = EMPTY_ELEMENT_RLP;
+                    } else {
+                        hash(child);
+                        encoded[i] = child.value;
+                    }
+                }
+                encoded[16] = EMPTY_ELEMENT_RLP;
+                return encodeList(encoded);
+            default:
+                throw new IllegalStateException("Unexpected node type " + node.type);
+        }
+    }
+
+    private static int commonPrefix(byte[] nodeKey, byte[] key, int off) {
+        int len = Math.min(nodeKey.length, key.length - off);
+        int i = 0;
+        while (i < len && nodeKey[i] == key[off + i]) i++;
+        return i;
+    }
+
+    private static byte[] toNibbles(byte[] key) {
+        byte[] ret = new byte[key.length << 1];
+        for (int i = 0; i < key.length; i++) {
+            ret[i << 1] = (byte) ((key[i] >> 4) & 0xF);
+            ret[(i << 1) + 1] = (byte) (key[i] & 0xF);
+        }
+        return ret;
+    }
+
+    /**
+     * Hex prefix encoding, same as {@link TrieKey#toPacked()}
+     */
+    private static byte[] pack(byte[] nibbles, boolean terminal) {
+        int len = nibbles.length;
+        boolean odd = (len & 1) != 0;
+        int flags = (odd ? TrieKey.ODD_OFFSET_FLAG : 0) | (terminal ? TrieKey.TERMINATOR_FLAG : 0);
+        byte[] ret = new byte[len / 2 + 1];
+        ret[0] = (byte) (flags << 4);
+        int i = 0;
+        if (odd) {
+            ret[0] |= nibbles[0];
+            i = 1;
+        }
+        for (int j = 1; i < len; i += 2, j++) {
+            ret[j] = (byte) ((nibbles[i] << 4) | nibbles[i + 1]);
+        }
+        return ret;
+    }
+}
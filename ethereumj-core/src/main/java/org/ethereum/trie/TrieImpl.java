@@ -17,9 +17,9 @@
  */
 package org.ethereum.trie;
 
-import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.commons.lang3.text.StrBuilder;
 import org.ethereum.crypto.HashUtil;
+import org.ethereum.datasource.BatchSource;
 import org.ethereum.datasource.Source;
 import org.ethereum.datasource.inmem.HashMapDB;
 import org.ethereum.datasource.inmem.HashMapDBSimple;
@@ -32,10 +32,13 @@ import org.slf4j.LoggerFactory;
 import org.spongycastle.util.encoders.Hex;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
-import java.util.concurrent.*;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
 
-import static org.apache.commons.lang3.concurrent.ConcurrentUtils.constantFuture;
 import static org.ethereum.crypto.HashUtil.EMPTY_TRIE_HASH;
 import static org.ethereum.util.ByteUtil.EMPTY_BYTE_ARRAY;
 import static org.ethereum.util.RLP.EMPTY_ELEMENT_RLP;
@@ -46,19 +49,30 @@ import static org.ethereum.util.ByteUtil.toHexString;
 /**
  * Created by Anton Nashatyrev on 07.02.2017.
  */
-public class TrieImpl implements Trie<byte[]> {
+public class TrieImpl implements Trie<byte[]>, BatchSource<byte[], byte[]> {
     private final static Object NULL_NODE = new Object();
-    private final static int MIN_BRANCHES_CONCURRENTLY = 3;
-    private static ExecutorService executor;
+    // the smallest number of modified nodes in a subtree to hash it in a separate task
+    private final static int MIN_PARALLEL_NODES = 64;
+    // by number of threads
+    private static final Map<Integer, ForkJoinPool> sharedPools = new HashMap<>();
 
     private static final Logger logger = LoggerFactory.getLogger("state");
 
-    public static ExecutorService getExecutor() {
-        if (executor == null) {
-            executor = Executors.newFixedThreadPool(4,
-                    new ThreadFactoryBuilder().setNameFormat("trie-calc-thread-%d").build());
-        }
-        return executor;
+    /**
+     * @param threads number of threads hashing the modified nodes, usually
+     *                {@link org.ethereum.config.SystemProperties#trieCommitThreads()}
+     * @return the pool shared by the tries with this number of threads,
+     * {@code null} when the nodes are hashed by the committing thread
+     * ({@code threads <= 1})
+     */
+    public static synchronized ForkJoinPool getPool(int threads) {
+        if (threads <= 1) return null;
+
+        return sharedPools.computeIfAbsent(threads, n -> new ForkJoinPool(n, p -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+            thread.setName("trie-calc-thread-" + thread.getPoolIndex());
+            return thread;
+        }, null, false));
     }
 
     public enum NodeType {
@@ -107,7 +121,15 @@ public class TrieImpl implements Trie<byte[]> {
 
         public boolean resolveCheck() {
             if (rlp != null || parsedRlp != null || hash == null) return true;
+            // the root is always looked up in the source, a missing (e.g. pruned) state reads as empty
+            if (nodeCache != null && this != root) {
+                parsedRlp = nodeCache.get(hash);
+                if (parsedRlp != null) return true;
+            }
             rlp = getHash(hash);
+            if (rlp != null && nodeCache != null) {
+                parsedRlp = nodeCache.put(hash, rlp);
+            }
             return rlp != null;
         }
 
@@ -119,59 +141,52 @@ public class TrieImpl implements Trie<byte[]> {
         }
 
         public byte[] encode() {
-            return encode(1, true);
+            ForkJoinPool pool = commitPool();
+            if (pool != null && ForkJoinTask.getPool() != pool && dirtySize(MIN_PARALLEL_NODES) >= MIN_PARALLEL_NODES) {
+                return pool.invoke(ForkJoinTask.adapt(() -> encode(1, true, true)));
+            }
+            return encode(1, true, pool != null && ForkJoinTask.getPool() == pool);
         }
-        private byte[] encode(final int depth, boolean forceHash) {
+
+        /**
+         * @param parallel whether the modified subtrees big enough are hashed
+         *                 in separate tasks, set in the tasks of the pool only
+         */
+        @SuppressWarnings("unchecked")
+        private byte[] encode(final int depth, boolean forceHash, boolean parallel) {
             if (!dirty) {
                 return hash != null ? encodeElement(hash) : rlp;
             } else {
                 NodeType type = getType();
                 byte[] ret;
                 if (type == NodeType.BranchNode) {
-                    if (depth == 1 && async) {
-                        // parallelize encode() on the first trie level only and if there are at least
-                        // MIN_BRANCHES_CONCURRENTLY branches are modified
-                        final Object[] encoded = new Object[17];
-                        int encodeCnt = 0;
+                    byte[][] encoded = new byte[17][];
+                    ForkJoinTask<byte[]>[] tasks = null;
+                    if (parallel) {
                         for (int i = 0; i < 16; i++) {
                             final Node child = branchNodeGetChild(i);
-                            if (child == null) {
-                                encoded[i] = EMPTY_ELEMENT_RLP;
-                            } else if (!child.dirty) {
-                                encoded[i] = child.encode(depth + 1, false);
-                            } else {
-                                encodeCnt++;
-                            }
-                        }
-                        for (int i = 0; i < 16; i++) {
-                            if (encoded[i] == null) {
-                                final Node child = branchNodeGetChild(i);
-                                if (encodeCnt >= MIN_BRANCHES_CONCURRENTLY) {
-                                    encoded[i] = getExecutor().submit(() -> child.encode(depth + 1, false));
-                                } else {
-                                    encoded[i] = child.encode(depth + 1, false);
-                                }
+                            if (child != null && child.dirtySize(MIN_PARALLEL_NODES) >= MIN_PARALLEL_NODES) {
+                                if (tasks == null) tasks = new ForkJoinTask[16];
+                                tasks[i] = ForkJoinTask.adapt(() -> child.encode(depth + 1, false, true)).fork();
                             }
                         }
-                        byte[] value = branchNodeGetValue();
-                        encoded[16] = constantFuture(encodeElement(value));
-                        try {
-                            ret = encodeRlpListFutures(encoded);
-                        } catch (Exception e) {
-                            throw new RuntimeException(e);
-                        }
-                    } else {
-                        byte[][] encoded = new byte[17][];
+                    }
+                    for (int i = 0; i < 16; i++) {
+                        if (tasks != null && tasks[i] != null) continue;
+                        Node child = branchNodeGetChild(i);
+                        encoded[i] = child == null ? EMPTY_ELEMENT_RLP : child.encode(depth + 1, false, parallel);
+                    }
+                    if (tasks != null) {
                         for (int i = 0; i < 16; i++) {
-                            Node child = branchNodeGetChild(i);
-                            encoded[i] = child == null ? EMPTY_ELEMENT_RLP : child.encode(depth + 1, false);
+                            if (tasks[i] != null) encoded[i] = tasks[i].join();
                         }
-                        byte[] value = branchNodeGetValue();
-                        encoded[16] = encodeElement(value);
-                        ret = encodeList(encoded);
                     }
+                    byte[] value = branchNodeGetValue();
+                    encoded[16] = encodeElement(value);
+                    ret = encodeList(encoded);
                 } else if (type == NodeType.KVNodeNode) {
-                    ret = encodeList(encodeElement(kvNodeGetKey().toPacked()), kvNodeGetChildNode().encode(depth + 1, false));
+                    ret = encodeList(encodeElement(kvNodeGetKey().toPacked()),
+                            kvNodeGetChildNode().encode(depth + 1, false, parallel));
                 } else {
                     byte[] value = kvNodeGetValue();
                     ret = encodeList(encodeElement(kvNodeGetKey().toPacked()),
@@ -182,6 +197,8 @@ public class TrieImpl implements Trie<byte[]> {
                 }
                 dirty = false;
                 if (ret.length < 32 && !forceHash) {
+                    // the node may have shrunk below the hashed size
+                    hash = null;
                     rlp = ret;
                     return ret;
                 } else {
@@ -192,17 +209,23 @@ public class TrieImpl implements Trie<byte[]> {
             }
         }
 
-        @SafeVarargs
-        private final byte[] encodeRlpListFutures(Object... list) throws ExecutionException, InterruptedException {
-            byte[][] vals = new byte[list.length][];
-            for (int i = 0; i < list.length; i++) {
-                if (list[i] instanceof Future) {
-                    vals[i] = ((Future<byte[]>) list[i]).get();
-                } else {
-                    vals[i] = (byte[]) list[i];
+        /**
+         * @return number of the modified nodes in the subtree, counted up to {@code limit}
+         */
+        private int dirtySize(int limit) {
+            if (!dirty) return 0;
+
+            int ret = 1;
+            NodeType type = getType();
+            if (type == NodeType.BranchNode) {
+                for (int i = 0; i < 16 && ret < limit; i++) {
+                    Node child = branchNodeGetChild(i);
+                    if (child != null) ret += child.dirtySize(limit - ret);
                 }
+            } else if (type == NodeType.KVNodeNode) {
+                ret += kvNodeGetChildNode().dirtySize(limit - ret);
             }
-            return encodeList(vals);
+            return ret;
         }
 
         private void parse() {
@@ -290,7 +313,8 @@ public class TrieImpl implements Trie<byte[]> {
                     if (cnt > 1) return -1;
                 }
             }
-            return cnt > 0 ? idx : (branchNodeGetValue() == null ? -1 : 16);
+            if (cnt > 0) return branchNodeGetValue() == null ? idx : -1;
+            return branchNodeGetValue() == null ? -1 : 16;
         }
         public boolean branchNodeCanCompact() {
             parse();
@@ -438,6 +462,8 @@ public class TrieImpl implements Trie<byte[]> {
     private Source<byte[], byte[]> cache;
     private Node root;
     private boolean async = true;
+    private ForkJoinPool pool;
+    private TrieNodeCache nodeCache;
 
     public TrieImpl() {
         this((byte[]) null);
@@ -459,6 +485,29 @@ public class TrieImpl implements Trie<byte[]> {
         this.async = async;
     }
 
+    /**
+     * Sets the pool hashing the modified nodes of this trie, they are hashed
+     * by the committing thread when there is none, {@link #setAsync(boolean)}
+     * still turns it off
+     */
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Sets the cache of decoded nodes shared with other tries over the same
+     * source, the nodes not found there are read from the source and added.
+     * The root node is still read from the source
+     */
+    public void setNodeCache(TrieNodeCache nodeCache) {
+        this.nodeCache = nodeCache;
+    }
+
+    private ForkJoinPool commitPool() {
+        if (!async) return null;
+        return pool;
+    }
+
     private void encode() {
         if (root != null) {
             root.encode();
@@ -554,14 +603,15 @@ public class TrieImpl implements Trie<byte[]> {
         } else {
             TrieKey currentNodeKey = n.kvNodeGetKey();
             TrieKey commonPrefix = k.getCommonPrefix(currentNodeKey);
-            if (commonPrefix.isEmpty()) {
+            if (commonPrefix.equals(k)) {
+                // checked first for the value with an empty key, right below a branch
+                return n.kvNodeSetValueOrNode(nodeOrValue);
+            } else if (commonPrefix.isEmpty()) {
                 Node newBranchNode = new Node();
                 insert(newBranchNode, currentNodeKey, n.kvNodeGetValueOrNode());
                 insert(newBranchNode, k, nodeOrValue);
                 n.dispose();
                 return newBranchNode;
-            } else if (commonPrefix.equals(k)) {
-                return n.kvNodeSetValueOrNode(nodeOrValue);
             } else if (commonPrefix.equals(currentNodeKey)) {
                 insert(n.kvNodeGetChildNode(), k.shift(commonPrefix.getLength()), nodeOrValue);
                 return n.invalidate();
@@ -587,7 +637,6 @@ public class TrieImpl implements Trie<byte[]> {
 
     private Node delete(Node n, TrieKey k) {
         NodeType type = n.getType();
-        Node newKvNode;
         if (type == NodeType.BranchNode) {
             if (k.isEmpty())  {
                 n.branchNodeSetValue(null);
@@ -602,16 +651,7 @@ public class TrieImpl implements Trie<byte[]> {
             }
 
             // child node or value was deleted and the branch node may need to be compacted
-            int compactIdx = n.branchNodeCompactIdx();
-            if (compactIdx < 0) return n; // no compaction is required
-
-            // only value or a single child left - compact branch node to kvNode
-            n.dispose();
-            if (compactIdx == 16) { // only value left
-                return new Node(TrieKey.empty(true), n.branchNodeGetValue());
-            } else { // only single child left
-                newKvNode = new Node(TrieKey.singleHex(compactIdx), n.branchNodeGetChild(compactIdx));
-            }
+            return compactBranch(n);
         } else { // n - kvNode
             TrieKey k1 = k.matchAndShift(n.kvNodeGetKey());
             if (k1 == null) {
@@ -629,10 +669,25 @@ public class TrieImpl implements Trie<byte[]> {
             } else {
                 Node newChild = delete(n.kvNodeGetChildNode(), k1);
                 if (newChild == null) throw new RuntimeException("Shouldn't happen");
-                newKvNode = n.kvNodeSetValueOrNode(newChild);
+                return compactKvNode(n.kvNodeSetValueOrNode(newChild));
             }
         }
+    }
+
+    private Node compactBranch(Node n) {
+        int compactIdx = n.branchNodeCompactIdx();
+        if (compactIdx < 0) return n; // no compaction is required
+
+        // only value or a single child left - compact branch node to kvNode
+        n.dispose();
+        if (compactIdx == 16) { // only value left
+            return new Node(TrieKey.empty(true), n.branchNodeGetValue());
+        } else { // only single child left
+            return compactKvNode(new Node(TrieKey.singleHex(compactIdx), n.branchNodeGetChild(compactIdx)));
+        }
+    }
 
+    private Node compactKvNode(Node newKvNode) {
         // if we get here a new kvNode was created, now need to check
         // if it should be compacted with child kvNode
         Node newChild = newKvNode.kvNodeGetChildNode();
@@ -649,6 +704,150 @@ public class TrieImpl implements Trie<byte[]> {
         }
     }
 
+    /**
+     * Puts all the rows at once, same as calling {@link #put(byte[], byte[])}
+     * for each of them but walking the paths shared by the keys only once.
+     * The keys are sorted so that every node is visited, and resolved, once
+     * per batch, and new subtrees are built right away without the splits
+     * of single inserts.
+     *
+     * @param rows key-value pairs, a {@code null} or empty value deletes the key,
+     *             when a key occurs several times the last one is applied
+     */
+    @Override
+    public void updateBatch(Map<byte[], byte[]> rows) {
+        List<Map.Entry<byte[], byte[]>> entries = new ArrayList<>(rows.entrySet());
+        entries.sort((e1, e2) -> FastByteComparisons.compareTo(
+                e1.getKey(), 0, e1.getKey().length, e2.getKey(), 0, e2.getKey().length));
+
+        TrieKey[] keys = new TrieKey[entries.size()];
+        byte[][] values = new byte[entries.size()][];
+        int size = 0;
+        for (int i = 0; i < entries.size(); i++) {
+            Map.Entry<byte[], byte[]> entry = entries.get(i);
+            // the sort is stable, the last duplicate wins
+            if (i + 1 < entries.size() && FastByteComparisons.equal(entry.getKey(), entries.get(i + 1).getKey())) {
+                continue;
+            }
+            keys[size] = TrieKey.fromNormal(entry.getKey());
+            byte[] value = entry.getValue();
+            values[size++] = value == null || value.length == 0 ? null : value;
+        }
+        if (size > 0) {
+            root = update(root, keys, values, 0, size, 0);
+        }
+    }
+
+    /**
+     * @param keys   sorted distinct keys, {@code n} is at the hex {@code off} of them
+     * @param values {@code null} to delete the key
+     * @return the node replacing {@code n}
+     */
+    private Node update(Node n, TrieKey[] keys, byte[][] values, int from, int to, int off) {
+        while (true) {
+            if (to - from == 1) {
+                TrieKey k = keys[from].shift(off);
+                if (n == null) {
+                    return values[from] == null ? null : new Node(k, values[from]);
+                }
+                return values[from] == null ? delete(n, k) : insert(n, k, values[from]);
+            }
+            if (n == null) {
+                return build(keys, values, from, to, off);
+            }
+
+            NodeType type = n.getType();
+            if (type == NodeType.BranchNode) {
+                return updateBranch(n, keys, values, from, to, off);
+            }
+
+            // the keys are sorted, so they all start with the node key if the first and the last do
+            TrieKey nodeKey = n.kvNodeGetKey();
+            boolean firstUnder = type == NodeType.KVNodeNode && keys[from].shift(off).matchAndShift(nodeKey) != null;
+            if (firstUnder && keys[to - 1].shift(off).matchAndShift(nodeKey) != null) {
+                Node newChild = update(n.kvNodeGetChildNode(), keys, values, from, to, off + nodeKey.getLength());
+                if (newChild == null) {
+                    n.dispose();
+                    return null;
+                }
+                return compactKvNode(n.kvNodeSetValueOrNode(newChild));
+            }
+
+            // the node has to be split, a single put of a key not under it does it
+            // and the rest goes to the new branch, the order of distinct keys doesn't matter
+            if (firstUnder) {
+                n = update(n, keys, values, to - 1, to, off);
+                to--;
+            } else {
+                n = update(n, keys, values, from, from + 1, off);
+                from++;
+            }
+        }
+    }
+
+    private Node updateBranch(Node n, TrieKey[] keys, byte[][] values, int from, int to, int off) {
+        boolean removed = false;
+        int i = from;
+        if (keys[i].getLength() == off) {
+            removed = values[i] == null;
+            n.branchNodeSetValue(values[i++]);
+        }
+        while (i < to) {
+            int hex = keys[i].getHex(off);
+            int end = i + 1;
+            while (end < to && keys[end].getHex(off) == hex) end++;
+            Node child = n.branchNodeGetChild(hex);
+            Node newChild = update(child, keys, values, i, end, off + 1);
+            if (child != null || newChild != null) {
+                n.branchNodeSetChild(hex, newChild);
+                removed |= newChild == null;
+            }
+            i = end;
+        }
+        if (!removed) return n;
+
+        boolean empty = n.branchNodeGetValue() == null;
+        for (int hex = 0; hex < 16 && empty; hex++) {
+            empty = n.branchNodeGetChild(hex) == null;
+        }
+        if (empty) {
+            n.dispose();
+            return null;
+        }
+        return compactBranch(n);
+    }
+
+    /**
+     * Builds a new subtree of the keys, skipping the deleted ones
+     */
+    private Node build(TrieKey[] keys, byte[][] values, int from, int to, int off) {
+        while (from < to && values[from] == null) from++;
+        while (to > from && values[to - 1] == null) to--;
+        if (from == to) return null;
+        if (to - from == 1) return new Node(keys[from].shift(off), values[from]);
+
+        TrieKey first = keys[from].shift(off);
+        TrieKey prefix = first.getCommonPrefix(keys[to - 1].shift(off));
+        if (!prefix.isEmpty()) {
+            return new Node(prefix, build(keys, values, from, to, off + prefix.getLength()));
+        }
+
+        Node branch = new Node();
+        int i = from;
+        if (first.isEmpty()) {
+            branch.branchNodeSetValue(values[i++]);
+        }
+        while (i < to) {
+            int hex = keys[i].getHex(off);
+            int end = i + 1;
+            while (end < to && keys[end].getHex(off) == hex) end++;
+            Node child = build(keys, values, i, end, off + 1);
+            if (child != null) branch.branchNodeSetChild(hex, child);
+            i = end;
+        }
+        return branch;
+    }
+
     @Override
     public byte[] getRootHash() {
         encode();
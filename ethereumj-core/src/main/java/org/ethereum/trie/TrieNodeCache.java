@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.trie;
+
+import org.ethereum.datasource.MemSizeEstimator;
+import org.ethereum.db.ByteArrayWrapper;
+import org.ethereum.util.RLP;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decoded trie nodes by hash, shared by the {@link TrieImpl} instances
+ * reading the same state: each new repository for a block, a snapshot or a
+ * call starts with its own trie, and without the cache would fetch and
+ * decode the upper levels of the state trie again.
+ *
+ * A node with a given hash never changes, so the entries are never
+ * invalidated, only evicted (least recently used first) when the estimated
+ * size of the segment goes over its share of the limit. The decoded lists are
+ * only read by the tries. The entries are split into segments by the first
+ * byte of the hash like in {@link org.ethereum.core.SenderCache}.
+ */
+public class TrieNodeCache {
+
+    private static final int SEGMENTS = 16;
+    // wrapper, map entry, size entry and the LList with its offsets and lengths
+    private static final long ENTRY_OVERHEAD = 16 + 40 + 24 + 24 + 2 * (16 + 32 * 4);
+
+    private final Segment[] segments;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    private static class Entry {
+        final RLP.LList node;
+        final long size;
+
+        Entry(RLP.LList node, long size) {
+            this.node = node;
+            this.size = size;
+        }
+    }
+
+    private class Segment {
+        private final LinkedHashMap<ByteArrayWrapper, Entry> map = new LinkedHashMap<>(16, 0.75f, true);
+        private final long maxSize;
+        private long size;
+
+        Segment(long maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        synchronized RLP.LList get(ByteArrayWrapper key) {
+            Entry entry = map.get(key);
+            return entry == null ? null : entry.node;
+        }
+
+        synchronized void put(ByteArrayWrapper key, Entry entry) {
+            if (entry.size > maxSize || map.containsKey(key)) return;
+
+            map.put(key, entry);
+            size += entry.size;
+            Iterator<Entry> it = map.values().iterator();
+            while (size > maxSize) {
+                size -= it.next().size;
+                it.remove();
+                evictions.incrementAndGet();
+            }
+        }
+
+        synchronized int size() {
+            return map.size();
+        }
+
+        synchronized long estimatedSize() {
+            return size;
+        }
+    }
+
+    public TrieNodeCache(long maxSize) {
+        segments = new TrieNodeCache.Segment[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(maxSize / SEGMENTS);
+        }
+    }
+
+    private Segment segment(byte[] hash) {
+        return segments[(hash[0] & 0xFF) % SEGMENTS];
+    }
+
+    private static long estimateSize(byte[] hash, byte[] rlp) {
+        return MemSizeEstimator.ByteArrayEstimator.estimateSize(hash) +
+                MemSizeEstimator.ByteArrayEstimator.estimateSize(rlp) + ENTRY_OVERHEAD;
+    }
+
+    /**
+     * @return the decoded node, {@code null} if it's not cached
+     */
+    public RLP.LList get(byte[] hash) {
+        RLP.LList ret = segment(hash).get(new ByteArrayWrapper(hash));
+        if (ret == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        return ret;
+    }
+
+    /**
+     * Decodes the node and caches it
+     * @return the decoded node
+     */
+    public RLP.LList put(byte[] hash, byte[] rlp) {
+        RLP.LList ret = RLP.decodeLazyList(rlp);
+        segment(hash).put(new ByteArrayWrapper(hash), new Entry(ret, estimateSize(hash, rlp)));
+        return ret;
+    }
+
+    public int size() {
+        int ret = 0;
+        for (Segment segment : segments) {
+            ret += segment.size();
+        }
+        return ret;
+    }
+
+    /**
+     * @return estimated memory taken by the entries in bytes
+     */
+    public long estimatedSize() {
+        long ret = 0;
+        for (Segment segment : segments) {
+            ret += segment.estimatedSize();
+        }
+        return ret;
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * @return number of {@link #get} calls which found no node, i.e. the
+     * number of nodes read from the source
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * @return number of nodes dropped to keep the cache within its size
+     */
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    /**
+     * @return share of the {@link #get} calls answered from the cache,
+     * 0 if there were none
+     */
+    public double getHitRate() {
+        long hits = getHitCount();
+        long total = hits + getMissCount();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+}
@@ -125,6 +125,24 @@ public class ExecutorPipeline <In, Out>{
         return this;
     }
 
+    /**
+     * Changes the number of threads processing the items, the running
+     * ones finish their current item first
+     */
+    public void setThreads(int threads) {
+        if (threads > exec.getMaximumPoolSize()) {
+            exec.setMaximumPoolSize(threads);
+            exec.setCorePoolSize(threads);
+        } else {
+            exec.setCorePoolSize(threads);
+            exec.setMaximumPoolSize(threads);
+        }
+    }
+
+    public int getThreads() {
+        return exec.getCorePoolSize();
+    }
+
     public BlockingQueue<Runnable> getQueue() {
         return queue;
     }
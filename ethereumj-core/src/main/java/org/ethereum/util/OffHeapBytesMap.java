@@ -0,0 +1,349 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.util;
+
+import org.ethereum.datasource.Serializer;
+import org.ethereum.db.ByteArrayWrapper;
+
+import java.nio.ByteBuffer;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Map with {@code byte[]} keys keeping the 32 byte keys (hashes) and the
+ * serialized values outside of the Java heap, in direct buffers, so that
+ * a large cache doesn't put millions of small objects (key wrappers, map
+ * entries, arrays) on the heap for the GC to walk.
+ *
+ * The keys are kept in an open addressing table with linear probing, each
+ * slot holding the key itself and the location of the value appended to
+ * chunks of memory. The space of the replaced and removed values is taken
+ * back when the table is rebuilt. The keys of other lengths are kept in an
+ * ordinary map on the heap.
+ *
+ * The values are copied in and out, so a value got from the map is a copy
+ * and has to be put again when changed, the same for the iterated
+ * entries, which can't be changed. The map is not thread safe, though any
+ * number of threads may call {@link #get} and {@link #containsKey}
+ * concurrently when there are no writes.
+ */
+public class OffHeapBytesMap<V> extends AbstractMap<byte[], V> {
+
+    public static final int KEY_SIZE = 32;
+
+    // slot: state, value chunk, value offset, value length (-1 for null), key
+    private static final int SLOT_SIZE = 16 + KEY_SIZE;
+    private static final int CHUNK = 4, OFFSET = 8, LENGTH = 12, KEY = 16;
+    private static final int FREE = 0, USED = 1, REMOVED = 2;
+
+    private static final int INITIAL_SLOTS = 256;
+    // the chunks grow with the map, so that a small map takes little memory
+    private static final int MIN_CHUNK_SIZE = 16 * 1024;
+    private static final int MAX_CHUNK_SIZE = 4 * 1024 * 1024;
+
+    private final Serializer<V, byte[]> serializer;
+
+    private ByteBuffer table;
+    private int slots;
+    private int used;
+    private int removed;
+
+    private List<ByteBuffer> chunks;
+    private int chunkPos;
+    private long chunksSize;
+    private long valuesSize;
+
+    private final Map<ByteArrayWrapper, V> otherKeys = new HashMap<>();
+
+    public OffHeapBytesMap(Serializer<V, byte[]> serializer) {
+        this.serializer = serializer;
+        init(INITIAL_SLOTS);
+    }
+
+    private void init(int slots) {
+        this.slots = slots;
+        table = ByteBuffer.allocateDirect(slots * SLOT_SIZE);
+        used = 0;
+        removed = 0;
+        chunks = new ArrayList<>();
+        chunkPos = 0;
+        chunksSize = 0;
+        valuesSize = 0;
+    }
+
+    /**
+     * @return bytes of direct memory taken by the table and the values,
+     * including the space of the values replaced or removed since the last
+     * rebuild, plus a rough estimate of the entries kept on the heap
+     */
+    public long getMemorySize() {
+        return (long) slots * SLOT_SIZE + chunksSize + otherKeys.size() * 128L;
+    }
+
+    private static long keyPart(byte[] key, int off) {
+        long ret = 0;
+        for (int i = 0; i < 8; i++) {
+            ret = (ret << 8) | (key[off + i] & 0xFF);
+        }
+        return ret;
+    }
+
+    // the keys mostly are hashes, but the XorDataSource keys may differ in their last bytes only
+    private int hash(long k0, long k1, long k2, long k3) {
+        long h = k0 * 0x9E3779B97F4A7C15L + k1;
+        h = h * 0x9E3779B97F4A7C15L + k2;
+        h = h * 0x9E3779B97F4A7C15L + k3;
+        h *= 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & (slots - 1);
+    }
+
+    private boolean keyEquals(int base, long k0, long k1, long k2, long k3) {
+        return table.getLong(base + KEY) == k0 && table.getLong(base + KEY + 8) == k1 &&
+                table.getLong(base + KEY + 16) == k2 && table.getLong(base + KEY + 24) == k3;
+    }
+
+    /**
+     * @return offset of the slot holding the key, or if there is none
+     * -1 - the offset of the slot where it would go
+     */
+    private int find(byte[] key) {
+        long k0 = keyPart(key, 0), k1 = keyPart(key, 8), k2 = keyPart(key, 16), k3 = keyPart(key, 24);
+        int idx = hash(k0, k1, k2, k3);
+        int firstRemoved = -1;
+        while (true) {
+            int base = idx * SLOT_SIZE;
+            int state = table.getInt(base);
+            if (state == FREE) {
+                return -1 - (firstRemoved >= 0 ? firstRemoved : base);
+            }
+            if (state == USED) {
+                if (keyEquals(base, k0, k1, k2, k3)) return base;
+            } else if (firstRemoved < 0) {
+                firstRemoved = base;
+            }
+            idx = (idx + 1) & (slots - 1);
+        }
+    }
+
+    private V readValue(int base) {
+        int len = table.getInt(base + LENGTH);
+        if (len < 0) return serializer.deserialize(null);
+
+        byte[] ret = new byte[len];
+        ByteBuffer chunk = chunks.get(table.getInt(base + CHUNK)).duplicate();
+        chunk.position(table.getInt(base + OFFSET));
+        chunk.get(ret);
+        return serializer.deserialize(ret);
+    }
+
+    private void writeValue(int base, byte[] value) {
+        if (value == null) {
+            table.putInt(base + LENGTH, -1);
+            return;
+        }
+
+        ByteBuffer chunk = chunks.isEmpty() ? null : chunks.get(chunks.size() - 1);
+        if (chunk == null || chunk.capacity() - chunkPos < value.length) {
+            int size = (int) Math.min(MAX_CHUNK_SIZE, Math.max(MIN_CHUNK_SIZE, chunksSize));
+            chunk = ByteBuffer.allocateDirect(Math.max(size, value.length));
+            chunks.add(chunk);
+            chunksSize += chunk.capacity();
+            chunkPos = 0;
+        }
+        ByteBuffer dup = chunk.duplicate();
+        dup.position(chunkPos);
+        dup.put(value);
+        table.putInt(base + CHUNK, chunks.size() - 1);
+        table.putInt(base + OFFSET, chunkPos);
+        table.putInt(base + LENGTH, value.length);
+        chunkPos += value.length;
+        valuesSize += value.length;
+    }
+
+    private void releaseValue(int base) {
+        valuesSize -= Math.max(0, table.getInt(base + LENGTH));
+    }
+
+    /**
+     * Copies the entries to a new table and new chunks, dropping the
+     * removed slots and the unused values
+     */
+    private void rebuild(int newSlots) {
+        ByteBuffer oldTable = table;
+        int oldSlots = slots;
+        List<ByteBuffer> oldChunks = chunks;
+
+        init(newSlots);
+        byte[] key = new byte[KEY_SIZE];
+        for (int i = 0; i < oldSlots; i++) {
+            int oldBase = i * SLOT_SIZE;
+            if (oldTable.getInt(oldBase) != USED) continue;
+
+            ByteBuffer keyBuf = oldTable.duplicate();
+            keyBuf.position(oldBase + KEY);
+            keyBuf.get(key);
+            int base = -1 - find(key);
+            table.putInt(base, USED);
+            putKey(base, key);
+            int len = oldTable.getInt(oldBase + LENGTH);
+            byte[] value = null;
+            if (len >= 0) {
+                value = new byte[len];
+                ByteBuffer chunk = oldChunks.get(oldTable.getInt(oldBase + CHUNK)).duplicate();
+                chunk.position(oldTable.getInt(oldBase + OFFSET));
+                chunk.get(value);
+            }
+            writeValue(base, value);
+            used++;
+        }
+    }
+
+    private void putKey(int base, byte[] key) {
+        for (int i = 0; i < KEY_SIZE; i += 8) {
+            table.putLong(base + KEY + i, keyPart(key, i));
+        }
+    }
+
+    @Override
+    public V get(Object key) {
+        byte[] k = (byte[]) key;
+        if (k.length != KEY_SIZE) return otherKeys.get(new ByteArrayWrapper(k));
+
+        int base = find(k);
+        return base < 0 ? null : readValue(base);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        byte[] k = (byte[]) key;
+        if (k.length != KEY_SIZE) return otherKeys.containsKey(new ByteArrayWrapper(k));
+
+        return find(k) >= 0;
+    }
+
+    @Override
+    public V put(byte[] key, V value) {
+        if (key.length != KEY_SIZE) return otherKeys.put(new ByteArrayWrapper(key), value);
+
+        int base = find(key);
+        V ret = null;
+        if (base >= 0) {
+            ret = readValue(base);
+            releaseValue(base);
+        } else {
+            base = -1 - base;
+            if (table.getInt(base) == REMOVED) removed--;
+            table.putInt(base, USED);
+            putKey(base, key);
+            used++;
+        }
+        writeValue(base, serializer.serialize(value));
+
+        if ((used + removed) * 2 > slots) {
+            // grow unless most of the taken slots are removed ones
+            rebuild(used * 4 > slots ? slots * 2 : slots);
+        } else if (chunksSize > MAX_CHUNK_SIZE && valuesSize * 4 < chunksSize) {
+            rebuild(slots);
+        }
+        return ret;
+    }
+
+    @Override
+    public V remove(Object key) {
+        byte[] k = (byte[]) key;
+        if (k.length != KEY_SIZE) return otherKeys.remove(new ByteArrayWrapper(k));
+
+        int base = find(k);
+        if (base < 0) return null;
+
+        V ret = readValue(base);
+        releaseValue(base);
+        table.putInt(base, REMOVED);
+        used--;
+        removed++;
+        return ret;
+    }
+
+    @Override
+    public int size() {
+        return used + otherKeys.size();
+    }
+
+    /**
+     * Drops the table and the values, the direct memory is freed once the
+     * buffers are collected
+     */
+    @Override
+    public void clear() {
+        otherKeys.clear();
+        init(INITIAL_SLOTS);
+    }
+
+    /**
+     * @return entries decoded one by one while iterated, the map must not be
+     * changed meanwhile
+     */
+    @Override
+    public Set<Entry<byte[], V>> entrySet() {
+        return new AbstractSet<Entry<byte[], V>>() {
+            @Override
+            public Iterator<Entry<byte[], V>> iterator() {
+                final Iterator<Entry<ByteArrayWrapper, V>> others = otherKeys.entrySet().iterator();
+                return new Iterator<Entry<byte[], V>>() {
+                    int slot = nextUsed(0);
+
+                    @Override
+                    public boolean hasNext() {
+                        return slot < slots || others.hasNext();
+                    }
+
+                    @Override
+                    public Entry<byte[], V> next() {
+                        if (slot >= slots) {
+                            Entry<ByteArrayWrapper, V> other = others.next();
+                            return new SimpleImmutableEntry<>(other.getKey().getData(), other.getValue());
+                        }
+                        int base = slot * SLOT_SIZE;
+                        byte[] key = new byte[KEY_SIZE];
+                        ByteBuffer keyBuf = table.duplicate();
+                        keyBuf.position(base + KEY);
+                        keyBuf.get(key);
+                        slot = nextUsed(slot + 1);
+                        return new SimpleImmutableEntry<>(key, readValue(base));
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return OffHeapBytesMap.this.size();
+            }
+        };
+    }
+
+    private int nextUsed(int slot) {
+        while (slot < slots && table.getInt(slot * SLOT_SIZE) != USED) slot++;
+        return slot;
+    }
+}
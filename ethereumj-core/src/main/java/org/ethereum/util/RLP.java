@@ -699,7 +699,7 @@ public class RLP {
         public byte[] getEncoded() {
             byte encoded[][] = new byte[cnt][];
             for (int i = 0; i < cnt; i++) {
-                encoded[i] = encodeElement(getBytes(i));
+                encoded[i] = isList(i) ? getList(i).getEncoded() : encodeElement(getBytes(i));
             }
             return encodeList(encoded);
         }
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.util;
+
+import java.util.AbstractMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Thread safe {@link Map} made of several maps, each holding the keys with
+ * the same hash remainder behind its own lock, so that threads working with
+ * different keys rarely wait on each other.
+ *
+ * The segment maps are created by the supplied factory and keep their own
+ * behavior, e.g. an LRU map evicts the least recently used entry of its
+ * segment. The single key operations are atomic, the iteration goes over
+ * a copy of the entries taken segment by segment.
+ */
+public class StripedMap<K, V> extends AbstractMap<K, V> {
+
+    private final Map<K, V>[] segments;
+
+    @SuppressWarnings("unchecked")
+    public StripedMap(int segmentCount, Supplier<Map<K, V>> segmentFactory) {
+        segments = new Map[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = segmentFactory.get();
+        }
+    }
+
+    private Map<K, V> segment(Object key) {
+        int h = key.hashCode();
+        h ^= h >>> 16;
+        return segments[(h & 0x7FFFFFFF) % segments.length];
+    }
+
+    @Override
+    public V get(Object key) {
+        Map<K, V> segment = segment(key);
+        synchronized (segment) {
+            return segment.get(key);
+        }
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        Map<K, V> segment = segment(key);
+        synchronized (segment) {
+            return segment.containsKey(key);
+        }
+    }
+
+    @Override
+    public V put(K key, V value) {
+        Map<K, V> segment = segment(key);
+        synchronized (segment) {
+            return segment.put(key, value);
+        }
+    }
+
+    @Override
+    public V remove(Object key) {
+        Map<K, V> segment = segment(key);
+        synchronized (segment) {
+            return segment.remove(key);
+        }
+    }
+
+    @Override
+    public int size() {
+        int ret = 0;
+        for (Map<K, V> segment : segments) {
+            synchronized (segment) {
+                ret += segment.size();
+            }
+        }
+        return ret;
+    }
+
+    @Override
+    public void clear() {
+        for (Map<K, V> segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        Set<Entry<K, V>> ret = new HashSet<>();
+        for (Map<K, V> segment : segments) {
+            synchronized (segment) {
+                for (Entry<K, V> entry : segment.entrySet()) {
+                    ret.add(new SimpleImmutableEntry<>(entry));
+                }
+            }
+        }
+        return ret;
+    }
+}
@@ -47,6 +47,8 @@ public class DataWord implements Comparable<DataWord> {
 
     public static final long MEM_SIZE = 32 + 16 + 16;
 
+    private static final byte[] ZERO_WORD = new byte[32];
+
     private byte[] data = new byte[32];
 
     public DataWord() {
@@ -223,23 +225,16 @@ public class DataWord implements Comparable<DataWord> {
     }
 
     public void bnot() {
-        if (this.isZero()) {
-            this.data = ByteUtil.copyToArray(MAX_VALUE);
-            return;
+        final byte[] data = word();
+        for (int i = 0; i < data.length; ++i) {
+            data[i] = (byte) ~data[i];
         }
-        this.data = ByteUtil.copyToArray(MAX_VALUE.subtract(this.value()));
     }
 
     // By   : Holger
     // From : http://stackoverflow.com/a/24023466/459349
     public void add(DataWord word) {
-        byte[] result = new byte[32];
-        for (int i = 31, overflow = 0; i >= 0; i--) {
-            int v = (this.data[i] & 0xff) + (word.data[i] & 0xff) + overflow;
-            result[i] = (byte) v;
-            overflow = v >>> 8;
-        }
-        this.data = result;
+        UInt256.add(word(), word.operand());
     }
 
     // old add-method with BigInteger quick hack
@@ -248,15 +243,10 @@ public class DataWord implements Comparable<DataWord> {
         this.data = ByteUtil.copyToArray(result.and(MAX_VALUE));
     }
 
-    // TODO: mul can be done in more efficient way
-    // TODO:     with shift left shift right trick
-    // TODO      without BigInteger quick hack
     public void mul(DataWord word) {
-        BigInteger result = value().multiply(word.value());
-        this.data = ByteUtil.copyToArray(result.and(MAX_VALUE));
+        UInt256.mul(word(), word.operand());
     }
 
-    // TODO: improve with no BigInteger
     public void div(DataWord word) {
 
         if (word.isZero()) {
@@ -264,11 +254,9 @@ public class DataWord implements Comparable<DataWord> {
             return;
         }
 
-        BigInteger result = value().divide(word.value());
-        this.data = ByteUtil.copyToArray(result.and(MAX_VALUE));
+        UInt256.div(word(), word.operand());
     }
 
-    // TODO: improve with no BigInteger
     public void sDiv(DataWord word) {
 
         if (word.isZero()) {
@@ -276,23 +264,17 @@ public class DataWord implements Comparable<DataWord> {
             return;
         }
 
-        BigInteger result = sValue().divide(word.sValue());
-        this.data = ByteUtil.copyToArray(result.and(MAX_VALUE));
+        UInt256.sdiv(word(), word.operand());
     }
 
-    // TODO: improve with no BigInteger
     public void sub(DataWord word) {
-        BigInteger result = value().subtract(word.value());
-        this.data = ByteUtil.copyToArray(result.and(MAX_VALUE));
+        UInt256.sub(word(), word.operand());
     }
 
-    // TODO: improve with no BigInteger
     public void exp(DataWord word) {
-        BigInteger result = value().modPow(word.value(), _2_256);
-        this.data = ByteUtil.copyToArray(result);
+        UInt256.exp(word(), word.operand());
     }
 
-    // TODO: improve with no BigInteger
     public void mod(DataWord word) {
 
         if (word.isZero()) {
@@ -300,8 +282,7 @@ public class DataWord implements Comparable<DataWord> {
             return;
         }
 
-        BigInteger result = value().mod(word.value());
-        this.data = ByteUtil.copyToArray(result.and(MAX_VALUE));
+        UInt256.mod(word(), word.operand());
     }
 
     public void sMod(DataWord word) {
@@ -311,10 +292,7 @@ public class DataWord implements Comparable<DataWord> {
             return;
         }
 
-        BigInteger result = sValue().abs().mod(word.sValue().abs());
-        result = (sValue().signum() == -1) ? result.negate() : result;
-
-        this.data = ByteUtil.copyToArray(result.and(MAX_VALUE));
+        UInt256.smod(word(), word.operand());
     }
 
     public void addmod(DataWord word1, DataWord word2) {
@@ -323,8 +301,7 @@ public class DataWord implements Comparable<DataWord> {
             return;
         }
 
-        BigInteger result = value().add(word1.value()).mod(word2.value());
-        this.data = ByteUtil.copyToArray(result.and(MAX_VALUE));
+        UInt256.addmod(word(), word1.operand(), word2.operand());
     }
 
     public void mulmod(DataWord word1, DataWord word2) {
@@ -334,8 +311,26 @@ public class DataWord implements Comparable<DataWord> {
             return;
         }
 
-        BigInteger result = value().multiply(word1.value()).mod(word2.value());
-        this.data = ByteUtil.copyToArray(result.and(MAX_VALUE));
+        UInt256.mulmod(word(), word1.operand(), word2.operand());
+    }
+
+    /**
+     * Signed counterpart of {@link #compareTo(DataWord)}.
+     */
+    public int sCompareTo(DataWord o) {
+        return UInt256.signedCompare(operand(), o.operand());
+    }
+
+    // the arithmetic works in place on 32 bytes, words made from
+    // an empty array are widened before being written to
+    private byte[] word() {
+        if (this.data.length != 32)
+            this.data = new byte[32];
+        return this.data;
+    }
+
+    private byte[] operand() {
+        return this.data.length == 32 ? this.data : ZERO_WORD;
     }
 
     @JsonValue
@@ -393,7 +388,7 @@ public class DataWord implements Comparable<DataWord> {
     public void signExtend(byte k) {
         if (0 > k || k > 31)
             throw new IndexOutOfBoundsException();
-        byte mask = this.sValue().testBit((k * 8) + 7) ? (byte) 0xff : 0;
+        byte mask = this.data[31 - k] < 0 ? (byte) 0xff : 0;
         for (int i = 31; i > k; i--) {
             this.data[31 - i] = mask;
         }
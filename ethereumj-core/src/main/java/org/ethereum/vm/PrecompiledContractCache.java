@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.vm;
+
+import org.apache.commons.collections4.map.LRUMap;
+import org.apache.commons.lang3.tuple.Pair;
+import org.ethereum.config.SystemProperties;
+import org.ethereum.db.ByteArrayWrapper;
+import org.ethereum.vm.PrecompiledContracts.PrecompiledContract;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.ethereum.crypto.HashUtil.sha3;
+import static org.ethereum.util.ByteUtil.EMPTY_BYTE_ARRAY;
+
+/**
+ * Results of the precompiled contracts which are pure functions of their
+ * input, by the hash of the input, so that the same calls (e.g.
+ * {@code ecrecover} of the same signatures by relayers and multisig
+ * wallets) aren't computed again on replay and in {@code eth_call}.
+ *
+ * Each contract has its own bounded cache, sized by
+ * {@code vm.precompiled.cache.<name>}, the contracts with no size are used
+ * as is. The gas is always computed by the contract itself.
+ *
+ * The node gets the cache of its config from
+ * {@link SystemProperties#getPrecompiledContractCache()}.
+ */
+public class PrecompiledContractCache {
+
+    /**
+     * A contract with the results cached
+     */
+    public static class CachedContract extends PrecompiledContract {
+
+        private final PrecompiledContract contract;
+        private final Map<ByteArrayWrapper, Pair<Boolean, byte[]>> results;
+
+        private final AtomicLong hits = new AtomicLong();
+        private final AtomicLong misses = new AtomicLong();
+
+        CachedContract(PrecompiledContract contract, int size) {
+            this.contract = contract;
+            this.results = Collections.synchronizedMap(new LRUMap<>(size));
+        }
+
+        @Override
+        public long getGasForData(byte[] data) {
+            return contract.getGasForData(data);
+        }
+
+        /**
+         * The output is copied in and out of the cache, callers keep it
+         * as the return data of the call
+         */
+        @Override
+        public Pair<Boolean, byte[]> execute(byte[] data) {
+            ByteArrayWrapper key = new ByteArrayWrapper(sha3(data == null ? EMPTY_BYTE_ARRAY : data));
+
+            Pair<Boolean, byte[]> ret = results.get(key);
+            if (ret == null) {
+                misses.incrementAndGet();
+                ret = contract.execute(data);
+                results.put(key, Pair.of(ret.getLeft(), ret.getRight().clone()));
+                return ret;
+            }
+
+            hits.incrementAndGet();
+            return Pair.of(ret.getLeft(), ret.getRight().clone());
+        }
+
+        public PrecompiledContract getContract() {
+            return contract;
+        }
+
+        public int size() {
+            return results.size();
+        }
+
+        public long getHitCount() {
+            return hits.get();
+        }
+
+        public long getMissCount() {
+            return misses.get();
+        }
+    }
+
+    private final SystemProperties config;
+    // the contract returned for each name, cached or not
+    private final Map<String, PrecompiledContract> contracts = new ConcurrentHashMap<>();
+
+    public PrecompiledContractCache(SystemProperties config) {
+        this.config = config;
+    }
+
+    /**
+     * @return the contract with the results cached when the cache for
+     * {@code name} has a size, the contract itself otherwise, the contract
+     * first wrapped under {@code name} is returned from then on
+     */
+    public PrecompiledContract wrap(String name, PrecompiledContract contract) {
+        return contracts.computeIfAbsent(name, n -> {
+            int size = config.precompiledCacheSize(n);
+            return size <= 0 ? contract : new CachedContract(contract, size);
+        });
+    }
+
+    /**
+     * @return the cached contract wrapped under {@code name}, {@code null}
+     * if it isn't cached
+     */
+    public CachedContract get(String name) {
+        PrecompiledContract ret = contracts.get(name);
+        return ret instanceof CachedContract ? (CachedContract) ret : null;
+    }
+}
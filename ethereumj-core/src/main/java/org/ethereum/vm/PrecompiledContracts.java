@@ -19,12 +19,15 @@ package org.ethereum.vm;
 
 import org.apache.commons.lang3.tuple.Pair;
 import org.ethereum.config.BlockchainConfig;
+import org.ethereum.config.SystemProperties;
 import org.ethereum.crypto.ECKey;
 import org.ethereum.crypto.HashUtil;
 import org.ethereum.crypto.zksnark.*;
 import org.ethereum.util.BIUtil;
 
 import java.math.BigInteger;
+import java.util.IdentityHashMap;
+import java.util.Map;
 
 import static org.ethereum.util.BIUtil.addSafely;
 import static org.ethereum.util.BIUtil.isLessThan;
@@ -46,6 +49,20 @@ public class PrecompiledContracts {
     private static final BN128Multiplication altBN128Mul = new BN128Multiplication();
     private static final BN128Pairing altBN128Pairing = new BN128Pairing();
 
+    // the contracts returning the same output for the same input may be cached,
+    // by name under vm.precompiled.cache, the identity is a plain copy
+    private static final Map<PrecompiledContract, String> cacheNames = new IdentityHashMap<>();
+
+    static {
+        cacheNames.put(ecRecover, "ecrecover");
+        cacheNames.put(sha256, "sha256");
+        cacheNames.put(ripempd160, "ripemd160");
+        cacheNames.put(modExp, "modexp");
+        cacheNames.put(altBN128Add, "bn128add");
+        cacheNames.put(altBN128Mul, "bn128mul");
+        cacheNames.put(altBN128Pairing, "bn128pairing");
+    }
+
     private static final DataWord ecRecoverAddr =       new DataWord("0000000000000000000000000000000000000000000000000000000000000001");
     private static final DataWord sha256Addr =          new DataWord("0000000000000000000000000000000000000000000000000000000000000002");
     private static final DataWord ripempd160Addr =      new DataWord("0000000000000000000000000000000000000000000000000000000000000003");
@@ -72,6 +89,17 @@ public class PrecompiledContracts {
         return null;
     }
 
+    /**
+     * @return the contract at {@code address} with the results cached as
+     * configured by {@code props}, see {@link PrecompiledContractCache}
+     */
+    public static PrecompiledContract getContractForAddress(DataWord address, BlockchainConfig config,
+                                                            SystemProperties props) {
+        PrecompiledContract ret = getContractForAddress(address, config);
+        String name = ret == null ? null : cacheNames.get(ret);
+        return name == null ? ret : props.getPrecompiledContractCache().wrap(name, ret);
+    }
+
     private static byte[] encodeRes(byte[] w1, byte[] w2) {
 
         byte[] res = new byte[64];
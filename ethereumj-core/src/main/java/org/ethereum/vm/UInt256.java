@@ -0,0 +1,419 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.vm;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Fixed width 256-bit arithmetic on 32-byte big-endian words, as used by
+ * {@link DataWord}.
+ *
+ * All operations store their result into the first operand, which may be
+ * the same array as any of the others. Nothing is allocated per call,
+ * multiplication works on 64-bit limbs and division on 32-bit digits
+ * (Knuth's algorithm D), both in per-thread scratch buffers.
+ */
+final class UInt256 {
+
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+    private static final VarHandle INTS = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+
+    private static final long MASK = 0xFFFFFFFFL;
+
+    private static final int DIGITS = 8;
+    private static final int LIMBS = 4;
+
+    private static final class Scratch {
+        // little-endian 64-bit limbs
+        private final long[] la = new long[LIMBS];
+        private final long[] lb = new long[LIMBS];
+        private final long[] lr = new long[LIMBS];
+
+        // operands, little-endian 32-bit digits, x and q are wide enough for a full product
+        private final int[] x = new int[2 * DIGITS + 1];
+        private final int[] y = new int[DIGITS];
+        private final int[] m = new int[DIGITS];
+        private final int[] q = new int[2 * DIGITS + 1];
+        private final int[] r = new int[DIGITS];
+
+        // normalized copies for the division
+        private final int[] un = new int[2 * DIGITS + 2];
+        private final int[] vn = new int[DIGITS];
+    }
+
+    private static final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+
+    private UInt256() {
+    }
+
+    public static void add(byte[] a, byte[] b) {
+        long c = 0;
+        for (int off = 24; off >= 0; off -= 8) {
+            final long x = (long) LONGS.get(a, off);
+            final long y = (long) LONGS.get(b, off);
+            final long s = x + y + c;
+            c = ((x & y) | ((x | y) & ~s)) >>> 63;
+            LONGS.set(a, off, s);
+        }
+    }
+
+    public static void sub(byte[] a, byte[] b) {
+        long c = 0;
+        for (int off = 24; off >= 0; off -= 8) {
+            final long x = (long) LONGS.get(a, off);
+            final long y = (long) LONGS.get(b, off);
+            final long d = x - y - c;
+            c = ((~x & y) | (~(x ^ y) & d)) >>> 63;
+            LONGS.set(a, off, d);
+        }
+    }
+
+    public static void mul(byte[] a, byte[] b) {
+        final Scratch s = scratch.get();
+        load(a, s.la);
+        load(b, s.lb);
+        mul(s.la, s.lb, s.lr);
+        store(s.lr, a);
+    }
+
+    public static void div(byte[] a, byte[] b) {
+        final Scratch s = scratch.get();
+        load(a, s.x);
+        load(b, s.y);
+        divmod(s, DIGITS);
+        store(s.q, a);
+    }
+
+    public static void mod(byte[] a, byte[] b) {
+        final Scratch s = scratch.get();
+        load(a, s.x);
+        load(b, s.y);
+        divmod(s, DIGITS);
+        store(s.r, a);
+    }
+
+    /**
+     * Signed division, rounds towards zero.
+     */
+    public static void sdiv(byte[] a, byte[] b) {
+        final Scratch s = scratch.get();
+        final boolean na = isNegative(a);
+        final boolean nb = isNegative(b);
+        load(a, s.x);
+        load(b, s.y);
+        if (na) negate(s.x);
+        if (nb) negate(s.y);
+        divmod(s, DIGITS);
+        if (na != nb) negate(s.q);
+        store(s.q, a);
+    }
+
+    /**
+     * Signed remainder, takes the sign of the dividend.
+     */
+    public static void smod(byte[] a, byte[] b) {
+        final Scratch s = scratch.get();
+        final boolean na = isNegative(a);
+        load(a, s.x);
+        load(b, s.y);
+        if (na) negate(s.x);
+        if (isNegative(b)) negate(s.y);
+        divmod(s, DIGITS);
+        if (na) negate(s.r);
+        store(s.r, a);
+    }
+
+    /**
+     * a = (a + b) % m, the sum is not truncated.
+     */
+    public static void addmod(byte[] a, byte[] b, byte[] m) {
+        final Scratch s = scratch.get();
+        load(a, s.x);
+        load(b, s.y);
+        long c = 0;
+        for (int i = 0; i < DIGITS; i++) {
+            c += (s.x[i] & MASK) + (s.y[i] & MASK);
+            s.x[i] = (int) c;
+            c >>>= 32;
+        }
+        s.x[DIGITS] = (int) c;
+        load(m, s.y);
+        divmod(s, DIGITS + 1);
+        store(s.r, a);
+    }
+
+    /**
+     * a = (a * b) % m, the product is not truncated.
+     */
+    public static void mulmod(byte[] a, byte[] b, byte[] m) {
+        final Scratch s = scratch.get();
+        load(a, s.m);
+        load(b, s.y);
+        mul(s.m, s.y, s.x, 2 * DIGITS);
+        load(m, s.y);
+        divmod(s, 2 * DIGITS);
+        store(s.r, a);
+    }
+
+    /**
+     * a = a ** e % 2^256, by left to right square and multiply.
+     */
+    public static void exp(byte[] a, byte[] e) {
+        final Scratch s = scratch.get();
+        final long[] base = s.la, result = s.lb;
+        load(a, base);
+
+        Arrays.fill(result, 0);
+        result[0] = 1;
+
+        int i = 0;
+        while (i < 32 && e[i] == 0) i++;
+        for (boolean first = true; i < 32; i++) {
+            for (int bit = 7; bit >= 0; bit--) {
+                if (!first) {
+                    mul(result, result, result);
+                }
+                if ((e[i] >>> bit & 1) != 0) {
+                    mul(result, base, result);
+                    first = false;
+                }
+            }
+        }
+        store(result, a);
+    }
+
+    public static int compare(byte[] a, byte[] b) {
+        for (int off = 0; off < 32; off += 8) {
+            final int c = Long.compareUnsigned((long) LONGS.get(a, off), (long) LONGS.get(b, off));
+            if (c != 0) return c < 0 ? -1 : 1;
+        }
+        return 0;
+    }
+
+    public static int signedCompare(byte[] a, byte[] b) {
+        final boolean na = isNegative(a);
+        if (na != isNegative(b)) return na ? -1 : 1;
+        return compare(a, b);
+    }
+
+    public static boolean isNegative(byte[] a) {
+        return a[0] < 0;
+    }
+
+    private static void load(byte[] word, long[] limbs) {
+        for (int i = 0; i < LIMBS; i++) {
+            limbs[i] = (long) LONGS.get(word, 24 - 8 * i);
+        }
+    }
+
+    private static void store(long[] limbs, byte[] word) {
+        for (int i = 0; i < LIMBS; i++) {
+            LONGS.set(word, 24 - 8 * i, limbs[i]);
+        }
+    }
+
+    private static void load(byte[] word, int[] digits) {
+        for (int i = 0; i < DIGITS; i++) {
+            digits[i] = (int) INTS.get(word, 28 - 4 * i);
+        }
+    }
+
+    private static void store(int[] digits, byte[] word) {
+        for (int i = 0; i < DIGITS; i++) {
+            INTS.set(word, 28 - 4 * i, digits[i]);
+        }
+    }
+
+    // two's complement of the low DIGITS digits
+    private static void negate(int[] digits) {
+        long c = 1;
+        for (int i = 0; i < DIGITS; i++) {
+            c += ~digits[i] & MASK;
+            digits[i] = (int) c;
+            c >>>= 32;
+        }
+    }
+
+    private static long unsignedMultiplyHigh(long x, long y) {
+        return Math.multiplyHigh(x, y) + ((x >> 63) & y) + ((y >> 63) & x);
+    }
+
+    // 1 if the addition that produced sum carried out, sum = a + b
+    private static long carry(long sum, long b) {
+        return Long.compareUnsigned(sum, b) < 0 ? 1 : 0;
+    }
+
+    /**
+     * out = (x * y) % 2^256 on limbs, out may be x or y.
+     *
+     * Only the partial products below 2^256 are formed, so just six of
+     * them need their high halves.
+     */
+    private static void mul(long[] x, long[] y, long[] out) {
+        final long x0 = x[0], x1 = x[1], x2 = x[2], x3 = x[3];
+        final long y0 = y[0], y1 = y[1], y2 = y[2], y3 = y[3];
+        long t, v;
+
+        final long r0 = x0 * y0;
+
+        // limb 1, carries into limb 2
+        long r1 = unsignedMultiplyHigh(x0, y0);
+        long c2 = 0;
+        v = x0 * y1; t = r1 + v; c2 += carry(t, v); r1 = t;
+        v = x1 * y0; t = r1 + v; c2 += carry(t, v); r1 = t;
+
+        // limb 2, carries into limb 3
+        long r2 = c2;
+        long c3 = 0;
+        v = unsignedMultiplyHigh(x0, y1); t = r2 + v; c3 += carry(t, v); r2 = t;
+        v = unsignedMultiplyHigh(x1, y0); t = r2 + v; c3 += carry(t, v); r2 = t;
+        v = x0 * y2; t = r2 + v; c3 += carry(t, v); r2 = t;
+        v = x1 * y1; t = r2 + v; c3 += carry(t, v); r2 = t;
+        v = x2 * y0; t = r2 + v; c3 += carry(t, v); r2 = t;
+
+        // limb 3, carries out are dropped
+        final long r3 = c3
+                + unsignedMultiplyHigh(x0, y2) + unsignedMultiplyHigh(x1, y1) + unsignedMultiplyHigh(x2, y0)
+                + x0 * y3 + x1 * y2 + x2 * y1 + x3 * y0;
+
+        out[0] = r0;
+        out[1] = r1;
+        out[2] = r2;
+        out[3] = r3;
+    }
+
+    /**
+     * out = (x * y) truncated to {@code len} digits, x and y have
+     * {@link #DIGITS} digits, out must not be either of them.
+     */
+    private static void mul(int[] x, int[] y, int[] out, int len) {
+        Arrays.fill(out, 0, len, 0);
+        for (int i = 0; i < DIGITS; i++) {
+            final long xi = x[i] & MASK;
+            if (xi == 0) continue;
+
+            long c = 0;
+            final int n = Math.min(DIGITS, len - i);
+            for (int j = 0; j < n; j++) {
+                c += xi * (y[j] & MASK) + (out[i + j] & MASK);
+                out[i + j] = (int) c;
+                c >>>= 32;
+            }
+            if (i + n < len)
+                out[i + n] = (int) c;
+        }
+    }
+
+    private static int length(int[] digits, int len) {
+        while (len > 0 && digits[len - 1] == 0) len--;
+        return len;
+    }
+
+    /**
+     * Divides the {@code len} digits of x by the {@link #DIGITS} digits of
+     * y, into the quotient q and remainder r. Both are zero if y is zero.
+     */
+    private static void divmod(Scratch s, int len) {
+        final int[] u = s.x, v = s.y, q = s.q, r = s.r;
+        final int m = length(u, len);
+        final int n = length(v, DIGITS);
+
+        Arrays.fill(q, 0, DIGITS, 0);
+        Arrays.fill(r, 0);
+        if (n == 0)
+            return;
+        if (m < n) {
+            System.arraycopy(u, 0, r, 0, m);
+            return;
+        }
+
+        if (n == 1) {
+            final long d = v[0] & MASK;
+            long k = 0;
+            for (int j = m - 1; j >= 0; j--) {
+                final long t = (k << 32) | (u[j] & MASK);
+                final long qj = Long.divideUnsigned(t, d);
+                q[j] = (int) qj;
+                k = t - qj * d;
+            }
+            r[0] = (int) k;
+            return;
+        }
+
+        // normalize so the top digit of the divisor has its high bit set
+        final int shift = Integer.numberOfLeadingZeros(v[n - 1]);
+        final int[] un = s.un, vn = s.vn;
+        for (int i = n - 1; i > 0; i--) {
+            vn[i] = (int) (((v[i] & MASK) << shift) | ((v[i - 1] & MASK) >>> (32 - shift)));
+        }
+        vn[0] = v[0] << shift;
+        un[m] = (int) ((u[m - 1] & MASK) >>> (32 - shift));
+        for (int i = m - 1; i > 0; i--) {
+            un[i] = (int) (((u[i] & MASK) << shift) | ((u[i - 1] & MASK) >>> (32 - shift)));
+        }
+        un[0] = u[0] << shift;
+
+        final long vTop = vn[n - 1] & MASK;
+        final long vNext = vn[n - 2] & MASK;
+        for (int j = m - n; j >= 0; j--) {
+            // estimate the quotient digit, off by at most one after the correction
+            final long num = ((un[j + n] & MASK) << 32) | (un[j + n - 1] & MASK);
+            long qhat = Long.divideUnsigned(num, vTop);
+            long rhat = num - qhat * vTop;
+            while (qhat > MASK
+                    || Long.compareUnsigned(qhat * vNext, (rhat << 32) | (un[j + n - 2] & MASK)) > 0) {
+                qhat--;
+                rhat += vTop;
+                if (rhat > MASK) break;
+            }
+
+            // multiply and subtract
+            long k = 0;
+            long t;
+            for (int i = 0; i < n; i++) {
+                final long p = qhat * (vn[i] & MASK);
+                t = (un[i + j] & MASK) - k - (p & MASK);
+                un[i + j] = (int) t;
+                k = (p >>> 32) - (t >> 32);
+            }
+            t = (un[j + n] & MASK) - k;
+            un[j + n] = (int) t;
+
+            // estimate was one too large, add back
+            if (t < 0) {
+                qhat--;
+                k = 0;
+                for (int i = 0; i < n; i++) {
+                    t = (un[i + j] & MASK) + (vn[i] & MASK) + k;
+                    un[i + j] = (int) t;
+                    k = t >>> 32;
+                }
+                un[j + n] += (int) k;
+            }
+            if (j < DIGITS)
+                q[j] = (int) qhat;
+        }
+
+        for (int i = 0; i < n; i++) {
+            r[i] = (int) (((un[i] & MASK) >>> shift) | ((un[i + 1] & MASK) << (32 - shift)));
+        }
+    }
+}
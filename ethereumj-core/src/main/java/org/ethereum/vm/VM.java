@@ -20,6 +20,7 @@ package org.ethereum.vm;
 import org.ethereum.config.BlockchainConfig;
 import org.ethereum.config.SystemProperties;
 import org.ethereum.db.ContractDetails;
+import org.ethereum.vm.program.DecodedProgram;
 import org.ethereum.vm.program.Program;
 import org.ethereum.vm.program.Stack;
 import org.slf4j.Logger;
@@ -32,7 +33,6 @@ import java.util.Collections;
 import java.util.List;
 import java.util.function.BiConsumer;
 
-import static org.ethereum.crypto.HashUtil.sha3;
 import static org.ethereum.util.ByteUtil.EMPTY_BYTE_ARRAY;
 import static org.ethereum.vm.OpCode.*;
 import static org.ethereum.util.ByteUtil.toHexString;
@@ -78,7 +78,7 @@ public class VM {
 
     private static final Logger logger = LoggerFactory.getLogger("VM");
     private static final Logger dumpLogger = LoggerFactory.getLogger("dump");
-    private static BigInteger _32_ = BigInteger.valueOf(32);
+    private static final DataWord WORD_32 = new DataWord(32);
     private static final String logString = "{}    Op: [{}]  Gas: [{}] Deep: [{}]  Hint: [{}]";
 
     // max mem size which couldn't be paid for ever
@@ -93,6 +93,7 @@ public class VM {
     private static VMHook globalVmHook;
     private VMHook vmHook;
     private boolean vmTrace;
+    private boolean predecode;
     private long dumpBlock;
 
     private final SystemProperties config;
@@ -105,6 +106,7 @@ public class VM {
     public VM(SystemProperties config) {
         this.config = config;
         vmTrace = config.vmTrace();
+        predecode = config.vmPredecode();
         dumpBlock = config.dumpBlock();
 
         if (vmHookFactory != null) {
@@ -487,13 +489,12 @@ public class VM {
                 break;
                 case SIGNEXTEND: {
                     DataWord word1 = program.stackPop();
-                    BigInteger k = word1.value();
 
-                    if (k.compareTo(_32_) < 0) {
+                    if (word1.compareTo(WORD_32) < 0) {
                         DataWord word2 = program.stackPop();
                         if (logger.isInfoEnabled())
                             hint = word1 + "  " + word2.value();
-                        word2.signExtend(k.byteValue());
+                        word2.signExtend((byte) word1.intValue());
                         program.stackPush(word2);
                     }
                     program.step();
@@ -511,14 +512,13 @@ public class VM {
                 }
                 break;
                 case LT: {
-                    // TODO: can be improved by not using BigInteger
                     DataWord word1 = program.stackPop();
                     DataWord word2 = program.stackPop();
 
                     if (logger.isInfoEnabled())
                         hint = word1.value() + " < " + word2.value();
 
-                    if (word1.value().compareTo(word2.value()) == -1) {
+                    if (word1.compareTo(word2) == -1) {
                         word1.and(DataWord.ZERO);
                         word1.getData()[31] = 1;
                     } else {
@@ -529,14 +529,13 @@ public class VM {
                 }
                 break;
                 case SLT: {
-                    // TODO: can be improved by not using BigInteger
                     DataWord word1 = program.stackPop();
                     DataWord word2 = program.stackPop();
 
                     if (logger.isInfoEnabled())
                         hint = word1.sValue() + " < " + word2.sValue();
 
-                    if (word1.sValue().compareTo(word2.sValue()) == -1) {
+                    if (word1.sCompareTo(word2) == -1) {
                         word1.and(DataWord.ZERO);
                         word1.getData()[31] = 1;
                     } else {
@@ -547,14 +546,13 @@ public class VM {
                 }
                 break;
                 case SGT: {
-                    // TODO: can be improved by not using BigInteger
                     DataWord word1 = program.stackPop();
                     DataWord word2 = program.stackPop();
 
                     if (logger.isInfoEnabled())
                         hint = word1.sValue() + " > " + word2.sValue();
 
-                    if (word1.sValue().compareTo(word2.sValue()) == 1) {
+                    if (word1.sCompareTo(word2) == 1) {
                         word1.and(DataWord.ZERO);
                         word1.getData()[31] = 1;
                     } else {
@@ -565,14 +563,13 @@ public class VM {
                 }
                 break;
                 case GT: {
-                    // TODO: can be improved by not using BigInteger
                     DataWord word1 = program.stackPop();
                     DataWord word2 = program.stackPop();
 
                     if (logger.isInfoEnabled())
                         hint = word1.value() + " > " + word2.value();
 
-                    if (word1.value().compareTo(word2.value()) == 1) {
+                    if (word1.compareTo(word2) == 1) {
                         word1.and(DataWord.ZERO);
                         word1.getData()[31] = 1;
                     } else {
@@ -658,7 +655,7 @@ public class VM {
                     DataWord word1 = program.stackPop();
                     DataWord word2 = program.stackPop();
                     final DataWord result;
-                    if (word1.value().compareTo(_32_) == -1) {
+                    if (word1.compareTo(WORD_32) < 0) {
                         byte tmp = word2.getData()[word1.intValue()];
                         word2.and(DataWord.ZERO);
                         word2.getData()[31] = tmp;
@@ -699,9 +696,7 @@ public class VM {
                 case SHA3: {
                     DataWord memOffsetData = program.stackPop();
                     DataWord lengthData = program.stackPop();
-                    byte[] buffer = program.memoryChunk(memOffsetData.intValueSafe(), lengthData.intValueSafe());
-
-                    byte[] encoded = sha3(buffer);
+                    byte[] encoded = program.memoryHash(memOffsetData.intValueSafe(), lengthData.intValueSafe());
                     DataWord word = new DataWord(encoded);
 
                     if (logger.isInfoEnabled())
@@ -1042,8 +1037,7 @@ public class VM {
                 case MSTORE8: {
                     DataWord addr = program.stackPop();
                     DataWord value = program.stackPop();
-                    byte[] byteVal = {value.getData()[31]};
-                    program.memorySave(addr.intValueSafe(), byteVal);
+                    program.memorySave(addr.intValueSafe(), value.getData()[31]);
                     program.step();
                 }
                 break;
@@ -1240,7 +1234,7 @@ public class VM {
                             outDataOffs, outDataSize);
 
                     PrecompiledContracts.PrecompiledContract contract =
-                            PrecompiledContracts.getContractForAddress(codeAddress, blockchainConfig);
+                            PrecompiledContracts.getContractForAddress(codeAddress, blockchainConfig, config);
 
                     if (!op.callIsStateless()) {
                         program.getResult().addTouchAccount(codeAddress.getLast20Bytes());
@@ -1319,8 +1313,18 @@ public class VM {
 
             if (program.byTestingSuite()) return;
 
-            while (!program.isStopped()) {
-                this.step(program);
+            if (predecode && !isStepTraced(program)) {
+                DecodedProgram code = program.getDecodedProgram();
+                while (!program.isStopped()) {
+                    DecodedProgram.Block block = code.getBlock(program.getPC());
+                    if (block == null || !this.run(program, block)) {
+                        this.step(program);
+                    }
+                }
+            } else {
+                while (!program.isStopped()) {
+                    this.step(program);
+                }
             }
 
         } catch (RuntimeException e) {
@@ -1333,6 +1337,243 @@ public class VM {
         }
     }
 
+    /**
+     * Whether anything observes the individual steps (traces, hooks, dumps
+     * or logged hints), which the pre-decoded blocks would skip.
+     */
+    private boolean isStepTraced(Program program) {
+        return vmTrace || vmHook != null || globalVmHook != null || logger.isInfoEnabled()
+                || program.getNumber().intValue() == dumpBlock;
+    }
+
+    /**
+     * Runs a block of pre-decoded instructions, same as stepping through
+     * them, except that gas and stack bounds are checked once upfront.
+     *
+     * Blocks have no side effects besides the stack and can only fail on
+     * those bounds (or on a bad jump, which comes last), so if the whole
+     * block can't be paid for or would hit the bounds, it is left to
+     * {@link #step(Program)} to fail on the exact instruction.
+     *
+     * @return false if the block wasn't run
+     */
+    private boolean run(Program program, DecodedProgram.Block block) {
+        Stack stack = program.getStack();
+        if (program.getGasLong() < block.getGas() || stack.size() < block.getStackRequired()
+                || stack.size() + block.getStackGrowth() > Stack.MAX_SIZE) {
+            return false;
+        }
+
+        OpCode[] ops = block.getOps();
+        byte[][] immediates = block.getImmediates();
+        OpCode op = null;
+        int pc = block.getStart();
+        try {
+            program.spendGas(block.getGas(), "block");
+
+            int nextPC = block.getEnd();
+            for (int i = 0; i < ops.length; i++) {
+                op = ops[i];
+                switch (op) {
+                    case ADD: {
+                        DataWord word1 = stack.pop();
+                        word1.add(stack.pop());
+                        stack.push(word1);
+                    }
+                    break;
+                    case MUL: {
+                        DataWord word1 = stack.pop();
+                        word1.mul(stack.pop());
+                        stack.push(word1);
+                    }
+                    break;
+                    case SUB: {
+                        DataWord word1 = stack.pop();
+                        word1.sub(stack.pop());
+                        stack.push(word1);
+                    }
+                    break;
+                    case DIV: {
+                        DataWord word1 = stack.pop();
+                        word1.div(stack.pop());
+                        stack.push(word1);
+                    }
+                    break;
+                    case SDIV: {
+                        DataWord word1 = stack.pop();
+                        word1.sDiv(stack.pop());
+                        stack.push(word1);
+                    }
+                    break;
+                    case MOD: {
+                        DataWord word1 = stack.pop();
+                        word1.mod(stack.pop());
+                        stack.push(word1);
+                    }
+                    break;
+                    case SMOD: {
+                        DataWord word1 = stack.pop();
+                        word1.sMod(stack.pop());
+                        stack.push(word1);
+                    }
+                    break;
+                    case ADDMOD: {
+                        DataWord word1 = stack.pop();
+                        DataWord word2 = stack.pop();
+                        word1.addmod(word2, stack.pop());
+                        stack.push(word1);
+                    }
+                    break;
+                    case MULMOD: {
+                        DataWord word1 = stack.pop();
+                        DataWord word2 = stack.pop();
+                        word1.mulmod(word2, stack.pop());
+                        stack.push(word1);
+                    }
+                    break;
+                    case SIGNEXTEND: {
+                        DataWord word1 = stack.pop();
+                        if (word1.compareTo(WORD_32) < 0) {
+                            DataWord word2 = stack.pop();
+                            word2.signExtend((byte) word1.intValue());
+                            stack.push(word2);
+                        }
+                    }
+                    break;
+                    case LT: {
+                        DataWord word1 = stack.pop();
+                        stack.push(flag(word1, word1.compareTo(stack.pop()) == -1));
+                    }
+                    break;
+                    case GT: {
+                        DataWord word1 = stack.pop();
+                        stack.push(flag(word1, word1.compareTo(stack.pop()) == 1));
+                    }
+                    break;
+                    case SLT: {
+                        DataWord word1 = stack.pop();
+                        stack.push(flag(word1, word1.sCompareTo(stack.pop()) == -1));
+                    }
+                    break;
+                    case SGT: {
+                        DataWord word1 = stack.pop();
+                        stack.push(flag(word1, word1.sCompareTo(stack.pop()) == 1));
+                    }
+                    break;
+                    case EQ: {
+                        DataWord word1 = stack.pop();
+                        stack.push(flag(word1, word1.xor(stack.pop()).isZero()));
+                    }
+                    break;
+                    case ISZERO: {
+                        DataWord word1 = stack.pop();
+                        stack.push(flag(word1, word1.isZero()));
+                    }
+                    break;
+                    case AND: {
+                        DataWord word1 = stack.pop();
+                        word1.and(stack.pop());
+                        stack.push(word1);
+                    }
+                    break;
+                    case OR: {
+                        DataWord word1 = stack.pop();
+                        word1.or(stack.pop());
+                        stack.push(word1);
+                    }
+                    break;
+                    case XOR: {
+                        DataWord word1 = stack.pop();
+                        word1.xor(stack.pop());
+                        stack.push(word1);
+                    }
+                    break;
+                    case NOT: {
+                        DataWord word1 = stack.pop();
+                        word1.bnot();
+                        stack.push(word1);
+                    }
+                    break;
+                    case BYTE: {
+                        DataWord word1 = stack.pop();
+                        DataWord word2 = stack.pop();
+                        if (word1.compareTo(WORD_32) < 0) {
+                            byte tmp = word2.getData()[word1.intValue()];
+                            word2.and(DataWord.ZERO);
+                            word2.getData()[31] = tmp;
+                            stack.push(word2);
+                        } else {
+                            stack.push(new DataWord());
+                        }
+                    }
+                    break;
+                    case POP:
+                        stack.pop();
+                        break;
+                    case PC:
+                        stack.push(new DataWord(pc));
+                        break;
+                    case JUMPDEST:
+                        break;
+                    case JUMP: {
+                        DataWord pos = stack.pop();
+                        nextPC = block.getJumpTarget() >= 0 ? block.getJumpTarget() : program.verifyJumpDest(pos);
+                    }
+                    break;
+                    case JUMPI: {
+                        DataWord pos = stack.pop();
+                        DataWord cond = stack.pop();
+                        if (!cond.isZero()) {
+                            nextPC = block.getJumpTarget() >= 0 ? block.getJumpTarget() : program.verifyJumpDest(pos);
+                        }
+                    }
+                    break;
+                    case DUP1: case DUP2: case DUP3: case DUP4:
+                    case DUP5: case DUP6: case DUP7: case DUP8:
+                    case DUP9: case DUP10: case DUP11: case DUP12:
+                    case DUP13: case DUP14: case DUP15: case DUP16:
+                        stack.push(stack.get(stack.size() - (op.val() - DUP1.val() + 1)).clone());
+                        break;
+                    case SWAP1: case SWAP2: case SWAP3: case SWAP4:
+                    case SWAP5: case SWAP6: case SWAP7: case SWAP8:
+                    case SWAP9: case SWAP10: case SWAP11: case SWAP12:
+                    case SWAP13: case SWAP14: case SWAP15: case SWAP16:
+                        stack.swap(stack.size() - 1, stack.size() - (op.val() - SWAP1.val() + 2));
+                        break;
+                    default: // PUSH1..PUSH32
+                        stack.push(new DataWord(immediates[i].clone()));
+                        pc += op.val() - PUSH1.val() + 1;
+                        break;
+                }
+                pc++;
+            }
+
+            program.setLastOp(op.val());
+            program.setPreviouslyExecutedOp(op.val());
+            program.setPC(nextPC);
+            vmCounter += ops.length;
+        } catch (RuntimeException e) {
+            // where stepping would have stopped
+            program.setPC(pc);
+            logger.warn("VM halted: [{}]", e);
+            program.spendAllGas();
+            program.resetFutureRefund();
+            program.stop();
+            throw e;
+        } finally {
+            program.fullTrace();
+        }
+        return true;
+    }
+
+    private static DataWord flag(DataWord word, boolean value) {
+        word.and(DataWord.ZERO);
+        if (value) {
+            word.getData()[31] = 1;
+        }
+        return word;
+    }
+
     /**
      * @deprecated
      * TODO: Remove after a few versions
@@ -0,0 +1,262 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.vm.program;
+
+import org.ethereum.db.ByteArrayWrapper;
+import org.ethereum.vm.DataWord;
+import org.ethereum.vm.OpCode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.ethereum.vm.OpCode.*;
+
+/**
+ * Contract code decoded once ahead of execution, used by the pre-decoded
+ * interpreter mode of the VM ({@code vm.predecode}).
+ *
+ * The code is split into blocks of straight-line instructions which only
+ * work on the stack and have a fixed gas cost. Each block holds its
+ * instructions with the PUSH immediates already extracted, the static jump
+ * target of a closing PUSH/JUMP pair, the total gas of the block, and the
+ * stack height it needs and reaches, so the VM can check gas and stack
+ * bounds once per block rather than once per instruction. Everything else
+ * (memory, storage, calls, environment and fork dependent opcodes) is
+ * left out of the blocks and goes through {@link org.ethereum.vm.VM#step(Program)}.
+ *
+ * Instances are immutable and cached by code hash, see
+ * {@link org.ethereum.config.CommonConfig#decodedProgramCache()}.
+ */
+public class DecodedProgram {
+
+    /**
+     * Instructions which can be part of a block: fixed tier gas, no
+     * effects besides the stack and the PC, no dependency on the gas left
+     * and no failure besides stack bounds (and the jump destination of a
+     * closing JUMP/JUMPI).
+     */
+    private static final Set<OpCode> BLOCK_OPS = EnumSet.of(
+            ADD, MUL, SUB, DIV, SDIV, MOD, SMOD, ADDMOD, MULMOD, SIGNEXTEND,
+            LT, GT, SLT, SGT, EQ, ISZERO, AND, OR, XOR, NOT, BYTE,
+            POP, PC, JUMPDEST, JUMP, JUMPI,
+            PUSH1, PUSH2, PUSH3, PUSH4, PUSH5, PUSH6, PUSH7, PUSH8,
+            PUSH9, PUSH10, PUSH11, PUSH12, PUSH13, PUSH14, PUSH15, PUSH16,
+            PUSH17, PUSH18, PUSH19, PUSH20, PUSH21, PUSH22, PUSH23, PUSH24,
+            PUSH25, PUSH26, PUSH27, PUSH28, PUSH29, PUSH30, PUSH31, PUSH32,
+            DUP1, DUP2, DUP3, DUP4, DUP5, DUP6, DUP7, DUP8,
+            DUP9, DUP10, DUP11, DUP12, DUP13, DUP14, DUP15, DUP16,
+            SWAP1, SWAP2, SWAP3, SWAP4, SWAP5, SWAP6, SWAP7, SWAP8,
+            SWAP9, SWAP10, SWAP11, SWAP12, SWAP13, SWAP14, SWAP15, SWAP16);
+
+    public static class Block {
+        private final int start;
+        private final int end;
+        private final OpCode[] ops;
+        private final byte[][] immediates;
+        private final long gas;
+        private final int stackRequired;
+        private final int stackGrowth;
+        private final int jumpTarget;
+
+        private Block(int start, int end, OpCode[] ops, byte[][] immediates, int jumpTarget) {
+            this.start = start;
+            this.end = end;
+            this.ops = ops;
+            this.immediates = immediates;
+            this.jumpTarget = jumpTarget;
+
+            long gas = 0;
+            int height = 0, required = 0, growth = 0;
+            for (OpCode op : ops) {
+                gas += op.getTier().asInt();
+                required = Math.max(required, op.require() - height);
+                height += op.ret() - op.require();
+                growth = Math.max(growth, height);
+            }
+            this.gas = gas;
+            this.stackRequired = required;
+            this.stackGrowth = growth;
+        }
+
+        /**
+         * @return PC of the first instruction
+         */
+        public int getStart() {
+            return start;
+        }
+
+        /**
+         * @return PC following the last instruction, where the block falls
+         * through to unless it ends with a taken jump
+         */
+        public int getEnd() {
+            return end;
+        }
+
+        public OpCode[] getOps() {
+            return ops;
+        }
+
+        /**
+         * @return the 32 byte value pushed by each PUSH instruction,
+         * {@code null} for other instructions, must not be modified
+         */
+        public byte[][] getImmediates() {
+            return immediates;
+        }
+
+        /**
+         * @return gas of all the instructions of the block
+         */
+        public long getGas() {
+            return gas;
+        }
+
+        /**
+         * @return stack size needed for none of the instructions to underflow
+         */
+        public int getStackRequired() {
+            return stackRequired;
+        }
+
+        /**
+         * @return largest increase of the stack size over the block
+         */
+        public int getStackGrowth() {
+            return stackGrowth;
+        }
+
+        /**
+         * @return destination of the closing JUMP/JUMPI when it's pushed
+         * by the preceding instruction and is a valid JUMPDEST, -1 otherwise
+         */
+        public int getJumpTarget() {
+            return jumpTarget;
+        }
+    }
+
+    // block starting at each PC, null elsewhere
+    private final Block[] blocks;
+
+    private DecodedProgram(Block[] blocks) {
+        this.blocks = blocks;
+    }
+
+    /**
+     * @param cache decoded code by code hash, may be {@code null}
+     * @return the decoded code, from the cache when {@code codeHash} is
+     * known
+     */
+    public static DecodedProgram of(byte[] codeHash, byte[] ops, Map<ByteArrayWrapper, DecodedProgram> cache) {
+        if (codeHash == null || cache == null) {
+            return decode(ops);
+        }
+
+        ByteArrayWrapper key = new ByteArrayWrapper(codeHash);
+        DecodedProgram ret = cache.get(key);
+        if (ret == null) {
+            ret = decode(ops);
+            cache.put(key, ret);
+        }
+        return ret;
+    }
+
+    public static DecodedProgram decode(byte[] ops) {
+        ProgramPrecompile analysis = ProgramPrecompile.compile(ops);
+
+        Block[] blocks = new Block[ops.length];
+        List<OpCode> blockOps = new ArrayList<>();
+        List<byte[]> immediates = new ArrayList<>();
+        int start = 0;
+        int pc = 0;
+        while (pc < ops.length) {
+            OpCode op = OpCode.code(ops[pc]);
+            int next = next(ops, pc);
+
+            // a JUMPDEST always opens a new block, so that every instruction
+            // belongs to a single block
+            if (op == JUMPDEST || op == null || !BLOCK_OPS.contains(op)) {
+                close(blocks, start, pc, blockOps, immediates, -1);
+            }
+            if (op == null || !BLOCK_OPS.contains(op)) {
+                pc = next;
+                continue;
+            }
+
+            if (blockOps.isEmpty()) start = pc;
+            blockOps.add(op);
+            immediates.add(op.asInt() >= PUSH1.asInt() && op.asInt() <= PUSH32.asInt() ?
+                    immediate(ops, pc + 1, next - pc - 1) : null);
+
+            if (op == JUMP || op == JUMPI) {
+                int target = -1;
+                byte[] pushed = blockOps.size() > 1 ? immediates.get(immediates.size() - 2) : null;
+                if (pushed != null) {
+                    DataWord word = new DataWord(pushed);
+                    int dest = word.intValue();
+                    if (word.bytesOccupied() <= 4 && analysis.hasJumpDest(dest)) {
+                        target = dest;
+                    }
+                }
+                close(blocks, start, next, blockOps, immediates, target);
+            }
+            pc = next;
+        }
+        close(blocks, start, pc, blockOps, immediates, -1);
+
+        return new DecodedProgram(blocks);
+    }
+
+    private static void close(Block[] blocks, int start, int end, List<OpCode> blockOps, List<byte[]> immediates,
+                              int jumpTarget) {
+        if (blockOps.isEmpty()) return;
+
+        blocks[start] = new Block(start, end, blockOps.toArray(new OpCode[0]),
+                immediates.toArray(new byte[0][]), jumpTarget);
+        blockOps.clear();
+        immediates.clear();
+    }
+
+    private static int next(byte[] ops, int pc) {
+        int op = ops[pc] & 0xFF;
+        if (op >= PUSH1.asInt() && op <= PUSH32.asInt()) {
+            return pc + op - PUSH1.asInt() + 2;
+        }
+        return pc + 1;
+    }
+
+    // same as Program.sweep(), bytes past the end of the code read as zeroes
+    private static byte[] immediate(byte[] ops, int from, int size) {
+        byte[] ret = new byte[32];
+        byte[] data = Arrays.copyOfRange(ops, from, from + size);
+        System.arraycopy(data, 0, ret, 32 - size, size);
+        return ret;
+    }
+
+    /**
+     * @return the block starting at {@code pc}, {@code null} if there is
+     * none, i.e. the instruction has to be stepped
+     */
+    public Block getBlock(int pc) {
+        return pc < blocks.length ? blocks[pc] : null;
+    }
+}
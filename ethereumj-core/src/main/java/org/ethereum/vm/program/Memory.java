@@ -21,21 +21,31 @@ import org.ethereum.vm.DataWord;
 import org.ethereum.vm.program.listener.ProgramListener;
 import org.ethereum.vm.program.listener.ProgramListenerAware;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
-import static java.lang.Math.ceil;
+import static java.lang.Math.max;
 import static java.lang.Math.min;
 import static java.lang.String.format;
+import static org.ethereum.crypto.HashUtil.sha3;
 import static org.ethereum.util.ByteUtil.EMPTY_BYTE_ARRAY;
 import static org.ethereum.util.ByteUtil.oneByteToHexString;
 
+/**
+ * Program memory, a single contiguous array.
+ *
+ * Memory is accounted in {@link #CHUNK_SIZE} chunks (see {@link #internalSize()}),
+ * the backing array grows by doubling, so extending costs amortized constant
+ * time and any range is read or written with one copy.
+ */
 public class Memory implements ProgramListenerAware {
 
     private static final int CHUNK_SIZE = 1024;
     private static final int WORD_SIZE = 32;
 
-    private List<byte[]> chunks = new LinkedList<>();
+    private byte[] memory = EMPTY_BYTE_ARRAY;
+    private int internalSize;
     private int softSize;
     private ProgramListener programListener;
 
@@ -48,27 +58,7 @@ public class Memory implements ProgramListenerAware {
         if (size <= 0) return EMPTY_BYTE_ARRAY;
 
         extend(address, size);
-        byte[] data = new byte[size];
-
-        int chunkIndex = address / CHUNK_SIZE;
-        int chunkOffset = address % CHUNK_SIZE;
-
-        int toGrab = data.length;
-        int start = 0;
-
-        while (toGrab > 0) {
-            int copied = grabMax(chunkIndex, chunkOffset, toGrab, data, start);
-
-            // read next chunk from the start
-            ++chunkIndex;
-            chunkOffset = 0;
-
-            // mark remind
-            toGrab -= copied;
-            start += copied;
-        }
-
-        return data;
+        return Arrays.copyOfRange(memory, address, address + size);
     }
 
     public void write(int address, byte[] data, int dataSize, boolean limited) {
@@ -80,31 +70,24 @@ public class Memory implements ProgramListenerAware {
         if (!limited)
             extend(address, dataSize);
 
-        int chunkIndex = address / CHUNK_SIZE;
-        int chunkOffset = address % CHUNK_SIZE;
-
         int toCapture = 0;
         if (limited)
             toCapture = (address + dataSize > softSize) ? softSize - address : dataSize;
         else
             toCapture = dataSize;
 
-        int start = 0;
-        while (toCapture > 0) {
-            int captured = captureMax(chunkIndex, chunkOffset, toCapture, data, start);
-
-            // capture next chunk
-            ++chunkIndex;
-            chunkOffset = 0;
-
-            // mark remind
-            toCapture -= captured;
-            start += captured;
-        }
+        if (toCapture > 0)
+            System.arraycopy(data, 0, memory, address, toCapture);
 
         if (programListener != null) programListener.onMemoryWrite(address, data, dataSize);
     }
 
+    public void writeByte(int address, byte value) {
+        extend(address, 1);
+        memory[address] = value;
+
+        if (programListener != null) programListener.onMemoryWrite(address, new byte[] {value}, 1);
+    }
 
     public void extendAndWrite(int address, int allocSize, byte[] data) {
         extend(address, allocSize);
@@ -116,14 +99,15 @@ public class Memory implements ProgramListenerAware {
 
         final int newSize = address + size;
 
-        int toAllocate = newSize - internalSize();
-        if (toAllocate > 0) {
-            addChunks((int) ceil((double) toAllocate / CHUNK_SIZE));
+        if (newSize > internalSize) {
+            internalSize = (int) ceil(newSize, CHUNK_SIZE);
+            if (internalSize > memory.length)
+                memory = Arrays.copyOf(memory, (int) min(Integer.MAX_VALUE, max(internalSize, 2L * memory.length)));
         }
 
-        toAllocate = newSize - softSize;
+        int toAllocate = newSize - softSize;
         if (toAllocate > 0) {
-            toAllocate = (int) ceil((double) toAllocate / WORD_SIZE) * WORD_SIZE;
+            toAllocate = (int) ceil(toAllocate, WORD_SIZE);
             softSize += toAllocate;
 
             if (programListener != null) programListener.onMemoryExtend(toAllocate);
@@ -131,18 +115,23 @@ public class Memory implements ProgramListenerAware {
     }
 
     public DataWord readWord(int address) {
-        return new DataWord(read(address, 32));
+        extend(address, WORD_SIZE);
+        return new DataWord(Arrays.copyOfRange(memory, address, address + WORD_SIZE));
     }
 
-    // just access expecting all data valid
-    public byte readByte(int address) {
-
-        int chunkIndex = address / CHUNK_SIZE;
-        int chunkOffset = address % CHUNK_SIZE;
+    /**
+     * @return Keccak-256 of the given range, without copying it out first
+     */
+    public byte[] hash(int address, int size) {
+        if (size <= 0) return sha3(EMPTY_BYTE_ARRAY);
 
-        byte[] chunk = chunks.get(chunkIndex);
+        extend(address, size);
+        return sha3(memory, address, size);
+    }
 
-        return chunk[chunkOffset];
+    // just access expecting all data valid
+    public byte readByte(int address) {
+        return memory[address];
     }
 
     @Override
@@ -180,35 +169,22 @@ public class Memory implements ProgramListenerAware {
     }
 
     public int internalSize() {
-        return chunks.size() * CHUNK_SIZE;
+        return internalSize;
     }
 
+    /**
+     * @return copies of the allocated memory, split into {@link #CHUNK_SIZE} chunks
+     */
     public List<byte[]> getChunks() {
-        return new LinkedList<>(chunks);
-    }
-
-    private int captureMax(int chunkIndex, int chunkOffset, int size, byte[] src, int srcPos) {
-
-        byte[] chunk = chunks.get(chunkIndex);
-        int toCapture = min(size, chunk.length - chunkOffset);
-
-        System.arraycopy(src, srcPos, chunk, chunkOffset, toCapture);
-        return toCapture;
-    }
-
-    private int grabMax(int chunkIndex, int chunkOffset, int size, byte[] dest, int destPos) {
-
-        byte[] chunk = chunks.get(chunkIndex);
-        int toGrab = min(size, chunk.length - chunkOffset);
-
-        System.arraycopy(chunk, chunkOffset, dest, destPos, toGrab);
-
-        return toGrab;
+        final List<byte[]> chunks = new ArrayList<>(internalSize / CHUNK_SIZE);
+        for (int i = 0; i < internalSize; i += CHUNK_SIZE) {
+            chunks.add(Arrays.copyOfRange(memory, i, i + CHUNK_SIZE));
+        }
+        return chunks;
     }
 
-    private void addChunks(int num) {
-        for (int i = 0; i < num; ++i) {
-            chunks.add(new byte[CHUNK_SIZE]);
-        }
+    // size rounded up to a multiple of unit
+    private static long ceil(long size, int unit) {
+        return (size + unit - 1) / unit * unit;
     }
 }
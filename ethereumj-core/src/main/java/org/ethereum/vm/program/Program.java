@@ -73,7 +73,7 @@ public class Program {
     private static final int MAX_DEPTH = 1024;
 
     //Max size for stack checks
-    private static final int MAX_STACKSIZE = 1024;
+    private static final int MAX_STACKSIZE = Stack.MAX_SIZE;
 
     private Transaction transaction;
 
@@ -102,6 +102,7 @@ public class Program {
     private ByteArraySet touchedAccounts = new ByteArraySet();
 
     private ProgramPrecompile programPrecompile;
+    private DecodedProgram decodedProgram;
 
     CommonConfig commonConfig = CommonConfig.getDefault();
 
@@ -131,7 +132,8 @@ public class Program {
 
         traceListener = new ProgramTraceListener(config.vmTrace());
         this.memory = setupProgramListener(new Memory());
-        this.stack = setupProgramListener(new Stack());
+        // the stack is hot, only trace listeners care about its changes
+        this.stack = config.vmTrace() ? setupProgramListener(new Stack()) : new Stack();
         this.storage = setupProgramListener(new Storage(programInvoke));
         this.trace = new ProgramTrace(config, programInvoke);
         this.blockchainConfig = config.getBlockchainConfig().getConfigForBlock(programInvoke.getNumber().longValue());
@@ -153,6 +155,13 @@ public class Program {
         return programPrecompile;
     }
 
+    public DecodedProgram getDecodedProgram() {
+        if (decodedProgram == null) {
+            decodedProgram = DecodedProgram.of(codeHash, ops, commonConfig.decodedProgramCache());
+        }
+        return decodedProgram;
+    }
+
     public Program withCommonConfig(CommonConfig commonConfig) {
         this.commonConfig = commonConfig;
         return this;
@@ -326,6 +335,10 @@ public class Program {
         memory.write(addr, value, value.length, false);
     }
 
+    public void memorySave(int addr, byte value) {
+        memory.writeByte(addr, value);
+    }
+
     public void memoryExpand(DataWord outDataOffs, DataWord outDataSize) {
         if (!outDataSize.isZero()) {
             memory.extend(outDataOffs.intValue(), outDataSize.intValue());
@@ -356,6 +369,10 @@ public class Program {
         return memory.read(offset, size);
     }
 
+    public byte[] memoryHash(int offset, int size) {
+        return memory.hash(offset, size);
+    }
+
     /**
      * Allocates extra memory in the program for
      * a specified size, calculated from a given offset
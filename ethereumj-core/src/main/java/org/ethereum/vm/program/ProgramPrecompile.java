@@ -17,73 +17,98 @@
  */
 package org.ethereum.vm.program;
 
-import org.ethereum.datasource.Source;
+import org.ethereum.datasource.MemSizeEstimator;
 import org.ethereum.util.ByteUtil;
 import org.ethereum.util.RLP;
-import org.ethereum.util.RLPElement;
 import org.ethereum.util.RLPList;
 import org.ethereum.vm.OpCode;
 
-import java.util.HashSet;
-import java.util.Set;
+import java.util.BitSet;
+
+import static org.apache.commons.lang3.ArrayUtils.nullToEmpty;
 
 /**
+ * Jump destination analysis of the contract code: which offsets are
+ * JUMPDEST instructions and which are PUSH data, kept as bitsets over the
+ * code offsets.
+ *
  * Created by Anton Nashatyrev on 06.02.2017.
  */
 public class ProgramPrecompile {
-    private static final int version = 1;
+    private static final int version = 2;
 
-    private Set<Integer> jumpdest = new HashSet<>();
+    private final int codeSize;
+    private final BitSet jumpdest;
+    private final BitSet pushData;
 
-    public byte[] serialize() {
-        byte[][] jdBytes = new byte[jumpdest.size() + 1][];
-        int cnt = 0;
-        jdBytes[cnt++] = RLP.encodeInt(version);
-        for (Integer dst : jumpdest) {
-            jdBytes[cnt++] = RLP.encodeInt(dst);
-        }
+    private ProgramPrecompile(int codeSize, BitSet jumpdest, BitSet pushData) {
+        this.codeSize = codeSize;
+        this.jumpdest = jumpdest;
+        this.pushData = pushData;
+    }
 
-        return RLP.encodeList(jdBytes);
+    public byte[] serialize() {
+        return RLP.encodeList(
+                RLP.encodeInt(version),
+                RLP.encodeInt(codeSize),
+                RLP.encodeElement(jumpdest.toByteArray()),
+                RLP.encodeElement(pushData.toByteArray()));
     }
 
+    /**
+     * @return the analysis, or null if it was stored by another version and
+     * has to be redone
+     */
     public static ProgramPrecompile deserialize(byte[] stream) {
         RLPList l = (RLPList) RLP.decode2(stream).get(0);
         int ver = ByteUtil.byteArrayToInt(l.get(0).getRLPData());
         if (ver != version) return null;
-        ProgramPrecompile ret = new ProgramPrecompile();
-        for (int i = 1; i < l.size(); i++) {
-            ret.jumpdest.add(ByteUtil.byteArrayToInt(l.get(i).getRLPData()));
-        }
-        return ret;
+        return new ProgramPrecompile(
+                ByteUtil.byteArrayToInt(l.get(1).getRLPData()),
+                BitSet.valueOf(nullToEmpty(l.get(2).getRLPData())),
+                BitSet.valueOf(nullToEmpty(l.get(3).getRLPData())));
     }
 
     public static ProgramPrecompile compile(byte[] ops) {
-        ProgramPrecompile ret = new ProgramPrecompile();
+        BitSet jumpdest = new BitSet(ops.length);
+        BitSet pushData = new BitSet(ops.length);
         for (int i = 0; i < ops.length; ++i) {
 
             OpCode op = OpCode.code(ops[i]);
             if (op == null) continue;
 
-            if (op.equals(OpCode.JUMPDEST)) ret.jumpdest.add(i);
+            if (op.equals(OpCode.JUMPDEST)) jumpdest.set(i);
 
             if (op.asInt() >= OpCode.PUSH1.asInt() && op.asInt() <= OpCode.PUSH32.asInt()) {
-                i += op.asInt() - OpCode.PUSH1.asInt() + 1;
+                int size = op.asInt() - OpCode.PUSH1.asInt() + 1;
+                pushData.set(i + 1, Math.min(i + 1 + size, ops.length));
+                i += size;
             }
         }
-        return ret;
+        return new ProgramPrecompile(ops.length, jumpdest, pushData);
     }
 
     public boolean hasJumpDest(int pc) {
-        return jumpdest.contains(pc);
+        return pc >= 0 && jumpdest.get(pc);
     }
 
-    public static void main(String[] args) throws Exception {
-        ProgramPrecompile pp = new ProgramPrecompile();
-        pp.jumpdest.add(100);
-        pp.jumpdest.add(200);
-        byte[] bytes = pp.serialize();
+    /**
+     * @return whether the byte at {@code pc} is an immediate of a PUSH
+     * instruction rather than an instruction
+     */
+    public boolean isPushData(int pc) {
+        return pc >= 0 && pushData.get(pc);
+    }
 
-        ProgramPrecompile pp1 = ProgramPrecompile.deserialize(bytes);
-        System.out.println(pp1.jumpdest);
+    public int getCodeSize() {
+        return codeSize;
     }
+
+    public static final MemSizeEstimator<ProgramPrecompile> MemEstimator = precompile -> {
+        if (precompile == null) return 0;
+        return 2 * (16 + 8 + // BitSet header + fields
+                16 + (precompile.codeSize + 63) / 64 * 8) + // long[] words
+                4 + // code size
+                16; // Object header + ref
+    };
 }
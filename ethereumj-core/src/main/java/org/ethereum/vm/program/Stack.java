@@ -21,8 +21,28 @@ import org.ethereum.vm.DataWord;
 import org.ethereum.vm.program.listener.ProgramListener;
 import org.ethereum.vm.program.listener.ProgramListenerAware;
 
-public class Stack extends java.util.Stack<DataWord> implements ProgramListenerAware {
+import java.util.Arrays;
+import java.util.EmptyStackException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
 
+/**
+ * EVM operand stack, a fixed array of {@link #MAX_SIZE} slots.
+ *
+ * Not thread-safe, a stack belongs to a single {@link Program}. Indices
+ * count from the bottom of the stack, as with {@link java.util.Stack}.
+ * The limit is enforced by {@link Program#verifyStackOverflow}, pushing
+ * onto a full stack fails with an {@link ArrayIndexOutOfBoundsException}.
+ */
+public class Stack implements ProgramListenerAware, Iterable<DataWord> {
+
+    public static final int MAX_SIZE = 1024;
+
+    private final DataWord[] words = new DataWord[MAX_SIZE];
+    private int size;
+
+    // only set while tracing
     private ProgramListener programListener;
 
     @Override
@@ -30,26 +50,80 @@ public class Stack extends java.util.Stack<DataWord> implements ProgramListenerA
         this.programListener = listener;
     }
 
-    @Override
-    public synchronized DataWord pop() {
+    public DataWord pop() {
+        if (size == 0) throw new EmptyStackException();
         if (programListener != null) programListener.onStackPop();
-        return super.pop();
+        final DataWord item = words[--size];
+        words[size] = null;
+        return item;
     }
 
-    @Override
     public DataWord push(DataWord item) {
         if (programListener != null) programListener.onStackPush(item);
-        return super.push(item);
+        words[size] = item;
+        size++;
+        return item;
+    }
+
+    public DataWord peek() {
+        if (size == 0) throw new EmptyStackException();
+        return words[size - 1];
+    }
+
+    public DataWord get(int index) {
+        return words[Objects.checkIndex(index, size)];
+    }
+
+    public DataWord set(int index, DataWord item) {
+        final DataWord old = words[Objects.checkIndex(index, size)];
+        words[index] = item;
+        return old;
     }
 
     public void swap(int from, int to) {
         if (isAccessible(from) && isAccessible(to) && (from != to)) {
             if (programListener != null) programListener.onStackSwap(from, to);
-            DataWord tmp = get(from);
-            set(from, set(to, tmp));
+            DataWord tmp = words[from];
+            words[from] = words[to];
+            words[to] = tmp;
         }
     }
 
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public DataWord[] toArray() {
+        return Arrays.copyOf(words, size);
+    }
+
+    @Override
+    public Iterator<DataWord> iterator() {
+        return new Iterator<DataWord>() {
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < size;
+            }
+
+            @Override
+            public DataWord next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                return words[next++];
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(toArray());
+    }
+
     private boolean isAccessible(int from) {
         return from >= 0 && from < size();
     }
@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.core;
+
+import org.ethereum.crypto.ECKey;
+import org.junit.Test;
+
+import static org.ethereum.crypto.HashUtil.sha3;
+import static org.junit.Assert.*;
+
+public class SenderCacheTest {
+
+    private static Transaction createTx(ECKey key) {
+        Transaction tx = new Transaction(new byte[] {1}, new byte[] {2}, new byte[] {3},
+                new byte[20], new byte[] {4}, new byte[0], null);
+        tx.sign(key);
+        return tx;
+    }
+
+    @Test
+    public void testDecodedCopies() {
+        ECKey key = ECKey.fromPrivate(sha3("testDecodedCopies".getBytes()));
+        byte[] encoded = createTx(key).getEncoded();
+        SenderCache cache = SenderCache.getDefault();
+
+        long misses = cache.getMissCount();
+        long hits = cache.getHitCount();
+        for (int i = 0; i < 3; i++) {
+            assertArrayEquals(key.getAddress(), new Transaction(encoded).getSender());
+        }
+        assertEquals(misses + 1, cache.getMissCount());
+        assertEquals(hits + 2, cache.getHitCount());
+    }
+
+    @Test
+    public void testSignedAfterHash() {
+        ECKey key1 = ECKey.fromPrivate(sha3("key1".getBytes()));
+        ECKey key2 = ECKey.fromPrivate(sha3("key2".getBytes()));
+
+        Transaction tx1 = new Transaction(new byte[] {1}, new byte[] {2}, new byte[] {3},
+                new byte[20], new byte[] {5}, new byte[0], null);
+        tx1.getHash();
+        tx1.sign(key1);
+        assertArrayEquals(key1.getAddress(), tx1.getSender());
+
+        // same content signed by another key is another transaction
+        Transaction tx2 = new Transaction(new byte[] {1}, new byte[] {2}, new byte[] {3},
+                new byte[20], new byte[] {5}, new byte[0], null);
+        tx2.getHash();
+        tx2.sign(key2);
+        assertArrayEquals(key2.getAddress(), tx2.getSender());
+    }
+
+    @Test
+    public void testEviction() {
+        SenderCache cache = new SenderCache(16);
+        for (int i = 0; i < 100; i++) {
+            cache.put(sha3(new byte[] {(byte) i}), new byte[20]);
+        }
+        assertTrue(cache.size() <= 16);
+
+        byte[] hash = sha3(new byte[] {(byte) 99});
+        assertNotNull(cache.get(hash));
+        assertNull(cache.get(sha3(new byte[] {(byte) 100})));
+        assertEquals(0.5, cache.getHitRate(), 0);
+    }
+}
@@ -0,0 +1,304 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.core;
+
+import org.ethereum.config.BlockchainNetConfig;
+import org.ethereum.config.SystemProperties;
+import org.ethereum.config.blockchain.ByzantiumConfig;
+import org.ethereum.config.net.BaseNetConfig;
+import org.ethereum.config.net.MainNetConfig;
+import org.ethereum.crypto.ECKey;
+import org.ethereum.db.ByteArrayWrapper;
+import org.ethereum.listener.EthereumListenerAdapter;
+import org.ethereum.util.ByteUtil;
+import org.ethereum.util.blockchain.StandaloneBlockchain;
+import org.ethereum.vm.BytecodeCompiler;
+import org.ethereum.vm.DataWord;
+import org.ethereum.vm.OpCode;
+import org.ethereum.vm.VM;
+import org.ethereum.vm.VMHook;
+import org.ethereum.vm.program.Program;
+import org.junit.After;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.spongycastle.util.encoders.Hex;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.ethereum.crypto.HashUtil.sha3;
+import static org.junit.Assert.*;
+
+/**
+ * Imports the same blocks with the transactions executed one by one and
+ * speculatively in parallel ({@code transaction.parallel.threads}), the block
+ * import checks the state root, receipts and bloom against the header.
+ */
+public class SpeculativeExecutionTest {
+
+    // increments the storage row of the caller
+    private static final byte[] PER_CALLER_COUNTER = new BytecodeCompiler().compile(
+            "PUSH1 0x01 CALLER SLOAD ADD CALLER SSTORE STOP");
+    // increments row 0
+    private static final byte[] SHARED_COUNTER = new BytecodeCompiler().compile(
+            "PUSH1 0x01 PUSH1 0x00 SLOAD ADD PUSH1 0x00 SSTORE STOP");
+    // hashes 32 bytes the number of times given in the call data, then increments the row of the caller
+    private static final byte[] HASHING_COUNTER = new BytecodeCompiler().compile(
+            "PUSH1 0x00 CALLDATALOAD " +
+            "JUMPDEST DUP1 ISZERO PUSH1 0x13 JUMPI " +
+            "PUSH1 0x20 PUSH1 0x00 SHA3 PUSH1 0x00 MSTORE PUSH1 0x01 SWAP1 SUB PUSH1 0x03 JUMP " +
+            "JUMPDEST PUSH1 0x01 CALLER SLOAD ADD CALLER SSTORE STOP");
+
+    private final AtomicInteger mainThreadPlays = new AtomicInteger();
+
+    @After
+    public void cleanup() {
+        VM.setVmHookFactory(null);
+        SystemProperties.getDefault().setBlockchainConfig(MainNetConfig.INSTANCE);
+    }
+
+    @Test
+    public void testFrontier() {
+        checkSameAsSerial(null);
+    }
+
+    @Test
+    public void testByzantium() {
+        BaseNetConfig netConfig = new BaseNetConfig();
+        netConfig.add(0, new ByzantiumConfig(StandaloneBlockchain.getEasyMiningConfig()));
+        checkSameAsSerial(netConfig);
+    }
+
+    private void checkSameAsSerial(BlockchainNetConfig netConfig) {
+        Chain serial = new Chain(netConfig, 0);
+
+        ECKey[] senders = new ECKey[6];
+        for (int i = 0; i < senders.length; i++) {
+            senders[i] = ECKey.fromPrivate(sha3(("sender" + i).getBytes()));
+            serial.submit(serial.sb.getSender(), senders[i].getAddress(), 1_000_000_000_000_000_000L, new byte[0]);
+        }
+        byte[] perCaller = serial.submit(serial.sb.getSender(), null, 0, deployCode(PER_CALLER_COUNTER))
+                .getContractAddress();
+        byte[] shared = serial.submit(serial.sb.getSender(), null, 0, deployCode(SHARED_COUNTER))
+                .getContractAddress();
+        List<Block> blocks = new ArrayList<>();
+        blocks.add(serial.sb.createBlock());
+
+        // independent
+        for (ECKey sender : senders) {
+            serial.submit(sender, perCaller, 0, new byte[0]);
+        }
+        blocks.add(serial.sb.createBlock());
+
+        // all writing the same row
+        for (ECKey sender : senders) {
+            serial.submit(sender, shared, 0, new byte[0]);
+        }
+        blocks.add(serial.sb.createBlock());
+
+        // transfers in a chain, to the miner, and several from the same sender
+        for (int i = 0; i < senders.length - 1; i++) {
+            serial.submit(senders[i], senders[i + 1].getAddress(), 1000, new byte[0]);
+        }
+        serial.submit(senders[0], Hex.decode("ffffffffffffffffffffffffffffffffffffffff"), 1000, new byte[0]);
+        serial.submit(senders[5], perCaller, 0, new byte[0]);
+        serial.submit(senders[5], shared, 0, new byte[0]);
+        serial.submit(senders[5], new byte[20], 0, new byte[0]);
+        blocks.add(serial.sb.createBlock());
+
+        // new account and contract storage after writes of the same contract
+        ECKey fresh = ECKey.fromPrivate(sha3("fresh".getBytes()));
+        serial.submit(senders[1], fresh.getAddress(), 1_000_000_000_000_000L, new byte[0]);
+        serial.submit(senders[2], perCaller, 0, new byte[0]);
+        serial.submit(senders[3], perCaller, 0, new byte[0]);
+        serial.submit(senders[4], perCaller, 5, new byte[0]);
+        blocks.add(serial.sb.createBlock());
+
+        Chain replay = new Chain(netConfig, 0);
+        for (Block block : blocks) {
+            assertEquals(ImportResult.IMPORTED_BEST, replay.sb.getBlockchain().tryToConnect(new Block(block.getEncoded())));
+        }
+
+        Chain speculative = new Chain(netConfig, 4);
+        VM.setVmHookFactory(() -> new VMHook() {
+            @Override
+            public void startPlay(Program program) {
+                if (!Thread.currentThread().getName().startsWith("TxExecutor")) {
+                    mainThreadPlays.incrementAndGet();
+                }
+            }
+
+            @Override
+            public void step(Program program, OpCode opcode) {}
+
+            @Override
+            public void stopPlay(Program program) {}
+        });
+
+        // the contract code run again after the speculation
+        int[] expectedMainThreadPlays = {2, 0, senders.length - 1, 2, 1};
+        for (int i = 0; i < blocks.size(); i++) {
+            mainThreadPlays.set(0);
+            Block block = new Block(blocks.get(i).getEncoded());
+            assertEquals(ImportResult.IMPORTED_BEST, speculative.sb.getBlockchain().tryToConnect(block));
+            assertEquals("Block " + block.getNumber(), expectedMainThreadPlays[i], mainThreadPlays.get());
+        }
+
+        assertEquals(replay.executed.size(), speculative.executed.size());
+        for (int i = 0; i < replay.executed.size(); i++) {
+            TransactionExecutionSummary expected = replay.executed.get(i);
+            TransactionExecutionSummary actual = speculative.executed.get(i);
+            assertArrayEquals(expected.getTransactionHash(), actual.getTransactionHash());
+            assertEquals(expected.getGasUsed(), actual.getGasUsed());
+            assertEquals(expected.getFee(), actual.getFee());
+        }
+        assertEquals(new DataWord(senders.length + 1),
+                speculative.sb.getBlockchain().getRepository().getStorageValue(shared, new DataWord(0)));
+    }
+
+    @Test
+    public void testSpeculationsStoppedOnFailure() {
+        Chain chain = new Chain(null, 4);
+        ECKey[] senders = new ECKey[8];
+        for (int i = 0; i < senders.length; i++) {
+            senders[i] = ECKey.fromPrivate(sha3(("sender" + i).getBytes()));
+            chain.submit(chain.sb.getSender(), senders[i].getAddress(), 1_000_000_000_000_000_000L, new byte[0]);
+        }
+        byte[] contract = chain.submit(chain.sb.getSender(), null, 0, deployCode(HASHING_COUNTER))
+                .getContractAddress();
+        chain.sb.createBlock();
+        chain.sb.withGasLimit(1_000_000);
+        for (ECKey sender : senders) {
+            chain.submit(sender, contract, 0, new DataWord(1000).getData());
+        }
+
+        AtomicInteger speculating = new AtomicInteger();
+        VM.setVmHookFactory(() -> new VMHook() {
+            @Override
+            public void startPlay(Program program) {
+                if (Thread.currentThread().getName().startsWith("TxExecutor")) {
+                    speculating.incrementAndGet();
+                }
+            }
+
+            @Override
+            public void step(Program program, OpCode opcode) {}
+
+            @Override
+            public void stopPlay(Program program) {
+                if (Thread.currentThread().getName().startsWith("TxExecutor")) {
+                    speculating.decrementAndGet();
+                }
+            }
+        });
+        // fails the block on the first committed transaction, while the others are still speculated
+        chain.sb.getBlockchain().withEthereumListener(new EthereumListenerAdapter() {
+            @Override
+            public void onTransactionExecuted(TransactionExecutionSummary summary) {
+                throw new IllegalStateException("failed");
+            }
+        });
+
+        try {
+            chain.sb.createBlock();
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals(0, speculating.get());
+        }
+    }
+
+    private static byte[] deployCode(byte[] runtime) {
+        byte[] init = new BytecodeCompiler().compile("PUSH1 0x" + Hex.toHexString(new byte[] {(byte) runtime.length}) +
+                " DUP1 PUSH1 0x0b PUSH1 0x00 CODECOPY PUSH1 0x00 RETURN");
+        return ByteUtil.merge(init, runtime);
+    }
+
+    private static class Chain {
+        final StandaloneBlockchain sb;
+        final List<TransactionExecutionSummary> executed = new ArrayList<>();
+        final Map<ByteArrayWrapper, Long> nonces = new HashMap<>();
+
+        Chain(BlockchainNetConfig netConfig, int threads) {
+            sb = new StandaloneBlockchain().withGasLimit(200_000);
+            if (netConfig != null) {
+                sb.withNetConfig(netConfig);
+            }
+            sb.getBlockchain().withTxParallelThreads(threads);
+            sb.addEthereumListener(new EthereumListenerAdapter() {
+                @Override
+                public void onTransactionExecuted(TransactionExecutionSummary summary) {
+                    executed.add(summary);
+                }
+            });
+        }
+
+        Transaction submit(ECKey sender, byte[] to, long value, byte[] data) {
+            ByteArrayWrapper key = new ByteArrayWrapper(sender.getAddress());
+            long nonce = nonces.getOrDefault(key, 0L);
+            nonces.put(key, nonce + 1);
+            Transaction tx = sb.createTransaction(sender, nonce, to, BigInteger.valueOf(value), data);
+            sb.submitTransaction(tx);
+            return tx;
+        }
+    }
+
+    /**
+     * Records blocks of calls doing some hashing each and replays them with the
+     * transactions executed one by one and speculatively.
+     */
+    @Ignore
+    @Test
+    public void perfTestReplay() {
+        final int blockCount = 20, txCount = 50, hashes = 200;
+
+        Chain recorder = new Chain(null, 0);
+        ECKey[] senders = new ECKey[txCount];
+        for (int i = 0; i < txCount; i++) {
+            senders[i] = ECKey.fromPrivate(sha3(("sender" + i).getBytes()));
+            recorder.submit(recorder.sb.getSender(), senders[i].getAddress(), 1_000_000_000_000_000_000L, new byte[0]);
+        }
+        byte[] contract = recorder.submit(recorder.sb.getSender(), null, 0, deployCode(HASHING_COUNTER))
+                .getContractAddress();
+        recorder.sb.withGasLimit(1_000_000);
+        // recorded the same way as with record.blocks
+        List<String> recorded = new ArrayList<>();
+        recorded.add(Hex.toHexString(recorder.sb.createBlock().getEncoded()));
+        for (int b = 0; b < blockCount; b++) {
+            for (ECKey sender : senders) {
+                recorder.submit(sender, contract, 0, new DataWord(hashes).getData());
+            }
+            recorded.add(Hex.toHexString(recorder.sb.createBlock().getEncoded()));
+        }
+
+        for (int k = 0; k < 5; k++) {
+            for (int threads : new int[] {0, Runtime.getRuntime().availableProcessors()}) {
+                Chain replay = new Chain(null, threads);
+                long s = System.nanoTime();
+                for (String line : recorded) {
+                    assertEquals(ImportResult.IMPORTED_BEST, replay.sb.getBlockchain().tryToConnect(new Block(Hex.decode(line))));
+                }
+                long t = System.nanoTime() - s;
+                System.out.printf("%d threads: %.1f ms/block%n", threads, t / 1_000_000.0 / recorded.size());
+            }
+        }
+    }
+}
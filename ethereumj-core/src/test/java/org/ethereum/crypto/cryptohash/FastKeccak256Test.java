@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.crypto.cryptohash;
+
+import org.ethereum.crypto.HashUtil;
+import org.ethereum.crypto.jce.SpongyCastleProvider;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.spongycastle.util.encoders.Hex;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class FastKeccak256Test {
+
+    @Test
+    public void testKnownHashes() {
+        assertEquals("c5d2460186f7233c927e7db2dcc703c0e500b653ca82273b7bfad8045d85a470",
+                Hex.toHexString(FastKeccak256.hash(new byte[0])));
+        assertEquals("eead6dbfc7340a56caedc044696a168870549a6a7f6f56961e84a54bd9970b8a",
+                Hex.toHexString(FastKeccak256.hash(Hex.decode("cc"))));
+        assertEquals("732034cae3ff1116f07fc18b5a26ef8faf3fe75d3dbca05e48795365e0a17c40",
+                Hex.toHexString(FastKeccak256.hash(Hex.decode(
+                        "ca061a2eb6ceed8881ce2057172d869d73a1951e63d57261384b80ceb5451e77b06cf0f5a0ea15ca907ee1c27eba"))));
+    }
+
+    /**
+     * Lengths around the block size of 136 bytes, hashed in one go, from
+     * slices, in random pieces and from heap and direct buffers.
+     */
+    @Test
+    public void testSameAsKeccak256() {
+        Random random = new Random(1);
+        for (int length = 0; length < 3 * 136 + 2; length++) {
+            byte[] data = new byte[length + 10];
+            random.nextBytes(data);
+            byte[] input = Arrays.copyOfRange(data, 5, 5 + length);
+            byte[] expected = new Keccak256().digest(input);
+
+            assertArrayEquals(expected, FastKeccak256.hash(input));
+            assertArrayEquals(expected, FastKeccak256.hash(data, 5, length));
+
+            byte[] out = new byte[40];
+            FastKeccak256.hash(data, 5, length, out, 3);
+            assertArrayEquals(expected, Arrays.copyOfRange(out, 3, 35));
+
+            FastKeccak256 keccak = new FastKeccak256();
+            for (int pos = 0; pos < length; ) {
+                int n = Math.min(length - pos, random.nextInt(150));
+                keccak.update(input, pos, n);
+                pos += n;
+            }
+            assertArrayEquals(expected, keccak.digest());
+            // reset by the digest
+            assertArrayEquals(expected, keccak.update(input).digest());
+
+            ByteBuffer heap = ByteBuffer.wrap(data, 5, length).slice();
+            assertArrayEquals(expected, FastKeccak256.getLocal().update(heap).digest());
+            assertFalse(heap.hasRemaining());
+
+            ByteBuffer direct = ByteBuffer.allocateDirect(length + 3);
+            direct.put(new byte[3]).put(input).flip().position(3);
+            FastKeccak256.hash(direct, out, 0);
+            assertArrayEquals(expected, Arrays.copyOf(out, 32));
+            assertEquals(length + 3, direct.position());
+        }
+    }
+
+    @Test
+    public void testHashUtil() {
+        byte[] a = Hex.decode("0123456789");
+        byte[] b = new byte[200];
+        new Random(2).nextBytes(b);
+        byte[] ab = new byte[a.length + b.length];
+        System.arraycopy(a, 0, ab, 0, a.length);
+        System.arraycopy(b, 0, ab, a.length, b.length);
+
+        byte[] expected = new Keccak256().digest(ab);
+        assertArrayEquals(expected, HashUtil.sha3(ab));
+        assertArrayEquals(expected, HashUtil.sha3(a, b));
+        assertArrayEquals(expected, HashUtil.sha3(ByteBuffer.wrap(ab)));
+        byte[] out = new byte[32];
+        HashUtil.sha3(ab, 0, ab.length, out, 0);
+        assertArrayEquals(expected, out);
+    }
+
+    /**
+     * Compares with hashing through the JCA provider, as HashUtil did
+     */
+    @Ignore
+    @Test
+    public void perfTestHash() throws Exception {
+        final long bytesPerRun = 64 * 1024 * 1024;
+        for (int k = 0; k < 5; k++) {
+            for (int size : new int[] {32, 500, 64 * 1024}) {
+                byte[] input = new byte[size];
+                new Random(size).nextBytes(input);
+                byte[] out = new byte[32];
+                long runs = bytesPerRun / size;
+
+                long s = System.nanoTime();
+                for (long i = 0; i < runs; i++) {
+                    MessageDigest digest = MessageDigest.getInstance("ETH-KECCAK-256", SpongyCastleProvider.getInstance());
+                    digest.update(input);
+                    out = digest.digest();
+                    input[0] = out[0];
+                }
+                long jca = System.nanoTime() - s;
+
+                s = System.nanoTime();
+                for (long i = 0; i < runs; i++) {
+                    FastKeccak256.hash(input, 0, size, out, 0);
+                    input[0] = out[0];
+                }
+                long fast = System.nanoTime() - s;
+
+                System.out.printf("%6d bytes: JCA %.1f ns/hash, fast %.1f ns/hash%n",
+                        size, (double) jca / runs, (double) fast / runs);
+            }
+        }
+    }
+}
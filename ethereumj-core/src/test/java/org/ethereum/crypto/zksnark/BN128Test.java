@@ -0,0 +1,197 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.crypto.zksnark;
+
+import org.ethereum.util.ByteUtil;
+import org.ethereum.vm.DataWord;
+import org.ethereum.vm.PrecompiledContracts;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.spongycastle.util.encoders.Hex;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+import static org.ethereum.crypto.HashUtil.sha3;
+import static org.ethereum.crypto.zksnark.Params.P;
+import static org.junit.Assert.*;
+
+/**
+ * The expected results of the curve operations were taken from the
+ * BigInteger based field arithmetic.
+ */
+public class BN128Test {
+
+    private static final String G1 =
+            "0000000000000000000000000000000000000000000000000000000000000001" +
+            "0000000000000000000000000000000000000000000000000000000000000002";
+
+    // (x.b, x.a, y.b, y.a) as encoded for the pairing precompile
+    private static final String G2 =
+            "198e9393920d483a7260bfb731fb5d25f1aa493335a9e71297e485b7aef312c2" +
+            "1800deef121f1e76426a00665e5c4479674322d4f75edadd46debd5cd992f6ed" +
+            "090689d0585ff075ec9e99ad690c3395bc4b313370b38ef355acdadcd122975b" +
+            "12c85ea5db8c6deb4aab71808dcb408fe3d1e7690c43d37b4ce6cc0166fa7daa";
+
+    @Test
+    public void testFpArithmetic() {
+        Random random = new Random(1);
+        BigInteger[] values = new BigInteger[200];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = new BigInteger(256, random).mod(P);
+        }
+        values[0] = BigInteger.ZERO;
+        values[1] = BigInteger.ONE;
+        values[2] = P.subtract(BigInteger.ONE);
+
+        for (int i = 0; i < values.length; i++) {
+            BigInteger a = values[i];
+            BigInteger b = values[(i * 7 + 3) % values.length];
+            Fp fa = Fp.create(a), fb = Fp.create(b);
+
+            assertEquals(a, fa.toBigInteger());
+            assertEquals(fa, Fp.create(a.toByteArray()));
+            assertEquals(fa, Fp.create(ByteUtil.bigIntegerToBytes(a, 32)));
+            assertArrayEquals(a.toByteArray(), fa.bytes());
+            assertEquals(a.add(b).mod(P), fa.add(fb).toBigInteger());
+            assertEquals(a.subtract(b).mod(P), fa.sub(fb).toBigInteger());
+            assertEquals(a.multiply(b).mod(P), fa.mul(fb).toBigInteger());
+            assertEquals(a.multiply(a).mod(P), fa.squared().toBigInteger());
+            assertEquals(a.shiftLeft(1).mod(P), fa.dbl().toBigInteger());
+            assertEquals(a.negate().mod(P), fa.negate().toBigInteger());
+            assertEquals(a.signum() == 0, fa.isZero());
+            assertEquals(a.equals(b), fa.equals(fb));
+            if (a.signum() != 0) {
+                assertEquals(a.modInverse(P), fa.inverse().toBigInteger());
+            }
+            assertTrue(fa.isValid());
+        }
+
+        assertFalse(Fp.create(P).isValid());
+        assertFalse(Fp.create(P).isZero());
+        assertFalse(Fp.create(BigInteger.ONE.shiftLeft(256).subtract(BigInteger.ONE)).isValid());
+        assertFalse(Fp.create(BigInteger.ONE.shiftLeft(300)).isValid());
+    }
+
+    @Test
+    public void testAddition() {
+        // G1 + G1
+        assertEquals("030644e72e131a029b85045b68181585d97816a916871ca8d3c208c16d87cfd3" +
+                        "15ed738c0e0a7c92e7845f96b2ae9c0a68a6a449e3538fc7ff3ebf7a5a18a2c4",
+                Hex.toHexString(new PrecompiledContracts.BN128Addition().execute(Hex.decode(G1 + G1)).getRight()));
+        // G1 - G1
+        assertEquals(Hex.toHexString(new byte[64]), Hex.toHexString(new PrecompiledContracts.BN128Addition().execute(
+                Hex.decode(G1 + "0000000000000000000000000000000000000000000000000000000000000001" +
+                        "30644e72e131a029b85045b68181585d97816a916871ca8d3c208c16d87cfd45")).getRight()));
+        // x = p
+        assertFalse(new PrecompiledContracts.BN128Addition().execute(Hex.decode(G1 +
+                "30644e72e131a029b85045b68181585d97816a916871ca8d3c208c16d87cfd47" +
+                "0000000000000000000000000000000000000000000000000000000000000002")).getLeft());
+    }
+
+    @Test
+    public void testMultiplication() {
+        assertEquals("030644e72e131a029b85045b68181585d97816a916871ca8d3c208c16d87cfd3" +
+                        "15ed738c0e0a7c92e7845f96b2ae9c0a68a6a449e3538fc7ff3ebf7a5a18a2c4",
+                Hex.toHexString(mul(G1, new DataWord(2).toString())));
+        // r - 1
+        assertEquals("0000000000000000000000000000000000000000000000000000000000000001" +
+                        "30644e72e131a029b85045b68181585d97816a916871ca8d3c208c16d87cfd45",
+                Hex.toHexString(mul(G1, "30644e72e131a029b85045b68181585d2833e84879b9709143e1f593f0000000")));
+        assertEquals("2f588cffe99db877a4434b598ab28f81e0522910ea52b45f0adaa772b2d5d352" +
+                        "12f42fa8fd34fb1b33d8c6a718b6590198389b26fc9d8808d971f8b009777a97",
+                Hex.toHexString(mul(G1, "ffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffff")));
+
+        BN128<Fp2> g2 = g2();
+        BN128<Fp2> res = g2.mul(new BigInteger("123456789")).toEthNotation();
+        assertEquals("12703405598006979409108671416960902338538868397248453921759384556929622558257", res.x.b.toString());
+        assertEquals("142094823562702583669092464225103219873886198373818886253774429994499461119", res.x.a.toString());
+        assertEquals("21792722069934396490667258760160363541978805696356802531479377933366930348185", res.y.b.toString());
+        assertEquals("10504771741599673449168779439288281645955231116910341346670256599842843491846", res.y.a.toString());
+    }
+
+    @Test
+    public void testPairing() {
+        PairingCheck check = PairingCheck.create();
+        check.addPair(BN128G1.create(Hex.decode("01"), Hex.decode("02")), new BN128G2(g2()));
+        check.run();
+        assertEquals(0, check.result());
+        assertEquals("53e489204da38758c08e8a7f6e41cdcde90b8cb39459a6657ce82f49a550fbe6",
+                Hex.toHexString(sha3(check.product.toString().getBytes())));
+
+        // e(G1, G2) * e(-G1, G2)
+        String negG1 = "0000000000000000000000000000000000000000000000000000000000000001" +
+                "30644e72e131a029b85045b68181585d97816a916871ca8d3c208c16d87cfd45";
+        assertEquals(new DataWord(1), new DataWord(pairing(G1 + G2 + negG1 + G2)));
+        assertEquals(new DataWord(0), new DataWord(pairing(G1 + G2 + G1 + G2)));
+    }
+
+    private static BN128<Fp2> g2() {
+        byte[] g2 = Hex.decode(G2);
+        return BN128Fp2.create(word(g2, 1), word(g2, 0), word(g2, 3), word(g2, 2));
+    }
+
+    private static byte[] word(byte[] data, int idx) {
+        byte[] ret = new byte[32];
+        System.arraycopy(data, idx * 32, ret, 0, 32);
+        return ret;
+    }
+
+    private static byte[] mul(String point, String scalar) {
+        return new PrecompiledContracts.BN128Multiplication().execute(Hex.decode(point + scalar)).getRight();
+    }
+
+    private static byte[] pairing(String input) {
+        return new PrecompiledContracts.BN128Pairing().execute(Hex.decode(input)).getRight();
+    }
+
+    /**
+     * Times the three precompiles
+     */
+    @Ignore
+    @Test
+    public void perfTestPrecompiles() {
+        String scalar = "30644e72e131a029b85045b68181585d2833e84879b9709143e1f593f0000000";
+        String negG1 = "0000000000000000000000000000000000000000000000000000000000000001" +
+                "30644e72e131a029b85045b68181585d97816a916871ca8d3c208c16d87cfd45";
+        String twoPairs = G1 + G2 + negG1 + G2;
+
+        for (int k = 0; k < 5; k++) {
+            long s = System.nanoTime();
+            for (int i = 0; i < 10_000; i++) {
+                new PrecompiledContracts.BN128Addition().execute(Hex.decode(G1 + G1));
+            }
+            long add = (System.nanoTime() - s) / 10_000;
+
+            s = System.nanoTime();
+            for (int i = 0; i < 200; i++) {
+                mul(G1, scalar);
+            }
+            long mul = (System.nanoTime() - s) / 200;
+
+            s = System.nanoTime();
+            for (int i = 0; i < 10; i++) {
+                pairing(twoPairs);
+            }
+            long pairing = (System.nanoTime() - s) / 10;
+
+            System.out.printf("add: %.1f us, mul: %.1f us, pairing of 2: %.1f ms%n",
+                    add / 1000.0, mul / 1000.0, pairing / 1_000_000.0);
+        }
+    }
+}
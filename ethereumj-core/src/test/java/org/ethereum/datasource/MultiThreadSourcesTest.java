@@ -29,6 +29,7 @@ import org.ethereum.util.ByteArrayMap;
 import org.ethereum.util.Utils;
 import org.ethereum.vm.DataWord;
 import org.junit.Assert;
+import org.junit.Ignore;
 import org.junit.Test;
 import org.spongycastle.util.encoders.Hex;
 
@@ -438,6 +439,94 @@ public class MultiThreadSourcesTest {
         testExecutor.run(10);
     }
 
+    @Test
+    public void testStripedWriteCache() throws InterruptedException {
+        Source<byte[], byte[]> src = new HashMapDB<>();
+        final WriteCache writeCache = new StripedWriteCache.BytesKey<>(src, WriteCache.CacheType.SIMPLE, 8);
+
+        TestExecutor testExecutor = new TestExecutor(writeCache);
+        testExecutor.run(5);
+    }
+
+    @Test
+    public void testStripedCountingWriteCache() throws InterruptedException {
+        Source<byte[], byte[]> parentSrc = new HashMapDB<>();
+        Source<byte[], byte[]> src = new CountingBytesSource(parentSrc);
+        final WriteCache writeCache = new StripedWriteCache.BytesKey<>(src, WriteCache.CacheType.COUNTING, 8);
+
+        TestExecutor testExecutor = new TestExecutor(writeCache, true);
+        testExecutor.run(10);
+    }
+
+    @Test
+    public void testOffHeapWriteCache() throws InterruptedException {
+        Source<byte[], byte[]> src = new HashMapDB<>();
+        final WriteCache writeCache = new WriteCache.BytesKey<>(src, WriteCache.CacheType.SIMPLE)
+                .withOffHeapCache(new Serializers.Identity<>());
+
+        TestExecutor testExecutor = new TestExecutor(writeCache);
+        testExecutor.run(5);
+    }
+
+    @Test
+    public void testStripedReadCache() throws InterruptedException {
+        Source<byte[], byte[]> src = new HashMapDB<>();
+        final ReadCache readCache = new ReadCache.BytesKey<>(src).withMaxCapacity(100_000, 8);
+
+        TestExecutor testExecutor = new TestExecutor(readCache);
+        testExecutor.run(5);
+    }
+
+    /**
+     * Reads and writes through a read cache over a write cache from several
+     * threads, with the caches behind a single lock and split between segments
+     */
+    @Ignore
+    @Test
+    public void perfTestStripedCaches() throws Exception {
+        final int threads = 8, keys = 100_000, ops = 1_000_000;
+
+        for (int k = 0; k < 5; k++) {
+            for (int segments : new int[] {1, 16}) {
+                Source<byte[], byte[]> db = new HashMapDB<>();
+                for (int i = 0; i < keys; i++) {
+                    db.put(key(i), intToValue(i));
+                }
+                WriteCache<byte[], byte[]> writeCache = segments == 1 ?
+                        new WriteCache.BytesKey<>(db, WriteCache.CacheType.SIMPLE) :
+                        new StripedWriteCache.BytesKey<>(db, WriteCache.CacheType.SIMPLE, segments);
+                ReadCache<byte[], byte[]> readCache = segments == 1 ?
+                        new ReadCache.BytesKey<>(writeCache).withMaxCapacity(keys / 2) :
+                        new ReadCache.BytesKey<>(writeCache).withMaxCapacity(keys / 2, segments);
+
+                ExecutorService executor = Executors.newFixedThreadPool(threads);
+                List<Future<?>> futures = new ArrayList<>();
+                long s = System.nanoTime();
+                for (int t = 0; t < threads; t++) {
+                    final int seed = t;
+                    futures.add(executor.submit(() -> {
+                        Random random = new Random(seed);
+                        for (int i = 0; i < ops / threads; i++) {
+                            byte[] key = key(random.nextInt(keys));
+                            // one write for 9 reads
+                            if (i % 10 == 0) {
+                                writeCache.put(key, intToValue(i));
+                            } else {
+                                readCache.get(key);
+                            }
+                        }
+                    }));
+                }
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+                long t = System.nanoTime() - s;
+                executor.shutdown();
+                System.out.printf("%d segments: %.0f ns/op%n", segments, (double) t / ops);
+            }
+        }
+    }
+
     private static byte[] key(int key) {
         return sha3(intToBytes(key));
     }
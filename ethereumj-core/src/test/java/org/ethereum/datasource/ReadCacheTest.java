@@ -88,4 +88,57 @@ public class ReadCacheTest {
         assertEquals(str(intToValue(9_901)), str(readCache.getCached(intToKey(9_901)).value()));
         assertNull(readCache.getCached(intToKey(9_900)));
     }
+
+    @Test
+    public void testStats() {
+        Source<byte[], byte[]> src = new HashMapDB<>();
+        ReadCache<byte[], byte[]> readCache = new ReadCache.BytesKey<>(src).withMaxCapacity(10);
+        readCache.withSizeEstimators(MemSizeEstimator.ByteArrayEstimator, MemSizeEstimator.ByteArrayEstimator);
+        for (int i = 0; i < 10; ++i) {
+            src.put(intToKey(i), intToValue(i));
+        }
+        assertEquals(0, readCache.getHitRate(), 0);
+
+        for (int i = 0; i < 10; ++i) {
+            readCache.get(intToKey(i));
+            readCache.get(intToKey(i));
+        }
+        // cached nulls are hits too
+        readCache.get(intToKey(100));
+        readCache.get(intToKey(100));
+        assertEquals(11, readCache.getHitCount());
+        assertEquals(11, readCache.getMissCount());
+        assertEquals(0.5, readCache.getHitRate(), 0);
+
+        // the null pushed out 0, replacing a value doesn't grow the cache
+        long entrySize = 32 + 16 + 32 + 16;
+        assertEquals(9 * entrySize + 32 + 16, readCache.estimateCacheSize());
+        readCache.put(intToKey(1), intToValue(2));
+        readCache.put(intToKey(100), intToValue(100));
+        assertEquals(10 * entrySize, readCache.estimateCacheSize());
+
+        readCache.delete(intToKey(1));
+        readCache.delete(intToKey(1));
+        assertEquals(9 * entrySize, readCache.estimateCacheSize());
+    }
+
+    @Test
+    public void testSegments() {
+        Source<byte[], byte[]> src = new HashMapDB<>();
+        ReadCache<byte[], byte[]> readCache = new ReadCache.BytesKey<>(src).withMaxCapacity(1000, 10);
+        readCache.withSizeEstimators(MemSizeEstimator.ByteArrayEstimator, MemSizeEstimator.ByteArrayEstimator);
+        for (int i = 0; i < 10_000; ++i) {
+            src.put(intToKey(i), intToValue(i));
+            assertEquals(str(intToValue(i)), str(readCache.get(intToKey(i))));
+        }
+
+        // each segment keeps its 100 latest entries
+        assertEquals(str(intToValue(9_999)), str(readCache.getCached(intToKey(9_999)).value()));
+        assertNull(readCache.getCached(intToKey(0)));
+        assertEquals(1000 * (32 + 16 + 32 + 16), readCache.estimateCacheSize());
+        assertEquals(10_000, readCache.getMissCount());
+
+        readCache.get(intToKey(9_999));
+        assertEquals(1, readCache.getHitCount());
+    }
 }
@@ -152,4 +152,96 @@ public class WriteCacheTest {
         writeCache.flush();
         assertEquals(0, writeCache.estimateCacheSize());
     }
+
+    @Test
+    public void testOffHeap() {
+        Source<byte[], byte[]> src = new HashMapDB<>();
+        WriteCache<byte[], byte[]> writeCache = new WriteCache.BytesKey<>(src, WriteCache.CacheType.SIMPLE)
+                .withOffHeapCache(new Serializers.Identity<>());
+        for (int i = 0; i < 10_000; ++i) {
+            writeCache.put(intToKey(i), intToValue(i));
+        }
+        writeCache.put(intToKey(0), intToValue(12345));
+        assertEquals(str(intToValue(12345)), str(writeCache.getCached(intToKey(0)).value()));
+        assertEquals(str(intToValue(9_999)), str(writeCache.get(intToKey(9_999))));
+        assertTrue(writeCache.estimateCacheSize() >= 10_000 * (32 + 32));
+        assertEquals(10_000, writeCache.getModified().size());
+
+        writeCache.flush();
+        assertNull(writeCache.getCached(intToKey(0)));
+        assertEquals(str(intToValue(12345)), str(src.get(intToKey(0))));
+        assertEquals(str(intToValue(9_999)), str(src.get(intToKey(9_999))));
+        assertTrue(writeCache.estimateCacheSize() < 10_000 * (32 + 32));
+
+        // deleting the key which is in the cache and the one which is not
+        writeCache.put(intToKey(0), intToValue(0));
+        writeCache.delete(intToKey(0));
+        writeCache.delete(intToKey(1));
+        assertTrue(null == writeCache.getCached(intToKey(0)) || null == writeCache.getCached(intToKey(0)).value());
+        assertNull(writeCache.getCached(intToKey(1)));
+        assertEquals(str(intToValue(1)), str(src.get(intToKey(1))));
+        writeCache.flush();
+        assertNull(src.get(intToKey(0)));
+        assertNull(src.get(intToKey(1)));
+    }
+
+    @Test
+    public void testOffHeapCounting() {
+        Source<byte[], byte[]> parentSrc = new HashMapDB<>();
+        Source<byte[], byte[]> src = new CountingBytesSource(parentSrc);
+        WriteCache<byte[], byte[]> writeCache = new StripedWriteCache.BytesKey<>(src, WriteCache.CacheType.COUNTING, 4)
+                .withOffHeapCache(new Serializers.Identity<>());
+        for (int i = 0; i < 100; ++i) {
+            for (int j = 0; j <= i; ++j) {
+                writeCache.put(intToKey(i), intToValue(i));
+            }
+        }
+        writeCache.flush();
+        assertEquals(str(intToValue(99)), str(writeCache.get(intToKey(99))));
+
+        // the counters survive the round trips through the off-heap map
+        writeCache.delete(intToKey(1));
+        writeCache.delete(intToKey(2));
+        writeCache.put(intToKey(2), intToValue(2));
+        writeCache.flush();
+        assertEquals(str(intToValue(1)), str(src.get(intToKey(1))));
+        writeCache.delete(intToKey(1));
+        writeCache.delete(intToKey(1));
+        writeCache.put(intToKey(1), intToValue(1));
+        writeCache.flush();
+        assertNull(src.get(intToKey(1)));
+        assertEquals(str(intToValue(2)), str(src.get(intToKey(2))));
+    }
+
+    @Test
+    public void testStriped() {
+        Source<byte[], byte[]> parentSrc = new HashMapDB<>();
+        Source<byte[], byte[]> src = new CountingBytesSource(parentSrc);
+        WriteCache<byte[], byte[]> writeCache = new StripedWriteCache.BytesKey<>(src, WriteCache.CacheType.COUNTING, 4);
+        writeCache.withSizeEstimators(MemSizeEstimator.ByteArrayEstimator, MemSizeEstimator.ByteArrayEstimator);
+        for (int i = 0; i < 100; ++i) {
+            for (int j = 0; j <= i; ++j) {
+                writeCache.put(intToKey(i), intToValue(i));
+            }
+        }
+        assertTrue(writeCache.hasModified());
+        assertEquals(100, writeCache.getModified().size());
+        assertEquals(str(intToValue(99)), str(writeCache.getCached(intToKey(99)).value()));
+        assertEquals(100 * (32 + 16 + 32 + 16), writeCache.estimateCacheSize());
+
+        assertTrue(writeCache.flush());
+        assertFalse(writeCache.hasModified());
+        assertEquals(0, writeCache.estimateCacheSize());
+        assertNull(writeCache.getCached(intToKey(99)));
+        assertEquals(str(intToValue(99)), str(writeCache.get(intToKey(99))));
+
+        // the references are counted per key as in a single cache
+        writeCache.delete(intToKey(1));
+        writeCache.flush();
+        assertEquals(str(intToValue(1)), str(src.get(intToKey(1))));
+        writeCache.delete(intToKey(1));
+        writeCache.flush();
+        assertNull(src.get(intToKey(1)));
+        assertFalse(writeCache.flush());
+    }
 }
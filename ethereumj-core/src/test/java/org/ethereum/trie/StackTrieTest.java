@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.trie;
+
+import org.ethereum.util.FastByteComparisons;
+import org.ethereum.util.RLP;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.spongycastle.util.encoders.Hex;
+
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.ethereum.crypto.HashUtil.EMPTY_TRIE_HASH;
+import static org.ethereum.crypto.HashUtil.sha3;
+import static org.ethereum.util.ByteUtil.intToBytes;
+import static org.junit.Assert.assertArrayEquals;
+
+public class StackTrieTest {
+
+    private static byte[][] randomValues(Random rnd, int size) {
+        byte[][] values = new byte[size][];
+        for (int i = 0; i < size; i++) {
+            // mix of short values (embedded nodes) and long ones (hashed nodes)
+            values[i] = new byte[1 + rnd.nextInt(rnd.nextBoolean() ? 4 : 100)];
+            rnd.nextBytes(values[i]);
+        }
+        return values;
+    }
+
+    private static byte[] indexedTrieImplRoot(byte[][] values) {
+        TrieImpl trie = new TrieImpl();
+        for (int i = 0; i < values.length; i++) {
+            trie.put(RLP.encodeInt(i), values[i]);
+        }
+        return trie.getRootHash();
+    }
+
+    @Test
+    public void testEmpty() {
+        assertArrayEquals(EMPTY_TRIE_HASH, new StackTrie().getRootHash());
+        assertArrayEquals(EMPTY_TRIE_HASH, StackTrie.calcIndexedRoot(0, i -> null));
+    }
+
+    @Test
+    public void testIndexedMatchesTrieImpl() {
+        Random rnd = new Random(42);
+        int[] sizes = {1, 2, 15, 16, 17, 127, 128, 129, 255, 256, 257, 1000, 4096};
+        for (int size : sizes) {
+            byte[][] values = randomValues(rnd, size);
+            assertArrayEquals("size " + size, indexedTrieImplRoot(values),
+                    StackTrie.calcIndexedRoot(size, i -> values[i]));
+        }
+        for (int k = 0; k < 200; k++) {
+            int size = 1 + rnd.nextInt(300);
+            byte[][] values = randomValues(rnd, size);
+            assertArrayEquals("size " + size, indexedTrieImplRoot(values),
+                    StackTrie.calcIndexedRoot(size, i -> values[i]));
+        }
+    }
+
+    @Test
+    public void testSortedKeysMatchTrieImpl() {
+        Random rnd = new Random(43);
+        for (int k = 0; k < 100; k++) {
+            // fixed length keys are prefix free, short keys produce long shared prefixes
+            int keyLen = 1 + rnd.nextInt(4);
+            TreeMap<byte[], byte[]> entries = new TreeMap<>(
+                    (a, b) -> FastByteComparisons.compareTo(a, 0, a.length, b, 0, b.length));
+            int size = 1 + rnd.nextInt(500);
+            for (int i = 0; i < size; i++) {
+                byte[] key = new byte[keyLen];
+                rnd.nextBytes(key);
+                entries.put(key, randomValues(rnd, 1)[0]);
+            }
+
+            TrieImpl expected = new TrieImpl();
+            StackTrie trie = new StackTrie();
+            entries.forEach((key, value) -> {
+                expected.put(key, value);
+                trie.put(key, value);
+            });
+            assertArrayEquals(expected.getRootHash(), trie.getRootHash());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testOutOfOrderRejected() {
+        StackTrie trie = new StackTrie();
+        trie.put(Hex.decode("0102"), new byte[]{1});
+        trie.put(Hex.decode("0101"), new byte[]{1});
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPrefixRejected() {
+        StackTrie trie = new StackTrie();
+        trie.put(Hex.decode("01"), new byte[]{1});
+        trie.put(Hex.decode("0101"), new byte[]{1});
+    }
+
+    @Ignore
+    @Test
+    public void perfTestIndexedRoot() {
+        final int size = 1000;
+        byte[][] values = new byte[size][];
+        for (int i = 0; i < size; i++) {
+            values[i] = sha3(intToBytes(i));
+        }
+
+        for (int k = 0; k < 10; k++) {
+            long s = System.nanoTime();
+            for (int j = 0; j < 100; j++) {
+                indexedTrieImplRoot(values);
+            }
+            long s1 = System.nanoTime();
+            for (int j = 0; j < 100; j++) {
+                StackTrie.calcIndexedRoot(size, i -> values[i]);
+            }
+            long s2 = System.nanoTime();
+            System.out.println("TrieImpl: " + (s1 - s) / 1_000_000 + " ms, StackTrie: " + (s2 - s1) / 1_000_000 + " ms");
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.trie;
+
+import org.ethereum.core.Repository;
+import org.ethereum.datasource.inmem.HashMapDB;
+import org.ethereum.db.RepositoryRoot;
+import org.ethereum.util.RLP;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+import static org.ethereum.crypto.HashUtil.sha3;
+import static org.junit.Assert.*;
+
+public class TrieNodeCacheTest {
+
+    private static byte[] key(int i) {
+        return sha3(new byte[] {(byte) (i >> 8), (byte) i});
+    }
+
+    @Test
+    public void testSharedByTries() {
+        HashMapDB<byte[]> db = new HashMapDB<>();
+        TrieImpl trie = new TrieImpl(db);
+        for (int i = 0; i < 1000; i++) {
+            trie.put(key(i), key(i + 1));
+        }
+        trie.flush();
+        byte[] root = trie.getRootHash();
+
+        TrieNodeCache cache = new TrieNodeCache(16 * 1024 * 1024);
+        TrieImpl first = new TrieImpl(db, root);
+        first.setNodeCache(cache);
+        for (int i = 0; i < 1000; i++) {
+            assertArrayEquals(key(i + 1), first.get(key(i)));
+        }
+        int nodes = cache.size();
+        assertTrue(nodes > 0);
+        // the root is not looked up in the cache
+        assertEquals(nodes - 1, cache.getMissCount());
+        assertEquals(0, cache.getHitCount());
+
+        // another trie over the same state reads only the root from the source
+        HashMapDB<byte[]> rootDb = new HashMapDB<>();
+        rootDb.put(root, db.get(root));
+        TrieImpl second = new TrieImpl(rootDb, root);
+        second.setNodeCache(cache);
+        for (int i = 0; i < 1000; i++) {
+            assertArrayEquals(key(i + 1), second.get(key(i)));
+        }
+        assertNull(second.get(key(1000)));
+        assertEquals(nodes - 1, cache.getMissCount());
+        assertEquals(nodes - 1, cache.getHitCount());
+
+        // and updates it the same way
+        second.put(key(1000), key(1001));
+        second.delete(key(0));
+        trie.put(key(1000), key(1001));
+        trie.delete(key(0));
+        assertArrayEquals(trie.getRootHash(), second.getRootHash());
+    }
+
+    @Test
+    public void testSharedByRepositories() {
+        HashMapDB<byte[]> db = new HashMapDB<>();
+        TrieNodeCache cache = new TrieNodeCache(16 * 1024 * 1024);
+        RepositoryRoot repo = new RepositoryRoot(db, null, null, cache);
+        for (int i = 0; i < 100; i++) {
+            repo.addBalance(Arrays.copyOf(key(i), 20), BigInteger.ONE);
+        }
+        repo.commit();
+        byte[] root = repo.getRoot();
+
+        Repository other = new RepositoryRoot(db, root, null, cache);
+        assertEquals(BigInteger.ONE, other.getBalance(Arrays.copyOf(key(0), 20)));
+        long misses = cache.getMissCount();
+        assertTrue(misses > 0);
+
+        // the snapshots of a repository read through its cache
+        Repository snapshot = other.getSnapshotTo(root);
+        assertEquals(BigInteger.ONE, snapshot.getBalance(Arrays.copyOf(key(0), 20)));
+        assertEquals(misses, cache.getMissCount());
+        assertTrue(cache.getHitCount() > 0);
+    }
+
+    @Test
+    public void testMissingRoot() {
+        HashMapDB<byte[]> db = new HashMapDB<>();
+        TrieImpl trie = new TrieImpl(db);
+        trie.put(key(0), key(1));
+        trie.put(key(1), key(2));
+        trie.flush();
+
+        TrieNodeCache cache = new TrieNodeCache(16 * 1024 * 1024);
+        TrieImpl first = new TrieImpl(db, trie.getRootHash());
+        first.setNodeCache(cache);
+        assertArrayEquals(key(1), first.get(key(0)));
+
+        // the state is gone from the source, e.g. pruned
+        TrieImpl second = new TrieImpl(new HashMapDB<>(), trie.getRootHash());
+        second.setNodeCache(cache);
+        assertNull(second.get(key(0)));
+    }
+
+    @Test
+    public void testEviction() {
+        byte[] rlp = RLP.encodeList(RLP.encodeElement(new byte[32]), RLP.encodeElement(new byte[100]));
+        TrieNodeCache cache = new TrieNodeCache(64 * 1024);
+        for (int i = 0; i < 1000; i++) {
+            RLP.LList node = cache.put(key(i), rlp);
+            assertEquals(2, node.size());
+        }
+        assertTrue(cache.estimatedSize() <= 64 * 1024);
+        assertTrue(cache.size() < 1000);
+        assertEquals(1000 - cache.size(), cache.getEvictionCount());
+
+        // least recently used first
+        assertNotNull(cache.get(key(999)));
+        assertNull(cache.get(key(0)));
+        assertEquals(0.5, cache.getHitRate(), 0);
+    }
+
+    @Test
+    public void testNodeLargerThanSegment() {
+        TrieNodeCache cache = new TrieNodeCache(16 * 100);
+        RLP.LList node = cache.put(key(0), RLP.encodeList(RLP.encodeElement(new byte[1000])));
+        assertArrayEquals(new byte[1000], node.getBytes(0));
+        assertEquals(0, cache.size());
+        assertNull(cache.get(key(0)));
+    }
+}
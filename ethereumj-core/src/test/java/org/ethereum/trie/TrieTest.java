@@ -22,6 +22,7 @@ import org.ethereum.crypto.HashUtil;
 import org.ethereum.datasource.*;
 import org.ethereum.datasource.inmem.HashMapDB;
 import org.ethereum.datasource.inmem.HashMapDBSimple;
+import org.ethereum.db.ByteArrayWrapper;
 import org.ethereum.util.Value;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
@@ -43,6 +44,7 @@ import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 
 import static org.ethereum.crypto.HashUtil.EMPTY_TRIE_HASH;
 import static org.ethereum.crypto.HashUtil.sha3;
@@ -1130,6 +1132,161 @@ public class TrieTest {
         assertFalse(src.getStorage().containsKey(Hex.decode("5152f9274abb8e61f3956ccd08d31e38bfa2913afd23bc13b5e7bb709ce7f603")));
     }
 
+    @Test
+    public void testSharedPools() {
+        assertNull(TrieImpl.getPool(1));
+        assertSame(TrieImpl.getPool(3), TrieImpl.getPool(3));
+        assertEquals(3, TrieImpl.getPool(3).getParallelism());
+        assertNotSame(TrieImpl.getPool(2), TrieImpl.getPool(3));
+    }
+
+    @Test
+    public void testParallelCommit() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        Random random = new Random(1);
+        HashMapDB<byte[]> serialDb = new HashMapDB<>();
+        HashMapDB<byte[]> parallelDb = new HashMapDB<>();
+        TrieImpl serial = new TrieImpl(serialDb);
+        serial.setAsync(false);
+        TrieImpl parallel = new TrieImpl(parallelDb);
+        parallel.setPool(pool);
+
+        Set<ByteArrayWrapper> keys = new HashSet<>();
+        for (int round = 0; round < 5; round++) {
+            int updates = round == 0 ? 20_000 : 1 + random.nextInt(2000);
+            for (int i = 0; i < updates; i++) {
+                // short keys too, to have values in the branch nodes
+                byte[] key = new byte[1 + random.nextInt(round == 0 ? 32 : 3)];
+                random.nextBytes(key);
+                if (random.nextInt(4) == 0 && !keys.isEmpty()) {
+                    key = keys.iterator().next().getData();
+                    keys.remove(new ByteArrayWrapper(key));
+                    serial.delete(key);
+                    parallel.delete(key);
+                } else {
+                    byte[] value = new byte[1 + random.nextInt(64)];
+                    random.nextBytes(value);
+                    keys.add(new ByteArrayWrapper(key));
+                    serial.put(key, value);
+                    parallel.put(key, value);
+                }
+            }
+            assertArrayEquals(serial.getRootHash(), parallel.getRootHash());
+            serial.flush();
+            parallel.flush();
+        }
+
+        TrieImpl reloaded = new TrieImpl(parallelDb, parallel.getRootHash());
+        for (ByteArrayWrapper key : keys) {
+            assertArrayEquals(serial.get(key.getData()), reloaded.get(key.getData()));
+        }
+        pool.shutdown();
+    }
+
+    @Test
+    public void testDeleteKeepsBranchValue() {
+        // the branch after "a" keeps the value when one of its two children is deleted
+        TrieImpl trie = new TrieImpl();
+        trie.put("a".getBytes(), "1".getBytes());
+        trie.put("a1".getBytes(), "2".getBytes());
+        trie.put("aa".getBytes(), "3".getBytes());
+        trie.delete("aa".getBytes());
+
+        assertArrayEquals("1".getBytes(), trie.get("a".getBytes()));
+        assertArrayEquals("2".getBytes(), trie.get("a1".getBytes()));
+        TrieImpl expected = new TrieImpl();
+        expected.put("a".getBytes(), "1".getBytes());
+        expected.put("a1".getBytes(), "2".getBytes());
+        assertArrayEquals(expected.getRootHash(), trie.getRootHash());
+    }
+
+    @Test
+    public void testUpdateBatch() {
+        Random random = new Random(1);
+        HashMapDB<byte[]> batchDb = new HashMapDB<>();
+        TrieImpl single = new TrieImpl();
+        TrieImpl batch = new TrieImpl(batchDb);
+        Map<ByteArrayWrapper, byte[]> state = new HashMap<>();
+
+        for (int round = 0; round < 30; round++) {
+            Map<ByteArrayWrapper, byte[]> rows = new HashMap<>();
+            int updates = random.nextInt(round % 3 == 0 ? 2000 : 20);
+            for (int i = 0; i < updates; i++) {
+                byte[] key;
+                if (random.nextInt(3) == 0 && !state.isEmpty()) {
+                    key = state.keySet().iterator().next().getData();
+                } else {
+                    // short keys too, to have values in the branch nodes
+                    key = new byte[1 + random.nextInt(round % 2 == 0 ? 32 : 3)];
+                    random.nextBytes(key);
+                }
+                byte[] value = null;
+                if (random.nextInt(3) > 0) {
+                    value = new byte[1 + random.nextInt(64)];
+                    random.nextBytes(value);
+                }
+                rows.put(new ByteArrayWrapper(key), value);
+                if (value == null) {
+                    state.remove(new ByteArrayWrapper(key));
+                    single.delete(key);
+                } else {
+                    state.put(new ByteArrayWrapper(key), value);
+                    single.put(key, value);
+                }
+            }
+            Map<byte[], byte[]> batchRows = new HashMap<>();
+            for (Map.Entry<ByteArrayWrapper, byte[]> row : rows.entrySet()) {
+                batchRows.put(row.getKey().getData(), row.getValue());
+            }
+            batch.updateBatch(batchRows);
+
+            TrieImpl rebuilt = new TrieImpl();
+            for (Map.Entry<ByteArrayWrapper, byte[]> entry : state.entrySet()) {
+                rebuilt.put(entry.getKey().getData(), entry.getValue());
+            }
+            assertArrayEquals(rebuilt.getRootHash(), single.getRootHash());
+            assertArrayEquals(rebuilt.getRootHash(), batch.getRootHash());
+            if (round % 5 == 0) {
+                single.flush();
+                batch.flush();
+            }
+        }
+
+        TrieImpl reloaded = new TrieImpl(batchDb, batch.getRootHash());
+        for (Map.Entry<ByteArrayWrapper, byte[]> entry : state.entrySet()) {
+            assertArrayEquals(entry.getValue(), reloaded.get(entry.getKey().getData()));
+        }
+
+        // duplicates, the last one is applied, and everything deleted at once
+        byte[] key = state.keySet().iterator().next().getData();
+        Map<byte[], byte[]> rows = new LinkedHashMap<>();
+        rows.put(key, null);
+        rows.put(key.clone(), new byte[] {1});
+        batch.updateBatch(rows);
+        assertArrayEquals(new byte[] {1}, batch.get(key));
+
+        rows.clear();
+        for (ByteArrayWrapper k : state.keySet()) {
+            rows.put(k.getData(), null);
+        }
+        batch.updateBatch(rows);
+        assertArrayEquals(EMPTY_TRIE_HASH, batch.getRootHash());
+    }
+
+    @Test
+    public void testSecureUpdateBatch() {
+        SecureTrie single = new SecureTrie((byte[]) null);
+        SecureTrie batch = new SecureTrie((byte[]) null);
+        Map<byte[], byte[]> rows = new HashMap<>();
+        for (int i = 0; i < 1000; i++) {
+            single.put(intToBytes(i), intToBytes(i + 1));
+            rows.put(intToBytes(i), intToBytes(i + 1));
+        }
+        batch.updateBatch(rows);
+        assertArrayEquals(single.getRootHash(), batch.getRootHash());
+        assertArrayEquals(intToBytes(8), batch.get(intToBytes(7)));
+    }
+
     @Ignore
     @Test
     public void perfTestGet() {
@@ -1194,4 +1351,73 @@ public class TrieTest {
             System.out.println((System.nanoTime() - s) / 1_000_000 + " ms, root: " + (System.nanoTime() - s1) / 1_000_000 + " ms");
         }
     }
+
+    /**
+     * Commits a number of newly put leaves with the modified nodes hashed
+     * by the committing thread and in the pool.
+     */
+    @Ignore
+    @Test
+    public void perfTestParallelCommit() {
+        ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        for (int size : new int[] {10_000, 100_000, 1_000_000}) {
+            for (int k = 0; k < 5; k++) {
+                for (boolean parallel : new boolean[] {false, true}) {
+                    TrieImpl trie = new TrieImpl(new HashMapDB<>());
+                    if (parallel) {
+                        trie.setPool(pool);
+                    } else {
+                        trie.setAsync(false);
+                    }
+                    for (int i = 0; i < size; i++) {
+                        byte[] key = sha3(intToBytes(i));
+                        trie.put(key, key);
+                    }
+                    long s = System.nanoTime();
+                    trie.flush();
+                    System.out.printf("%d leaves, %s: %d ms%n", size, parallel ? "parallel" : "serial",
+                            (System.nanoTime() - s) / 1_000_000);
+                }
+            }
+        }
+        pool.shutdown();
+    }
+
+    /**
+     * Updates the storage-like trie with blocks of rows put one by one and
+     * in a batch.
+     */
+    @Ignore
+    @Test
+    public void perfTestUpdateBatch() {
+        final int size = 200_000, updates = 5_000;
+        for (int k = 0; k < 10; k++) {
+            for (boolean inBatch : new boolean[] {false, true}) {
+                HashMapDB<byte[]> db = new HashMapDB<>();
+                SecureTrie trie = new SecureTrie(db);
+                trie.setAsync(false);
+                for (int i = 0; i < size; i++) {
+                    trie.put(intToBytes(i), intToBytes(i));
+                }
+                trie.flush();
+
+                Random random = new Random(k);
+                Map<byte[], byte[]> rows = new HashMap<>();
+                for (int i = 0; i < updates; i++) {
+                    rows.put(intToBytes(random.nextInt(2 * size)), intToBytes(random.nextInt()));
+                }
+
+                long s = System.nanoTime();
+                if (inBatch) {
+                    trie.updateBatch(rows);
+                } else {
+                    for (Map.Entry<byte[], byte[]> entry : rows.entrySet()) {
+                        trie.put(entry.getKey(), entry.getValue());
+                    }
+                }
+                trie.flush();
+                System.out.printf("%s: %d ms%n", inBatch ? "batch" : "one by one", (System.nanoTime() - s) / 1_000_000);
+            }
+        }
+    }
 }
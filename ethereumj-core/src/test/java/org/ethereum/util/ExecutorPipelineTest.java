@@ -52,4 +52,27 @@ public class ExecutorPipelineTest {
 
         Assert.assertEquals(cnt, consumed.size());
     }
+
+    @Test
+    public void setThreadsTest() throws InterruptedException {
+        ExecutorPipeline<Integer, Integer> exec1 = new ExecutorPipeline<>(1, 100, true,
+                integer -> integer, Throwable::printStackTrace);
+
+        final List<Integer> consumed = new ArrayList<>();
+        exec1.add(1, 100, consumed::add);
+
+        int cnt = 1000;
+        for (int i = 0; i < cnt; i++) {
+            if (i == cnt / 4) exec1.setThreads(4);
+            if (i == cnt / 2) exec1.setThreads(2);
+            exec1.push(i);
+        }
+        Assert.assertEquals(2, exec1.getThreads());
+        exec1.join();
+
+        Assert.assertEquals(cnt, consumed.size());
+        for (int i = 0; i < cnt; i++) {
+            Assert.assertEquals(i, (int) consumed.get(i));
+        }
+    }
 }
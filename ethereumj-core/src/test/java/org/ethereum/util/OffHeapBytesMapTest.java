@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.util;
+
+import org.ethereum.datasource.Serializers;
+import org.ethereum.db.ByteArrayWrapper;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.ethereum.crypto.HashUtil.sha3;
+import static org.junit.Assert.*;
+
+public class OffHeapBytesMapTest {
+
+    @Test
+    public void testSameAsHashMap() {
+        Random random = new Random(1);
+        OffHeapBytesMap<byte[]> map = new OffHeapBytesMap<>(new Serializers.Identity<>());
+        Map<ByteArrayWrapper, byte[]> expected = new HashMap<>();
+
+        for (int i = 0; i < 200_000; i++) {
+            // mostly hashes, some shorter and longer keys
+            int k = random.nextInt(20_000);
+            byte[] key = k % 50 == 0 ? Arrays.copyOf(sha3(ByteUtil.intToBytes(k)), 1 + k % 31) :
+                    k % 50 == 1 ? ByteUtil.intToBytes(k) : sha3(ByteUtil.intToBytes(k));
+            if (k % 50 == 2) {
+                key = ByteUtil.merge(key, key);
+            }
+
+            int op = random.nextInt(10);
+            if (op < 6) {
+                byte[] value = op == 0 ? new byte[0] : new byte[random.nextInt(600)];
+                random.nextBytes(value);
+                byte[] old = map.put(key, value);
+                assertArrayEquals(expected.put(new ByteArrayWrapper(key), value), old);
+            } else if (op < 8) {
+                assertArrayEquals(expected.remove(new ByteArrayWrapper(key)), map.remove(key));
+            } else {
+                assertArrayEquals(expected.get(new ByteArrayWrapper(key)), map.get(key));
+                assertEquals(expected.containsKey(new ByteArrayWrapper(key)), map.containsKey(key));
+            }
+            assertEquals(expected.size(), map.size());
+        }
+
+        int count = 0;
+        for (Map.Entry<byte[], byte[]> entry : map.entrySet()) {
+            assertArrayEquals(expected.get(new ByteArrayWrapper(entry.getKey())), entry.getValue());
+            count++;
+        }
+        assertEquals(expected.size(), count);
+    }
+
+    @Test
+    public void testNullValue() {
+        OffHeapBytesMap<byte[]> map = new OffHeapBytesMap<>(new Serializers.Identity<>());
+        map.put(sha3(new byte[] {1}), null);
+        map.put(sha3(new byte[] {2}), new byte[0]);
+        assertTrue(map.containsKey(sha3(new byte[] {1})));
+        assertNull(map.get(sha3(new byte[] {1})));
+        assertArrayEquals(new byte[0], map.get(sha3(new byte[] {2})));
+        assertFalse(map.containsKey(sha3(new byte[] {3})));
+    }
+
+    @Test
+    public void testMemorySize() {
+        OffHeapBytesMap<byte[]> map = new OffHeapBytesMap<>(new Serializers.Identity<>());
+        long initial = map.getMemorySize();
+
+        for (int i = 0; i < 10_000; i++) {
+            map.put(sha3(ByteUtil.intToBytes(i)), new byte[500]);
+        }
+        long filled = map.getMemorySize();
+        assertTrue(filled >= 10_000 * (500 + 32));
+
+        // the replaced values don't take the memory for long
+        for (int k = 0; k < 20; k++) {
+            for (int i = 0; i < 10_000; i++) {
+                map.put(sha3(ByteUtil.intToBytes(i)), new byte[500]);
+            }
+        }
+        assertEquals(10_000, map.size());
+        assertTrue(map.getMemorySize() <= filled * 3);
+
+        map.clear();
+        assertEquals(0, map.size());
+        assertEquals(initial, map.getMemorySize());
+    }
+}
@@ -17,11 +17,14 @@
  */
 package org.ethereum.vm;
 
+import org.ethereum.crypto.HashUtil;
 import org.ethereum.vm.program.Memory;
+import org.junit.Ignore;
 import org.junit.Test;
 import org.spongycastle.util.encoders.Hex;
 
 import java.util.Arrays;
+import java.util.Random;
 
 import static java.lang.Math.ceil;
 import static org.junit.Assert.assertArrayEquals;
@@ -528,6 +531,70 @@ public class MemoryTest {
         assertTrue(zero == 10);
     }
 
+    @Test
+    public void testGrowthAndHash() {
+        Memory memory = new Memory();
+        byte[] data = new byte[100];
+        Arrays.fill(data, (byte) 7);
+
+        // many chunks, the backing array is reallocated several times
+        memory.write(CHUNK_SIZE * 100 - 50, data, data.length, false);
+        memory.write(3, data, data.length, false);
+
+        assertEquals(CHUNK_SIZE * 101, memory.internalSize());
+        assertEquals(101, memory.getChunks().size());
+        assertEquals(7, memory.getChunks().get(99)[CHUNK_SIZE - 1]);
+        assertEquals(7, memory.getChunks().get(100)[49]);
+        assertEquals(0, memory.getChunks().get(100)[50]);
+        assertArrayEquals(data, memory.read(CHUNK_SIZE * 100 - 50, data.length));
+
+        assertArrayEquals(HashUtil.sha3(memory.read(0, 5000)), memory.hash(0, 5000));
+        assertArrayEquals(HashUtil.sha3(new byte[0]), memory.hash(0, 0));
+        assertEquals(calcSize(CHUNK_SIZE * 100 + 50, WORD_SIZE), memory.size());
+    }
 
-
-}
\ No newline at end of file
+    /**
+     * Word reads and writes spread over a large memory, plus bulk copies
+     * and hashes of large ranges.
+     */
+    @Ignore
+    @Test
+    public void perfTestLargeMemory() {
+        final int size = 4 * 1024 * 1024;
+        final byte[] block = new byte[64 * 1024];
+        new Random(1).nextBytes(block);
+
+        for (int k = 0; k < 5; k++) {
+            Memory memory = new Memory();
+
+            long s = System.nanoTime();
+            for (int offset = 0; offset < size; offset += block.length) {
+                memory.write(offset, block, block.length, false);
+            }
+            long s1 = System.nanoTime();
+
+            final Random random = new Random(2);
+            long sink = 0;
+            for (int i = 0; i < 1_000_000; i++) {
+                final int address = random.nextInt(size - WORD_SIZE);
+                DataWord word = memory.readWord(address);
+                memory.write(address ^ 0x40, word.getData(), WORD_SIZE, false);
+                sink += word.getData()[0];
+            }
+            long s2 = System.nanoTime();
+
+            for (int offset = 0; offset < size; offset += block.length) {
+                sink += memory.read(offset, block.length)[0];
+            }
+            long s3 = System.nanoTime();
+
+            for (int offset = 0; offset < size; offset += block.length) {
+                sink += memory.hash(offset, block.length)[0];
+            }
+            long s4 = System.nanoTime();
+
+            System.out.printf("fill: %d ms, 1M word r/w: %d ms, copy out: %d ms, hash: %d ms (%d)%n",
+                    (s1 - s) / 1_000_000, (s2 - s1) / 1_000_000, (s3 - s2) / 1_000_000, (s4 - s3) / 1_000_000, sink);
+        }
+    }
+}
@@ -238,4 +238,68 @@ public class PrecompiledContractTest {
         assertArrayEquals(EMPTY_BYTE_ARRAY, contract.execute(null).getRight());
     }
 
+    @Test
+    public void cacheTest() {
+
+        SystemProperties config = new SystemProperties();
+        config.overrideParams("vm.precompiled.cache.ecrecover", "2");
+        PrecompiledContractCache cache = new PrecompiledContractCache(config);
+
+        PrecompiledContract sha256 = new PrecompiledContracts.Sha256();
+        assertSame(sha256, cache.wrap("sha256", sha256));
+        assertNull(cache.get("sha256"));
+
+        PrecompiledContract ecRecover = new PrecompiledContracts.ECRecover();
+        PrecompiledContract contract = cache.wrap("ecrecover", ecRecover);
+        PrecompiledContractCache.CachedContract cached = cache.get("ecrecover");
+        assertSame(contract, cached);
+        assertSame(ecRecover, cached.getContract());
+
+        byte[] data = Hex.decode("18c547e4f7b0f325ad1e56f57e26c745b09a3e503d86e00e5255ff7f715d3d1c000000000000000000000000000000000000000000000000000000000000001c73b1693892219d736caba55bdb67216e485557ea6b6af75f37096c9aa6a5a75feeb940b1d03b21e36b0e47e79769f095fe2ab855bd91e3a38756b7d75a9c4549");
+        byte[] expected = ecRecover.execute(data).getRight();
+        assertEquals(ecRecover.getGasForData(data), contract.getGasForData(data));
+
+        byte[] result = contract.execute(data).getRight();
+        assertArrayEquals(expected, result);
+        assertEquals(0, cached.getHitCount());
+        assertEquals(1, cached.getMissCount());
+
+        // the returned output doesn't change the cached one
+        result[0] = 1;
+        assertArrayEquals(expected, contract.execute(data).getRight());
+        assertTrue(contract.execute(data.clone()).getLeft());
+        assertEquals(2, cached.getHitCount());
+        assertEquals(1, cached.getMissCount());
+
+        // invalid signatures are cached too, null input is the empty one
+        assertArrayEquals(EMPTY_BYTE_ARRAY, contract.execute(null).getRight());
+        assertArrayEquals(EMPTY_BYTE_ARRAY, contract.execute(EMPTY_BYTE_ARRAY).getRight());
+        assertEquals(3, cached.getHitCount());
+        assertEquals(2, cached.getMissCount());
+
+        contract.execute(Hex.decode("01"));
+        assertEquals(2, cached.size());
+    }
+
+    @Test
+    public void cacheOfConfigTest() {
+
+        SystemProperties config = new SystemProperties();
+        config.overrideParams("vm.precompiled.cache.ecrecover", "2");
+        DataWord ecRecoverAddr = new DataWord("0000000000000000000000000000000000000000000000000000000000000001");
+        DataWord sha256Addr = new DataWord("0000000000000000000000000000000000000000000000000000000000000002");
+
+        PrecompiledContract contract = PrecompiledContracts.getContractForAddress(ecRecoverAddr, eip160Config, config);
+        assertSame(config.getPrecompiledContractCache().get("ecrecover"), contract);
+        assertSame(contract, PrecompiledContracts.getContractForAddress(ecRecoverAddr, eip160Config, config));
+        assertSame(PrecompiledContracts.getContractForAddress(sha256Addr, eip160Config),
+                PrecompiledContracts.getContractForAddress(sha256Addr, eip160Config, config));
+
+        // each config has its own cache
+        SystemProperties other = new SystemProperties();
+        assertSame(PrecompiledContracts.getContractForAddress(ecRecoverAddr, eip160Config),
+                PrecompiledContracts.getContractForAddress(ecRecoverAddr, eip160Config, other));
+        assertNull(PrecompiledContracts.getContractForAddress(
+                new DataWord("0000000000000000000000000000000000000000000000000000000000000005"), eip160Config, config));
+    }
 }
@@ -0,0 +1,303 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.vm;
+
+import org.ethereum.util.ByteUtil;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.Random;
+import java.util.function.BiConsumer;
+import java.util.function.BinaryOperator;
+
+import static org.ethereum.vm.DataWord.MAX_VALUE;
+import static org.ethereum.vm.DataWord._2_256;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks the {@link DataWord} arithmetic against the BigInteger
+ * implementation it replaced.
+ */
+public class UInt256Test {
+
+    private static final int ROUNDS = 20_000;
+
+    private static final BigInteger[] EDGES = {
+            BigInteger.ZERO,
+            BigInteger.ONE,
+            BigInteger.valueOf(2),
+            BigInteger.valueOf(0xFFFFFFFFL),
+            BigInteger.ONE.shiftLeft(32),
+            BigInteger.ONE.shiftLeft(64).subtract(BigInteger.ONE),
+            BigInteger.ONE.shiftLeft(64),
+            BigInteger.ONE.shiftLeft(255).subtract(BigInteger.ONE),
+            BigInteger.ONE.shiftLeft(255),
+            MAX_VALUE.subtract(BigInteger.ONE),
+            MAX_VALUE
+    };
+
+    private final Random random = new Random(42);
+
+    // operands of varying width, with a bias towards edge cases and long
+    // runs of ones or zeros, which exercise the carries and the division
+    // correction steps
+    private BigInteger nextValue() {
+        switch (random.nextInt(4)) {
+            case 0:
+                return EDGES[random.nextInt(EDGES.length)];
+            case 1: {
+                final int bits = 1 + random.nextInt(256);
+                return BigInteger.ONE.shiftLeft(bits).subtract(BigInteger.ONE)
+                        .shiftLeft(random.nextInt(257 - bits));
+            }
+            default:
+                return new BigInteger(1 + random.nextInt(256), random);
+        }
+    }
+
+    private static DataWord word(BigInteger value) {
+        return new DataWord(ByteUtil.copyToArray(value.and(MAX_VALUE)));
+    }
+
+    private static BigInteger signed(BigInteger value) {
+        return value.testBit(255) ? value.subtract(_2_256) : value;
+    }
+
+    private static BigInteger wrap(BigInteger value) {
+        return value.and(MAX_VALUE);
+    }
+
+    private void checkBinary(String name, BiConsumer<DataWord, DataWord> op, BinaryOperator<BigInteger> reference) {
+        for (int i = 0; i < ROUNDS; i++) {
+            final BigInteger a = nextValue();
+            final BigInteger b = nextValue();
+
+            final DataWord w = word(a);
+            op.accept(w, word(b));
+            assertArrayEquals(name + "(" + a.toString(16) + ", " + b.toString(16) + ")",
+                    word(reference.apply(a, b)).getData(), w.getData());
+        }
+    }
+
+    private interface TernaryOperator<T> {
+        T apply(T a, T b, T c);
+    }
+
+    private interface TernaryConsumer<T> {
+        void accept(T a, T b, T c);
+    }
+
+    private void checkTernary(String name, TernaryConsumer<DataWord> op, TernaryOperator<BigInteger> reference) {
+        for (int i = 0; i < ROUNDS; i++) {
+            final BigInteger a = nextValue();
+            final BigInteger b = nextValue();
+            final BigInteger m = nextValue();
+
+            final DataWord w = word(a);
+            op.accept(w, word(b), word(m));
+            assertArrayEquals(name + "(" + a.toString(16) + ", " + b.toString(16) + ", " + m.toString(16) + ")",
+                    word(reference.apply(a, b, m)).getData(), w.getData());
+        }
+    }
+
+    @Test
+    public void testAdd() {
+        checkBinary("add", DataWord::add, (a, b) -> wrap(a.add(b)));
+    }
+
+    @Test
+    public void testSub() {
+        checkBinary("sub", DataWord::sub, (a, b) -> wrap(a.subtract(b)));
+    }
+
+    @Test
+    public void testMul() {
+        checkBinary("mul", DataWord::mul, (a, b) -> wrap(a.multiply(b)));
+    }
+
+    @Test
+    public void testDiv() {
+        checkBinary("div", DataWord::div, (a, b) -> b.signum() == 0 ? b : a.divide(b));
+    }
+
+    @Test
+    public void testMod() {
+        checkBinary("mod", DataWord::mod, (a, b) -> b.signum() == 0 ? b : a.mod(b));
+    }
+
+    @Test
+    public void testSDiv() {
+        checkBinary("sdiv", DataWord::sDiv,
+                (a, b) -> b.signum() == 0 ? b : wrap(signed(a).divide(signed(b))));
+    }
+
+    @Test
+    public void testSMod() {
+        checkBinary("smod", DataWord::sMod, (a, b) -> {
+            if (b.signum() == 0)
+                return b;
+            final BigInteger r = signed(a).abs().mod(signed(b).abs());
+            return wrap(signed(a).signum() < 0 ? r.negate() : r);
+        });
+    }
+
+    @Test
+    public void testExp() {
+        checkBinary("exp", DataWord::exp, (a, b) -> a.modPow(b, _2_256));
+    }
+
+    @Test
+    public void testAddMod() {
+        checkTernary("addmod", DataWord::addmod,
+                (a, b, m) -> m.signum() == 0 ? m : a.add(b).mod(m));
+    }
+
+    @Test
+    public void testMulMod() {
+        checkTernary("mulmod", DataWord::mulmod,
+                (a, b, m) -> m.signum() == 0 ? m : a.multiply(b).mod(m));
+    }
+
+    @Test
+    public void testCompare() {
+        for (int i = 0; i < ROUNDS; i++) {
+            final BigInteger a = nextValue();
+            final BigInteger b = random.nextInt(8) == 0 ? a : nextValue();
+
+            assertEquals(a.compareTo(b), word(a).compareTo(word(b)));
+            assertEquals(signed(a).compareTo(signed(b)), word(a).sCompareTo(word(b)));
+        }
+    }
+
+    @Test
+    public void testNot() {
+        for (int i = 0; i < ROUNDS; i++) {
+            final BigInteger a = nextValue();
+            final DataWord w = word(a);
+            w.bnot();
+            assertArrayEquals(word(MAX_VALUE.subtract(a)).getData(), w.getData());
+        }
+    }
+
+    @Test
+    public void testAliasedOperands() {
+        for (int i = 0; i < ROUNDS; i++) {
+            final BigInteger a = nextValue();
+
+            final DataWord sum = word(a);
+            sum.add(sum);
+            assertArrayEquals(word(a.add(a)).getData(), sum.getData());
+
+            final DataWord square = word(a);
+            square.mul(square);
+            assertArrayEquals(word(a.multiply(a)).getData(), square.getData());
+
+            final DataWord zero = word(a);
+            zero.sub(zero);
+            assertArrayEquals(new byte[32], zero.getData());
+        }
+    }
+
+    @Test
+    public void testEmptyWord() {
+        final DataWord w = new DataWord((byte[]) null);
+        w.add(new DataWord(7));
+        assertEquals(new DataWord(7), w);
+
+        final DataWord v = new DataWord(7);
+        v.mul(new DataWord((byte[]) null));
+        assertEquals(new DataWord(0), v);
+    }
+
+    /**
+     * Times each arithmetic op against the BigInteger implementation.
+     */
+    @Ignore
+    @Test
+    public void perfTestArithmetic() {
+        final int n = 1024;
+        final BigInteger[] as = new BigInteger[n];
+        final BigInteger[] bs = new BigInteger[n];
+        final BigInteger[] ms = new BigInteger[n];
+        for (int i = 0; i < n; i++) {
+            as[i] = new BigInteger(256, random);
+            bs[i] = new BigInteger(1 + random.nextInt(256), random);
+            ms[i] = new BigInteger(1 + random.nextInt(256), random).or(BigInteger.ONE);
+        }
+
+        final String[] names = {"add", "sub", "mul", "div", "sdiv", "mod", "smod", "addmod", "mulmod", "exp"};
+        for (int k = 0; k < 5; k++) {
+            for (int op = 0; op < names.length; op++) {
+                final int iterations = op == names.length - 1 ? 20_000 : 1_000_000;
+
+                long s = System.nanoTime();
+                long sink = 0;
+                for (int i = 0; i < iterations; i++) {
+                    final BigInteger a = as[i % n], b = bs[i % n], m = ms[i % n];
+                    final BigInteger r;
+                    switch (op) {
+                        case 0: r = wrap(a.add(b)); break;
+                        case 1: r = wrap(a.subtract(b)); break;
+                        case 2: r = wrap(a.multiply(b)); break;
+                        case 3: r = a.divide(m); break;
+                        case 4: r = wrap(signed(a).divide(signed(m))); break;
+                        case 5: r = a.mod(m); break;
+                        case 6: r = wrap(signed(a).abs().mod(signed(m).abs())); break;
+                        case 7: r = a.add(b).mod(m); break;
+                        case 8: r = a.multiply(b).mod(m); break;
+                        default: r = a.modPow(b, _2_256); break;
+                    }
+                    sink += ByteUtil.copyToArray(r)[31];
+                }
+                long s1 = System.nanoTime();
+
+                final DataWord[] aw = new DataWord[n], bw = new DataWord[n], mw = new DataWord[n];
+                for (int i = 0; i < n; i++) {
+                    aw[i] = word(as[i]);
+                    bw[i] = word(bs[i]);
+                    mw[i] = word(ms[i]);
+                }
+                final DataWord a = new DataWord();
+                long s2 = System.nanoTime();
+                for (int i = 0; i < iterations; i++) {
+                    final DataWord b = bw[i % n], m = mw[i % n];
+                    System.arraycopy(aw[i % n].getData(), 0, a.getData(), 0, 32);
+                    switch (op) {
+                        case 0: a.add(b); break;
+                        case 1: a.sub(b); break;
+                        case 2: a.mul(b); break;
+                        case 3: a.div(m); break;
+                        case 4: a.sDiv(m); break;
+                        case 5: a.mod(m); break;
+                        case 6: a.sMod(m); break;
+                        case 7: a.addmod(b, m); break;
+                        case 8: a.mulmod(b, m); break;
+                        default: a.exp(b); break;
+                    }
+                    sink += a.getData()[31];
+                }
+                long s3 = System.nanoTime();
+
+                System.out.printf("%-7s BigInteger: %5d ns/op, DataWord: %5d ns/op (%d)%n", names[op],
+                        (s1 - s) / iterations, (s3 - s2) / iterations, sink & 1);
+            }
+        }
+    }
+}
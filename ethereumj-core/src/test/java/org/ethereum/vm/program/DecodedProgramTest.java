@@ -0,0 +1,238 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.vm.program;
+
+import org.ethereum.config.SystemProperties;
+import org.ethereum.db.ByteArrayWrapper;
+import org.ethereum.vm.BytecodeCompiler;
+import org.ethereum.vm.DataWord;
+import org.ethereum.vm.OpCode;
+import org.ethereum.vm.VM;
+import org.ethereum.vm.program.invoke.ProgramInvokeMockImpl;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.spongycastle.util.encoders.Hex;
+
+import java.io.ByteArrayOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.ethereum.crypto.HashUtil.sha3;
+import static org.ethereum.vm.OpCode.*;
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the pre-decoded interpreter mode ends up in exactly the same
+ * state as stepping through every instruction.
+ */
+public class DecodedProgramTest {
+
+    private static final SystemProperties predecodeConfig = new SystemProperties();
+    static {
+        predecodeConfig.overrideParams("vm.predecode", "true");
+    }
+
+    private static byte[] compile(String code) {
+        return new BytecodeCompiler().compile(code);
+    }
+
+    @Test
+    public void testBlocks() {
+        // 0: PUSH1 1, 2: PUSH1 2, 4: ADD, 5: MSTORE, 6: JUMPDEST, 7: PUSH1 6, 9: JUMP
+        DecodedProgram code = DecodedProgram.decode(
+                compile("PUSH1 0x01 PUSH1 0x02 ADD MSTORE JUMPDEST PUSH1 0x06 JUMP"));
+
+        DecodedProgram.Block first = code.getBlock(0);
+        assertArrayEquals(new OpCode[] {PUSH1, PUSH1, ADD}, first.getOps());
+        assertEquals(5, first.getEnd());
+        assertEquals(3 + 3 + 3, first.getGas());
+        assertEquals(0, first.getStackRequired());
+        assertEquals(2, first.getStackGrowth());
+        assertEquals(new DataWord(2), new DataWord(first.getImmediates()[1]));
+        assertNull(first.getImmediates()[2]);
+        assertEquals(-1, first.getJumpTarget());
+
+        // stepped instructions and the inside of blocks have no block
+        assertNull(code.getBlock(2));
+        assertNull(code.getBlock(5));
+
+        DecodedProgram.Block loop = code.getBlock(6);
+        assertArrayEquals(new OpCode[] {JUMPDEST, PUSH1, JUMP}, loop.getOps());
+        assertEquals(10, loop.getEnd());
+        assertEquals(1 + 3 + 8, loop.getGas());
+        assertEquals(6, loop.getJumpTarget());
+    }
+
+    @Test
+    public void testJumpTargets() {
+        // not a JUMPDEST
+        assertEquals(-1, DecodedProgram.decode(compile("PUSH1 0x00 JUMP")).getBlock(0).getJumpTarget());
+        // inside PUSH data
+        assertEquals(-1, DecodedProgram.decode(compile("PUSH1 0x03 JUMP PUSH1 0x5b")).getBlock(0).getJumpTarget());
+        // not pushed right before the jump
+        assertEquals(-1, DecodedProgram.decode(compile("PUSH1 0x05 PUSH1 0x01 SWAP1 JUMPI JUMPDEST"))
+                .getBlock(0).getJumpTarget());
+        assertEquals(5, DecodedProgram.decode(compile("PUSH1 0x01 PUSH1 0x05 JUMPI JUMPDEST"))
+                .getBlock(0).getJumpTarget());
+    }
+
+    @Test
+    public void testCachedByCodeHash() {
+        byte[] code = compile("PUSH1 0x01 PUSH1 0x02 ADD");
+        Map<ByteArrayWrapper, DecodedProgram> cache = new HashMap<>();
+        DecodedProgram decoded = DecodedProgram.of(sha3(code), code, cache);
+        assertSame(decoded, DecodedProgram.of(sha3(code), code, cache));
+        assertEquals(1, cache.size());
+
+        // without a code hash or a cache it is decoded again
+        assertNotSame(decoded, DecodedProgram.of(null, code, cache));
+        assertNotSame(decoded, DecodedProgram.of(sha3(code), code, null));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testBlockStackBounds() {
+        DecodedProgram.Block block = DecodedProgram.decode(compile("POP ADD DUP3 DUP1 DUP1 SWAP4")).getBlock(0);
+        // POP takes 1, ADD 2 and leaves 1, DUP3 reaches 2 below that
+        assertEquals(5, block.getStackRequired());
+        assertEquals(1, block.getStackGrowth());
+    }
+
+    @Test
+    public void testTruncatedPush() {
+        // same as Program.sweep(), the missing bytes read as zeroes
+        DecodedProgram.Block block = DecodedProgram.decode(Hex.decode("61ab")).getBlock(0);
+        assertEquals(new DataWord(0xab00), new DataWord(block.getImmediates()[0]));
+        assertEquals(3, block.getEnd());
+
+        assertSameRun(Hex.decode("6001600261ab"), 1000);
+    }
+
+    @Test
+    public void testLoop() {
+        // counts down from 100, stores the counter and falls through to STOP
+        assertSameRun(compile("PUSH1 0x64 JUMPDEST PUSH1 0x01 SWAP1 SUB DUP1 DUP1 PUSH1 0x00 MSTORE " +
+                "PUSH1 0x02 JUMPI STOP"), 1_000_000);
+    }
+
+    @Test
+    public void testFailures() {
+        // out of gas in the middle of a block, at the MSTORE, and at the jump
+        assertSameRun(compile("PUSH1 0x01 PUSH1 0x02 ADD PUSH1 0x03 MUL"), 10);
+        assertSameRun(compile("PUSH1 0x01 PUSH1 0x00 MSTORE"), 10);
+        assertSameRun(compile("JUMPDEST PUSH1 0x00 JUMP"), 1000);
+        // stack underflow, bad jumps
+        assertSameRun(compile("PUSH1 0x01 PUSH1 0x02 ADD ADD"), 1000);
+        assertSameRun(compile("PUSH1 0x01 PUSH1 0x03 JUMPI"), 1000);
+        assertSameRun(compile("PUSH1 0x01 PUSH1 0x03 ADD JUMP"), 1000);
+        assertSameRun(compile("PUSH5 0x0100000004 JUMP JUMPDEST"), 1000);
+        // stack overflow
+        assertSameRun(compile("JUMPDEST PUSH1 0x01 PUSH1 0x00 JUMP"), 1_000_000);
+    }
+
+    /**
+     * Runs random code made mostly of block instructions, with some memory
+     * access, GAS and STOP in between, and jumps to random destinations.
+     */
+    @Test
+    public void testRandomCode() {
+        final OpCode[] palette = {
+                ADD, MUL, SUB, DIV, SDIV, MOD, SMOD, ADDMOD, MULMOD, SIGNEXTEND, EXP,
+                LT, GT, SLT, SGT, EQ, ISZERO, AND, OR, XOR, NOT, BYTE,
+                POP, PC, JUMPDEST, JUMPDEST, JUMP, JUMPI, DUP1, DUP2, DUP4, SWAP1, SWAP2, SWAP3,
+                MSTORE, MLOAD, GAS, CALLVALUE, STOP
+        };
+        final Random random = new Random(1);
+
+        for (int i = 0; i < 500; i++) {
+            ByteArrayOutputStream code = new ByteArrayOutputStream();
+            int length = 1 + random.nextInt(60);
+            for (int j = 0; j < length; j++) {
+                if (random.nextInt(3) == 0) {
+                    int n = random.nextInt(4) == 0 ? 32 : 1;
+                    code.write(PUSH1.val() + n - 1);
+                    for (int k = 0; k < n; k++) {
+                        code.write(n == 1 ? random.nextInt(length) : random.nextInt(256));
+                    }
+                } else {
+                    code.write(palette[random.nextInt(palette.length)].val());
+                }
+            }
+            assertSameRun(code.toByteArray(), random.nextInt(3000));
+        }
+    }
+
+    private static void assertSameRun(byte[] code, long gas) {
+        Program stepped = run(new VM(), code, gas);
+        Program decoded = run(new VM(predecodeConfig), code, gas);
+        String message = Hex.toHexString(code) + " with " + gas + " gas";
+
+        RuntimeException expected = stepped.getResult().getException();
+        RuntimeException actual = decoded.getResult().getException();
+        assertEquals(message, expected == null ? null : expected.getClass(), actual == null ? null : actual.getClass());
+        assertEquals(message, stepped.getResult().getGasUsed(), decoded.getResult().getGasUsed());
+        assertEquals(message, stepped.getPC(), decoded.getPC());
+        assertArrayEquals(message, stepped.getStack().toArray(), decoded.getStack().toArray());
+        assertEquals(message, stepped.getMemSize(), decoded.getMemSize());
+        assertArrayEquals(message, stepped.memoryChunk(0, stepped.getMemSize()),
+                decoded.memoryChunk(0, decoded.getMemSize()));
+    }
+
+    private static Program run(VM vm, byte[] code, long gas) {
+        ProgramInvokeMockImpl invoke = new ProgramInvokeMockImpl();
+        invoke.setGas(gas);
+        Program program = new Program(code, invoke);
+        vm.play(program);
+        invoke.getRepository().close();
+        return program;
+    }
+
+    /**
+     * Times a loop of stack-only opcodes with and without pre-decoding.
+     */
+    @Ignore
+    @Test
+    public void perfTestPredecode() {
+        final int loops = 100_000;
+        final byte[] code = compile("PUSH3 0x" + String.format("%06x", loops) + " " +
+                "JUMPDEST " +
+                "PUSH1 0x01 PUSH1 0x02 DUP2 DUP2 SWAP1 DUP4 SWAP3 POP POP POP POP POP " +
+                "PUSH1 0x01 SWAP1 SUB " +
+                "DUP1 PUSH1 0x04 JUMPI");
+        // ops per iteration, plus the initial PUSH3
+        final long ops = 19L * loops + 1;
+
+        for (int k = 0; k < 10; k++) {
+            for (boolean predecode : new boolean[] {false, true}) {
+                VM vm = predecode ? new VM(predecodeConfig) : new VM();
+                ProgramInvokeMockImpl invoke = new ProgramInvokeMockImpl();
+                invoke.setGas(Long.MAX_VALUE / 2);
+                Program program = new Program(code, invoke);
+
+                long s = System.nanoTime();
+                vm.play(program);
+                long t = System.nanoTime() - s;
+
+                assertNull(program.getResult().getException());
+                System.out.printf("%s: %.1f ns/op%n", predecode ? "pre-decoded" : "stepped", (double) t / ops);
+                invoke.getRepository().close();
+            }
+        }
+    }
+}
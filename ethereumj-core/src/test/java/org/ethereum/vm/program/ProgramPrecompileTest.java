@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.vm.program;
+
+import org.ethereum.util.RLP;
+import org.ethereum.vm.BytecodeCompiler;
+import org.junit.Test;
+import org.spongycastle.util.encoders.Hex;
+
+import static org.junit.Assert.*;
+
+public class ProgramPrecompileTest {
+
+    @Test
+    public void testCompile() {
+        // 0: JUMPDEST, 1: PUSH2 0x5b5b, 4: JUMPDEST, 5: PUSH1 (truncated)
+        ProgramPrecompile precompile = ProgramPrecompile.compile(Hex.decode("5b615b5b5b60"));
+
+        assertTrue(precompile.hasJumpDest(0));
+        assertFalse(precompile.hasJumpDest(1));
+        // JUMPDEST bytes inside PUSH data are not destinations
+        assertFalse(precompile.hasJumpDest(2));
+        assertFalse(precompile.hasJumpDest(3));
+        assertTrue(precompile.hasJumpDest(4));
+        assertFalse(precompile.hasJumpDest(-1));
+        assertFalse(precompile.hasJumpDest(100));
+
+        assertFalse(precompile.isPushData(1));
+        assertTrue(precompile.isPushData(2));
+        assertTrue(precompile.isPushData(3));
+        assertFalse(precompile.isPushData(4));
+        assertFalse(precompile.isPushData(6));
+        assertEquals(6, precompile.getCodeSize());
+    }
+
+    @Test
+    public void testSerialize() {
+        byte[] code = new BytecodeCompiler().compile(
+                "JUMPDEST PUSH32 0x5b5b5b5b5b5b5b5b5b5b5b5b5b5b5b5b5b5b5b5b5b5b5b5b5b5b5b5b5b5b5b5b JUMPDEST STOP");
+        ProgramPrecompile precompile = ProgramPrecompile.compile(code);
+        ProgramPrecompile copy = ProgramPrecompile.deserialize(precompile.serialize());
+
+        assertEquals(precompile.getCodeSize(), copy.getCodeSize());
+        for (int i = -1; i <= code.length; i++) {
+            assertEquals(precompile.hasJumpDest(i), copy.hasJumpDest(i));
+            assertEquals(precompile.isPushData(i), copy.isPushData(i));
+        }
+
+        // empty code
+        assertFalse(ProgramPrecompile.deserialize(ProgramPrecompile.compile(new byte[0]).serialize()).hasJumpDest(0));
+    }
+
+    @Test
+    public void testOldVersion() {
+        // version 1 was the list of jump destinations
+        byte[] stored = RLP.encodeList(RLP.encodeInt(1), RLP.encodeInt(0), RLP.encodeInt(4));
+        assertNull(ProgramPrecompile.deserialize(stored));
+    }
+
+    @Test
+    public void testMemEstimator() {
+        long small = ProgramPrecompile.MemEstimator.estimateSize(ProgramPrecompile.compile(new byte[100]));
+        long large = ProgramPrecompile.MemEstimator.estimateSize(ProgramPrecompile.compile(new byte[24 * 1024]));
+        assertTrue(small > 0);
+        // two bits per code byte
+        assertTrue(large - small >= (24 * 1024 - 100) / 4 - 16);
+        assertEquals(0, ProgramPrecompile.MemEstimator.estimateSize(null));
+    }
+}
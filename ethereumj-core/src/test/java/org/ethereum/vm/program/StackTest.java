@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.vm.program;
+
+import org.ethereum.vm.BytecodeCompiler;
+import org.ethereum.vm.DataWord;
+import org.ethereum.vm.VM;
+import org.ethereum.vm.program.invoke.ProgramInvokeMockImpl;
+import org.ethereum.vm.program.listener.ProgramListenerAdaptor;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.EmptyStackException;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class StackTest {
+
+    @Test
+    public void testPushPop() {
+        Stack stack = new Stack();
+        for (int i = 0; i < Stack.MAX_SIZE; i++) {
+            stack.push(new DataWord(i));
+        }
+        assertEquals(Stack.MAX_SIZE, stack.size());
+        assertEquals(new DataWord(Stack.MAX_SIZE - 1), stack.peek());
+        assertEquals(new DataWord(0), stack.get(0));
+
+        for (int i = Stack.MAX_SIZE - 1; i >= 0; i--) {
+            assertEquals(new DataWord(i), stack.pop());
+        }
+        assertTrue(stack.isEmpty());
+    }
+
+    @Test(expected = EmptyStackException.class)
+    public void testPopEmpty() {
+        new Stack().pop();
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testGetAboveTop() {
+        Stack stack = new Stack();
+        stack.push(new DataWord(1));
+        stack.get(1);
+    }
+
+    @Test
+    public void testSwapAndIterate() {
+        Stack stack = new Stack();
+        for (int i = 0; i < 4; i++) {
+            stack.push(new DataWord(i));
+        }
+        stack.swap(stack.size() - 1, 0);
+        // out of range swaps are ignored
+        stack.swap(stack.size(), 0);
+
+        List<DataWord> items = new ArrayList<>();
+        for (DataWord item : stack) {
+            items.add(item);
+        }
+        assertEquals(4, items.size());
+        assertEquals(new DataWord(3), items.get(0));
+        assertEquals(new DataWord(0), items.get(3));
+        assertArrayEquals(items.toArray(), stack.toArray());
+    }
+
+    @Test
+    public void testListener() {
+        final int[] events = new int[3];
+        Stack stack = new Stack();
+        stack.setProgramListener(new ProgramListenerAdaptor() {
+            @Override
+            public void onStackPop() {
+                events[0]++;
+            }
+
+            @Override
+            public void onStackPush(DataWord value) {
+                events[1]++;
+            }
+
+            @Override
+            public void onStackSwap(int from, int to) {
+                events[2]++;
+            }
+        });
+
+        stack.push(new DataWord(1));
+        stack.push(new DataWord(2));
+        stack.swap(0, 1);
+        stack.pop();
+        assertArrayEquals(new int[] {1, 2, 1}, events);
+    }
+
+    /**
+     * Runs a loop of stack-only opcodes (PUSH, DUP, SWAP, POP and the
+     * arithmetic to count down) and reports the time per executed opcode.
+     */
+    @Ignore
+    @Test
+    public void perfTestStackOps() {
+        final int loops = 100_000;
+        final String loop = "PUSH3 0x" + String.format("%06x", loops) + " " +
+                "JUMPDEST " +
+                "PUSH1 0x01 PUSH1 0x02 DUP2 DUP2 SWAP1 DUP4 SWAP3 POP POP POP POP POP " +
+                "PUSH1 0x01 SWAP1 SUB " +
+                "DUP1 PUSH1 0x04 JUMPI";
+        final byte[] code = new BytecodeCompiler().compile(loop);
+        // ops per iteration, plus the initial PUSH3
+        final long ops = 19L * loops + 1;
+
+        for (int k = 0; k < 10; k++) {
+            ProgramInvokeMockImpl invoke = new ProgramInvokeMockImpl();
+            invoke.setGas(Long.MAX_VALUE / 2);
+            Program program = new Program(code, invoke);
+
+            long s = System.nanoTime();
+            new VM().play(program);
+            long t = System.nanoTime() - s;
+
+            assertNull(program.getResult().getException());
+            System.out.printf("%.1f ns/op%n", (double) t / ops);
+            invoke.getRepository().close();
+        }
+    }
+}